@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * <p>Limits the number of notifications in flight at once, adjusting the limit to suit the network and server at hand
+ * using an additive-increase/multiplicative-decrease (AIMD) scheme.</p>
+ *
+ * <p>While response latency stays near the lowest recent latency, the limit grows by roughly one for
+ * every limit's worth of responses (i.e. by about one per round trip). When latency spikes, a send fails outright, or
+ * the server rejects a notification because it's overloaded, the limit is cut in half. Only one cut is made per round
+ * trip; responses to notifications sent before the most recent cut reflect the old limit and don't cause another.</p>
+ *
+ * <p>The lowest latency is tracked over a window of recent responses rather than for all time. Otherwise, a single
+ * unusually fast response would make every normal response after it look like a spike, and the limit would never
+ * recover.</p>
+ *
+ * <p>Limiters are safe for use by multiple threads at once.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class AdaptiveConcurrencyLimiter {
+
+    /**
+     * The limit with which new limiters start unless their maximum is lower.
+     */
+    static final int DEFAULT_INITIAL_LIMIT = 16;
+
+    // Latencies up to this multiple of the lowest recent latency count as "near the minimum"
+    private static final double LATENCY_TOLERANCE = 2.0;
+
+    private static final double BACKOFF_RATIO = 0.5;
+
+    private final int maxLimit;
+
+    private double limit;
+    private int inFlight = 0;
+
+    // The lowest latency is the lower of the lowest latencies in the current and previous windows, so it forgets an
+    // outlier after between one and two windows
+    private static final long MIN_LATENCY_WINDOW_NANOS = Duration.ofSeconds(10).toNanos();
+
+    private long minLatencyNanos = Long.MAX_VALUE;
+    private long windowMinLatencyNanos = Long.MAX_VALUE;
+    private long previousWindowMinLatencyNanos = Long.MAX_VALUE;
+    private boolean windowStarted = false;
+    private long windowStartNanos;
+
+    private boolean decreased = false;
+    private long lastDecreaseNanos;
+
+    /**
+     * Constructs a new limiter that will never allow more than the given number of notifications in flight at once.
+     *
+     * @param maxLimit the highest limit the limiter may choose; must be positive
+     */
+    AdaptiveConcurrencyLimiter(final int maxLimit) {
+        this(Math.min(DEFAULT_INITIAL_LIMIT, maxLimit), maxLimit);
+    }
+
+    AdaptiveConcurrencyLimiter(final int initialLimit, final int maxLimit) {
+        if (maxLimit < 1) {
+            throw new IllegalArgumentException("Maximum limit must be positive.");
+        }
+
+        if (initialLimit < 1 || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Initial limit must be between 1 and the maximum limit.");
+        }
+
+        this.limit = initialLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * Attempts to reserve a place for a new notification. Callers that successfully reserve a place must eventually
+     * report the outcome of the send with exactly one of {@link #onSuccess(long, long)},
+     * {@link #onDropped(long, long)}, or {@link #onIgnored()}.
+     *
+     * @return {@code true} if the notification may be sent or {@code false} if the limit has been reached
+     */
+    synchronized boolean tryAcquire() {
+        if (inFlight >= getLimit()) {
+            return false;
+        }
+
+        inFlight += 1;
+        return true;
+    }
+
+    /**
+     * Reports that the server responded to a notification, whether it accepted the notification or rejected it for
+     * reasons that have nothing to do with load (a bad device token, for example).
+     *
+     * @param startNanos the value of {@link System#nanoTime()} when the notification was sent
+     * @param endNanos the value of {@link System#nanoTime()} when the response arrived
+     */
+    synchronized void onSuccess(final long startNanos, final long endNanos) {
+        // Measured before releasing this send's place so a full pipe looks full
+        final boolean saturated = inFlight * 2 >= getLimit();
+        inFlight -= 1;
+
+        final long latencyNanos = endNanos - startNanos;
+        updateMinLatency(latencyNanos, endNanos);
+
+        if (latencyNanos > minLatencyNanos * LATENCY_TOLERANCE) {
+            decrease(startNanos, endNanos);
+        } else if (saturated) {
+            // There's no evidence that a higher limit would help if we weren't using most of the current one
+            limit = Math.min(maxLimit, limit + (1 / limit));
+        }
+    }
+
+    /**
+     * Reports that a notification could not be sent, or that the server rejected it because it's overloaded.
+     *
+     * @param startNanos the value of {@link System#nanoTime()} when the notification was sent
+     * @param endNanos the value of {@link System#nanoTime()} when the failure was reported
+     */
+    synchronized void onDropped(final long startNanos, final long endNanos) {
+        inFlight -= 1;
+        decrease(startNanos, endNanos);
+    }
+
+    /**
+     * Releases a reserved place without adjusting the limit; appropriate when a notification turned out not to need
+     * sending at all.
+     */
+    synchronized void onIgnored() {
+        inFlight -= 1;
+    }
+
+    private void updateMinLatency(final long latencyNanos, final long nowNanos) {
+        if (!windowStarted) {
+            windowStarted = true;
+            windowStartNanos = nowNanos;
+        } else if (nowNanos - windowStartNanos >= MIN_LATENCY_WINDOW_NANOS) {
+            // If a whole window went by without a response, the last window is too old to count, too
+            previousWindowMinLatencyNanos = nowNanos - windowStartNanos >= MIN_LATENCY_WINDOW_NANOS * 2 ?
+                    Long.MAX_VALUE : windowMinLatencyNanos;
+
+            windowMinLatencyNanos = Long.MAX_VALUE;
+            windowStartNanos = nowNanos;
+        }
+
+        windowMinLatencyNanos = Math.min(windowMinLatencyNanos, latencyNanos);
+        minLatencyNanos = Math.min(windowMinLatencyNanos, previousWindowMinLatencyNanos);
+    }
+
+    private void decrease(final long startNanos, final long endNanos) {
+        if (!decreased || startNanos - lastDecreaseNanos >= 0) {
+            limit = Math.max(1, limit * BACKOFF_RATIO);
+
+            decreased = true;
+            lastDecreaseNanos = endNanos;
+        }
+    }
+
+    /**
+     * Returns the current limit.
+     *
+     * @return the number of notifications that may currently be in flight at once
+     */
+    synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    synchronized int getMaxLimit() {
+        return maxLimit;
+    }
+
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Returns the lowest recent latency the limiter has observed.
+     *
+     * @return the lowest recent latency the limiter has observed, or empty if no notifications have been sent
+     * successfully
+     */
+    synchronized Optional<Duration> getMinLatency() {
+        return minLatencyNanos != Long.MAX_VALUE ? Optional.of(Duration.ofNanos(minLatencyNanos)) : Optional.empty();
+    }
+}
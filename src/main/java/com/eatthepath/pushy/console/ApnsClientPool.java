@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.ApnsClient;
+import com.eatthepath.pushy.apns.ApnsClientBuilder;
+import com.eatthepath.pushy.apns.ApnsPushNotification;
+import com.eatthepath.pushy.apns.PushNotificationResponse;
+
+import javax.net.ssl.SSLException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <p>A small pool of APNs clients, each bound to a single set of credentials and a single APNs server and port.
+ * Reusing clients means that repeated sends to the same target reuse an existing connection instead of paying for a
+ * new TLS handshake every time.</p>
+ *
+ * <p>Clients are identified by the identity (not equality) of their credentials; a new set of credentials (even one
+ * loaded from the same file) gets a new client. The pool holds a bounded number of clients and evicts the least
+ * recently used client when it would otherwise grow beyond that bound, with two exceptions:</p>
+ *
+ * <ul>
+ *     <li>Clients used on behalf of an "owner" (a bulk send's or relay's routes, for example) are pinned until the
+ *     owner is {@linkplain #release(Object) released}, so a long-running job never loses a connection (and pays for
+ *     another handshake) just because it spans more credentials than the pool would otherwise hold.</li>
+ *     <li>Evicted clients aren't closed until every notification sent through them has completed.</li>
+ * </ul>
+ *
+ * <p>The pool may therefore briefly hold more clients than its nominal bound.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class ApnsClientPool {
+
+    private final int maxClients;
+    private final ClientFactory clientFactory;
+    private final LinkedHashMap<ClientKey, PooledClient> clients = new LinkedHashMap<>(16, 0.75f, true);
+
+    // Evicted clients that are waiting for their last notifications to complete before closing
+    private final Set<PooledClient> drainingClients = new HashSet<>();
+
+    static final int DEFAULT_MAX_CLIENTS = 16;
+
+    private static class ClientKey {
+
+        private final ApnsCredentials credentials;
+        private final ApnsTarget target;
+
+        private ClientKey(final ApnsCredentials credentials, final ApnsTarget target) {
+            this.credentials = Objects.requireNonNull(credentials);
+            this.target = Objects.requireNonNull(target);
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (this == other) {
+                return true;
+            }
+
+            if (other == null || getClass() != other.getClass()) {
+                return false;
+            }
+
+            final ClientKey that = (ClientKey) other;
+
+            return credentials == that.credentials && target.equals(that.target);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(credentials) + target.hashCode();
+        }
+    }
+
+    /**
+     * The parts of an {@link ApnsClient} the pool actually uses.
+     */
+    interface Client {
+        <T extends ApnsPushNotification> CompletableFuture<PushNotificationResponse<T>> sendNotification(T pushNotification);
+
+        CompletableFuture<Void> close();
+    }
+
+    /**
+     * Creates clients for the pool.
+     */
+    @FunctionalInterface
+    interface ClientFactory {
+        Client createClient(ApnsCredentials credentials, ApnsTarget target) throws SSLException;
+    }
+
+    private static class PooledClient {
+
+        private final Client client;
+
+        // Guarded by the pool's lock
+        private final Set<Object> owners = Collections.newSetFromMap(new IdentityHashMap<>());
+        private int outstandingSends = 0;
+        private boolean evicted = false;
+
+        private PooledClient(final Client client) {
+            this.client = client;
+        }
+    }
+
+    ApnsClientPool() {
+        this(DEFAULT_MAX_CLIENTS);
+    }
+
+    ApnsClientPool(final int maxClients) {
+        this(maxClients, ApnsClientPool::buildClient);
+    }
+
+    ApnsClientPool(final int maxClients, final ClientFactory clientFactory) {
+        this.maxClients = maxClients;
+        this.clientFactory = clientFactory;
+    }
+
+    /**
+     * Sends a notification to the given target with the given credentials, creating a new client if the pool doesn't
+     * already have one for that combination of credentials and target. The client that sends the notification
+     * won't be closed until the notification has been sent and, if an owner is given, won't be evicted from the pool
+     * until that owner is released.
+     *
+     * @param pushNotification the notification to send
+     * @param credentials the credentials with which to send the notification
+     * @param target the server and port to which to send the notification
+     * @param owner an object (typically a {@link TopicRouter.Route}) on whose behalf the client should be kept open
+     * until {@link #release(Object)} is called with the same object; may be {@code null}
+     * @param <T> the type of notification to send
+     *
+     * @return a future that completes with the server's response to the notification
+     *
+     * @throws SSLException if a new client was needed, but could not be created
+     */
+    <T extends ApnsPushNotification> CompletableFuture<PushNotificationResponse<T>> sendNotification(
+            final T pushNotification, final ApnsCredentials credentials, final ApnsTarget target, final Object owner)
+            throws SSLException {
+
+        final PooledClient pooledClient;
+
+        synchronized (this) {
+            pooledClient = getPooledClient(credentials, target, owner);
+            pooledClient.outstandingSends += 1;
+        }
+
+        return pooledClient.client.sendNotification(pushNotification).whenComplete((response, cause) -> {
+            synchronized (this) {
+                pooledClient.outstandingSends -= 1;
+
+                if (pooledClient.evicted && pooledClient.outstandingSends == 0 && drainingClients.remove(pooledClient)) {
+                    pooledClient.client.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Unpins every client used on behalf of the given owner. Unpinned clients stay in the pool, but become eligible
+     * for eviction again.
+     *
+     * @param owner the owner to release
+     */
+    synchronized void release(final Object owner) {
+        for (final PooledClient pooledClient : clients.values()) {
+            pooledClient.owners.remove(owner);
+        }
+
+        evictExcessClients();
+    }
+
+    /**
+     * Indicates whether the pool currently holds a client for the given combination of credentials and target.
+     *
+     * @param credentials the credentials for which to check
+     * @param target the target for which to check
+     *
+     * @return {@code true} if the pool holds a client for the given credentials and target or {@code false} otherwise
+     */
+    synchronized boolean hasClient(final ApnsCredentials credentials, final ApnsTarget target) {
+        return clients.containsKey(new ClientKey(credentials, target));
+    }
+
+    /**
+     * Returns the number of clients currently held by the pool, not counting evicted clients that are waiting for
+     * their last notifications to complete.
+     *
+     * @return the number of clients in the pool
+     */
+    synchronized int size() {
+        return clients.size();
+    }
+
+    private PooledClient getPooledClient(final ApnsCredentials credentials, final ApnsTarget target, final Object owner)
+            throws SSLException {
+
+        final ClientKey key = new ClientKey(credentials, target);
+
+        PooledClient pooledClient = clients.get(key);
+
+        if (pooledClient == null) {
+            pooledClient = new PooledClient(clientFactory.createClient(credentials, target));
+            clients.put(key, pooledClient);
+        }
+
+        if (owner != null) {
+            pooledClient.owners.add(owner);
+        }
+
+        evictExcessClients();
+
+        return pooledClient;
+    }
+
+    private void evictExcessClients() {
+        final Iterator<PooledClient> leastRecentlyUsedFirst = clients.values().iterator();
+
+        while (clients.size() > maxClients && leastRecentlyUsedFirst.hasNext()) {
+            final PooledClient pooledClient = leastRecentlyUsedFirst.next();
+
+            // The most recently used client is the one the caller is about to use, so it never gets evicted here
+            if (pooledClient.owners.isEmpty() && leastRecentlyUsedFirst.hasNext()) {
+                leastRecentlyUsedFirst.remove();
+                pooledClient.evicted = true;
+
+                if (pooledClient.outstandingSends == 0) {
+                    pooledClient.client.close();
+                } else {
+                    drainingClients.add(pooledClient);
+                }
+            }
+        }
+    }
+
+    private static Client buildClient(final ApnsCredentials credentials, final ApnsTarget target) throws SSLException {
+        final ApnsClientBuilder apnsClientBuilder = new ApnsClientBuilder();
+        apnsClientBuilder.setApnsServer(target.getServer(), target.getPort());
+
+        credentials.getCertificateAndPrivateKey().ifPresent(certificateAndPrivateKey ->
+                apnsClientBuilder.setClientCredentials(certificateAndPrivateKey.getKey(), certificateAndPrivateKey.getValue(), null));
+
+        credentials.getSigningKey().ifPresent(apnsClientBuilder::setSigningKey);
+
+        final ApnsClient apnsClient = apnsClientBuilder.build();
+
+        return new Client() {
+            @Override
+            public <T extends ApnsPushNotification> CompletableFuture<PushNotificationResponse<T>> sendNotification(final T pushNotification) {
+                return apnsClient.sendNotification(pushNotification);
+            }
+
+            @Override
+            public CompletableFuture<Void> close() {
+                return apnsClient.close();
+            }
+        };
+    }
+
+    /**
+     * Closes every client in the pool, including clients that still have notifications in flight.
+     *
+     * @return a future that completes when every client in the pool has closed
+     */
+    synchronized CompletableFuture<Void> close() {
+        final List<CompletableFuture<Void>> closeFutures = new ArrayList<>(clients.size() + drainingClients.size());
+
+        for (final PooledClient pooledClient : clients.values()) {
+            closeFutures.add(pooledClient.client.close());
+        }
+
+        for (final PooledClient pooledClient : drainingClients) {
+            closeFutures.add(pooledClient.client.close());
+        }
+
+        clients.clear();
+        drainingClients.clear();
+
+        return CompletableFuture.allOf(closeFutures.toArray(new CompletableFuture<?>[0]));
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.PushNotificationResponse;
+import com.eatthepath.pushy.apns.util.SimpleApnsPushNotification;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.property.ReadOnlyStringProperty;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * <p>Opens connections to APNs servers ahead of time so the first notification sent with a new combination of
+ * credentials and server doesn't have to wait for DNS resolution, a TLS handshake, and an HTTP/2 settings exchange.</p>
+ *
+ * <p>Pushy clients connect lazily when they send their first notification and don't offer a way to connect without
+ * sending anything, so the warmer "sends" a probe notification for the selected topic addressed to a token that can't
+ * possibly be valid. The APNs server rejects the probe without delivering anything to anybody, but the client's
+ * connection stays open for later use. As a bonus, the server's response tells us whether it accepted our credentials
+ * and topic: APNs only gets as far as checking the device token once everything else about the notification checks
+ * out, so only a rejection for a bad device token counts as success.</p>
+ *
+ * <p>Probes are only sent when they'd tell us something new: if a probe for the same credentials, topic, and target
+ * has already succeeded and the pool still has that client's connection, the connection is already warm.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class ApnsConnectionWarmer {
+
+    /**
+     * The possible states of the connections for the current selection of credentials and targets.
+     */
+    enum State {
+        /**
+         * No credentials or targets are selected, so there's nothing to connect to.
+         */
+        IDLE,
+
+        /**
+         * Connections are being established.
+         */
+        CONNECTING,
+
+        /**
+         * Connections to every selected target are open, and the servers accepted the selected credentials.
+         */
+        CONNECTED,
+
+        /**
+         * At least one connection could not be opened, or at least one server rejected the selected credentials.
+         */
+        FAILED
+    }
+
+    private final ApnsClientPool apnsClientPool;
+    private final ExecutorService warmUpExecutorService = Executors.newSingleThreadExecutor();
+
+    private final ReadOnlyObjectWrapper<State> stateWrapper = new ReadOnlyObjectWrapper<>(State.IDLE);
+    private final ReadOnlyStringWrapper failureReasonWrapper = new ReadOnlyStringWrapper();
+
+    // Combinations of credentials, topic, and target for which a probe has succeeded
+    private final Set<ProbeKey> successfulProbes = Collections.synchronizedSet(new HashSet<>());
+
+    // Incremented every time the selection changes so results from superseded warm-ups can be discarded
+    private long generation = 0;
+
+    // Well-formed, but never issued to any device
+    static final String PROBE_TOKEN = "0".repeat(64);
+    private static final String PROBE_PAYLOAD = "{}";
+
+    /**
+     * Rejection reasons that mean the server accepted everything about the probe except its device token, which is
+     * what we expect from a healthy connection.
+     */
+    private static final Set<String> EXPECTED_REJECTION_REASONS = new HashSet<>(Arrays.asList(
+            "BadDeviceToken",
+            "DeviceTokenNotForTopic"));
+
+    private static class ProbeKey {
+
+        private final ApnsCredentials credentials;
+        private final String topic;
+        private final ApnsTarget target;
+
+        private ProbeKey(final ApnsCredentials credentials, final String topic, final ApnsTarget target) {
+            this.credentials = Objects.requireNonNull(credentials);
+            this.topic = Objects.requireNonNull(topic);
+            this.target = Objects.requireNonNull(target);
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (this == other) {
+                return true;
+            }
+
+            if (other == null || getClass() != other.getClass()) {
+                return false;
+            }
+
+            final ProbeKey that = (ProbeKey) other;
+
+            // Like the client pool, tell credentials apart by identity
+            return credentials == that.credentials && topic.equals(that.topic) && target.equals(that.target);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(credentials), topic, target);
+        }
+    }
+
+    ApnsConnectionWarmer(final ApnsClientPool apnsClientPool) {
+        this.apnsClientPool = apnsClientPool;
+    }
+
+    /**
+     * Opens connections to each of the given targets with the given credentials. Connections for previous selections
+     * of credentials stay open (until the pool needs room for newer connections) so switching back to them is quick.
+     * Must be called on the JavaFX application thread.
+     *
+     * @param credentials the credentials with which to connect; may be {@code null}, in which case no connections are
+     * opened
+     * @param topic the topic for which to check the credentials; may be {@code null}, in which case no connections are
+     * opened
+     * @param targets the targets to which to connect
+     */
+    void warm(final ApnsCredentials credentials, final String topic, final List<ApnsTarget> targets) {
+        final long warmUpGeneration = ++generation;
+
+        failureReasonWrapper.set(null);
+
+        if (credentials == null || StringUtils.isBlank(topic) || targets.isEmpty()) {
+            stateWrapper.set(State.IDLE);
+            return;
+        }
+
+        stateWrapper.set(State.CONNECTING);
+
+        // Building a client (and its TLS context) isn't free, so do that off of the UI thread, too
+        warmUpExecutorService.execute(() -> probe(credentials, topic, targets).thenAccept(failureReason ->
+                Platform.runLater(() -> {
+                    if (generation == warmUpGeneration) {
+                        failureReasonWrapper.set(failureReason);
+                        stateWrapper.set(failureReason == null ? State.CONNECTED : State.FAILED);
+                    }
+                })));
+    }
+
+    /**
+     * Sends a probe notification to each of the given targets, except targets that already have an open connection
+     * that a previous probe for the same credentials and topic showed to be working.
+     *
+     * @param credentials the credentials with which to send the probes
+     * @param topic the topic for which to send the probes
+     * @param targets the targets to which to send the probes
+     *
+     * @return a future that yields a reason at least one connection is unusable, or {@code null} if every connection
+     * is ready; the future never completes exceptionally
+     */
+    CompletableFuture<String> probe(final ApnsCredentials credentials, final String topic, final List<ApnsTarget> targets) {
+        final List<CompletableFuture<String>> probeFutures = new ArrayList<>(targets.size());
+
+        for (final ApnsTarget target : targets) {
+            probeFutures.add(sendProbe(credentials, topic, target));
+        }
+
+        return CompletableFuture.allOf(probeFutures.toArray(new CompletableFuture<?>[0])).handle((ignored, cause) -> {
+            for (final CompletableFuture<String> probeFuture : probeFutures) {
+                final String failureReason;
+
+                try {
+                    failureReason = probeFuture.join();
+                } catch (final CompletionException e) {
+                    return e.getCause().getLocalizedMessage();
+                }
+
+                if (failureReason != null) {
+                    return failureReason;
+                }
+            }
+
+            return null;
+        });
+    }
+
+    /**
+     * Sends a probe notification to the given target.
+     *
+     * @return a future that yields a reason the connection is unusable, or {@code null} if the connection is ready
+     */
+    private CompletableFuture<String> sendProbe(final ApnsCredentials credentials, final String topic, final ApnsTarget target) {
+        final ProbeKey probeKey = new ProbeKey(credentials, topic, target);
+
+        if (successfulProbes.contains(probeKey) && apnsClientPool.hasClient(credentials, target)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        try {
+            return apnsClientPool.sendNotification(new SimpleApnsPushNotification(PROBE_TOKEN, topic, PROBE_PAYLOAD),
+                    credentials, target, null).thenApply(response -> {
+                        final String failureReason = getProbeFailureReason(response);
+
+                        if (failureReason == null) {
+                            successfulProbes.add(probeKey);
+                        } else {
+                            successfulProbes.remove(probeKey);
+                        }
+
+                        return failureReason;
+                    });
+        } catch (final Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static String getProbeFailureReason(final PushNotificationResponse<?> response) {
+        if (response.isAccepted()) {
+            // This should never happen, and if it does, we can't say anything about whether the connection works
+            return "Probe notification was unexpectedly accepted";
+        }
+
+        return EXPECTED_REJECTION_REASONS.contains(response.getRejectionReason()) ? null : response.getRejectionReason();
+    }
+
+    ReadOnlyObjectProperty<State> stateProperty() {
+        return stateWrapper.getReadOnlyProperty();
+    }
+
+    /**
+     * Returns a property containing a description of the reason the most recent warm-up failed.
+     *
+     * @return a property containing a description of the reason the most recent warm-up failed; the property's value
+     * is {@code null} unless the warmer's state is {@link State#FAILED}
+     */
+    ReadOnlyStringProperty failureReasonProperty() {
+        return failureReasonWrapper.getReadOnlyProperty();
+    }
+
+    void stop() {
+        warmUpExecutorService.shutdownNow();
+    }
+}
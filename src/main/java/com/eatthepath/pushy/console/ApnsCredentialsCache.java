@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.InvalidKeyException;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * <p>Keeps every set of credentials loaded during a session ready for reuse. Decrypting a PKCS#12 file is slow enough
+ * to notice, and switching back and forth between a handful of credentials is common, so each file is decrypted at most
+ * once per session (for each password, key ID, and team ID with which it's used).</p>
+ *
+ * <p>Because the cache hands out the same {@link ApnsCredentials} instance every time, switching back to a set of
+ * credentials also finds any clients an {@link ApnsClientPool} already has for those credentials.</p>
+ *
+ * <p>Certificate passwords are remembered in memory for the rest of the session, but are never written anywhere.</p>
+ *
+ * <p>Caches are safe for use from multiple threads, so routes can load their credentials on first use from whichever
+ * thread happens to be sending.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class ApnsCredentialsCache {
+
+    private final Map<List<Object>, ApnsCredentials> credentials = new HashMap<>();
+    private final Map<List<Object>, Set<String>> certificateTopics = new HashMap<>();
+    private final Map<File, String> certificatePasswords = new HashMap<>();
+
+    /**
+     * Returns credentials loaded from the given PKCS#12 file, decrypting the file only if it hasn't already been
+     * decrypted with the given password.
+     *
+     * @param certificateFile a PKCS#12 file containing the certificate and private key
+     * @param password the password for the PKCS#12 file
+     *
+     * @return credentials loaded from the given file
+     *
+     * @throws IOException if the given file could not be read for any reason
+     * @throws KeyStoreException if a certificate/private key pair could not be loaded from the given file
+     */
+    synchronized ApnsCredentials getCertificateCredentials(final File certificateFile, final String password) throws IOException, KeyStoreException {
+        final List<Object> key = Arrays.asList(certificateFile.getAbsoluteFile(), password);
+
+        ApnsCredentials cachedCredentials = credentials.get(key);
+
+        if (cachedCredentials == null) {
+            cachedCredentials = new ApnsCredentials(certificateFile, password);
+
+            credentials.put(key, cachedCredentials);
+            certificatePasswords.put(certificateFile.getAbsoluteFile(), password);
+        }
+
+        return cachedCredentials;
+    }
+
+    /**
+     * Returns the APNs topics named in the certificate in the given PKCS#12 file.
+     *
+     * @param certificateFile a PKCS#12 file containing the certificate and private key
+     * @param password the password for the PKCS#12 file
+     *
+     * @return the topics named in the given file's certificate
+     *
+     * @throws IOException if the given file could not be read for any reason
+     * @throws KeyStoreException if a certificate/private key pair could not be loaded from the given file
+     */
+    synchronized Set<String> getCertificateTopics(final File certificateFile, final String password) throws IOException, KeyStoreException {
+        final List<Object> key = Arrays.asList(certificateFile.getAbsoluteFile(), password);
+
+        Set<String> topics = certificateTopics.get(key);
+
+        if (topics == null) {
+            topics = CertificateUtil.extractApnsTopicsFromCertificate(
+                    getCertificateCredentials(certificateFile, password).getCertificateAndPrivateKey()
+                            .orElseThrow(() -> new KeyStoreException("No certificate found in " + certificateFile))
+                            .getKey());
+
+            certificateTopics.put(key, topics);
+        }
+
+        return topics;
+    }
+
+    /**
+     * Returns credentials loaded from the given PKCS#8 signing key file, reading the file only if it hasn't already
+     * been read for the given key ID and team ID.
+     *
+     * @param signingKeyFile a PKCS#8 file that contains an EC private key
+     * @param keyId the ten-character, Apple-issued ID for the signing key
+     * @param teamId the ten-character, Apple-issued ID for the team to which the signing key belongs
+     *
+     * @return credentials loaded from the given file
+     *
+     * @throws NoSuchAlgorithmException if the JVM does not support elliptic curve keys
+     * @throws IOException if the given file could not be read for any reason
+     * @throws InvalidKeyException if the given file does not contain a valid signing key
+     */
+    synchronized ApnsCredentials getSigningKeyCredentials(final File signingKeyFile, final String keyId, final String teamId)
+            throws NoSuchAlgorithmException, IOException, InvalidKeyException {
+
+        final List<Object> key = Arrays.asList(signingKeyFile.getAbsoluteFile(), keyId, teamId);
+
+        ApnsCredentials cachedCredentials = credentials.get(key);
+
+        if (cachedCredentials == null) {
+            cachedCredentials = new ApnsCredentials(signingKeyFile, keyId, teamId);
+            credentials.put(key, cachedCredentials);
+        }
+
+        return cachedCredentials;
+    }
+
+    /**
+     * Returns the password most recently used to decrypt the given PKCS#12 file in this session.
+     *
+     * @param certificateFile the PKCS#12 file for which to find a password
+     *
+     * @return the password most recently used to decrypt the given file, or empty if the file hasn't been decrypted in
+     * this session
+     */
+    synchronized Optional<String> getCertificatePassword(final File certificateFile) {
+        return Optional.ofNullable(certificatePasswords.get(certificateFile.getAbsoluteFile()));
+    }
+
+    /**
+     * Remembers a password that is already known to unlock the given PKCS#12 file, so it won't need to be entered
+     * again in this session. The file isn't decrypted until its credentials are actually needed.
+     *
+     * @param certificateFile the PKCS#12 file that the given password unlocks
+     * @param password the password for the given file
+     */
+    synchronized void rememberCertificatePassword(final File certificateFile, final String password) {
+        certificatePasswords.put(certificateFile.getAbsoluteFile(), password);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import java.util.Objects;
+
+/**
+ * An APNs server and port to which notifications may be sent.
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class ApnsTarget {
+
+    private final String server;
+    private final int port;
+
+    ApnsTarget(final String server, final int port) {
+        this.server = Objects.requireNonNull(server, "Server must not be null.");
+        this.port = port;
+    }
+
+    /**
+     * Parses a target from a string of the form "server:port" (i.e. the form produced by {@link #toString()}).
+     *
+     * @param target the string to parse
+     *
+     * @return the target represented by the given string
+     *
+     * @throws IllegalArgumentException if the given string does not represent a target
+     */
+    static ApnsTarget parse(final String target) {
+        final int separator = target.lastIndexOf(':');
+
+        if (separator < 1) {
+            throw new IllegalArgumentException("Target must be of the form \"server:port\": " + target);
+        }
+
+        try {
+            return new ApnsTarget(target.substring(0, separator), Integer.parseInt(target.substring(separator + 1)));
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Target must be of the form \"server:port\": " + target, e);
+        }
+    }
+
+    String getServer() {
+        return server;
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (this == other) {
+            return true;
+        }
+
+        if (other == null || getClass() != other.getClass()) {
+            return false;
+        }
+
+        final ApnsTarget that = (ApnsTarget) other;
+
+        return port == that.port && server.equals(that.server);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(server, port);
+    }
+
+    @Override
+    public String toString() {
+        return server + ":" + port;
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.ApnsPushNotification;
+import com.eatthepath.pushy.apns.DeliveryPriority;
+import com.eatthepath.pushy.apns.util.SimpleApnsPushNotification;
+import com.eatthepath.pushy.apns.util.TokenUtil;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.*;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * <p>Reads notifications to send in bulk from a CSV file. The first row of the file is a header that must name (in any
+ * order) "topic," "token," and "payload" columns, and may also name "collapseId" and "priority" columns; any other
+ * columns are ignored. Priorities may be given either as APNs priority codes ("10" or "5") or by name ("immediate" or
+ * "conserve-power"), and notifications without a priority are sent immediately. Fields that contain commas, quotes,
+ * or line breaks (as JSON payloads usually do) must be quoted, and quotes within quoted fields must be doubled, as in
+ * the files written by {@link NotificationResultExporter}.</p>
+ *
+ * <p>Rows are read one at a time, so files with very large numbers of notifications needn't fit in memory.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class BulkSendFileReader implements NotificationSource, Closeable {
+
+    private final Reader reader;
+
+    private final int topicColumn;
+    private final int tokenColumn;
+    private final int payloadColumn;
+    private final int collapseIdColumn;
+    private final int priorityColumn;
+
+    private final List<String> fields = new ArrayList<>();
+    private final StringBuilder fieldBuilder = new StringBuilder();
+
+    private long row = 0;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Constructs a new reader that reads notifications from the given source and reads the source's header row.
+     *
+     * @param reader the source from which to read notifications
+     *
+     * @throws IOException if the header could not be read or does not name all of the required columns
+     */
+    BulkSendFileReader(final Reader reader) throws IOException {
+        this.reader = new BufferedReader(reader, BUFFER_SIZE);
+
+        if (!readRow()) {
+            throw new IOException("Bulk send file is empty.");
+        }
+
+        int topicColumn = -1;
+        int tokenColumn = -1;
+        int payloadColumn = -1;
+        int collapseIdColumn = -1;
+        int priorityColumn = -1;
+
+        for (int i = 0; i < fields.size(); i++) {
+            switch (fields.get(i).trim().toLowerCase(Locale.ROOT)) {
+                case "topic": {
+                    topicColumn = i;
+                    break;
+                }
+
+                case "token": {
+                    tokenColumn = i;
+                    break;
+                }
+
+                case "payload": {
+                    payloadColumn = i;
+                    break;
+                }
+
+                case "collapseid": {
+                    collapseIdColumn = i;
+                    break;
+                }
+
+                case "priority": {
+                    priorityColumn = i;
+                    break;
+                }
+            }
+        }
+
+        if (topicColumn < 0 || tokenColumn < 0 || payloadColumn < 0) {
+            throw new IOException("Bulk send files must have \"topic\", \"token\", and \"payload\" columns.");
+        }
+
+        this.topicColumn = topicColumn;
+        this.tokenColumn = tokenColumn;
+        this.payloadColumn = payloadColumn;
+        this.collapseIdColumn = collapseIdColumn;
+        this.priorityColumn = priorityColumn;
+    }
+
+    /**
+     * Reads the next notification from the file, skipping any blank lines.
+     *
+     * @return the next notification in the file, or {@code null} if no notifications remain
+     *
+     * @throws IOException if the file could not be read, the next row is missing a topic, token, or payload, or the
+     * next row has an unrecognized priority
+     */
+    @Override
+    public ApnsPushNotification read() throws IOException {
+        while (readRow()) {
+            if (fields.size() == 1 && fields.get(0).isEmpty()) {
+                continue;
+            }
+
+            final String topic = getField(topicColumn);
+            final String token = TokenUtil.sanitizeTokenString(getField(tokenColumn));
+            final String payload = getField(payloadColumn);
+
+            if (StringUtils.isBlank(topic) || StringUtils.isBlank(token) || StringUtils.isBlank(payload)) {
+                throw new IOException("Row " + row + " is missing a topic, token, or payload.");
+            }
+
+            final String collapseId = collapseIdColumn >= 0 ? StringUtils.trimToNull(getField(collapseIdColumn)) : null;
+            final DeliveryPriority priority = getPriority();
+
+            return new SimpleApnsPushNotification(token, topic.trim(), payload,
+                    Instant.now().plus(SimpleApnsPushNotification.DEFAULT_EXPIRATION_PERIOD), priority, collapseId);
+        }
+
+        return null;
+    }
+
+    private DeliveryPriority getPriority() throws IOException {
+        final String priority = priorityColumn >= 0 ? StringUtils.trimToNull(getField(priorityColumn)) : null;
+
+        if (priority == null) {
+            return DeliveryPriority.IMMEDIATE;
+        }
+
+        try {
+            return parseDeliveryPriority(priority);
+        } catch (final IllegalArgumentException e) {
+            throw new IOException("Row " + row + " has an unrecognized priority: " + priority);
+        }
+    }
+
+    /**
+     * Parses a delivery priority given either as an APNs priority code ("10" or "5") or by name ("immediate" or
+     * "conserve-power").
+     *
+     * @param priority the priority to parse
+     *
+     * @return the parsed delivery priority
+     *
+     * @throws IllegalArgumentException if the given string does not name a delivery priority
+     */
+    static DeliveryPriority parseDeliveryPriority(final String priority) {
+        switch (priority.trim().toLowerCase(Locale.ROOT)) {
+            case "10":
+            case "immediate": {
+                return DeliveryPriority.IMMEDIATE;
+            }
+
+            case "5":
+            case "conserve-power":
+            case "conserve_power": {
+                return DeliveryPriority.CONSERVE_POWER;
+            }
+
+            default: {
+                throw new IllegalArgumentException("Unrecognized priority: " + priority);
+            }
+        }
+    }
+
+    private String getField(final int column) {
+        return column < fields.size() ? fields.get(column) : null;
+    }
+
+    /**
+     * Reads the next row of fields, which may span several lines if it contains quoted line breaks.
+     *
+     * @return {@code true} if a row was read or {@code false} if the end of the file was reached
+     */
+    private boolean readRow() throws IOException {
+        fields.clear();
+        fieldBuilder.setLength(0);
+
+        boolean quoted = false;
+        boolean readAnything = false;
+
+        for (int c = reader.read(); c != -1; c = reader.read()) {
+            readAnything = true;
+
+            if (quoted) {
+                if (c == '"') {
+                    reader.mark(1);
+
+                    if (reader.read() == '"') {
+                        fieldBuilder.append('"');
+                    } else {
+                        reader.reset();
+                        quoted = false;
+                    }
+                } else {
+                    fieldBuilder.append((char) c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(fieldBuilder.toString());
+                fieldBuilder.setLength(0);
+            } else if (c == '\n') {
+                break;
+            } else if (c != '\r') {
+                fieldBuilder.append((char) c);
+            }
+        }
+
+        if (quoted) {
+            throw new IOException("Row " + (row + 1) + " has an unterminated quoted field.");
+        }
+
+        if (!readAnything) {
+            return false;
+        }
+
+        fields.add(fieldBuilder.toString());
+        row += 1;
+
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,538 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.ApnsPushNotification;
+import com.eatthepath.pushy.apns.DeliveryPriority;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * <p>Sends every notification from a {@link NotificationSource} (usually a bulk send file), choosing credentials for each
+ * notification with a {@link TopicRouter}.</p>
+ *
+ * <p>Each route has its own queue and its own (adaptive) limit on the number of notifications in flight, and routes
+ * never wait for one another; a slow or unresponsive app only holds up its own notifications. The file is read as
+ * quickly as the routes can accept notifications. Each route may hold a fixed number of pending (queued or in-flight)
+ * notifications of its own; a route that falls behind may borrow from a shared overflow allowance, but never from
+ * other routes' allowances. Reading only pauses when a notification arrives for a route that has used up both its own
+ * allowance and the shared overflow, so memory use stays bounded no matter how many notifications the source holds,
+ * and a slow route can't take away the room other routes need to keep sending.</p>
+ *
+ * <p>Optionally, notifications may be coalesced while they wait to be sent: if a notification arrives while an
+ * earlier notification with the same device token, topic, and collapse ID is still waiting in its route's queue, the
+ * newer notification takes the earlier one's place in line, and the earlier one is never sent. Devices only ever show
+ * the most recent notification with a given collapse ID, so the earlier notification would have been redundant.</p>
+ *
+ * <p>Within each route, notifications with {@link DeliveryPriority#IMMEDIATE} priority and notifications with
+ * {@link DeliveryPriority#CONSERVE_POWER} priority wait in separate queues so that a large batch of power-conserving
+ * notifications never holds up immediate notifications. When both queues have notifications waiting, each gets its
+ * own share of the route's concurrency limit; power-conserving notifications that have waited too long are sent
+ * first regardless of their share.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class BulkSender {
+
+    /**
+     * The default ceiling on the number of notifications that may be in flight for a single route at once.
+     */
+    static final int DEFAULT_MAX_CONCURRENT_SENDS_PER_ROUTE = 256;
+
+    // Bounds the memory used by notifications that have been read, but not yet sent; each route gets its own
+    // allowance, and routes that use up their own allowance share a common overflow allowance
+    private static final int MAX_PENDING_NOTIFICATIONS_PER_ROUTE = 8_192;
+    private static final int MAX_OVERFLOW_NOTIFICATIONS = 65_536;
+
+    private static final int PROGRESS_INTERVAL = 256;
+
+    // The fraction of a route's concurrency limit reserved for power-conserving notifications when both kinds are
+    // waiting; immediate notifications get the rest
+    private static final double CONSERVE_POWER_SHARE = 0.25;
+
+    // Power-conserving notifications that have waited this long are sent ahead of immediate notifications
+    private static final long STARVATION_THRESHOLD_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    // Rejection reasons that indicate the server is overloaded (or is about to go away), and that we should back off
+    private static final Set<String> BACKPRESSURE_REJECTION_REASONS = Set.of(
+            "TooManyRequests", "TooManyProviderTokenUpdates", "ServiceUnavailable", "Shutdown", "InternalServerError");
+
+    private BulkSender() {
+    }
+
+    /**
+     * Identifies notifications that replace one another on the device.
+     */
+    private static class CoalescingKey {
+
+        private final String token;
+        private final String topic;
+        private final String collapseId;
+
+        private CoalescingKey(final ApnsPushNotification pushNotification) {
+            this.token = pushNotification.getToken();
+            this.topic = pushNotification.getTopic();
+            this.collapseId = pushNotification.getCollapseId();
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (this == other) {
+                return true;
+            }
+
+            if (other == null || getClass() != other.getClass()) {
+                return false;
+            }
+
+            final CoalescingKey that = (CoalescingKey) other;
+
+            return token.equals(that.token) && topic.equals(that.topic) && collapseId.equals(that.collapseId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(token, topic, collapseId);
+        }
+    }
+
+    /**
+     * A place in a lane's queue. A queued notification may be replaced by a newer one with the same coalescing key
+     * until it's sent.
+     */
+    private static class QueuedNotification {
+
+        private ApnsPushNotification pushNotification;
+        private final CoalescingKey coalescingKey;
+        private final long enqueuedNanos;
+
+        private QueuedNotification(final ApnsPushNotification pushNotification, final CoalescingKey coalescingKey) {
+            this.pushNotification = pushNotification;
+            this.coalescingKey = coalescingKey;
+            this.enqueuedNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * The outcome of offering a notification to a lane.
+     */
+    private enum SubmitResult {
+        QUEUED,
+        COALESCED,
+        FULL
+    }
+
+    /**
+     * The notifications of a single delivery priority waiting in a lane, and the number of them that are in flight.
+     */
+    private static class DeliveryQueue {
+
+        private final Deque<QueuedNotification> queue = new ArrayDeque<>();
+        private final Map<CoalescingKey, QueuedNotification> queuedNotificationsByKey = new HashMap<>();
+        private final DeliveryLaneStatistics statistics;
+
+        private int inFlight = 0;
+
+        private DeliveryQueue(final DeliveryLaneStatistics statistics) {
+            this.statistics = statistics;
+        }
+    }
+
+    /**
+     * A queue of notifications for a single route that sends notifications as in-flight permits become available.
+     * Immediate and power-conserving notifications wait in separate queues, and each gets its own share of the route's
+     * concurrency limit.
+     */
+    private static class Lane {
+
+        private final TopicRouter.Route route;
+        private final BiFunction<ApnsPushNotification, TopicRouter.Route, CompletableFuture<NotificationResult>> sendFunction;
+        private final int maxPendingNotifications;
+        private final Semaphore overflowPermits;
+        private final Semaphore finishedPermits;
+        private final boolean coalesce;
+
+        private final DeliveryQueue immediateQueue;
+        private final DeliveryQueue conservePowerQueue;
+
+        // The number of pending notifications counted against this lane's own allowance and against the shared
+        // overflow allowance, respectively; guarded by this lane's lock
+        private int pendingNotifications = 0;
+        private int overflowNotifications = 0;
+
+        // Keeps sends that complete immediately from recursing through drain() once per queued notification
+        private final AtomicInteger drainRequests = new AtomicInteger();
+
+        private Lane(final TopicRouter.Route route,
+                     final BiFunction<ApnsPushNotification, TopicRouter.Route, CompletableFuture<NotificationResult>> sendFunction,
+                     final int maxPendingNotifications,
+                     final Semaphore overflowPermits,
+                     final Semaphore finishedPermits,
+                     final boolean coalesce,
+                     final Map<DeliveryPriority, DeliveryLaneStatistics> statistics) {
+
+            this.route = route;
+            this.sendFunction = sendFunction;
+            this.maxPendingNotifications = maxPendingNotifications;
+            this.overflowPermits = overflowPermits;
+            this.finishedPermits = finishedPermits;
+            this.coalesce = coalesce;
+
+            this.immediateQueue = new DeliveryQueue(statistics.get(DeliveryPriority.IMMEDIATE));
+            this.conservePowerQueue = new DeliveryQueue(statistics.get(DeliveryPriority.CONSERVE_POWER));
+        }
+
+        /**
+         * Adds a notification to this lane's queue if there's room for it.
+         *
+         * @param pushNotification the notification to send
+         * @param overflow if {@code true}, the caller has already taken a permit from the shared overflow allowance
+         * and the notification should be counted against that permit instead of this lane's own allowance
+         *
+         * @return {@link SubmitResult#COALESCED} if the notification replaced an earlier notification that was still
+         * waiting in the queue (in which case the queue did not grow), {@link SubmitResult#QUEUED} if it was added to
+         * the end of the queue, or {@link SubmitResult#FULL} if this lane's own allowance is used up and the
+         * notification was not added to the queue
+         */
+        SubmitResult submit(final ApnsPushNotification pushNotification, final boolean overflow) {
+            final DeliveryQueue deliveryQueue = pushNotification.getPriority() == DeliveryPriority.CONSERVE_POWER ?
+                    conservePowerQueue : immediateQueue;
+
+            synchronized (this) {
+                final CoalescingKey coalescingKey =
+                        coalesce && pushNotification.getCollapseId() != null ? new CoalescingKey(pushNotification) : null;
+
+                if (coalescingKey != null) {
+                    final QueuedNotification queuedNotification = deliveryQueue.queuedNotificationsByKey.get(coalescingKey);
+
+                    if (queuedNotification != null) {
+                        queuedNotification.pushNotification = pushNotification;
+                        return SubmitResult.COALESCED;
+                    }
+                }
+
+                if (overflow) {
+                    overflowNotifications += 1;
+                } else if (pendingNotifications < maxPendingNotifications) {
+                    pendingNotifications += 1;
+                } else {
+                    return SubmitResult.FULL;
+                }
+
+                final QueuedNotification queuedNotification = new QueuedNotification(pushNotification, coalescingKey);
+                deliveryQueue.queue.addLast(queuedNotification);
+
+                if (coalescingKey != null) {
+                    deliveryQueue.queuedNotificationsByKey.put(coalescingKey, queuedNotification);
+                }
+            }
+
+            deliveryQueue.statistics.onQueued();
+
+            drain();
+            return SubmitResult.QUEUED;
+        }
+
+        /**
+         * Returns the allowances held by notifications that have finished (or were discarded). Overflow permits are
+         * returned first so that a route that has caught up gives the shared overflow back to other routes.
+         *
+         * @param finished the number of notifications that finished
+         */
+        private void onFinished(final int finished) {
+            final int returnedOverflowPermits;
+
+            synchronized (this) {
+                returnedOverflowPermits = Math.min(finished, overflowNotifications);
+
+                overflowNotifications -= returnedOverflowPermits;
+                pendingNotifications -= finished - returnedOverflowPermits;
+            }
+
+            overflowPermits.release(returnedOverflowPermits);
+            finishedPermits.release(finished);
+        }
+
+        /**
+         * Discards every notification in this lane that hasn't been sent yet.
+         */
+        void clear() {
+            final int discardedImmediate;
+            final int discardedConservePower;
+
+            synchronized (this) {
+                discardedImmediate = immediateQueue.queue.size();
+                discardedConservePower = conservePowerQueue.queue.size();
+
+                for (final DeliveryQueue deliveryQueue : List.of(immediateQueue, conservePowerQueue)) {
+                    deliveryQueue.queue.clear();
+                    deliveryQueue.queuedNotificationsByKey.clear();
+                }
+            }
+
+            immediateQueue.statistics.onDiscarded(discardedImmediate);
+            conservePowerQueue.statistics.onDiscarded(discardedConservePower);
+
+            onFinished(discardedImmediate + discardedConservePower);
+        }
+
+        /**
+         * Chooses the queue from which to send the next notification. Must be called while holding this lane's lock.
+         *
+         * @return the queue from which to send the next notification, or {@code null} if both queues are empty
+         */
+        private DeliveryQueue chooseQueue() {
+            if (conservePowerQueue.queue.isEmpty()) {
+                return immediateQueue.queue.isEmpty() ? null : immediateQueue;
+            } else if (immediateQueue.queue.isEmpty()) {
+                return conservePowerQueue;
+            }
+
+            // A steady stream of immediate notifications could otherwise keep power-conserving notifications waiting
+            // forever when the concurrency limit is very low
+            if (System.nanoTime() - conservePowerQueue.queue.peekFirst().enqueuedNanos >= STARVATION_THRESHOLD_NANOS) {
+                return conservePowerQueue;
+            }
+
+            final int limit = route.getConcurrencyLimiter().getLimit();
+            final int conservePowerShare = Math.max(1, (int) (limit * CONSERVE_POWER_SHARE));
+            final int immediateShare = Math.max(1, limit - conservePowerShare);
+
+            if (immediateQueue.inFlight < immediateShare) {
+                return immediateQueue;
+            } else if (conservePowerQueue.inFlight < conservePowerShare) {
+                return conservePowerQueue;
+            }
+
+            return immediateQueue;
+        }
+
+        private void drain() {
+            if (drainRequests.getAndIncrement() != 0) {
+                return;
+            }
+
+            int missedRequests = 1;
+
+            do {
+                while (true) {
+                    final DeliveryQueue deliveryQueue;
+                    final QueuedNotification queuedNotification;
+
+                    synchronized (this) {
+                        deliveryQueue = chooseQueue();
+
+                        if (deliveryQueue == null || !route.getConcurrencyLimiter().tryAcquire()) {
+                            break;
+                        }
+
+                        queuedNotification = deliveryQueue.queue.pollFirst();
+
+                        if (queuedNotification.coalescingKey != null) {
+                            deliveryQueue.queuedNotificationsByKey.remove(queuedNotification.coalescingKey);
+                        }
+
+                        deliveryQueue.inFlight += 1;
+                    }
+
+                    final long start = System.nanoTime();
+                    deliveryQueue.statistics.onDispatched(start - queuedNotification.enqueuedNanos);
+
+                    sendFunction.apply(queuedNotification.pushNotification, route).whenComplete((result, cause) -> {
+                        final long end = System.nanoTime();
+
+                        if (cause instanceof CancellationException) {
+                            // Cancelled sends say nothing about the network or server
+                            route.getConcurrencyLimiter().onIgnored();
+                        } else if (cause != null || isBackpressure(result)) {
+                            route.getConcurrencyLimiter().onDropped(start, end);
+                        } else if (result == null) {
+                            // The notification didn't need to be sent after all
+                            route.getConcurrencyLimiter().onIgnored();
+                        } else {
+                            route.getConcurrencyLimiter().onSuccess(start, end);
+                        }
+
+                        synchronized (Lane.this) {
+                            deliveryQueue.inFlight -= 1;
+                        }
+
+                        deliveryQueue.statistics.onCompleted(end - start);
+
+                        onFinished(1);
+                        drain();
+                    });
+                }
+
+                missedRequests = drainRequests.addAndGet(-missedRequests);
+            } while (missedRequests != 0);
+        }
+    }
+
+    /**
+     * Sends every notification from the given source, blocking until every notification has been sent and every send
+     * has completed.
+     *
+     * @param source the source from which to read notifications
+     * @param router the router that chooses credentials for each notification
+     * @param sendFunction a function that sends a single notification via the given route and returns a future that
+     * yields the result of the send, or {@code null} if the notification was not actually sent
+     * @param coalesce if {@code true}, notifications that are still waiting to be sent are replaced by newer
+     * notifications with the same device token, topic, and collapse ID
+     * @param unroutedNotificationConsumer a consumer for notifications whose topics have no route; called on the calling
+     * thread
+     * @param coalescedNotificationConsumer a consumer for notifications that replaced an earlier notification that
+     * hadn't been sent yet; called on the calling thread
+     * @param statistics the statistics to update as notifications of each delivery priority are queued and sent; must
+     * have an entry for every delivery priority
+     * @param progressConsumer a consumer to notify periodically with the number of notifications read so far
+     *
+     * @return the number of notifications sent, not counting notifications that were coalesced
+     *
+     * @throws IOException if the source could not be read, in which case notifications that were waiting to be sent
+     * are discarded
+     * @throws InterruptedIOException if the calling thread was interrupted before every notification was sent, in which
+     * case notifications that were waiting to be sent are discarded
+     */
+    static long send(final NotificationSource source, final TopicRouter router,
+                     final BiFunction<ApnsPushNotification, TopicRouter.Route, CompletableFuture<NotificationResult>> sendFunction,
+                     final boolean coalesce,
+                     final Consumer<ApnsPushNotification> unroutedNotificationConsumer,
+                     final Consumer<ApnsPushNotification> coalescedNotificationConsumer,
+                     final Map<DeliveryPriority, DeliveryLaneStatistics> statistics,
+                     final LongConsumer progressConsumer) throws IOException {
+
+        return send(source, router, sendFunction, coalesce, unroutedNotificationConsumer, coalescedNotificationConsumer,
+                statistics, progressConsumer, MAX_PENDING_NOTIFICATIONS_PER_ROUTE, MAX_OVERFLOW_NOTIFICATIONS);
+    }
+
+    /**
+     * Sends every notification from the given source with the given bounds on pending notifications, blocking until
+     * every notification has been sent and every send has completed. See
+     * {@link #send(NotificationSource, TopicRouter, BiFunction, boolean, Consumer, Consumer, Map, LongConsumer)} for
+     * details about the other arguments.
+     *
+     * @param maxPendingNotificationsPerRoute the number of pending notifications each route may hold before it has to
+     * borrow from the shared overflow allowance
+     * @param maxOverflowNotifications the number of pending notifications that routes may borrow in total beyond their
+     * own allowances
+     *
+     * @return the number of notifications sent, not counting notifications that were coalesced
+     *
+     * @throws IOException if the source could not be read, in which case notifications that were waiting to be sent
+     * are discarded
+     * @throws InterruptedIOException if the calling thread was interrupted before every notification was sent, in which
+     * case notifications that were waiting to be sent are discarded
+     */
+    static long send(final NotificationSource source, final TopicRouter router,
+                     final BiFunction<ApnsPushNotification, TopicRouter.Route, CompletableFuture<NotificationResult>> sendFunction,
+                     final boolean coalesce,
+                     final Consumer<ApnsPushNotification> unroutedNotificationConsumer,
+                     final Consumer<ApnsPushNotification> coalescedNotificationConsumer,
+                     final Map<DeliveryPriority, DeliveryLaneStatistics> statistics,
+                     final LongConsumer progressConsumer,
+                     final int maxPendingNotificationsPerRoute,
+                     final int maxOverflowNotifications) throws IOException {
+
+        final Semaphore overflowPermits = new Semaphore(maxOverflowNotifications);
+        final Semaphore finishedPermits = new Semaphore(0);
+        final Map<TopicRouter.Route, Lane> lanes = new IdentityHashMap<>();
+
+        long read = 0;
+        long sent = 0;
+
+        try {
+            for (ApnsPushNotification pushNotification = source.read(); pushNotification != null; pushNotification = source.read()) {
+                final Optional<TopicRouter.Route> route = router.getRoute(pushNotification.getTopic());
+
+                if (route.isPresent()) {
+                    final Lane lane = lanes.computeIfAbsent(route.get(), r -> new Lane(r, sendFunction,
+                            maxPendingNotificationsPerRoute, overflowPermits, finishedPermits, coalesce, statistics));
+
+                    SubmitResult submitResult = lane.submit(pushNotification, false);
+
+                    if (submitResult == SubmitResult.FULL) {
+                        // Only a notification for a route that has fallen behind can make us wait here
+                        overflowPermits.acquire();
+                        submitResult = lane.submit(pushNotification, true);
+
+                        if (submitResult == SubmitResult.COALESCED) {
+                            overflowPermits.release();
+                        }
+                    }
+
+                    if (submitResult == SubmitResult.COALESCED) {
+                        // The notification took an existing place in line, so it doesn't need a place of its own
+                        coalescedNotificationConsumer.accept(pushNotification);
+                    } else {
+                        sent += 1;
+                    }
+                } else {
+                    unroutedNotificationConsumer.accept(pushNotification);
+                }
+
+                if (++read % PROGRESS_INTERVAL == 0) {
+                    progressConsumer.accept(read);
+                }
+            }
+
+            // Wait for every lane to finish
+            for (long unfinished = sent; unfinished > 0; ) {
+                final int permits = (int) Math.min(unfinished, Integer.MAX_VALUE);
+
+                finishedPermits.acquire(permits);
+                unfinished -= permits;
+            }
+        } catch (final InterruptedException e) {
+            // Notifications already in flight will finish on their own, but nothing else should be sent
+            lanes.values().forEach(Lane::clear);
+
+            throw new InterruptedIOException("Bulk send interrupted after " + read + " notifications.");
+        } catch (final IOException e) {
+            // Likewise, a source that fails (or gives up because nobody is listening for results) stops the send
+            lanes.values().forEach(Lane::clear);
+
+            throw e;
+        }
+
+        progressConsumer.accept(read);
+
+        return sent;
+    }
+
+    private static boolean isBackpressure(final NotificationResult result) {
+        return result != null &&
+                result.getStatus() == NotificationResult.Status.REJECTED &&
+                result.getRejectionReason().map(BACKPRESSURE_REJECTION_REASONS::contains).orElse(false);
+    }
+}
@@ -150,7 +150,7 @@ class CertificateUtil {
      *
      * @throws IOException if the given certificate could not be parsed for any reason
      */
-    private static Set<String> extractApnsTopicsFromCertificate(final Certificate certificate) throws IOException {
+    static Set<String> extractApnsTopicsFromCertificate(final Certificate certificate) throws IOException {
         final Set<String> topics = new HashSet<>();
 
         if (certificate instanceof X509Certificate) {
@@ -31,6 +31,8 @@ import com.eatthepath.pushy.apns.DeliveryPriority;
 import com.eatthepath.pushy.apns.auth.ApnsSigningKey;
 import com.eatthepath.pushy.apns.util.SimpleApnsPushNotification;
 import com.eatthepath.pushy.apns.util.TokenUtil;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
 import javafx.beans.binding.BooleanBinding;
 import javafx.beans.binding.ObjectBinding;
 import javafx.beans.binding.StringBinding;
@@ -38,18 +40,27 @@ import javafx.beans.property.*;
 import javafx.collections.FXCollections;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+import javafx.concurrent.Task;
 import javafx.css.PseudoClass;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
+import javafx.geometry.Side;
 import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
+import javafx.scene.input.KeyCode;
+import javafx.scene.layout.VBox;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.util.Pair;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
@@ -57,10 +68,15 @@ import java.text.MessageFormat;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.prefs.Preferences;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 /**
  * A controller for the area of the area of the main window where users enter connection settings, APNs credentials,
@@ -74,7 +90,11 @@ public class ComposeNotificationController {
 
     @FXML ComboBox<String> apnsServerComboBox;
     @FXML ComboBox<Integer> apnsPortComboBox;
+    @FXML MenuButton additionalTargetsMenuButton;
+    @FXML ComboBox<CredentialProfile> credentialProfileComboBox;
     @FXML TextField apnsCredentialFileTextField;
+    @FXML MenuItem deleteCredentialProfileMenuItem;
+    @FXML MenuItem importCredentialDirectoryMenuItem;
 
     @FXML Label keyIdLabel;
     @FXML ComboBox<String> keyIdComboBox;
@@ -87,17 +107,57 @@ public class ComposeNotificationController {
     @FXML ComboBox<DeliveryPriority> deliveryPriorityComboBox;
     @FXML MenuButton recentPayloadsMenuButton;
     @FXML TextArea payloadTextArea;
+    @FXML Label payloadSizeLabel;
+    @FXML Hyperlink payloadErrorHyperlink;
 
     private final ReadOnlyStringWrapper apnsServerWrapper = new ReadOnlyStringWrapper();
     private final ReadOnlyIntegerWrapper apnsPortWrapper = new ReadOnlyIntegerWrapper();
+    private final ReadOnlyStringWrapper topicWrapper = new ReadOnlyStringWrapper();
+
+    private final Set<ApnsTarget> additionalTargets = new LinkedHashSet<>();
+    private final ReadOnlyListWrapper<ApnsTarget> apnsTargetsWrapper = new ReadOnlyListWrapper<>(FXCollections.observableArrayList());
 
     private final ObjectProperty<Pair<File, String>> credentialsFileAndPasswordProperty = new SimpleObjectProperty<>();
     private final ReadOnlyObjectWrapper<ApnsCredentials> apnsCredentialsWrapper = new ReadOnlyObjectWrapper<>();
+    private ObjectBinding<ApnsCredentials> apnsCredentialsBinding;
+
+    private final ApnsCredentialsCache apnsCredentialsCache = new ApnsCredentialsCache();
+
+    // Switching profiles changes several controls at once; credentials are meaningless until all of them have changed
+    private boolean applyingCredentialProfile = false;
+    private boolean credentialProfilesLoaded = false;
+    private boolean replacingCredentialProfile = false;
 
     private final ReadOnlyObjectWrapper<ApnsPushNotification> pushNotificationWrapper = new ReadOnlyObjectWrapper<>();
 
     private final ListProperty<String> recentTopicsProperty = new SimpleListProperty<>();
     private final ObservableList<String> recentPayloads = FXCollections.observableArrayList();
+    private final ObservableList<RecentPayload> recentPayloadEntries = FXCollections.observableArrayList();
+    private final FilteredList<RecentPayload> filteredRecentPayloadEntries = new FilteredList<>(recentPayloadEntries);
+
+    private TextField recentPayloadsSearchTextField;
+
+    // The token history can be large, so it isn't loaded until somebody actually starts working with tokens; anything
+    // that needs the history before then waits in line until loading finishes
+    private DeviceTokenHistory deviceTokenHistory;
+    private boolean deviceTokenHistoryLoadStarted = false;
+    private final List<Consumer<DeviceTokenHistory>> pendingDeviceTokenHistoryActions = new ArrayList<>();
+    private final AtomicBoolean deviceTokenHistorySaveScheduled = new AtomicBoolean(false);
+
+    // Set if the history on disk couldn't be read, in which case it shouldn't be replaced
+    private boolean deviceTokenHistorySaveDisabled = false;
+
+    private final ContextMenu deviceTokenSuggestionsMenu = new ContextMenu();
+    private boolean applyingDeviceTokenSuggestion = false;
+
+    private final ReadOnlyObjectWrapper<PayloadValidator.Result> payloadValidationResultWrapper = new ReadOnlyObjectWrapper<>();
+
+    private final PauseTransition payloadValidationDelay = new PauseTransition(PAYLOAD_VALIDATION_DELAY);
+    private final ExecutorService backgroundExecutorService = Executors.newSingleThreadExecutor();
+
+    // Imports can take minutes, and get their own thread so they never hold up validation or loading recent values
+    private final ExecutorService credentialImportExecutorService = Executors.newSingleThreadExecutor();
+    private Task<PayloadValidator.Result> payloadValidationTask;
 
     private final BooleanProperty requiredFieldGroupHighlightedProperty = new SimpleBooleanProperty();
 
@@ -112,10 +172,19 @@ public class ComposeNotificationController {
     private static final String RECENT_TOKENS_KEY = "recentTokens";
     private static final String RECENT_COLLAPSE_IDS_KEY = "recentCollapseIds";
     private static final String RECENT_PAYLOADS_KEY = "recentPayloads";
+    private static final String CREDENTIAL_INDEX_FILENAME = "credential-index.json";
+
+    private static final String DEVICE_TOKEN_HISTORY_FILENAME = "device-token-history.bin";
 
     private static final int MAX_COMBO_BOX_ITEMS = 10;
+    private static final int MAX_DEVICE_TOKEN_SUGGESTIONS = 10;
+
+    private static final double RECENT_PAYLOADS_PICKER_WIDTH = 480;
+    private static final double RECENT_PAYLOADS_PICKER_HEIGHT = 240;
 
-    private static final Pattern APNS_SIGNING_KEY_WITH_ID_PATTERN =
+    private static final javafx.util.Duration PAYLOAD_VALIDATION_DELAY = javafx.util.Duration.millis(200);
+
+    static final Pattern APNS_SIGNING_KEY_WITH_ID_PATTERN =
             Pattern.compile("^APNsAuthKey_([A-Z0-9]{10}).p8$", Pattern.CASE_INSENSITIVE);
 
     private static final PseudoClass BLANK_PSEUDO_CLASS = PseudoClass.getPseudoClass("blank");
@@ -141,6 +210,25 @@ public class ComposeNotificationController {
 
         apnsPortComboBox.setValue(preferences.getInt(MOST_RECENT_PORT_KEY, ApnsClientBuilder.DEFAULT_APNS_PORT));
 
+        for (final String server : apnsServerComboBox.getItems()) {
+            for (final int port : apnsPortComboBox.getItems()) {
+                final ApnsTarget target = new ApnsTarget(server, port);
+                final CheckMenuItem targetMenuItem = new CheckMenuItem(target.toString());
+
+                targetMenuItem.selectedProperty().addListener((observable, oldValue, newValue) -> {
+                    if (newValue) {
+                        additionalTargets.add(target);
+                    } else {
+                        additionalTargets.remove(target);
+                    }
+
+                    updateApnsTargets();
+                });
+
+                additionalTargetsMenuButton.getItems().add(targetMenuItem);
+            }
+        }
+
         apnsCredentialFileTextField.textProperty().bind(new StringBinding() {
             {
                 super.bind(credentialsFileAndPasswordProperty);
@@ -167,9 +255,8 @@ public class ComposeNotificationController {
             deliveryPriorityComboBox.setValue(DeliveryPriority.IMMEDIATE);
         }
 
-        recentTopicsProperty.set(FXCollections.observableArrayList(loadPreferencesList(RECENT_TOPICS_KEY)));
-        recentTopicsProperty.addListener((ListChangeListener<String>) change ->
-                savePreferencesList(RECENT_TOPICS_KEY, change.getList()));
+        // Recently-used values get filled in later by loadRecentValues
+        recentTopicsProperty.set(FXCollections.observableArrayList());
 
         topicComboBox.itemsProperty().bind(recentTopicsProperty);
 
@@ -178,7 +265,7 @@ public class ComposeNotificationController {
             if (newValue != null && newValue.getValue() != null) {
 
                 try {
-                    final List<String> topics = new ArrayList<>(CertificateUtil.extractApnsTopicsFromCertificate(newValue.getKey(), newValue.getValue()));
+                    final List<String> topics = new ArrayList<>(apnsCredentialsCache.getCertificateTopics(newValue.getKey(), newValue.getValue()));
                     topics.sort(Comparator.naturalOrder());
 
                     // When working with certificates, we'll always have a fixed list of topics from the certificate and
@@ -222,9 +309,7 @@ public class ComposeNotificationController {
             }
         });
 
-        keyIdComboBox.setItems(FXCollections.observableArrayList(loadPreferencesList(RECENT_KEY_IDS_KEY)));
-        keyIdComboBox.getItems().addListener((ListChangeListener<String>) change ->
-                savePreferencesList(RECENT_KEY_IDS_KEY, change.getList()));
+        keyIdComboBox.setItems(FXCollections.observableArrayList());
 
         teamIdLabel.disableProperty().bind(teamIdComboBox.disabledProperty());
 
@@ -235,54 +320,48 @@ public class ComposeNotificationController {
             }
         });
 
-        teamIdComboBox.setItems(FXCollections.observableArrayList(loadPreferencesList(RECENT_TEAM_IDS_KEY)));
-        teamIdComboBox.getItems().addListener((ListChangeListener<String>) change ->
-                savePreferencesList(RECENT_TEAM_IDS_KEY, change.getList()));
-
-        deviceTokenComboBox.setItems(FXCollections.observableArrayList(loadPreferencesList(RECENT_TOKENS_KEY)));
-        deviceTokenComboBox.getItems().addListener((ListChangeListener<String>) change ->
-                savePreferencesList(RECENT_TOKENS_KEY, change.getList()));
-
-        collapseIdComboBox.setItems(FXCollections.observableArrayList(loadPreferencesList(RECENT_COLLAPSE_IDS_KEY)));
-        collapseIdComboBox.getItems().addListener((ListChangeListener<String>) change ->
-                savePreferencesList(RECENT_COLLAPSE_IDS_KEY, change.getList()));
+        teamIdComboBox.setItems(FXCollections.observableArrayList());
+        deviceTokenComboBox.setItems(FXCollections.observableArrayList());
+        collapseIdComboBox.setItems(FXCollections.observableArrayList());
 
         recentPayloads.addListener((ListChangeListener<String>) change -> {
-            recentPayloadsMenuButton.getItems().clear();
+            RecentPayload.applyChange(change, recentPayloadEntries);
+            recentPayloadsMenuButton.setDisable(change.getList().isEmpty());
+        });
 
-            recentPayloadsMenuButton.getItems().addAll(change.getList().stream().map(payload -> {
-                final String smooshedPayload = payload.replaceAll("\\s+", " ");
-                final MenuItem menuItem = new MenuItem(smooshedPayload);
+        // The picker itself isn't built until somebody actually wants to pick a recent payload
+        recentPayloadsMenuButton.setOnShowing(event -> showRecentPayloadsPicker());
 
-                menuItem.setOnAction(event -> payloadTextArea.setText(payload));
+        deviceTokenComboBox.focusedProperty().addListener((observable, wasFocused, isFocused) -> {
+            if (isFocused) {
+                loadDeviceTokenHistory();
+            } else {
+                deviceTokenSuggestionsMenu.hide();
+            }
+        });
 
-                return menuItem;
-            }).collect(Collectors.toList()));
+        deviceTokenComboBox.getEditor().textProperty().addListener((observable, oldValue, newValue) ->
+                updateDeviceTokenSuggestions(newValue));
 
-            recentPayloadsMenuButton.setDisable(change.getList().isEmpty());
-        });
+        deviceTokenComboBox.getEditor().setContextMenu(buildDeviceTokenContextMenu());
 
-        recentPayloads.addAll(loadPreferencesList(RECENT_PAYLOADS_KEY));
+        loadRecentValues();
 
-        recentPayloads.addListener((ListChangeListener<String>) change -> {
-            // Saving recent payloads in user preferences is a little different from saving other values, because
-            // payloads have a good chance of bumping up against the size limit of a user preferences value (8kB at the
-            // time of writing). The strategy here is to try to save as many recent payloads as we can, but back off
-            // one recent payload at a time if the whole list doesn't fit.
-            int end = recentPayloads.size();
+        // Validating a payload can take a noticeable amount of time if somebody pastes in something huge, so we wait for
+        // typing to pause, then validate the payload in the background; any validation still in progress when the
+        // payload changes again is abandoned.
+        payloadValidationDelay.setOnFinished(event -> startPayloadValidation());
 
-            while (end > 0) {
-                try {
-                    preferences.put(RECENT_PAYLOADS_KEY, JsonSerializer.writeJsonTextAsString(recentPayloads.subList(0, end)));
-                    break;
-                } catch (final IllegalArgumentException e) {
-                    // The list of recent payloads won't fit in a user preferences slot; shave one recent payload from
-                    // the end of the list and try again.
-                    end -= 1;
-                }
-            }
+        payloadTextArea.textProperty().addListener((observable, oldValue, newValue) -> {
+            cancelPayloadValidation();
+            payloadValidationResultWrapper.set(null);
+
+            payloadValidationDelay.playFromStart();
         });
 
+        payloadValidationResultWrapper.addListener((observable, oldValue, newValue) -> updatePayloadValidationControls(newValue));
+        updatePayloadValidationControls(null);
+
         addEmptyPseudoClassListener(keyIdComboBox, teamIdComboBox, topicComboBox, deviceTokenComboBox);
         addEmptyPseudoClassListener(apnsCredentialFileTextField, payloadTextArea);
 
@@ -299,8 +378,13 @@ public class ComposeNotificationController {
 
         apnsServerWrapper.bind(apnsServerComboBox.valueProperty());
         apnsPortWrapper.bind(apnsPortComboBox.valueProperty());
+        topicWrapper.bind(topicComboBox.valueProperty());
 
-        apnsCredentialsWrapper.bind(new ObjectBinding<>() {
+        apnsServerWrapper.addListener(observable -> updateApnsTargets());
+        apnsPortWrapper.addListener(observable -> updateApnsTargets());
+        updateApnsTargets();
+
+        apnsCredentialsBinding = new ObjectBinding<>() {
             {
                 super.bind(credentialsFileAndPasswordProperty,
                         keyIdComboBox.valueProperty(),
@@ -309,6 +393,10 @@ public class ComposeNotificationController {
 
             @Override
             protected ApnsCredentials computeValue() {
+                if (applyingCredentialProfile) {
+                    return null;
+                }
+
                 final ApnsCredentials credentials;
 
                 final Pair<File, String> credentialsFileAndPassword = credentialsFileAndPasswordProperty.get();
@@ -316,7 +404,7 @@ public class ComposeNotificationController {
                 if (credentialsFileAndPassword != null) {
                     if (credentialsFileAndPassword.getValue() != null) {
                         try {
-                            credentials = new ApnsCredentials(credentialsFileAndPassword.getKey(), credentialsFileAndPassword.getValue());
+                            credentials = apnsCredentialsCache.getCertificateCredentials(credentialsFileAndPassword.getKey(), credentialsFileAndPassword.getValue());
                         } catch (final IOException | KeyStoreException e) {
                             // This should never happen because we checked the certificate when it was first selected
                             throw new RuntimeException(e);
@@ -329,7 +417,8 @@ public class ComposeNotificationController {
                         final boolean hasTeamId = StringUtils.isNotBlank(teamId);
 
                         try {
-                            credentials = (hasKeyId && hasTeamId) ? new ApnsCredentials(credentialsFileAndPassword.getKey(), keyId, teamId) : null;
+                            credentials = (hasKeyId && hasTeamId) ?
+                                    apnsCredentialsCache.getSigningKeyCredentials(credentialsFileAndPassword.getKey(), keyId, teamId) : null;
                         } catch (final NoSuchAlgorithmException | InvalidKeyException | IOException e) {
                             // This should never happen because we checked the signing key when it was first selected
                             throw new RuntimeException(e);
@@ -341,8 +430,19 @@ public class ComposeNotificationController {
 
                 return credentials;
             }
+        };
+
+        apnsCredentialsWrapper.bind(apnsCredentialsBinding);
+
+        // Saved profiles get filled in later by loadRecentValues
+        credentialProfileComboBox.valueProperty().addListener((observable, oldValue, newValue) -> {
+            if (newValue != null && !replacingCredentialProfile) {
+                applyCredentialProfile(newValue);
+            }
         });
 
+        deleteCredentialProfileMenuItem.disableProperty().bind(credentialProfileComboBox.valueProperty().isNull());
+
         pushNotificationWrapper.bind(new ObjectBinding<>() {
             {
                 super.bind(deviceTokenComboBox.valueProperty(),
@@ -376,6 +476,454 @@ public class ComposeNotificationController {
         });
     }
 
+    /**
+     * Loads lists of recently-used values from user preferences in the background. Reading and parsing those lists
+     * takes longer as history grows, so the window appears with empty lists and the lists get filled in (along with
+     * anything used in the meantime) once they've been loaded.
+     */
+    private void loadRecentValues() {
+        final Task<Map<String, List<String>>> loadRecentValuesTask = new Task<>() {
+            @Override
+            protected Map<String, List<String>> call() {
+                final Map<String, List<String>> recentValues = new HashMap<>();
+
+                for (final String key : new String[] { RECENT_KEY_IDS_KEY, RECENT_TEAM_IDS_KEY, RECENT_TOPICS_KEY,
+                        RECENT_TOKENS_KEY, RECENT_COLLAPSE_IDS_KEY, RECENT_PAYLOADS_KEY }) {
+
+                    recentValues.put(key, loadPreferencesList(key));
+                }
+
+                return recentValues;
+            }
+        };
+
+        loadRecentValuesTask.setOnSucceeded(event -> {
+            final Map<String, List<String>> recentValues = loadRecentValuesTask.getValue();
+
+            mergeRecentValues(keyIdComboBox.getItems(), recentValues.get(RECENT_KEY_IDS_KEY), RECENT_KEY_IDS_KEY);
+            mergeRecentValues(teamIdComboBox.getItems(), recentValues.get(RECENT_TEAM_IDS_KEY), RECENT_TEAM_IDS_KEY);
+            mergeRecentValues(recentTopicsProperty.get(), recentValues.get(RECENT_TOPICS_KEY), RECENT_TOPICS_KEY);
+            mergeRecentValues(deviceTokenComboBox.getItems(), recentValues.get(RECENT_TOKENS_KEY), RECENT_TOKENS_KEY);
+            mergeRecentValues(collapseIdComboBox.getItems(), recentValues.get(RECENT_COLLAPSE_IDS_KEY), RECENT_COLLAPSE_IDS_KEY);
+
+            {
+                final boolean changedBeforeLoading = !recentPayloads.isEmpty();
+
+                final List<String> storedPayloads = new ArrayList<>(recentValues.get(RECENT_PAYLOADS_KEY));
+                storedPayloads.removeAll(recentPayloads);
+
+                recentPayloads.addAll(storedPayloads);
+                recentPayloads.addListener((ListChangeListener<String>) change -> saveRecentPayloads());
+
+                if (changedBeforeLoading) {
+                    saveRecentPayloads();
+                }
+            }
+
+            StartupTimer.logPhase("recent values loaded");
+        });
+
+        backgroundExecutorService.execute(loadRecentValuesTask);
+
+        final Task<List<CredentialProfile>> loadCredentialProfilesTask = new Task<>() {
+            @Override
+            protected List<CredentialProfile> call() {
+                return CredentialProfile.loadProfiles();
+            }
+        };
+
+        loadCredentialProfilesTask.setOnSucceeded(event -> {
+            final ObservableList<CredentialProfile> profiles = credentialProfileComboBox.getItems();
+            final boolean changedBeforeLoading = !profiles.isEmpty();
+
+            // Profiles saved or imported before loading finished replace stored profiles with the same name
+            final Set<String> names = new HashSet<>();
+            profiles.forEach(profile -> names.add(profile.getName()));
+
+            for (final CredentialProfile storedProfile : loadCredentialProfilesTask.getValue()) {
+                if (names.add(storedProfile.getName())) {
+                    profiles.add(storedProfile);
+                }
+            }
+
+            profiles.sort(Comparator.comparing(CredentialProfile::getName, String.CASE_INSENSITIVE_ORDER));
+            credentialProfilesLoaded = true;
+
+            if (changedBeforeLoading) {
+                saveCredentialProfiles();
+            }
+
+            StartupTimer.logPhase("credential profiles loaded");
+        });
+
+        backgroundExecutorService.execute(loadCredentialProfilesTask);
+    }
+
+    /**
+     * Appends values loaded from user preferences to a list of recently-used values, then starts saving changes to
+     * the list. Values added to the list before loading finished stay at the top of the list.
+     */
+    private void mergeRecentValues(final ObservableList<String> values, final List<String> storedValues, final String key) {
+        final boolean changedBeforeLoading = !values.isEmpty();
+
+        final List<String> mergedValues = new ArrayList<>(values);
+
+        for (final String storedValue : storedValues) {
+            if (mergedValues.size() >= MAX_COMBO_BOX_ITEMS) {
+                break;
+            }
+
+            if (!mergedValues.contains(storedValue)) {
+                mergedValues.add(storedValue);
+            }
+        }
+
+        values.setAll(mergedValues);
+        values.addListener((ListChangeListener<String>) change -> savePreferencesList(key, change.getList()));
+
+        if (changedBeforeLoading) {
+            savePreferencesList(key, values);
+        }
+    }
+
+    private void saveRecentPayloads() {
+        // Saving recent payloads in user preferences is a little different from saving other values, because payloads
+        // have a good chance of bumping up against the size limit of a user preferences value (8kB at the time of
+        // writing). The strategy here is to try to save as many recent payloads as we can, but back off one recent
+        // payload at a time if the whole list doesn't fit.
+        final Preferences preferences = Preferences.userNodeForPackage(getClass());
+
+        int end = recentPayloads.size();
+
+        while (end > 0) {
+            try {
+                preferences.put(RECENT_PAYLOADS_KEY, JsonSerializer.writeJsonTextAsString(recentPayloads.subList(0, end)));
+                break;
+            } catch (final IllegalArgumentException e) {
+                // The list of recent payloads won't fit in a user preferences slot; shave one recent payload from the
+                // end of the list and try again.
+                end -= 1;
+            }
+        }
+    }
+
+    private void showRecentPayloadsPicker() {
+        if (recentPayloadsSearchTextField == null) {
+            recentPayloadsSearchTextField = new TextField();
+            recentPayloadsSearchTextField.setPromptText(resources.getString("recent-payloads.search.prompt"));
+
+            final ListView<RecentPayload> recentPayloadsListView = new ListView<>(filteredRecentPayloadEntries);
+            recentPayloadsListView.setPrefHeight(RECENT_PAYLOADS_PICKER_HEIGHT);
+            recentPayloadsListView.setPlaceholder(new Label(resources.getString("recent-payloads.placeholder")));
+
+            recentPayloadsListView.setCellFactory(listView -> {
+                final ListCell<RecentPayload> cell = new ListCell<>() {
+                    @Override
+                    protected void updateItem(final RecentPayload recentPayload, final boolean empty) {
+                        super.updateItem(recentPayload, empty);
+                        setText(!empty && recentPayload != null ? recentPayload.getPreview() : null);
+                    }
+                };
+
+                cell.setOnMouseClicked(event -> {
+                    if (!cell.isEmpty()) {
+                        selectRecentPayload(cell.getItem());
+                    }
+                });
+
+                return cell;
+            });
+
+            recentPayloadsListView.setOnKeyPressed(event -> {
+                if (event.getCode() == KeyCode.ENTER && recentPayloadsListView.getSelectionModel().getSelectedItem() != null) {
+                    selectRecentPayload(recentPayloadsListView.getSelectionModel().getSelectedItem());
+                }
+            });
+
+            recentPayloadsSearchTextField.textProperty().addListener((observable, oldValue, newValue) -> {
+                final String query = RecentPayload.normalizeQuery(newValue);
+
+                filteredRecentPayloadEntries.setPredicate(query.isEmpty() ? null : recentPayload -> recentPayload.matches(query));
+            });
+
+            recentPayloadsSearchTextField.setOnKeyPressed(event -> {
+                if (event.getCode() == KeyCode.DOWN) {
+                    recentPayloadsListView.requestFocus();
+                    recentPayloadsListView.getSelectionModel().selectFirst();
+                } else if (event.getCode() == KeyCode.ENTER && !filteredRecentPayloadEntries.isEmpty()) {
+                    selectRecentPayload(filteredRecentPayloadEntries.get(0));
+                }
+            });
+
+            final VBox pickerBox = new VBox(8.0, recentPayloadsSearchTextField, recentPayloadsListView);
+            pickerBox.setPrefWidth(RECENT_PAYLOADS_PICKER_WIDTH);
+
+            final CustomMenuItem pickerMenuItem = new CustomMenuItem(pickerBox, false);
+            recentPayloadsMenuButton.getItems().setAll(pickerMenuItem);
+        }
+
+        recentPayloadsSearchTextField.clear();
+        Platform.runLater(recentPayloadsSearchTextField::requestFocus);
+    }
+
+    private void loadDeviceTokenHistory() {
+        if (deviceTokenHistoryLoadStarted) {
+            return;
+        }
+
+        deviceTokenHistoryLoadStarted = true;
+
+        final Task<DeviceTokenHistory> loadDeviceTokenHistoryTask = new Task<>() {
+            @Override
+            protected DeviceTokenHistory call() throws IOException {
+                return DeviceTokenHistory.load(getDeviceTokenHistoryFile());
+            }
+        };
+
+        loadDeviceTokenHistoryTask.setOnSucceeded(event -> handleDeviceTokenHistoryLoaded(loadDeviceTokenHistoryTask.getValue()));
+
+        // The history is only a convenience; if we can't read it (maybe only for the moment), we'll keep a new one for
+        // this session, but won't save it over the one we couldn't read
+        loadDeviceTokenHistoryTask.setOnFailed(event -> {
+            deviceTokenHistorySaveDisabled = true;
+            handleDeviceTokenHistoryLoaded(new DeviceTokenHistory());
+        });
+
+        backgroundExecutorService.execute(loadDeviceTokenHistoryTask);
+    }
+
+    private void handleDeviceTokenHistoryLoaded(final DeviceTokenHistory deviceTokenHistory) {
+        this.deviceTokenHistory = deviceTokenHistory;
+
+        pendingDeviceTokenHistoryActions.forEach(action -> action.accept(deviceTokenHistory));
+        pendingDeviceTokenHistoryActions.clear();
+    }
+
+    /**
+     * Performs the given action with the device token history as soon as it's available, loading the history if
+     * necessary. Must be called on the JavaFX application thread.
+     */
+    private void withDeviceTokenHistory(final Consumer<DeviceTokenHistory> action) {
+        if (deviceTokenHistory != null) {
+            action.accept(deviceTokenHistory);
+        } else {
+            pendingDeviceTokenHistoryActions.add(action);
+            loadDeviceTokenHistory();
+        }
+    }
+
+    private void saveDeviceTokenHistory() {
+        if (deviceTokenHistorySaveDisabled) {
+            return;
+        }
+
+        // Several changes in quick succession only need one save
+        if (deviceTokenHistorySaveScheduled.compareAndSet(false, true)) {
+            final DeviceTokenHistory deviceTokenHistory = this.deviceTokenHistory;
+
+            backgroundExecutorService.execute(() -> {
+                deviceTokenHistorySaveScheduled.set(false);
+
+                try {
+                    deviceTokenHistory.save(getDeviceTokenHistoryFile());
+                } catch (final IOException ignored) {
+                    // The history is only a convenience, and we'll try again the next time it changes
+                }
+            });
+        }
+    }
+
+    private static Path getDeviceTokenHistoryFile() {
+        return PushyConsoleApplication.getDataDirectory().resolve(DEVICE_TOKEN_HISTORY_FILENAME);
+    }
+
+    private static String normalizeDeviceToken(final String deviceToken) {
+        return deviceToken != null ? TokenUtil.sanitizeTokenString(deviceToken).toLowerCase(Locale.ROOT) : "";
+    }
+
+    private void updateDeviceTokenSuggestions(final String text) {
+        if (applyingDeviceTokenSuggestion || deviceTokenHistory == null || !deviceTokenComboBox.isFocused() ||
+                deviceTokenComboBox.isShowing()) {
+
+            deviceTokenSuggestionsMenu.hide();
+            return;
+        }
+
+        final String prefix = normalizeDeviceToken(text);
+        final List<DeviceTokenHistory.Entry> suggestions =
+                prefix.isEmpty() ? List.of() : deviceTokenHistory.complete(prefix, MAX_DEVICE_TOKEN_SUGGESTIONS);
+
+        // There's no point in suggesting the token that's already been typed out in full
+        if (suggestions.isEmpty() || (suggestions.size() == 1 && suggestions.get(0).getToken().equals(prefix))) {
+            deviceTokenSuggestionsMenu.hide();
+            return;
+        }
+
+        final List<MenuItem> suggestionMenuItems = new ArrayList<>(suggestions.size());
+
+        for (final DeviceTokenHistory.Entry suggestion : suggestions) {
+            final MenuItem suggestionMenuItem = new MenuItem(new MessageFormat(resources.getString(
+                    suggestion.getLabel() != null ? "device-token-history.suggestion.labeled" : "device-token-history.suggestion"))
+                    .format(new Object[] { suggestion.getToken(), Date.from(suggestion.getLastUsed()), suggestion.getLabel() }));
+
+            suggestionMenuItem.setMnemonicParsing(false);
+            suggestionMenuItem.setOnAction(event -> applyDeviceTokenSuggestion(suggestion.getToken()));
+
+            suggestionMenuItems.add(suggestionMenuItem);
+        }
+
+        deviceTokenSuggestionsMenu.getItems().setAll(suggestionMenuItems);
+
+        if (!deviceTokenSuggestionsMenu.isShowing()) {
+            deviceTokenSuggestionsMenu.show(deviceTokenComboBox, Side.BOTTOM, 0, 0);
+        }
+    }
+
+    private void applyDeviceTokenSuggestion(final String deviceToken) {
+        applyingDeviceTokenSuggestion = true;
+
+        try {
+            deviceTokenComboBox.setValue(deviceToken);
+            deviceTokenComboBox.getEditor().end();
+        } finally {
+            applyingDeviceTokenSuggestion = false;
+        }
+
+        deviceTokenSuggestionsMenu.hide();
+    }
+
+    private ContextMenu buildDeviceTokenContextMenu() {
+        final TextField editor = deviceTokenComboBox.getEditor();
+
+        final MenuItem cutMenuItem = new MenuItem(resources.getString("device-token.menu.cut"));
+        cutMenuItem.setOnAction(event -> editor.cut());
+
+        final MenuItem copyMenuItem = new MenuItem(resources.getString("device-token.menu.copy"));
+        copyMenuItem.setOnAction(event -> editor.copy());
+
+        final MenuItem pasteMenuItem = new MenuItem(resources.getString("device-token.menu.paste"));
+        pasteMenuItem.setOnAction(event -> editor.paste());
+
+        final MenuItem labelMenuItem = new MenuItem(resources.getString("device-token.menu.label"));
+        labelMenuItem.setOnAction(event -> handleLabelDeviceTokenMenuItemAction());
+
+        final ContextMenu contextMenu =
+                new ContextMenu(cutMenuItem, copyMenuItem, pasteMenuItem, new SeparatorMenuItem(), labelMenuItem);
+
+        contextMenu.setOnShowing(event -> labelMenuItem.setDisable(!DeviceTokenHistory.isValidToken(normalizeDeviceToken(editor.getText()))));
+
+        return contextMenu;
+    }
+
+    private void handleLabelDeviceTokenMenuItemAction() {
+        final String deviceToken = normalizeDeviceToken(deviceTokenComboBox.getEditor().getText());
+
+        if (!DeviceTokenHistory.isValidToken(deviceToken)) {
+            return;
+        }
+
+        withDeviceTokenHistory(history -> {
+            final DeviceTokenHistory.Entry entry = history.get(deviceToken);
+
+            final TextInputDialog labelDialog = new TextInputDialog(entry != null && entry.getLabel() != null ? entry.getLabel() : "");
+
+            labelDialog.setTitle(resources.getString("device-token-label-dialog.title"));
+            labelDialog.setHeaderText(new MessageFormat(resources.getString("device-token-label-dialog.header"))
+                    .format(new Object[] { deviceToken }));
+            labelDialog.setContentText(resources.getString("device-token-label-dialog.prompt"));
+
+            labelDialog.showAndWait().ifPresent(label -> {
+                history.setLabel(deviceToken, StringUtils.trimToNull(label));
+                saveDeviceTokenHistory();
+            });
+        });
+    }
+
+    private void selectRecentPayload(final RecentPayload recentPayload) {
+        payloadTextArea.setText(recentPayload.getPayload());
+        recentPayloadsMenuButton.hide();
+    }
+
+    private void startPayloadValidation() {
+        cancelPayloadValidation();
+
+        final String payload = payloadTextArea.getText();
+
+        if (payload == null) {
+            return;
+        }
+
+        final Task<PayloadValidator.Result> task = new Task<PayloadValidator.Result>() {
+            @Override
+            protected PayloadValidator.Result call() {
+                return PayloadValidator.validate(payload);
+            }
+        };
+
+        task.setOnSucceeded(event -> {
+            // The payload may have changed while we were validating it; if so, a newer validation is already pending.
+            if (payload.equals(payloadTextArea.getText())) {
+                payloadValidationResultWrapper.set(task.getValue());
+            }
+        });
+
+        payloadValidationTask = task;
+        backgroundExecutorService.execute(task);
+    }
+
+    private void cancelPayloadValidation() {
+        payloadValidationDelay.stop();
+
+        if (payloadValidationTask != null) {
+            payloadValidationTask.cancel(true);
+            payloadValidationTask = null;
+        }
+    }
+
+    private void updatePayloadValidationControls(final PayloadValidator.Result result) {
+        if (result != null) {
+            payloadSizeLabel.setText(new MessageFormat(resources.getString("payload.size")).format(
+                    new Object[] { result.getByteLength(), PayloadValidator.MAX_PAYLOAD_SIZE }));
+
+            if (!result.isValid()) {
+                final String errorKey = "payload.error." + result.getError().name().toLowerCase(Locale.ROOT).replace('_', '-');
+
+                payloadErrorHyperlink.setText(new MessageFormat(resources.getString("payload.error")).format(
+                        new Object[] { resources.getString(errorKey), result.getErrorLine(), result.getErrorColumn() }));
+
+                payloadErrorHyperlink.setOnAction(event -> {
+                    payloadTextArea.requestFocus();
+                    payloadTextArea.positionCaret(Math.min(result.getErrorOffset(), payloadTextArea.getLength()));
+                });
+
+                payloadErrorHyperlink.setVisible(true);
+            } else {
+                payloadErrorHyperlink.setVisible(false);
+            }
+        } else {
+            payloadSizeLabel.setText(null);
+            payloadErrorHyperlink.setVisible(false);
+        }
+
+        payloadErrorHyperlink.setVisited(false);
+    }
+
+    /**
+     * Validates the current payload if it hasn't been validated already. Most of the time, the payload will have been
+     * validated in the background by the time this method is called, but if not, this method validates the payload on
+     * the calling thread.
+     *
+     * @return the result of validating the current payload, or {@code null} if there is no payload
+     */
+    PayloadValidator.Result validatePayload() {
+        if (payloadValidationResultWrapper.get() == null && payloadTextArea.getText() != null) {
+            cancelPayloadValidation();
+            payloadValidationResultWrapper.set(PayloadValidator.validate(payloadTextArea.getText()));
+        }
+
+        return payloadValidationResultWrapper.get();
+    }
+
     @SafeVarargs
     private static void addEmptyPseudoClassListener(final ComboBox<String>... comboBoxes) {
         for (final ComboBox<String> comboBox : comboBoxes) {
@@ -422,45 +970,523 @@ public class ComposeNotificationController {
         final File file = fileChooser.showOpenDialog(((Node) event.getSource()).getScene().getWindow());
 
         if (file != null) {
+            // The selected file may or may not turn out to be usable, but either way, we're no longer using a profile
+            credentialProfileComboBox.setValue(null);
+
             try {
                 handleSigningKeyFileSelection(file);
             } catch (final NoSuchAlgorithmException | IOException | InvalidKeyException e) {
                 // Couldn't load the given file as a signing key. Try it as a P12 certificate instead.
-                final PasswordInputDialog passwordInputDialog = new PasswordInputDialog(password -> {
+                promptForCertificatePassword(file).ifPresent(password -> {
                     try {
-                        CertificateUtil.getFirstPrivateKeyEntry(file, password);
-                        return true;
-                    } catch (final IOException e1) {
-                        return false;
-                    } catch (KeyStoreException e1) {
-                        // We'll accept the password, but will need to alert the user that something else went wrong later
-                        return true;
+                        handleCertificateFileAndPasswordSelection(file, password);
+                    } catch (final IOException | KeyStoreException e1) {
+                        showBadCertificateAlert();
                     }
                 });
+            }
+        }
+    }
 
-                final MessageFormat headerFormat = new MessageFormat(resources.getString("certificate-password-dialog.header"));
+    private Optional<String> promptForCertificatePassword(final File certificateFile) {
+        final PasswordInputDialog passwordInputDialog = new PasswordInputDialog(password -> {
+            try {
+                apnsCredentialsCache.getCertificateCredentials(certificateFile, password);
+                return true;
+            } catch (final IOException e) {
+                return false;
+            } catch (KeyStoreException e) {
+                // We'll accept the password, but will need to alert the user that something else went wrong later
+                return true;
+            }
+        });
 
-                passwordInputDialog.setTitle(resources.getString("certificate-password-dialog.title"));
-                passwordInputDialog.setHeaderText(headerFormat.format(new String[] { file.getName() }));
-                passwordInputDialog.setContentText(resources.getString("certificate-password-dialog.prompt"));
+        final MessageFormat headerFormat = new MessageFormat(resources.getString("certificate-password-dialog.header"));
 
-                final Optional<String> verifiedPassword = passwordInputDialog.showAndWait();
+        passwordInputDialog.setTitle(resources.getString("certificate-password-dialog.title"));
+        passwordInputDialog.setHeaderText(headerFormat.format(new String[] { certificateFile.getName() }));
+        passwordInputDialog.setContentText(resources.getString("certificate-password-dialog.prompt"));
 
-                verifiedPassword.ifPresent(password -> {
-                    try {
-                        handleCertificateFileAndPasswordSelection(file, password);
-                    } catch (final IOException | KeyStoreException e1) {
-                        final Alert alert = new Alert(Alert.AlertType.WARNING);
+        return passwordInputDialog.showAndWait();
+    }
 
-                        alert.setTitle(resources.getString("alert.bad-certificate.title"));
-                        alert.setHeaderText(resources.getString("alert.bad-certificate.header"));
-                        alert.setContentText(resources.getString("alert.bad-certificate.content-text"));
+    private void showBadCertificateAlert() {
+        final Alert alert = new Alert(Alert.AlertType.WARNING);
 
-                        alert.show();
-                    }
-                });
+        alert.setTitle(resources.getString("alert.bad-certificate.title"));
+        alert.setHeaderText(resources.getString("alert.bad-certificate.header"));
+        alert.setContentText(resources.getString("alert.bad-certificate.content-text"));
+
+        alert.show();
+    }
+
+    /**
+     * Switches to the credentials and default server from the given profile. Credentials are loaded (and certificates
+     * decrypted) only the first time a profile is used in a session; after that, switching is instantaneous.
+     *
+     * @param profile the profile to which to switch
+     */
+    private void applyCredentialProfile(final CredentialProfile profile) {
+        final File credentialsFile = profile.getCredentialsFile();
+
+        final Optional<String> certificatePassword;
+
+        if (profile.isSigningKey()) {
+            certificatePassword = Optional.empty();
+        } else {
+            // Passwords are never saved with profiles, so we may need to ask for one the first time a profile gets
+            // used in a session
+            certificatePassword = apnsCredentialsCache.getCertificatePassword(credentialsFile)
+                    .or(() -> promptForCertificatePassword(credentialsFile));
+
+            if (certificatePassword.isEmpty()) {
+                credentialProfileComboBox.setValue(null);
+                return;
             }
         }
+
+        applyingCredentialProfile = true;
+
+        try {
+            apnsServerComboBox.setValue(profile.getDefaultTarget().getServer());
+            apnsPortComboBox.setValue(profile.getDefaultTarget().getPort());
+
+            if (profile.isSigningKey()) {
+                apnsCredentialsCache.getSigningKeyCredentials(credentialsFile, profile.getKeyId(), profile.getTeamId());
+
+                credentialsFileAndPasswordProperty.set(new Pair<>(credentialsFile, null));
+                keyIdComboBox.setValue(profile.getKeyId());
+                teamIdComboBox.setValue(profile.getTeamId());
+            } else {
+                handleCertificateFileAndPasswordSelection(credentialsFile, certificatePassword.get());
+            }
+        } catch (final IOException | GeneralSecurityException e) {
+            credentialProfileComboBox.setValue(null);
+            showBadCredentialProfileAlert(profile, e);
+        } finally {
+            applyingCredentialProfile = false;
+            apnsCredentialsBinding.invalidate();
+        }
+    }
+
+    /**
+     * Returns all of the user's saved credential profiles.
+     *
+     * @return a live list of the user's credential profiles
+     */
+    ObservableList<CredentialProfile> getCredentialProfiles() {
+        return FXCollections.unmodifiableObservableList(credentialProfileComboBox.getItems());
+    }
+
+    /**
+     * Returns the profile whose credentials are currently selected, if any.
+     *
+     * @return the currently-selected profile, or empty if the current credentials didn't come from a profile
+     */
+    Optional<CredentialProfile> getSelectedCredentialProfile() {
+        return Optional.ofNullable(credentialProfileComboBox.getValue());
+    }
+
+    /**
+     * Loads the credentials for the given profile without selecting the profile, asking for the certificate's password
+     * if it hasn't already been entered in this session. Problems loading the credentials are reported to the user.
+     * Must be called on the JavaFX application thread.
+     *
+     * @param profile the profile for which to load credentials
+     *
+     * @return the profile's credentials, or empty if the credentials could not be loaded or the user declined to
+     * enter a password
+     */
+    Optional<ApnsCredentials> loadCredentials(final CredentialProfile profile) {
+        final File credentialsFile = profile.getCredentialsFile();
+
+        try {
+            if (profile.isSigningKey()) {
+                return Optional.of(apnsCredentialsCache.getSigningKeyCredentials(credentialsFile, profile.getKeyId(), profile.getTeamId()));
+            }
+
+            final Optional<String> certificatePassword = apnsCredentialsCache.getCertificatePassword(credentialsFile)
+                    .or(() -> promptForCertificatePassword(credentialsFile));
+
+            return certificatePassword.isPresent() ?
+                    Optional.of(apnsCredentialsCache.getCertificateCredentials(credentialsFile, certificatePassword.get())) :
+                    Optional.empty();
+        } catch (final IOException | GeneralSecurityException e) {
+            showBadCredentialProfileAlert(profile, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Loads the credentials for the given profile on behalf of a {@link TopicRouter.Route}. Unlike
+     * {@link #loadCredentials(CredentialProfile)}, this may be called from any thread; if the certificate's password
+     * hasn't been entered in this session, the calling thread waits while the user is asked for it on the JavaFX
+     * application thread. Problems are reported to the caller rather than to the user.
+     *
+     * @param profile the profile for which to load credentials
+     *
+     * @return the profile's credentials
+     *
+     * @throws IOException if the profile's credentials file could not be read
+     * @throws GeneralSecurityException if the credentials could not be loaded or the user declined to enter a password
+     */
+    ApnsCredentials loadRouteCredentials(final CredentialProfile profile) throws IOException, GeneralSecurityException {
+        final File credentialsFile = profile.getCredentialsFile();
+
+        if (profile.isSigningKey()) {
+            return apnsCredentialsCache.getSigningKeyCredentials(credentialsFile, profile.getKeyId(), profile.getTeamId());
+        }
+
+        Optional<String> certificatePassword = apnsCredentialsCache.getCertificatePassword(credentialsFile);
+
+        if (certificatePassword.isEmpty()) {
+            final FutureTask<Optional<String>> promptTask = new FutureTask<>(() ->
+                    apnsCredentialsCache.getCertificatePassword(credentialsFile)
+                            .or(() -> promptForCertificatePassword(credentialsFile)));
+
+            if (Platform.isFxApplicationThread()) {
+                promptTask.run();
+            } else {
+                Platform.runLater(promptTask);
+            }
+
+            try {
+                certificatePassword = promptTask.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a certificate password.");
+            } catch (final ExecutionException e) {
+                throw new KeyStoreException("Could not get a password for " + credentialsFile.getName(), e.getCause());
+            }
+        }
+
+        return apnsCredentialsCache.getCertificateCredentials(credentialsFile, certificatePassword
+                .orElseThrow(() -> new KeyStoreException("No password was entered for " + credentialsFile.getName())));
+    }
+
+    /**
+     * Records the topics named in a certificate profile's certificate, so routers built from the profile later don't
+     * have to decrypt the certificate just to find out which topics it serves. Profiles saved before topics were
+     * recorded get updated this way the first time their certificate is loaded for routing.
+     *
+     * @param profile the profile whose certificate's topics have been found
+     * @param topics the topics named in the profile's certificate
+     */
+    void recordCertificateTopics(final CredentialProfile profile, final Set<String> topics) {
+        final ObservableList<CredentialProfile> profiles = credentialProfileComboBox.getItems();
+        final int index = profiles.indexOf(profile);
+
+        if (index >= 0 && !profile.isSigningKey() && !topics.isEmpty()) {
+            final boolean selected = profile.equals(credentialProfileComboBox.getValue());
+            final CredentialProfile updatedProfile = new CredentialProfile(profile.getName(), profile.getCredentialsFile(),
+                    null, null, profile.getDefaultTarget(), topics);
+
+            // The updated profile uses the same credentials, so there's no need to re-apply it if it's selected
+            replacingCredentialProfile = true;
+
+            try {
+                profiles.set(index, updatedProfile);
+
+                if (selected) {
+                    credentialProfileComboBox.setValue(updatedProfile);
+                }
+            } finally {
+                replacingCredentialProfile = false;
+            }
+
+            saveCredentialProfiles();
+        }
+    }
+
+    private void showBadCredentialProfileAlert(final CredentialProfile profile, final Exception exception) {
+        final Alert alert = new Alert(Alert.AlertType.WARNING);
+
+        alert.setTitle(resources.getString("alert.bad-credential-profile.title"));
+        alert.setHeaderText(new MessageFormat(resources.getString("alert.bad-credential-profile.header"))
+                .format(new Object[] { profile.getName() }));
+        alert.setContentText(exception.getLocalizedMessage());
+
+        alert.show();
+    }
+
+    @FXML
+    private void handleSaveCredentialProfileMenuItemAction(final ActionEvent event) {
+        final Pair<File, String> credentialsFileAndPassword = credentialsFileAndPasswordProperty.get();
+
+        if (credentialsFileAndPassword == null || apnsCredentialsWrapper.get() == null) {
+            setRequiredFieldGroupHighlighted(true);
+            return;
+        }
+
+        final TextInputDialog nameDialog = new TextInputDialog(credentialProfileComboBox.getValue() != null ?
+                credentialProfileComboBox.getValue().getName() : credentialsFileAndPassword.getKey().getName());
+
+        nameDialog.setTitle(resources.getString("credential-profile-dialog.title"));
+        nameDialog.setHeaderText(resources.getString("credential-profile-dialog.header"));
+        nameDialog.setContentText(resources.getString("credential-profile-dialog.prompt"));
+
+        nameDialog.showAndWait().filter(StringUtils::isNotBlank).ifPresent(name -> {
+            final boolean signingKey = credentialsFileAndPassword.getValue() == null;
+
+            final List<String> topics;
+
+            if (signingKey) {
+                // Signing keys can send to any of a team's topics, so bulk sends need to be told which topics belong
+                // to this profile
+                final Optional<String> topicList = promptForSigningKeyTopics(name.trim());
+
+                if (topicList.isEmpty()) {
+                    return;
+                }
+
+                topics = Arrays.asList(topicList.get().split("[,\\s]+"));
+            } else {
+                // Recording the certificate's topics lets routers skip decrypting the certificate later
+                List<String> certificateTopics;
+
+                try {
+                    certificateTopics = new ArrayList<>(apnsCredentialsCache.getCertificateTopics(
+                            credentialsFileAndPassword.getKey(), credentialsFileAndPassword.getValue()));
+                } catch (final IOException | KeyStoreException e) {
+                    certificateTopics = null;
+                }
+
+                topics = certificateTopics;
+            }
+
+            final CredentialProfile profile = new CredentialProfile(name,
+                    credentialsFileAndPassword.getKey(),
+                    signingKey ? keyIdComboBox.getValue() : null,
+                    signingKey ? teamIdComboBox.getValue() : null,
+                    new ApnsTarget(apnsServerComboBox.getValue(), apnsPortComboBox.getValue()),
+                    topics);
+
+            final ObservableList<CredentialProfile> profiles = credentialProfileComboBox.getItems();
+
+            profiles.removeIf(existingProfile -> existingProfile.getName().equals(profile.getName()));
+            profiles.add(profile);
+            profiles.sort(Comparator.comparing(CredentialProfile::getName, String.CASE_INSENSITIVE_ORDER));
+
+            saveCredentialProfiles();
+
+            credentialProfileComboBox.setValue(profile);
+        });
+    }
+
+    private Optional<String> promptForSigningKeyTopics(final String profileName) {
+        final String defaultTopics = credentialProfileComboBox.getItems().stream()
+                .filter(profile -> profile.getName().equals(profileName))
+                .findFirst()
+                .map(profile -> String.join(", ", profile.getTopics()))
+                .orElse(StringUtils.defaultString(topicComboBox.getValue()));
+
+        final TextInputDialog topicsDialog = new TextInputDialog(defaultTopics);
+
+        topicsDialog.setTitle(resources.getString("credential-profile-topics-dialog.title"));
+        topicsDialog.setHeaderText(resources.getString("credential-profile-topics-dialog.header"));
+        topicsDialog.setContentText(resources.getString("credential-profile-topics-dialog.prompt"));
+
+        return topicsDialog.showAndWait();
+    }
+
+    @FXML
+    private void handleImportCredentialDirectoryMenuItemAction(final ActionEvent event) {
+        final File directory = new DirectoryChooser().showDialog(apnsCredentialFileTextField.getScene().getWindow());
+
+        if (directory == null) {
+            return;
+        }
+
+        final Optional<List<String>> passwords = promptForCertificatePasswords(directory);
+
+        if (passwords.isEmpty()) {
+            return;
+        }
+
+        final ApnsTarget defaultTarget = new ApnsTarget(apnsServerComboBox.getValue(), apnsPortComboBox.getValue());
+
+        final Task<CredentialIndex> importTask = new Task<>() {
+            @Override
+            protected CredentialIndex call() throws Exception {
+                final Path indexFile = PushyConsoleApplication.getDataDirectory().resolve(CREDENTIAL_INDEX_FILENAME);
+
+                final CredentialIndex savedIndex = CredentialIndex.load(indexFile);
+
+                final CredentialIndex index = CredentialDirectoryImporter.importDirectory(directory.toPath(),
+                        passwords.get(), savedIndex, CredentialDirectoryImporter.DEFAULT_PARALLELISM);
+
+                // Entries for files in other directories stay in the saved index for the next time those directories
+                // are imported
+                index.getEntries().forEach(savedIndex::put);
+                savedIndex.save(indexFile);
+
+                return index;
+            }
+        };
+
+        importTask.setOnSucceeded(workerStateEvent -> {
+            importCredentialDirectoryMenuItem.setDisable(false);
+            handleImportedCredentials(importTask.getValue(), defaultTarget);
+        });
+
+        importTask.setOnFailed(workerStateEvent -> {
+            importCredentialDirectoryMenuItem.setDisable(false);
+
+            final Alert alert = new Alert(Alert.AlertType.WARNING);
+
+            alert.setTitle(resources.getString("alert.credential-import-failed.title"));
+            alert.setHeaderText(resources.getString("alert.credential-import-failed.header"));
+            alert.setContentText(importTask.getException().getLocalizedMessage());
+
+            alert.show();
+        });
+
+        // Only one import runs at a time
+        importCredentialDirectoryMenuItem.setDisable(true);
+        credentialImportExecutorService.execute(importTask);
+    }
+
+    private Optional<List<String>> promptForCertificatePasswords(final File directory) {
+        final TextArea passwordsTextArea = new TextArea();
+        passwordsTextArea.setPromptText(resources.getString("credential-import-dialog.prompt"));
+        passwordsTextArea.setPrefRowCount(6);
+
+        final Dialog<List<String>> passwordsDialog = new Dialog<>();
+
+        passwordsDialog.setTitle(resources.getString("credential-import-dialog.title"));
+        passwordsDialog.setHeaderText(new MessageFormat(resources.getString("credential-import-dialog.header"))
+                .format(new Object[] { directory.getName() }));
+        passwordsDialog.getDialogPane().setContent(passwordsTextArea);
+        passwordsDialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+
+        passwordsDialog.setResultConverter(buttonType -> {
+            if (buttonType != ButtonType.OK) {
+                return null;
+            }
+
+            final List<String> passwords = new ArrayList<>();
+
+            for (final String password : passwordsTextArea.getText().split("\\R")) {
+                if (!password.isEmpty() && !passwords.contains(password)) {
+                    passwords.add(password);
+                }
+            }
+
+            return passwords;
+        });
+
+        return passwordsDialog.showAndWait();
+    }
+
+    /**
+     * Adds a profile for every newly-imported certificate and shows the user which credentials serve which topics.
+     * Signing keys don't identify their team, and so can't become profiles automatically.
+     */
+    private void handleImportedCredentials(final CredentialIndex index, final ApnsTarget defaultTarget) {
+        final ObservableList<CredentialProfile> profiles = credentialProfileComboBox.getItems();
+        final Set<File> profileFiles = new HashSet<>();
+
+        for (final CredentialProfile profile : profiles) {
+            profileFiles.add(profile.getCredentialsFile().getAbsoluteFile());
+        }
+
+        int certificates = 0;
+        int signingKeys = 0;
+        int addedProfiles = 0;
+
+        for (final CredentialIndex.Entry entry : index.getEntries()) {
+            final File file = entry.getFile().toFile();
+
+            if (entry.getType() == CredentialIndex.Type.SIGNING_KEY) {
+                signingKeys += 1;
+                continue;
+            }
+
+            certificates += 1;
+
+            entry.getPassword().ifPresent(password -> apnsCredentialsCache.rememberCertificatePassword(file, password));
+
+            if (profileFiles.add(file.getAbsoluteFile())) {
+                // The shortest topic is usually the app's bundle ID; the others are variants like ".voip"
+                final String baseName = entry.getTopics().stream()
+                        .min(Comparator.comparingInt(String::length).thenComparing(Comparator.naturalOrder()))
+                        .orElse(file.getName());
+
+                final String name = profiles.stream().anyMatch(profile -> profile.getName().equals(baseName)) ?
+                        baseName + " (" + file.getName() + ")" : baseName;
+
+                profiles.add(new CredentialProfile(name, file, null, null, defaultTarget, entry.getTopics()));
+                addedProfiles += 1;
+            }
+        }
+
+        if (addedProfiles > 0) {
+            profiles.sort(Comparator.comparing(CredentialProfile::getName, String.CASE_INSENSITIVE_ORDER));
+            saveCredentialProfiles();
+        }
+
+        final StringBuilder topicListBuilder = new StringBuilder();
+        final Instant now = Instant.now();
+
+        for (final Map.Entry<String, List<CredentialIndex.Entry>> topicAndCertificates : index.getCertificatesByTopic().entrySet()) {
+            for (final CredentialIndex.Entry entry : topicAndCertificates.getValue()) {
+                topicListBuilder.append(new MessageFormat(resources.getString(
+                        entry.getExpiration().map(expiration -> expiration.isBefore(now)).orElse(false) ?
+                                "credential-import.topic.expired" : "credential-import.topic"))
+                        .format(new Object[] {
+                                topicAndCertificates.getKey(),
+                                entry.getFile().getFileName().toString(),
+                                entry.getExpiration().map(Date::from).orElse(null) }));
+
+                topicListBuilder.append('\n');
+            }
+        }
+
+        final Alert alert = new Alert(Alert.AlertType.INFORMATION);
+
+        alert.setTitle(resources.getString("alert.credentials-imported.title"));
+        alert.setHeaderText(new MessageFormat(resources.getString("alert.credentials-imported.header"))
+                .format(new Object[] { certificates, signingKeys, addedProfiles }));
+
+        final TextArea topicListTextArea = new TextArea(topicListBuilder.toString());
+        topicListTextArea.setEditable(false);
+        topicListTextArea.setMaxWidth(Double.MAX_VALUE);
+        topicListTextArea.setMaxHeight(Double.MAX_VALUE);
+
+        alert.getDialogPane().setExpandableContent(topicListTextArea);
+
+        alert.show();
+    }
+
+    @FXML
+    private void handleDeleteCredentialProfileMenuItemAction(final ActionEvent event) {
+        final CredentialProfile profile = credentialProfileComboBox.getValue();
+
+        if (profile != null) {
+            credentialProfileComboBox.setValue(null);
+            credentialProfileComboBox.getItems().remove(profile);
+
+            saveCredentialProfiles();
+        }
+    }
+
+    private void saveCredentialProfiles() {
+        if (!credentialProfilesLoaded) {
+            // Saving now would overwrite stored profiles we haven't read yet; they'll be saved once loading finishes
+            return;
+        }
+
+        try {
+            CredentialProfile.saveProfiles(new ArrayList<>(credentialProfileComboBox.getItems()));
+        } catch (final IOException e) {
+            final Alert alert = new Alert(Alert.AlertType.WARNING);
+
+            alert.setTitle(resources.getString("alert.save-credential-profiles-failed.title"));
+            alert.setHeaderText(resources.getString("alert.save-credential-profiles-failed.header"));
+            alert.setContentText(e.getLocalizedMessage());
+
+            alert.show();
+        }
     }
 
     void handleSigningKeyFileSelection(final File signingKeyFile) throws NoSuchAlgorithmException, InvalidKeyException, IOException {
@@ -482,7 +1508,7 @@ public class ComposeNotificationController {
 
     void handleCertificateFileAndPasswordSelection(final File certificateFile, final String password) throws IOException, KeyStoreException {
         // Try to actually load everything from the certificate so we can complain now if something goes wrong.
-        CertificateUtil.getFirstPrivateKeyEntry(certificateFile, password);
+        apnsCredentialsCache.getCertificateCredentials(certificateFile, password);
 
         credentialsFileAndPasswordProperty.set(new Pair<>(certificateFile, password));
     }
@@ -511,6 +1537,19 @@ public class ComposeNotificationController {
             addCurrentValueToComboBoxItems(topicComboBox);
             addCurrentValueToComboBoxItems(deviceTokenComboBox);
 
+            {
+                final String deviceToken = normalizeDeviceToken(deviceTokenComboBox.getValue());
+
+                if (DeviceTokenHistory.isValidToken(deviceToken)) {
+                    final Instant usedAt = Instant.now();
+
+                    withDeviceTokenHistory(history -> {
+                        history.record(deviceToken, usedAt);
+                        saveDeviceTokenHistory();
+                    });
+                }
+            }
+
             if (StringUtils.isNotBlank(collapseIdComboBox.getValue())) {
                 addCurrentValueToComboBoxItems(collapseIdComboBox);
             }
@@ -598,6 +1637,61 @@ public class ComposeNotificationController {
         return apnsPortWrapper.getReadOnlyProperty();
     }
 
+    /**
+     * Returns the currently-selected topic.
+     *
+     * @return the currently-selected topic, which may be {@code null} or blank
+     */
+    String getTopic() {
+        return topicWrapper.get();
+    }
+
+    /**
+     * Returns the property representing the currently-selected topic.
+     *
+     * @return the property representing the currently-selected topic
+     *
+     * @see #getTopic()
+     */
+    ReadOnlyStringProperty topicProperty() {
+        return topicWrapper.getReadOnlyProperty();
+    }
+
+    /**
+     * Returns every server and port to which the composed notification should be sent. The currently-selected APNs
+     * server and port always come first, followed by any additional targets the user has selected for fan-out.
+     *
+     * @return a list of distinct servers and ports to which the composed notification should be sent
+     */
+    List<ApnsTarget> getApnsTargets() {
+        return new ArrayList<>(apnsTargetsWrapper.get());
+    }
+
+    /**
+     * Returns the property representing every server and port to which the composed notification should be sent.
+     *
+     * @return the property representing every server and port to which the composed notification should be sent
+     *
+     * @see #getApnsTargets()
+     */
+    ReadOnlyListProperty<ApnsTarget> apnsTargetsProperty() {
+        return apnsTargetsWrapper.getReadOnlyProperty();
+    }
+
+    private void updateApnsTargets() {
+        final Set<ApnsTarget> targets = new LinkedHashSet<>();
+
+        if (getApnsServer() != null) {
+            targets.add(new ApnsTarget(getApnsServer(), getApnsPort()));
+        }
+
+        targets.addAll(additionalTargets);
+
+        if (!apnsTargetsWrapper.get().equals(new ArrayList<>(targets))) {
+            apnsTargetsWrapper.setAll(targets);
+        }
+    }
+
     /**
      * Returns the user-selected APNs credentials.
      *
@@ -672,6 +1766,22 @@ public class ComposeNotificationController {
         return requiredFieldGroupHighlightedProperty;
     }
 
+    /**
+     * Returns the property representing the result of validating the current payload. The property's value is
+     * {@code null} while the current payload has not yet been validated.
+     *
+     * @return the property representing the result of validating the current payload
+     */
+    ReadOnlyObjectProperty<PayloadValidator.Result> payloadValidationResultProperty() {
+        return payloadValidationResultWrapper.getReadOnlyProperty();
+    }
+
+    void stop() {
+        cancelPayloadValidation();
+        backgroundExecutorService.shutdown();
+        credentialImportExecutorService.shutdownNow();
+    }
+
     void setSaveComboBoxValues(final boolean saveComboBoxValues) {
         this.saveComboBoxValues = saveComboBoxValues;
     }
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.auth.ApnsSigningKey;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.InvalidKeyException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.X509Certificate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+
+/**
+ * <p>Finds every certificate and signing key in a directory. Loading a PKCS#12 file (and, especially, trying several
+ * passwords against it) is slow, so files are probed in parallel, and files that haven't changed since a previous
+ * import are taken from that import's {@link CredentialIndex} without being read at all.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class CredentialDirectoryImporter {
+
+    /**
+     * The default number of files to probe at once.
+     */
+    static final int DEFAULT_PARALLELISM = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), 8));
+
+    private CredentialDirectoryImporter() {
+    }
+
+    /**
+     * Indexes every {@code .p12} and {@code .p8} file in the given directory (but not its subdirectories), blocking
+     * until every file has been indexed.
+     *
+     * @param directory the directory to scan
+     * @param passwords the passwords to try against each PKCS#12 file, in order
+     * @param previousIndex an index from a previous import; entries for files that haven't changed are reused as-is
+     * @param parallelism the maximum number of files to probe at once
+     *
+     * @return an index of every usable credentials file in the given directory; files that could not be read (or, for
+     * certificates, unlocked with any of the given passwords) are left out
+     *
+     * @throws IOException if the directory could not be read
+     * @throws InterruptedIOException if the calling thread was interrupted before every file was indexed
+     */
+    static CredentialIndex importDirectory(final Path directory, final List<String> passwords,
+                                           final CredentialIndex previousIndex, final int parallelism) throws IOException {
+
+        final CredentialIndex index = new CredentialIndex();
+        final List<Callable<Optional<CredentialIndex.Entry>>> probes = new ArrayList<>();
+
+        try (final DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.{p12,P12,p8,P8}")) {
+            for (final Path file : files) {
+                final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+
+                if (!attributes.isRegularFile()) {
+                    continue;
+                }
+
+                final Path absoluteFile = file.toAbsolutePath();
+                final long lastModifiedMillis = attributes.lastModifiedTime().toMillis();
+                final long size = attributes.size();
+
+                final Optional<CredentialIndex.Entry> previousEntry = previousIndex.get(absoluteFile)
+                        .filter(entry -> entry.isCurrent(lastModifiedMillis, size));
+
+                if (previousEntry.isPresent()) {
+                    index.put(previousEntry.get());
+                } else {
+                    probes.add(() -> probe(absoluteFile, lastModifiedMillis, size, passwords));
+                }
+            }
+        }
+
+        if (probes.isEmpty()) {
+            return index;
+        }
+
+        final ExecutorService probeExecutorService = Executors.newFixedThreadPool(Math.min(parallelism, probes.size()));
+
+        try {
+            for (final Future<Optional<CredentialIndex.Entry>> future : probeExecutorService.invokeAll(probes)) {
+                try {
+                    future.get().ifPresent(index::put);
+                } catch (final ExecutionException e) {
+                    // A file we can't probe is no different from a file that isn't a credential
+                }
+            }
+        } catch (final InterruptedException e) {
+            throw new InterruptedIOException("Credential import interrupted.");
+        } finally {
+            probeExecutorService.shutdownNow();
+        }
+
+        return index;
+    }
+
+    private static Optional<CredentialIndex.Entry> probe(final Path file, final long lastModifiedMillis, final long size,
+                                                         final List<String> passwords) {
+
+        if (file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".p8")) {
+            try {
+                // Key and team IDs aren't part of the file, and don't matter for checking that the key is valid
+                ApnsSigningKey.loadFromPkcs8File(file.toFile(), "temp", "temp");
+            } catch (final IOException | NoSuchAlgorithmException | InvalidKeyException e) {
+                return Optional.empty();
+            }
+
+            final Matcher matcher =
+                    ComposeNotificationController.APNS_SIGNING_KEY_WITH_ID_PATTERN.matcher(file.getFileName().toString());
+
+            return Optional.of(new CredentialIndex.Entry(file, lastModifiedMillis, size,
+                    CredentialIndex.Type.SIGNING_KEY, null, null, matcher.matches() ? matcher.group(1) : null, null));
+        }
+
+        for (final String password : passwords) {
+            final KeyStore.PrivateKeyEntry privateKeyEntry;
+
+            try {
+                privateKeyEntry = CertificateUtil.getFirstPrivateKeyEntry(file.toFile(), password);
+            } catch (final IOException e) {
+                // Most likely the wrong password; try the next one
+                continue;
+            } catch (final KeyStoreException e) {
+                // The password worked, but the file doesn't hold usable APNs credentials
+                return Optional.empty();
+            }
+
+            try {
+                return Optional.of(new CredentialIndex.Entry(file, lastModifiedMillis, size,
+                        CredentialIndex.Type.CERTIFICATE,
+                        CertificateUtil.extractApnsTopicsFromCertificate(privateKeyEntry.getCertificate()),
+                        privateKeyEntry.getCertificate() instanceof X509Certificate ?
+                                ((X509Certificate) privateKeyEntry.getCertificate()).getNotAfter().toInstant() : null,
+                        null,
+                        password));
+            } catch (final IOException e) {
+                return Optional.empty();
+            }
+        }
+
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.json.JsonDeserializer;
+import com.eatthepath.json.JsonSerializer;
+import com.eatthepath.json.ParseException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+/**
+ * <p>An index of the credentials found in a directory of certificate and signing key files, and of the topics each
+ * credential serves.</p>
+ *
+ * <p>Indexes can be saved to and loaded from a JSON file. Each entry records the modification time and size of the
+ * file from which it was read, so a later import can tell whether a file has changed since it was last indexed
+ * without having to parse (or decrypt) it again. Certificate passwords are never saved.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class CredentialIndex {
+
+    private final Map<Path, Entry> entriesByFile = new TreeMap<>();
+
+    /**
+     * The kinds of credentials that may appear in an index.
+     */
+    enum Type {
+        CERTIFICATE,
+        SIGNING_KEY
+    }
+
+    /**
+     * A single credentials file and what we know about it.
+     */
+    static class Entry {
+
+        private final Path file;
+        private final long lastModifiedMillis;
+        private final long size;
+
+        private final Type type;
+        private final Set<String> topics;
+        private final Instant expiration;
+        private final String keyId;
+
+        // Only known for certificates that were decrypted by the import that produced this entry
+        private final String password;
+
+        Entry(final Path file, final long lastModifiedMillis, final long size, final Type type,
+              final Collection<String> topics, final Instant expiration, final String keyId, final String password) {
+
+            this.file = Objects.requireNonNull(file);
+            this.lastModifiedMillis = lastModifiedMillis;
+            this.size = size;
+            this.type = Objects.requireNonNull(type);
+            this.topics = topics != null ? Collections.unmodifiableSet(new TreeSet<>(topics)) : Collections.emptySet();
+            this.expiration = expiration;
+            this.keyId = keyId;
+            this.password = password;
+        }
+
+        Path getFile() {
+            return file;
+        }
+
+        long getLastModifiedMillis() {
+            return lastModifiedMillis;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        Type getType() {
+            return type;
+        }
+
+        /**
+         * Returns the topics named in a certificate. Signing keys aren't tied to specific topics, and always return an
+         * empty set.
+         *
+         * @return the topics named in this entry's certificate
+         */
+        Set<String> getTopics() {
+            return topics;
+        }
+
+        /**
+         * Returns the time after which this entry's certificate is no longer valid.
+         *
+         * @return the expiration time of this entry's certificate, or empty if this entry is a signing key
+         */
+        Optional<Instant> getExpiration() {
+            return Optional.ofNullable(expiration);
+        }
+
+        /**
+         * Returns the ID of this entry's signing key, if it could be determined from the signing key's filename.
+         *
+         * @return the ID of this entry's signing key, or empty if unknown or if this entry is a certificate
+         */
+        Optional<String> getKeyId() {
+            return Optional.ofNullable(keyId);
+        }
+
+        /**
+         * Returns the password that unlocked this entry's certificate. Passwords are only known for certificates that
+         * were actually decrypted during the current session, and are never saved with the index.
+         *
+         * @return the password for this entry's certificate, or empty if not known
+         */
+        Optional<String> getPassword() {
+            return Optional.ofNullable(password);
+        }
+
+        /**
+         * Indicates whether this entry still describes its file, judging by the file's modification time and size.
+         *
+         * @param lastModifiedMillis the file's current modification time
+         * @param size the file's current size
+         *
+         * @return {@code true} if this entry is still current or {@code false} if the file must be parsed again
+         */
+        boolean isCurrent(final long lastModifiedMillis, final long size) {
+            return this.lastModifiedMillis == lastModifiedMillis && this.size == size;
+        }
+
+        private Map<String, Object> toJsonObject() {
+            final Map<String, Object> jsonObject = new LinkedHashMap<>();
+
+            jsonObject.put("file", file.toString());
+            jsonObject.put("lastModified", lastModifiedMillis);
+            jsonObject.put("size", size);
+            jsonObject.put("type", type.name());
+
+            if (!topics.isEmpty()) {
+                jsonObject.put("topics", new ArrayList<>(topics));
+            }
+
+            if (expiration != null) {
+                jsonObject.put("expiration", expiration.toString());
+            }
+
+            if (keyId != null) {
+                jsonObject.put("keyId", keyId);
+            }
+
+            return jsonObject;
+        }
+
+        private static Entry fromJsonObject(final Map<?, ?> jsonObject) {
+            final List<String> topics = new ArrayList<>();
+
+            if (jsonObject.get("topics") != null) {
+                for (final Object topic : (List<?>) jsonObject.get("topics")) {
+                    topics.add((String) topic);
+                }
+            }
+
+            return new Entry(Paths.get((String) Objects.requireNonNull(jsonObject.get("file"))),
+                    ((Number) jsonObject.get("lastModified")).longValue(),
+                    ((Number) jsonObject.get("size")).longValue(),
+                    Type.valueOf((String) jsonObject.get("type")),
+                    topics,
+                    jsonObject.get("expiration") != null ? Instant.parse((String) jsonObject.get("expiration")) : null,
+                    (String) jsonObject.get("keyId"),
+                    null);
+        }
+    }
+
+    /**
+     * Adds an entry to this index, replacing any existing entry for the same file.
+     *
+     * @param entry the entry to add
+     */
+    void put(final Entry entry) {
+        entriesByFile.put(entry.getFile(), entry);
+    }
+
+    /**
+     * Returns the entry for the given file.
+     *
+     * @param file the file for which to find an entry
+     *
+     * @return the entry for the given file, or empty if the file is not in this index
+     */
+    Optional<Entry> get(final Path file) {
+        return Optional.ofNullable(entriesByFile.get(file));
+    }
+
+    /**
+     * Returns every entry in this index, sorted by file.
+     *
+     * @return every entry in this index
+     */
+    Collection<Entry> getEntries() {
+        return Collections.unmodifiableCollection(entriesByFile.values());
+    }
+
+    /**
+     * Returns a map of topics to the certificates that serve them. If several certificates serve the same topic, the
+     * certificates are listed from latest to earliest expiration.
+     *
+     * @return a map of topics to the certificates that serve each topic
+     */
+    SortedMap<String, List<Entry>> getCertificatesByTopic() {
+        final SortedMap<String, List<Entry>> certificatesByTopic = new TreeMap<>();
+
+        for (final Entry entry : entriesByFile.values()) {
+            for (final String topic : entry.getTopics()) {
+                certificatesByTopic.computeIfAbsent(topic, t -> new ArrayList<>()).add(entry);
+            }
+        }
+
+        final Comparator<Entry> latestExpirationFirst =
+                Comparator.comparing((Entry entry) -> entry.getExpiration().orElse(Instant.MIN)).reversed();
+
+        certificatesByTopic.values().forEach(entries -> entries.sort(latestExpirationFirst));
+
+        return certificatesByTopic;
+    }
+
+    /**
+     * Loads an index from the given file.
+     *
+     * @param file the file from which to load an index
+     *
+     * @return the index in the given file, or an empty index if the file doesn't exist or can't be understood
+     *
+     * @throws IOException if the file exists, but could not be read
+     */
+    static CredentialIndex load(final Path file) throws IOException {
+        final CredentialIndex index = new CredentialIndex();
+
+        if (Files.exists(file)) {
+            try {
+                final Object jsonEntries = new JsonDeserializer()
+                        .parseJsonObject(Files.readString(file, StandardCharsets.UTF_8))
+                        .get("entries");
+
+                if (jsonEntries instanceof List) {
+                    for (final Object jsonEntry : (List<?>) jsonEntries) {
+                        try {
+                            index.put(Entry.fromJsonObject((Map<?, ?>) jsonEntry));
+                        } catch (final ClassCastException | IllegalArgumentException | NullPointerException |
+                                DateTimeParseException e) {
+                            // An entry we can't understand just means one more file to parse next time
+                        }
+                    }
+                }
+            } catch (final ParseException e) {
+                // Start over with an empty index
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * Writes this index to the given file, replacing the file if it already exists.
+     *
+     * @param file the file to which to write this index
+     *
+     * @throws IOException if the index could not be written
+     */
+    void save(final Path file) throws IOException {
+        final List<Map<String, Object>> jsonEntries = new ArrayList<>(entriesByFile.size());
+
+        for (final Entry entry : entriesByFile.values()) {
+            jsonEntries.add(entry.toJsonObject());
+        }
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+
+        // Write to a temporary file first so a crash never leaves a half-written index behind
+        final Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(temporaryFile, JsonSerializer.writeJsonTextAsString(Map.of("entries", jsonEntries)), StandardCharsets.UTF_8);
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.json.JsonDeserializer;
+import com.eatthepath.json.JsonSerializer;
+import com.eatthepath.json.ParseException;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * A named set of credentials and a default server, so people who work with several apps can switch between them in a
+ * single step. Profiles name a certificate or signing key file, but never contain a certificate password.
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class CredentialProfile {
+
+    private final String name;
+    private final File credentialsFile;
+    private final String keyId;
+    private final String teamId;
+    private final ApnsTarget defaultTarget;
+    private final Set<String> topics;
+
+    private static final String PROFILES_FILENAME = "credential-profiles.json";
+
+    /**
+     * Constructs a new credential profile.
+     *
+     * @param name the name of the profile
+     * @param credentialsFile a PKCS#12 certificate file or PKCS#8 signing key file
+     * @param keyId the ID of the signing key in {@code credentialsFile}; must be {@code null} if
+     * {@code credentialsFile} is a certificate file
+     * @param teamId the ID of the team to which the signing key in {@code credentialsFile} belongs; must be
+     * {@code null} if {@code credentialsFile} is a certificate file
+     * @param defaultTarget the server and port to select when switching to this profile
+     * @param topics the topics to which this profile's signing key may send notifications or, for certificate
+     * profiles, the topics named in the certificate (recorded so routing doesn't need to decrypt the certificate); may
+     * be {@code null}
+     */
+    CredentialProfile(final String name, final File credentialsFile, final String keyId, final String teamId,
+                      final ApnsTarget defaultTarget, final Collection<String> topics) {
+
+        if (StringUtils.isBlank(name)) {
+            throw new IllegalArgumentException("Profile name must not be blank.");
+        }
+
+        this.name = name.trim();
+        this.credentialsFile = Objects.requireNonNull(credentialsFile, "Credentials file must not be null.");
+        this.keyId = StringUtils.trimToNull(keyId);
+        this.teamId = StringUtils.trimToNull(teamId);
+        this.defaultTarget = Objects.requireNonNull(defaultTarget, "Default target must not be null.");
+
+        if ((this.keyId == null) != (this.teamId == null)) {
+            throw new IllegalArgumentException("Signing key profiles must have both a key ID and a team ID.");
+        }
+
+        if (topics != null) {
+            final Set<String> trimmedTopics = new LinkedHashSet<>();
+
+            for (final String topic : topics) {
+                if (StringUtils.isNotBlank(topic)) {
+                    trimmedTopics.add(topic.trim());
+                }
+            }
+
+            this.topics = Collections.unmodifiableSet(trimmedTopics);
+        } else {
+            this.topics = Collections.emptySet();
+        }
+    }
+
+    String getName() {
+        return name;
+    }
+
+    File getCredentialsFile() {
+        return credentialsFile;
+    }
+
+    /**
+     * Indicates whether this profile's credentials file is a signing key (as opposed to a certificate).
+     *
+     * @return {@code true} if this profile uses a signing key or {@code false} if it uses a certificate
+     */
+    boolean isSigningKey() {
+        return keyId != null;
+    }
+
+    String getKeyId() {
+        return keyId;
+    }
+
+    String getTeamId() {
+        return teamId;
+    }
+
+    ApnsTarget getDefaultTarget() {
+        return defaultTarget;
+    }
+
+    /**
+     * Returns the topics to which this profile's credentials may send notifications. Signing keys aren't tied to any
+     * particular topic, so signing key profiles list their topics explicitly; certificate profiles list the topics
+     * named in the certificate when the profile was created, or an empty set for profiles created before topics were
+     * recorded.
+     *
+     * @return the topics associated with this profile
+     */
+    Set<String> getTopics() {
+        return topics;
+    }
+
+    /**
+     * Returns a representation of this profile suitable for serialization as a JSON object.
+     *
+     * @return a map of this profile's properties
+     */
+    Map<String, Object> toJsonObject() {
+        final Map<String, Object> jsonObject = new LinkedHashMap<>();
+
+        jsonObject.put("name", name);
+        jsonObject.put("file", credentialsFile.getAbsolutePath());
+
+        if (isSigningKey()) {
+            jsonObject.put("keyId", keyId);
+            jsonObject.put("teamId", teamId);
+        }
+
+        if (isSigningKey() || !topics.isEmpty()) {
+            jsonObject.put("topics", new ArrayList<>(topics));
+        }
+
+        jsonObject.put("server", defaultTarget.getServer());
+        jsonObject.put("port", defaultTarget.getPort());
+
+        return jsonObject;
+    }
+
+    /**
+     * Reconstructs a profile from a map produced by {@link #toJsonObject()}.
+     *
+     * @param jsonObject the map from which to reconstruct a profile
+     *
+     * @return the reconstructed profile
+     *
+     * @throws IllegalArgumentException if the given map does not represent a valid profile
+     */
+    static CredentialProfile fromJsonObject(final Map<?, ?> jsonObject) {
+        try {
+            return new CredentialProfile((String) jsonObject.get("name"),
+                    new File((String) Objects.requireNonNull(jsonObject.get("file"))),
+                    (String) jsonObject.get("keyId"),
+                    (String) jsonObject.get("teamId"),
+                    new ApnsTarget((String) jsonObject.get("server"), ((Number) jsonObject.get("port")).intValue()),
+                    jsonObject.containsKey("topics") ? toStringList((List<?>) jsonObject.get("topics")) : null);
+        } catch (final ClassCastException | NullPointerException e) {
+            throw new IllegalArgumentException("Not a valid credential profile: " + jsonObject, e);
+        }
+    }
+
+    /**
+     * Returns the file in which credential profiles are saved.
+     *
+     * @return the file in which credential profiles are saved; it may not exist yet
+     */
+    static Path getProfilesFile() {
+        return PushyConsoleApplication.getDataDirectory().resolve(PROFILES_FILENAME);
+    }
+
+    /**
+     * Loads all saved credential profiles. Profiles that can't be understood are skipped.
+     *
+     * @return a list of all saved credential profiles, which may be empty if no profiles have been saved or if the
+     * profiles file could not be read
+     */
+    static List<CredentialProfile> loadProfiles() {
+        return loadProfiles(getProfilesFile());
+    }
+
+    /**
+     * Loads credential profiles from the given file. Profiles that can't be understood are skipped. If the file as a
+     * whole can't be parsed, it's moved aside (with a {@code .corrupt} suffix) before returning an empty list so that
+     * the next save doesn't destroy whatever could still be recovered from it by hand.
+     *
+     * @param profilesFile the file from which to load profiles
+     *
+     * @return a list of the profiles in the given file, which may be empty if the file doesn't exist or could not be
+     * read
+     */
+    static List<CredentialProfile> loadProfiles(final Path profilesFile) {
+        final List<CredentialProfile> profiles = new ArrayList<>();
+
+        if (!Files.exists(profilesFile)) {
+            return profiles;
+        }
+
+        try {
+            final Object jsonProfiles = new JsonDeserializer()
+                    .parseJsonObject(Files.readString(profilesFile, StandardCharsets.UTF_8))
+                    .get("profiles");
+
+            if (jsonProfiles instanceof List) {
+                for (final Object jsonProfile : (List<?>) jsonProfiles) {
+                    try {
+                        profiles.add(fromJsonObject((Map<?, ?>) jsonProfile));
+                    } catch (final ClassCastException | IllegalArgumentException e) {
+                        // Skip anything we can't understand rather than losing every profile
+                    }
+                }
+            }
+        } catch (final ParseException | RuntimeException e) {
+            try {
+                Files.move(profilesFile, profilesFile.resolveSibling(profilesFile.getFileName() + ".corrupt"),
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (final IOException ignored) {
+                // Start over with no profiles
+            }
+        } catch (final IOException e) {
+            // Start over with no profiles
+        }
+
+        return profiles;
+    }
+
+    /**
+     * Saves the given credential profiles, replacing any previously-saved profiles.
+     *
+     * @param profiles the profiles to save
+     *
+     * @throws IOException if the profiles could not be written for any reason
+     */
+    static void saveProfiles(final Collection<CredentialProfile> profiles) throws IOException {
+        saveProfiles(profiles, getProfilesFile());
+    }
+
+    /**
+     * Saves the given credential profiles to the given file, replacing its contents.
+     *
+     * @param profiles the profiles to save
+     * @param profilesFile the file to which to save profiles
+     *
+     * @throws IOException if the profiles could not be written for any reason
+     */
+    static void saveProfiles(final Collection<CredentialProfile> profiles, final Path profilesFile) throws IOException {
+        final List<Map<String, Object>> jsonProfiles = new ArrayList<>(profiles.size());
+
+        for (final CredentialProfile profile : profiles) {
+            jsonProfiles.add(profile.toJsonObject());
+        }
+
+        Files.createDirectories(profilesFile.toAbsolutePath().getParent());
+
+        // Write to a temporary file first so a crash never leaves a half-written (and therefore unreadable) file behind
+        final Path temporaryFile = profilesFile.resolveSibling(profilesFile.getFileName() + ".tmp");
+        Files.writeString(temporaryFile, JsonSerializer.writeJsonTextAsString(Map.of("profiles", jsonProfiles)), StandardCharsets.UTF_8);
+        Files.move(temporaryFile, profilesFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static List<String> toStringList(final List<?> list) {
+        final List<String> strings = new ArrayList<>(list.size());
+
+        for (final Object element : list) {
+            strings.add((String) element);
+        }
+
+        return strings;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Collects queue and latency statistics for notifications of a single delivery priority as they pass through a bulk
+ * send. Statistics may be updated and read from any thread.
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class DeliveryLaneStatistics {
+
+    private int queued = 0;
+    private int inFlight = 0;
+
+    private long dispatched = 0;
+    private long totalWaitNanos = 0;
+    private long maxWaitNanos = 0;
+
+    private long completed = 0;
+    private long totalLatencyNanos = 0;
+
+    synchronized void onQueued() {
+        queued += 1;
+    }
+
+    synchronized void onDiscarded(final int discarded) {
+        queued -= discarded;
+    }
+
+    /**
+     * Notes that a notification has left the queue and been sent.
+     *
+     * @param waitNanos the length of time the notification spent in the queue
+     */
+    synchronized void onDispatched(final long waitNanos) {
+        queued -= 1;
+        inFlight += 1;
+
+        dispatched += 1;
+        totalWaitNanos += waitNanos;
+        maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+    }
+
+    /**
+     * Notes that a send has completed.
+     *
+     * @param latencyNanos the length of time between sending the notification and the send's completion
+     */
+    synchronized void onCompleted(final long latencyNanos) {
+        inFlight -= 1;
+
+        completed += 1;
+        totalLatencyNanos += latencyNanos;
+    }
+
+    synchronized int getQueued() {
+        return queued;
+    }
+
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    synchronized Optional<Duration> getMeanWait() {
+        return dispatched > 0 ? Optional.of(Duration.ofNanos(totalWaitNanos / dispatched)) : Optional.empty();
+    }
+
+    synchronized Duration getMaxWait() {
+        return Duration.ofNanos(maxWaitNanos);
+    }
+
+    synchronized Optional<Duration> getMeanLatency() {
+        return completed > 0 ? Optional.of(Duration.ofNanos(totalLatencyNanos / completed)) : Optional.empty();
+    }
+}
@@ -33,14 +33,18 @@ class DeliveryPriorityListCell extends ListCell<DeliveryPriority> {
     public void updateItem(final DeliveryPriority deliveryPriority, final boolean empty) {
         super.updateItem(deliveryPriority, empty);
 
-        if (!empty) {
-            final ResourceBundle resourceBundle = PushyConsoleApplication.RESOURCE_BUNDLE;
-
-            setText(deliveryPriority == DeliveryPriority.IMMEDIATE ?
-                    resourceBundle.getString("delivery-priority.immediate") :
-                    resourceBundle.getString("delivery-priority.conserve-power"));
+        if (!empty && deliveryPriority != null) {
+            setText(getLocalizedPriority(deliveryPriority));
         } else {
             setText(null);
         }
     }
+
+    static String getLocalizedPriority(final DeliveryPriority deliveryPriority) {
+        final ResourceBundle resourceBundle = PushyConsoleApplication.RESOURCE_BUNDLE;
+
+        return deliveryPriority == DeliveryPriority.IMMEDIATE ?
+                resourceBundle.getString("delivery-priority.immediate") :
+                resourceBundle.getString("delivery-priority.conserve-power");
+    }
 }
@@ -0,0 +1,525 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>A long history of device tokens to which notifications have been sent, along with an optional label and the time
+ * each token was last used. The history answers prefix queries ("which tokens start with {@code 3f0a}?") quickly
+ * enough to run on every keystroke, even when it holds tens of thousands of tokens.</p>
+ *
+ * <p>Tokens are kept in sorted order as hexadecimal digits packed two to a byte in a single shared array, with parallel
+ * arrays of offsets, lengths, last-used times, and labels. Every token that starts with a given prefix therefore
+ * occupies a single contiguous run of the sorted order, which a binary search finds directly; a 64-digit token takes
+ * up 32 bytes of the shared array plus 22 bytes of bookkeeping, and no per-token objects exist until a token is
+ * actually returned from a query.</p>
+ *
+ * <p>The history holds at most {@link #DEFAULT_MAX_ENTRIES} tokens (by default) and forgets the least recently used
+ * token when it would otherwise grow beyond that limit. All methods are safe to call from any thread.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class DeviceTokenHistory {
+
+    private final int maxEntries;
+
+    private byte[] packedDigits = new byte[INITIAL_CAPACITY * 32];
+    private int packedDigitsLength = 0;
+
+    // Bytes in packedDigits that belong to tokens that have since been forgotten
+    private int abandonedPackedDigits = 0;
+
+    private int[] offsets = new int[INITIAL_CAPACITY];
+    private short[] lengths = new short[INITIAL_CAPACITY];
+    private long[] lastUsedMillis = new long[INITIAL_CAPACITY];
+    private String[] labels = new String[INITIAL_CAPACITY];
+
+    private int size = 0;
+
+    /**
+     * The default number of tokens a history holds before it starts forgetting the least recently used tokens.
+     */
+    static final int DEFAULT_MAX_ENTRIES = 65_536;
+
+    /**
+     * The longest token, in hexadecimal digits, that a history will hold.
+     */
+    static final int MAX_TOKEN_LENGTH = 200;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final int MAGIC = 0x50435448; // "PCTH"
+    private static final int VERSION = 1;
+
+    static final String UNREADABLE_FILE_SUFFIX = ".corrupt";
+
+    /**
+     * A single token from the history.
+     */
+    static class Entry {
+
+        private final String token;
+        private final String label;
+        private final Instant lastUsed;
+
+        private Entry(final String token, final String label, final Instant lastUsed) {
+            this.token = token;
+            this.label = label;
+            this.lastUsed = lastUsed;
+        }
+
+        String getToken() {
+            return token;
+        }
+
+        String getLabel() {
+            return label;
+        }
+
+        Instant getLastUsed() {
+            return lastUsed;
+        }
+    }
+
+    DeviceTokenHistory() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    DeviceTokenHistory(final int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Maximum number of entries must be positive.");
+        }
+
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Indicates whether the given string is a token this history can hold: a non-empty string of no more than
+     * {@link #MAX_TOKEN_LENGTH} hexadecimal digits.
+     *
+     * @param token the string to check
+     *
+     * @return {@code true} if the given string is a token this history can hold or {@code false} otherwise
+     */
+    static boolean isValidToken(final String token) {
+        if (token == null || token.isEmpty() || token.length() > MAX_TOKEN_LENGTH) {
+            return false;
+        }
+
+        for (int i = 0; i < token.length(); i++) {
+            if (Character.digit(token.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the number of tokens in this history.
+     *
+     * @return the number of tokens in this history
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Notes that the given token was used at the given time, adding it to the history if it isn't already present.
+     *
+     * @param token the token that was used; must be a {@linkplain #isValidToken(String) valid token}
+     * @param usedAt the time at which the token was used
+     */
+    synchronized void record(final String token, final Instant usedAt) {
+        final byte[] packedToken = pack(token);
+        final int index = find(packedToken, token.length());
+
+        if (index >= 0) {
+            lastUsedMillis[index] = Math.max(lastUsedMillis[index], usedAt.toEpochMilli());
+        } else {
+            insert(-index - 1, packedToken, token.length(), usedAt.toEpochMilli(), null);
+        }
+    }
+
+    /**
+     * Sets the label for the given token, adding the token to the history (as if it had just been used) if it isn't
+     * already present.
+     *
+     * @param token the token to label; must be a {@linkplain #isValidToken(String) valid token}
+     * @param label the token's new label; may be {@code null} to remove the token's label
+     */
+    synchronized void setLabel(final String token, final String label) {
+        final byte[] packedToken = pack(token);
+        final int index = find(packedToken, token.length());
+
+        if (index >= 0) {
+            labels[index] = label;
+        } else {
+            insert(-index - 1, packedToken, token.length(), System.currentTimeMillis(), label);
+        }
+    }
+
+    /**
+     * Returns the history's entry for the given token, if it has one.
+     *
+     * @param token the token for which to find an entry
+     *
+     * @return the entry for the given token, or {@code null} if the history doesn't contain the given token
+     */
+    synchronized Entry get(final String token) {
+        if (!isValidToken(token)) {
+            return null;
+        }
+
+        final int index = find(pack(token), token.length());
+
+        return index >= 0 ? getEntry(index) : null;
+    }
+
+    /**
+     * Returns the most recently used tokens that start with the given (case-insensitive) prefix, most recent first.
+     *
+     * @param prefix the prefix for which to find tokens; may be empty to find the most recently used tokens overall
+     * @param limit the maximum number of tokens to return
+     *
+     * @return a list of at most {@code limit} entries whose tokens start with the given prefix, or an empty list if
+     * the given prefix is not a run of hexadecimal digits
+     */
+    synchronized List<Entry> complete(final String prefix, final int limit) {
+        if (limit < 1 || (!prefix.isEmpty() && !isValidToken(prefix))) {
+            return List.of();
+        }
+
+        final byte[] packedPrefix = pack(prefix);
+
+        // The matching tokens sit in one contiguous run; keep the most recently used of them in a small array sorted
+        // from most to least recently used.
+        final int[] best = new int[limit];
+        int bestCount = 0;
+
+        for (int i = lowerBound(packedPrefix, prefix.length()); i < size && startsWith(i, packedPrefix, prefix.length()); i++) {
+            if (bestCount == limit && lastUsedMillis[i] <= lastUsedMillis[best[limit - 1]]) {
+                continue;
+            }
+
+            int position = Math.min(bestCount, limit - 1);
+
+            while (position > 0 && lastUsedMillis[best[position - 1]] < lastUsedMillis[i]) {
+                best[position] = best[position - 1];
+                position -= 1;
+            }
+
+            best[position] = i;
+            bestCount = Math.min(bestCount + 1, limit);
+        }
+
+        final List<Entry> entries = new ArrayList<>(bestCount);
+
+        for (int i = 0; i < bestCount; i++) {
+            entries.add(getEntry(best[i]));
+        }
+
+        return entries;
+    }
+
+    private Entry getEntry(final int index) {
+        final char[] digits = new char[lengths[index]];
+
+        for (int i = 0; i < digits.length; i++) {
+            digits[i] = Character.forDigit(getDigit(index, i), 16);
+        }
+
+        return new Entry(new String(digits), labels[index], Instant.ofEpochMilli(lastUsedMillis[index]));
+    }
+
+    private int getDigit(final int index, final int position) {
+        final int packedByte = packedDigits[offsets[index] + (position >> 1)];
+        return (position & 1) == 0 ? (packedByte >> 4) & 0x0f : packedByte & 0x0f;
+    }
+
+    private static byte[] pack(final String token) {
+        final byte[] packedToken = new byte[(token.length() + 1) / 2];
+
+        for (int i = 0; i < token.length(); i++) {
+            final int digit = Character.digit(token.charAt(i), 16);
+            packedToken[i >> 1] |= (i & 1) == 0 ? digit << 4 : digit;
+        }
+
+        return packedToken;
+    }
+
+    /**
+     * Compares the first {@code digits} digits of the token at the given index to the given packed digits.
+     */
+    private int compareDigits(final int index, final byte[] packedToken, final int digits) {
+        final int offset = offsets[index];
+        final int wholeBytes = digits >> 1;
+
+        for (int i = 0; i < wholeBytes; i++) {
+            final int comparison = Integer.compare(packedDigits[offset + i] & 0xff, packedToken[i] & 0xff);
+
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+
+        if ((digits & 1) != 0) {
+            return Integer.compare((packedDigits[offset + wholeBytes] >> 4) & 0x0f, (packedToken[wholeBytes] >> 4) & 0x0f);
+        }
+
+        return 0;
+    }
+
+    private int compare(final int index, final byte[] packedToken, final int length) {
+        final int comparison = compareDigits(index, packedToken, Math.min(lengths[index], length));
+        return comparison != 0 ? comparison : Integer.compare(lengths[index], length);
+    }
+
+    private boolean startsWith(final int index, final byte[] packedPrefix, final int length) {
+        return lengths[index] >= length && compareDigits(index, packedPrefix, length) == 0;
+    }
+
+    private int lowerBound(final byte[] packedToken, final int length) {
+        int low = 0;
+        int high = size;
+
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+
+            if (compare(middle, packedToken, length) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Finds the given token in the sorted order.
+     *
+     * @return the index of the given token, or {@code -(insertion point) - 1} if the history does not contain the
+     * given token
+     */
+    private int find(final byte[] packedToken, final int length) {
+        final int index = lowerBound(packedToken, length);
+        return index < size && compare(index, packedToken, length) == 0 ? index : -index - 1;
+    }
+
+    private void insert(int index, final byte[] packedToken, final int length, final long lastUsed, final String label) {
+        if (size == maxEntries) {
+            final int leastRecentlyUsed = findLeastRecentlyUsed();
+            remove(leastRecentlyUsed);
+
+            if (leastRecentlyUsed < index) {
+                index -= 1;
+            }
+        }
+
+        if (size == offsets.length) {
+            final int capacity = Math.min(offsets.length * 2, maxEntries);
+
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lastUsedMillis = Arrays.copyOf(lastUsedMillis, capacity);
+            labels = Arrays.copyOf(labels, capacity);
+        }
+
+        if (packedDigitsLength + packedToken.length > packedDigits.length) {
+            if (abandonedPackedDigits > packedDigitsLength / 2) {
+                compact();
+            }
+
+            if (packedDigitsLength + packedToken.length > packedDigits.length) {
+                packedDigits = Arrays.copyOf(packedDigits, Math.max(packedDigits.length * 2, packedDigitsLength + packedToken.length));
+            }
+        }
+
+        System.arraycopy(offsets, index, offsets, index + 1, size - index);
+        System.arraycopy(lengths, index, lengths, index + 1, size - index);
+        System.arraycopy(lastUsedMillis, index, lastUsedMillis, index + 1, size - index);
+        System.arraycopy(labels, index, labels, index + 1, size - index);
+
+        System.arraycopy(packedToken, 0, packedDigits, packedDigitsLength, packedToken.length);
+
+        offsets[index] = packedDigitsLength;
+        lengths[index] = (short) length;
+        lastUsedMillis[index] = lastUsed;
+        labels[index] = label;
+
+        packedDigitsLength += packedToken.length;
+        size += 1;
+    }
+
+    private int findLeastRecentlyUsed() {
+        int leastRecentlyUsed = 0;
+
+        for (int i = 1; i < size; i++) {
+            if (lastUsedMillis[i] < lastUsedMillis[leastRecentlyUsed]) {
+                leastRecentlyUsed = i;
+            }
+        }
+
+        return leastRecentlyUsed;
+    }
+
+    private void remove(final int index) {
+        abandonedPackedDigits += (lengths[index] + 1) / 2;
+
+        System.arraycopy(offsets, index + 1, offsets, index, size - index - 1);
+        System.arraycopy(lengths, index + 1, lengths, index, size - index - 1);
+        System.arraycopy(lastUsedMillis, index + 1, lastUsedMillis, index, size - index - 1);
+        System.arraycopy(labels, index + 1, labels, index, size - index - 1);
+
+        size -= 1;
+        labels[size] = null;
+    }
+
+    private void compact() {
+        final byte[] compactedDigits = new byte[packedDigits.length];
+        int compactedLength = 0;
+
+        for (int i = 0; i < size; i++) {
+            final int packedLength = (lengths[i] + 1) / 2;
+
+            System.arraycopy(packedDigits, offsets[i], compactedDigits, compactedLength, packedLength);
+            offsets[i] = compactedLength;
+            compactedLength += packedLength;
+        }
+
+        packedDigits = compactedDigits;
+        packedDigitsLength = compactedLength;
+        abandonedPackedDigits = 0;
+    }
+
+    /**
+     * Writes this history to the given file, replacing the file if it already exists.
+     *
+     * @param file the file to which to write this history
+     *
+     * @throws IOException if the history could not be written for any reason
+     */
+    synchronized void save(final Path file) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+
+        // Write to a temporary file first so a crash never leaves a half-written history behind
+        final Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+
+            for (int i = 0; i < size; i++) {
+                out.writeShort(lengths[i]);
+                out.write(packedDigits, offsets[i], (lengths[i] + 1) / 2);
+                out.writeLong(lastUsedMillis[i]);
+                out.writeBoolean(labels[i] != null);
+
+                if (labels[i] != null) {
+                    out.writeUTF(labels[i]);
+                }
+            }
+        }
+
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Loads a history from the given file. A file that doesn't contain a recognizable history (or that was cut short)
+     * is moved aside with a {@value #UNREADABLE_FILE_SUFFIX} suffix so that saving a new history never destroys it.
+     *
+     * @param file the file from which to load a history
+     *
+     * @return the history stored in the given file, an empty history if the file doesn't exist or doesn't contain a
+     * recognizable history, or as much of the history as could be read if the file was cut short
+     *
+     * @throws IOException if the file exists, but could not be read
+     */
+    static DeviceTokenHistory load(final Path file) throws IOException {
+        DeviceTokenHistory history = new DeviceTokenHistory();
+        boolean readable = true;
+
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                readable = false;
+            } else {
+                final int entries = in.readInt();
+
+                for (int i = 0; i < entries; i++) {
+                    final int length = in.readShort();
+
+                    if (length < 1 || length > MAX_TOKEN_LENGTH) {
+                        history = new DeviceTokenHistory();
+                        readable = false;
+
+                        break;
+                    }
+
+                    final byte[] packedToken = new byte[(length + 1) / 2];
+                    in.readFully(packedToken);
+
+                    final long lastUsed = in.readLong();
+                    final String label = in.readBoolean() ? in.readUTF() : null;
+
+                    synchronized (history) {
+                        // Tokens are saved in sorted order, so they almost always belong at the end
+                        if (history.size == 0 || history.compare(history.size - 1, packedToken, length) < 0) {
+                            history.insert(history.size, packedToken, length, lastUsed, label);
+                        } else {
+                            final int index = history.find(packedToken, length);
+
+                            if (index < 0) {
+                                history.insert(-index - 1, packedToken, length, lastUsed, label);
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (final NoSuchFileException e) {
+            // There's no history yet
+        } catch (final EOFException e) {
+            // The history was cut short; we'll start from what we have
+            readable = false;
+        }
+
+        if (!readable) {
+            // The file may be damaged or may have been written by a newer version; either way, keep it around
+            Files.move(file, file.resolveSibling(file.getFileName() + UNREADABLE_FILE_SUFFIX), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        return history;
+    }
+}
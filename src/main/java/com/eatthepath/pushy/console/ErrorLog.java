@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.collections.ObservableListBase;
+import javafx.util.Duration;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * <p>A bounded, observable log of errors encountered while sending notifications. Identical errors (errors of the same
+ * type with the same message thrown from the same place) are collapsed into a single entry with a count, and the log
+ * holds at most a fixed number of distinct entries; when it's full, the oldest entry is discarded to make room for a
+ * new one.</p>
+ *
+ * <p>Errors may be recorded from any thread. Recorded errors are held aside and merged into the log on the JavaFX
+ * application thread at most once per {@link #UPDATE_INTERVAL}, so a burst of failures produces a handful of list
+ * changes rather than one per failure.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class ErrorLog extends ObservableListBase<ErrorLog.Entry> {
+
+    static final int DEFAULT_CAPACITY = 256;
+    static final Duration UPDATE_INTERVAL = Duration.millis(250);
+
+    // Entries are stored in a ring; head is the physical index of the oldest entry
+    private final Entry[] entries;
+    private int head = 0;
+    private int size = 0;
+
+    private final Map<String, Entry> entriesBySignature = new HashMap<>();
+
+    private final ReadOnlyIntegerWrapper totalErrorCount = new ReadOnlyIntegerWrapper();
+
+    // Guarded by pendingErrors
+    private final Map<String, PendingError> pendingErrors = new LinkedHashMap<>();
+    private boolean updateScheduled = false;
+
+    private static class PendingError {
+        private final Throwable error;
+        private int count = 0;
+        private Instant lastOccurrence;
+
+        private PendingError(final Throwable error) {
+            this.error = error;
+        }
+    }
+
+    /**
+     * A single, possibly-repeated error in an error log.
+     */
+    static class Entry {
+
+        private final Throwable error;
+        private final Instant firstOccurrence;
+
+        private final ReadOnlyIntegerWrapper count = new ReadOnlyIntegerWrapper();
+        private final ReadOnlyObjectWrapper<Instant> lastOccurrence = new ReadOnlyObjectWrapper<>();
+
+        private String stackTrace;
+
+        private Entry(final Throwable error, final Instant firstOccurrence) {
+            this.error = error;
+            this.firstOccurrence = firstOccurrence;
+        }
+
+        /**
+         * Returns the first occurrence of this entry's error; later occurrences are counted but not retained.
+         *
+         * @return the first occurrence of this entry's error
+         */
+        Throwable getError() {
+            return error;
+        }
+
+        String getMessage() {
+            return error.getLocalizedMessage() != null ? error.getLocalizedMessage() : error.getClass().getName();
+        }
+
+        Instant getFirstOccurrence() {
+            return firstOccurrence;
+        }
+
+        int getCount() {
+            return count.get();
+        }
+
+        ReadOnlyIntegerProperty countProperty() {
+            return count.getReadOnlyProperty();
+        }
+
+        Instant getLastOccurrence() {
+            return lastOccurrence.get();
+        }
+
+        ReadOnlyObjectProperty<Instant> lastOccurrenceProperty() {
+            return lastOccurrence.getReadOnlyProperty();
+        }
+
+        /**
+         * Returns the stack trace of this entry's error. The stack trace is formatted the first time it's requested
+         * and cached thereafter.
+         *
+         * @return the stack trace of this entry's error
+         */
+        String getStackTrace() {
+            if (stackTrace == null) {
+                final StringWriter stringWriter = new StringWriter();
+                error.printStackTrace(new PrintWriter(stringWriter));
+
+                stackTrace = stringWriter.toString();
+            }
+
+            return stackTrace;
+        }
+    }
+
+    /**
+     * Constructs a new error log with the given maximum number of distinct entries.
+     *
+     * @param capacity the maximum number of distinct entries to retain
+     */
+    ErrorLog(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+
+        this.entries = new Entry[capacity];
+    }
+
+    /**
+     * Records an error. This method may be called from any thread; the error will appear in the log the next time
+     * pending errors are merged on the JavaFX application thread.
+     *
+     * @param error the error to record
+     */
+    void record(final Throwable error) {
+        final boolean shouldScheduleUpdate;
+
+        synchronized (pendingErrors) {
+            final PendingError pendingError = pendingErrors.computeIfAbsent(getSignature(error), signature -> new PendingError(error));
+            pendingError.count += 1;
+            pendingError.lastOccurrence = Instant.now();
+
+            shouldScheduleUpdate = !updateScheduled;
+            updateScheduled = true;
+        }
+
+        if (shouldScheduleUpdate) {
+            Platform.runLater(() -> {
+                final PauseTransition pauseTransition = new PauseTransition(UPDATE_INTERVAL);
+                pauseTransition.setOnFinished(event -> mergePendingErrors());
+                pauseTransition.play();
+            });
+        }
+    }
+
+    private void mergePendingErrors() {
+        final Map<String, PendingError> errorsToMerge;
+
+        synchronized (pendingErrors) {
+            errorsToMerge = new LinkedHashMap<>(pendingErrors);
+            pendingErrors.clear();
+            updateScheduled = false;
+        }
+
+        beginChange();
+
+        try {
+            errorsToMerge.forEach((signature, pendingError) ->
+                    add(signature, pendingError.error, pendingError.count, pendingError.lastOccurrence));
+        } finally {
+            endChange();
+        }
+    }
+
+    /**
+     * Adds occurrences of an error to this log immediately. Must be called on the JavaFX application thread (or, in
+     * tests, on a single thread with no live UI).
+     *
+     * @param error the error to add
+     * @param occurrences the number of times the error occurred
+     * @param lastOccurrence the time at which the error most recently occurred
+     */
+    void add(final Throwable error, final int occurrences, final Instant lastOccurrence) {
+        beginChange();
+
+        try {
+            add(getSignature(error), error, occurrences, lastOccurrence);
+        } finally {
+            endChange();
+        }
+    }
+
+    private void add(final String signature, final Throwable error, final int occurrences, final Instant lastOccurrence) {
+        Entry entry = entriesBySignature.get(signature);
+
+        if (entry == null) {
+            if (size == entries.length) {
+                final Entry evictedEntry = entries[head];
+
+                entriesBySignature.values().remove(evictedEntry);
+                entries[head] = null;
+                head = (head + 1) % entries.length;
+                size -= 1;
+
+                nextRemove(0, evictedEntry);
+            }
+
+            entry = new Entry(error, lastOccurrence);
+            entries[(head + size) % entries.length] = entry;
+            size += 1;
+
+            entriesBySignature.put(signature, entry);
+            nextAdd(size - 1, size);
+        }
+
+        entry.count.set(entry.count.get() + occurrences);
+        entry.lastOccurrence.set(lastOccurrence);
+
+        totalErrorCount.set(totalErrorCount.get() + occurrences);
+    }
+
+    /**
+     * Removes all entries from this log and resets its total error count.
+     */
+    @Override
+    public void clear() {
+        beginChange();
+
+        try {
+            if (size > 0) {
+                nextRemove(0, new ArrayList<>(this));
+            }
+
+            Arrays.fill(entries, null);
+            head = 0;
+            size = 0;
+            entriesBySignature.clear();
+        } finally {
+            endChange();
+        }
+
+        totalErrorCount.set(0);
+    }
+
+    /**
+     * Returns the total number of errors recorded in this log, including repeated occurrences and occurrences of
+     * entries that have since been discarded.
+     *
+     * @return the total number of errors recorded in this log
+     */
+    ReadOnlyIntegerProperty totalErrorCountProperty() {
+        return totalErrorCount.getReadOnlyProperty();
+    }
+
+    @Override
+    public Entry get(final int index) {
+        Objects.checkIndex(index, size);
+        return entries[(head + index) % entries.length];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    static String getSignature(final Throwable error) {
+        final StackTraceElement[] stackTrace = error.getStackTrace();
+
+        return error.getClass().getName() + '\n' +
+                error.getMessage() + '\n' +
+                (stackTrace.length > 0 ? stackTrace[0].toString() : "");
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import javafx.beans.binding.Bindings;
+import javafx.scene.control.ListCell;
+
+import java.text.MessageFormat;
+import java.util.Date;
+import java.util.ResourceBundle;
+
+class ErrorLogEntryListCell extends ListCell<ErrorLog.Entry> {
+
+    @Override
+    public void updateItem(final ErrorLog.Entry entry, final boolean empty) {
+        super.updateItem(entry, empty);
+
+        textProperty().unbind();
+
+        if (!empty && entry != null) {
+            // Repeated errors update an existing entry in place, so the text has to follow the entry's count
+            textProperty().bind(Bindings.createStringBinding(() -> getEntryText(entry),
+                    entry.countProperty(), entry.lastOccurrenceProperty()));
+        } else {
+            setText(null);
+        }
+    }
+
+    static String getEntryText(final ErrorLog.Entry entry) {
+        final ResourceBundle resourceBundle = PushyConsoleApplication.RESOURCE_BUNDLE;
+        final Date lastOccurrence = Date.from(entry.getLastOccurrence());
+
+        return entry.getCount() > 1 ?
+                new MessageFormat(resourceBundle.getString("error-log.entry.repeated")).format(new Object[] { lastOccurrence, entry.getMessage(), entry.getCount() }) :
+                new MessageFormat(resourceBundle.getString("error-log.entry")).format(new Object[] { lastOccurrence, entry.getMessage() });
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import javafx.application.Platform;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableListBase;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A read-only, filtered view of the results in a {@link NotificationResultStore}. The view holds only the IDs of
+ * matching rows; the initial set of matching rows comes from a {@link NotificationResultIndex}, and results added to
+ * the store after the filter has been applied are tested individually as they arrive.
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class FilteredNotificationResultList extends ObservableListBase<NotificationResult> {
+
+    private final NotificationResultStore store;
+
+    private NotificationResultFilter filter = NotificationResultFilter.EMPTY;
+    private IntList rowIds = new IntList();
+    private int checkedRows = 0;
+    private boolean catchUpScheduled = false;
+
+    /**
+     * A lightweight list view of a set of row IDs that can be handed to listeners as the list of removed elements
+     * without copying every removed result.
+     */
+    private class RowIdListView extends AbstractList<NotificationResult> {
+
+        private final IntList rowIds;
+
+        private RowIdListView(final IntList rowIds) {
+            this.rowIds = rowIds;
+        }
+
+        @Override
+        public NotificationResult get(final int index) {
+            return store.get(rowIds.get(index));
+        }
+
+        @Override
+        public int size() {
+            return rowIds.size();
+        }
+    }
+
+    FilteredNotificationResultList(final NotificationResultStore store) {
+        this.store = Objects.requireNonNull(store);
+
+        store.addListener((ListChangeListener<NotificationResult>) change -> checkNewRows());
+    }
+
+    /**
+     * Replaces the current filter and the set of rows that match it.
+     *
+     * @param filter the new filter
+     * @param matchingRowIds the IDs (in ascending order) of all rows currently in the store that match the new filter
+     * @param checkedRows the number of rows in the store when the set of matching rows was computed
+     */
+    void setFilter(final NotificationResultFilter filter, final int[] matchingRowIds, final int checkedRows) {
+        final IntList removedRowIds = rowIds;
+
+        this.filter = Objects.requireNonNull(filter);
+        this.rowIds = new IntList(matchingRowIds.length);
+        this.checkedRows = checkedRows;
+
+        for (final int rowId : matchingRowIds) {
+            rowIds.add(rowId);
+        }
+
+        beginChange();
+
+        if (!removedRowIds.isEmpty()) {
+            nextRemove(0, (List<NotificationResult>) new RowIdListView(removedRowIds));
+        }
+
+        if (!rowIds.isEmpty()) {
+            nextAdd(0, rowIds.size());
+        }
+
+        endChange();
+
+        // Catch up on anything that arrived between computing the matching rows and now
+        checkNewRows();
+    }
+
+    NotificationResultFilter getFilter() {
+        return filter;
+    }
+
+    private void checkNewRows() {
+        final int sizeBeforeCheck = rowIds.size();
+
+        if (filter.isEmpty()) {
+            // Every row matches, so there's no need to read any of them
+            while (checkedRows < store.size()) {
+                rowIds.add(checkedRows++);
+            }
+        } else {
+            final int limit = Math.min(store.size(), checkedRows + NotificationResultStore.MAX_ROWS_PER_PASS);
+
+            while (checkedRows < limit) {
+                final int rowId = checkedRows++;
+
+                // Test only the filtered columns; rows are decoded only when somebody actually looks at them
+                if (filter.matches(store, rowId)) {
+                    rowIds.add(rowId);
+                }
+            }
+
+            if (checkedRows < store.size() && !catchUpScheduled) {
+                catchUpScheduled = true;
+
+                Platform.runLater(() -> {
+                    catchUpScheduled = false;
+                    checkNewRows();
+                });
+            }
+        }
+
+        if (rowIds.size() > sizeBeforeCheck) {
+            beginChange();
+            nextAdd(sizeBeforeCheck, rowIds.size());
+            endChange();
+        }
+    }
+
+    @Override
+    public NotificationResult get(final int index) {
+        return store.get(rowIds.get(index));
+    }
+
+    @Override
+    public int size() {
+        return rowIds.size();
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * <p>Assigns a small, dense integer ID to each distinct value it sees, so callers can store a value that repeats many
+ * times (a payload, a topic, or a rejection reason, for example) as a four-byte reference instead of a separate copy
+ * per use. Values are matched by content (i.e. by {@link Object#equals(Object)} and {@link Object#hashCode()}), not
+ * identity.</p>
+ *
+ * <p>Values must only be interned on a single thread, but any thread may look up values by any ID it has already
+ * been given.</p>
+ *
+ * @param <T> the type of value in the table
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class InternTable<T> {
+
+    private final Map<T, Integer> idsByValue = new HashMap<>();
+
+    private volatile Object[] values = new Object[16];
+    private volatile int size = 0;
+
+    /**
+     * Returns the ID for the given value, adding the value to the table if it's not already present.
+     *
+     * @param value the value to intern
+     *
+     * @return the ID of the given value
+     */
+    int intern(final T value) {
+        Objects.requireNonNull(value, "Value must not be null.");
+
+        final Integer existingId = idsByValue.get(value);
+
+        if (existingId != null) {
+            return existingId;
+        }
+
+        final int id = size;
+        Object[] values = this.values;
+
+        if (id == values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+
+        values[id] = value;
+
+        // Publish the (possibly new) array before the new size so readers never see an ID they can't look up
+        this.values = values;
+        size = id + 1;
+
+        idsByValue.put(value, id);
+
+        return id;
+    }
+
+    /**
+     * Returns the value with the given ID.
+     *
+     * @param id the ID of the value to return
+     *
+     * @return the value with the given ID
+     */
+    @SuppressWarnings("unchecked")
+    T get(final int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("ID: " + id);
+        }
+
+        return (T) values[id];
+    }
+
+    /**
+     * Returns the number of distinct values in this table.
+     *
+     * @return the number of distinct values in this table
+     */
+    int size() {
+        return size;
+    }
+}
@@ -0,0 +1,463 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * <p>A persistent registry of device tokens that the APNs server has reported as no longer valid. The registry is
+ * stored in a memory-mapped file as an open-addressing hash table with linear probing; each slot holds a packed 32-byte
+ * token key followed by the time at which the token became invalid, so a registry with hundreds of thousands of tokens
+ * occupies only a few megabytes and can be consulted without any per-token heap allocation.</p>
+ *
+ * <p>Tokens that are exactly 32 bytes long (64 hexadecimal characters) are stored verbatim; other tokens are reduced
+ * to a 32-byte key with SHA-256.</p>
+ *
+ * <p>When the table fills up, a larger table is built in a separate file and moved into place in a single step, so a
+ * crash while growing the table leaves either the old table or the new one. A registry whose recorded size doesn't
+ * fit its table is rebuilt from the table's contents when it's opened.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class InvalidTokenRegistry implements Closeable {
+
+    private final Path registryFile;
+
+    private FileChannel fileChannel;
+    private MappedByteBuffer buffer;
+
+    private int capacity;
+    private int size;
+
+    private static final int MAGIC = 0x50434954; // "PCIT"
+    private static final int VERSION = 1;
+
+    private static final int HEADER_LENGTH = 16;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int SIZE_OFFSET = 12;
+
+    static final int KEY_LENGTH = 32;
+    private static final int SLOT_LENGTH = KEY_LENGTH + Long.BYTES;
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final double MAX_LOAD_FACTOR = 0.5;
+
+    /**
+     * Opens the invalid token registry stored in the given file, creating a new, empty registry if the file does not
+     * exist or does not contain a recognizable registry.
+     *
+     * @param registryFile the file in which the registry is stored
+     *
+     * @throws IOException if the registry file could not be opened or created for any reason
+     */
+    InvalidTokenRegistry(final Path registryFile) throws IOException {
+        Objects.requireNonNull(registryFile, "Registry file must not be null.");
+
+        this.registryFile = registryFile;
+
+        if (registryFile.getParent() != null) {
+            Files.createDirectories(registryFile.getParent());
+        }
+
+        // A resize that never finished leaves the original registry untouched
+        Files.deleteIfExists(getResizedFile());
+
+        fileChannel = FileChannel.open(registryFile,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        final boolean existingRegistry;
+        {
+            if (fileChannel.size() >= HEADER_LENGTH) {
+                final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+                fileChannel.read(header, 0);
+
+                final int storedCapacity = header.getInt(CAPACITY_OFFSET);
+
+                existingRegistry = header.getInt(MAGIC_OFFSET) == MAGIC &&
+                        header.getInt(VERSION_OFFSET) == VERSION &&
+                        Integer.bitCount(storedCapacity) == 1 &&
+                        fileChannel.size() >= HEADER_LENGTH + ((long) storedCapacity * SLOT_LENGTH);
+
+                if (existingRegistry) {
+                    capacity = storedCapacity;
+                    size = header.getInt(SIZE_OFFSET);
+                }
+            } else {
+                existingRegistry = false;
+            }
+        }
+
+        if (existingRegistry) {
+            buffer = map(capacity);
+
+            if (size < 0 || size > capacity * MAX_LOAD_FACTOR) {
+                // The header doesn't agree with the table (the size can never legitimately exceed the load factor), so
+                // trust the table instead and rebuild it with room to spare
+                final int occupiedSlots = countOccupiedSlots();
+
+                int rebuiltCapacity = capacity;
+
+                while (occupiedSlots + 1 > rebuiltCapacity * MAX_LOAD_FACTOR) {
+                    rebuiltCapacity *= 2;
+                }
+
+                resize(rebuiltCapacity);
+            }
+        } else {
+            fileChannel.truncate(0);
+
+            capacity = INITIAL_CAPACITY;
+            size = 0;
+
+            buffer = map(capacity);
+
+            buffer.putInt(MAGIC_OFFSET, MAGIC);
+            buffer.putInt(VERSION_OFFSET, VERSION);
+            buffer.putInt(CAPACITY_OFFSET, capacity);
+            buffer.putInt(SIZE_OFFSET, size);
+        }
+    }
+
+    private MappedByteBuffer map(final int slots) throws IOException {
+        return fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_LENGTH + ((long) slots * SLOT_LENGTH));
+    }
+
+    /**
+     * Returns the time at which the given token was reported as invalid, if the token is known to be invalid.
+     *
+     * @param token the (sanitized) device token to check
+     *
+     * @return the time at which the given token became invalid, or an empty {@code Optional} if the token is not known
+     * to be invalid
+     */
+    synchronized Optional<Instant> getInvalidationTimestamp(final String token) {
+        final int slot = findSlot(getKey(token));
+        final long timestamp = buffer.getLong(getSlotOffset(slot) + KEY_LENGTH);
+
+        return timestamp != 0 ? Optional.of(Instant.ofEpochMilli(timestamp)) : Optional.empty();
+    }
+
+    /**
+     * Records the given token as invalid as of the given time. If the token is already registered as invalid, the
+     * later of the two invalidation times is retained.
+     *
+     * @param token the (sanitized) device token to register as invalid
+     * @param invalidationTimestamp the time at which the token became invalid
+     *
+     * @throws IOException if the registry could not be expanded to accommodate the new token
+     */
+    synchronized void registerInvalidToken(final String token, final Instant invalidationTimestamp) throws IOException {
+        Objects.requireNonNull(invalidationTimestamp, "Invalidation timestamp must not be null.");
+
+        if (size + 1 > capacity * MAX_LOAD_FACTOR) {
+            resize(capacity * 2);
+        }
+
+        final byte[] key = getKey(token);
+        final int offset = getSlotOffset(findSlot(key));
+
+        // Zero marks an empty slot, so make sure real timestamps never collide with it.
+        final long timestamp = Math.max(1, invalidationTimestamp.toEpochMilli());
+        final long existingTimestamp = buffer.getLong(offset + KEY_LENGTH);
+
+        if (existingTimestamp == 0) {
+            putBytes(offset, key, 0, KEY_LENGTH);
+            buffer.putLong(offset + KEY_LENGTH, timestamp);
+
+            buffer.putInt(SIZE_OFFSET, ++size);
+        } else if (timestamp > existingTimestamp) {
+            buffer.putLong(offset + KEY_LENGTH, timestamp);
+        }
+    }
+
+    /**
+     * Removes the given token from the registry (if present), generally because the APNs server has since accepted a
+     * notification for the token.
+     *
+     * @param token the (sanitized) device token to remove from the registry
+     *
+     * @return {@code true} if the token was present in the registry or {@code false} otherwise
+     */
+    synchronized boolean removeToken(final String token) {
+        int slot = findSlot(getKey(token));
+
+        if (buffer.getLong(getSlotOffset(slot) + KEY_LENGTH) == 0) {
+            return false;
+        }
+
+        // Backward-shift deletion: rather than leaving a tombstone, walk the rest of the probe run and move back any
+        // entry that would otherwise become unreachable once this slot is empty.
+        final byte[] candidateKey = new byte[KEY_LENGTH];
+        int candidate = slot;
+
+        while (true) {
+            clearSlot(slot);
+
+            while (true) {
+                candidate = (candidate + 1) & (capacity - 1);
+
+                final int candidateOffset = getSlotOffset(candidate);
+
+                if (buffer.getLong(candidateOffset + KEY_LENGTH) == 0) {
+                    buffer.putInt(SIZE_OFFSET, --size);
+                    return true;
+                }
+
+                getBytes(candidateOffset, candidateKey, 0, KEY_LENGTH);
+                final int home = getHomeSlot(candidateKey);
+
+                // The candidate can move into the vacated slot only if its home slot does not lie (cyclically) between
+                // the vacated slot and the candidate's current position.
+                final boolean homeBetween = slot <= candidate ?
+                        (slot < home && home <= candidate) :
+                        (slot < home || home <= candidate);
+
+                if (!homeBetween) {
+                    break;
+                }
+            }
+
+            final int slotOffset = getSlotOffset(slot);
+            final int candidateOffset = getSlotOffset(candidate);
+
+            putBytes(slotOffset, candidateKey, 0, KEY_LENGTH);
+            buffer.putLong(slotOffset + KEY_LENGTH, buffer.getLong(candidateOffset + KEY_LENGTH));
+
+            slot = candidate;
+        }
+    }
+
+    /**
+     * Returns the number of tokens in this registry.
+     *
+     * @return the number of tokens in this registry
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    private int findSlot(final byte[] key) {
+        int slot = getHomeSlot(key);
+
+        while (true) {
+            final int offset = getSlotOffset(slot);
+
+            if (buffer.getLong(offset + KEY_LENGTH) == 0 || keyMatches(offset, key)) {
+                return slot;
+            }
+
+            slot = (slot + 1) & (capacity - 1);
+        }
+    }
+
+    private boolean keyMatches(final int offset, final byte[] key) {
+        for (int i = 0; i < KEY_LENGTH; i++) {
+            if (buffer.get(offset + i) != key[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void clearSlot(final int slot) {
+        final int offset = getSlotOffset(slot);
+
+        for (int i = 0; i < SLOT_LENGTH; i += Long.BYTES) {
+            buffer.putLong(offset + i, 0);
+        }
+    }
+
+    private void getBytes(final int offset, final byte[] destination, final int destinationOffset, final int length) {
+        for (int i = 0; i < length; i++) {
+            destination[destinationOffset + i] = buffer.get(offset + i);
+        }
+    }
+
+    private void putBytes(final int offset, final byte[] source, final int sourceOffset, final int length) {
+        for (int i = 0; i < length; i++) {
+            buffer.put(offset + i, source[sourceOffset + i]);
+        }
+    }
+
+    private int countOccupiedSlots() {
+        int occupiedSlots = 0;
+
+        for (int slot = 0; slot < capacity; slot++) {
+            if (buffer.getLong(getSlotOffset(slot) + KEY_LENGTH) != 0) {
+                occupiedSlots += 1;
+            }
+        }
+
+        return occupiedSlots;
+    }
+
+    private Path getResizedFile() {
+        return registryFile.resolveSibling(registryFile.getFileName() + ".resizing");
+    }
+
+    private void resize(final int newCapacity) throws IOException {
+        // Copy the occupied slots out of the table, then build the larger table in a separate file and swap it in so a
+        // crash partway through never leaves an empty (or half-filled) table behind.
+        final byte[] entries = new byte[countOccupiedSlots() * SLOT_LENGTH];
+        {
+            int entryOffset = 0;
+
+            for (int slot = 0; slot < capacity; slot++) {
+                final int offset = getSlotOffset(slot);
+
+                if (buffer.getLong(offset + KEY_LENGTH) != 0) {
+                    getBytes(offset, entries, entryOffset, SLOT_LENGTH);
+                    entryOffset += SLOT_LENGTH;
+                }
+            }
+        }
+
+        final Path resizedFile = getResizedFile();
+
+        final MappedByteBuffer originalBuffer = buffer;
+        final int originalCapacity = capacity;
+        final int originalSize = size;
+
+        try (final FileChannel resizedChannel = FileChannel.open(resizedFile, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            capacity = newCapacity;
+            size = entries.length / SLOT_LENGTH;
+            buffer = resizedChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_LENGTH + ((long) capacity * SLOT_LENGTH));
+
+            buffer.putInt(MAGIC_OFFSET, MAGIC);
+            buffer.putInt(VERSION_OFFSET, VERSION);
+            buffer.putInt(CAPACITY_OFFSET, capacity);
+            buffer.putInt(SIZE_OFFSET, size);
+
+            final byte[] key = new byte[KEY_LENGTH];
+
+            for (int entryOffset = 0; entryOffset < entries.length; entryOffset += SLOT_LENGTH) {
+                System.arraycopy(entries, entryOffset, key, 0, KEY_LENGTH);
+
+                putBytes(getSlotOffset(findSlot(key)), entries, entryOffset, SLOT_LENGTH);
+            }
+
+            buffer.force();
+        } catch (final IOException e) {
+            // Carry on with the original table
+            buffer = originalBuffer;
+            capacity = originalCapacity;
+            size = originalSize;
+
+            Files.deleteIfExists(resizedFile);
+            throw e;
+        }
+
+        fileChannel.close();
+
+        try {
+            Files.move(resizedFile, registryFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (final AtomicMoveNotSupportedException e) {
+            Files.move(resizedFile, registryFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        fileChannel = FileChannel.open(registryFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = map(capacity);
+    }
+
+    private int getHomeSlot(final byte[] key) {
+        long hash = 0;
+
+        for (int i = 0; i < Long.BYTES; i++) {
+            hash = (hash << 8) | (key[i] & 0xff);
+        }
+
+        // Tokens are usually random already, but hashed keys from short or non-standard tokens may not be; a final
+        // mixing step (borrowed from MurmurHash3) spreads them across the table either way.
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+
+        return (int) hash & (capacity - 1);
+    }
+
+    private static int getSlotOffset(final int slot) {
+        return HEADER_LENGTH + (slot * SLOT_LENGTH);
+    }
+
+    static byte[] getKey(final String token) {
+        Objects.requireNonNull(token, "Token must not be null.");
+
+        if (token.length() == KEY_LENGTH * 2) {
+            final byte[] key = new byte[KEY_LENGTH];
+            boolean hex = true;
+
+            for (int i = 0; i < KEY_LENGTH && hex; i++) {
+                final int high = Character.digit(token.charAt(i * 2), 16);
+                final int low = Character.digit(token.charAt((i * 2) + 1), 16);
+
+                if (high < 0 || low < 0) {
+                    hex = false;
+                } else {
+                    key[i] = (byte) ((high << 4) | low);
+                }
+            }
+
+            if (hex) {
+                return key;
+            }
+        }
+
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+        } catch (final NoSuchAlgorithmException e) {
+            // All Java platforms are required to support SHA-256
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Flushes any pending changes to disk and closes the registry file.
+     *
+     * @throws IOException if the registry file could not be closed for any reason
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        fileChannel.close();
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.json.JsonDeserializer;
+import com.eatthepath.json.ParseException;
+import com.eatthepath.pushy.apns.ApnsPushNotification;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * <p>Reads notifications from a stream of JSON Lines (see <a href="https://jsonlines.org/">jsonlines.org</a>), one
+ * JSON object per notification in the form accepted by {@link NotificationRelay}. Lines are read one at a time as they
+ * arrive, so the stream may be arbitrarily long (or may never end at all).</p>
+ *
+ * <p>Unlike a bulk send file, a stream is usually produced by another program that's still running, so a line that
+ * can't be understood doesn't end the stream; it's reported and skipped.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class JsonLinesNotificationReader implements NotificationSource, Closeable {
+
+    private final BufferedReader reader;
+    private final ObjLongConsumer<String> invalidLineConsumer;
+
+    private long line = 0;
+
+    /**
+     * Constructs a new reader that reads notifications from the given source.
+     *
+     * @param reader the source from which to read notifications
+     * @param invalidLineConsumer a consumer for descriptions of lines that could not be understood, along with their
+     * (one-based) line numbers; called on the reading thread
+     */
+    JsonLinesNotificationReader(final Reader reader, final ObjLongConsumer<String> invalidLineConsumer) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        this.invalidLineConsumer = invalidLineConsumer;
+    }
+
+    /**
+     * Reads the next notification from the stream, skipping blank lines and lines that could not be understood.
+     *
+     * @return the next notification in the stream, or {@code null} if the stream has ended
+     *
+     * @throws IOException if the stream could not be read
+     */
+    @Override
+    public ApnsPushNotification read() throws IOException {
+        for (String text = reader.readLine(); text != null; text = reader.readLine()) {
+            line += 1;
+
+            if (text.isBlank()) {
+                continue;
+            }
+
+            try {
+                return NotificationRelay.parseNotification(new JsonDeserializer().parseJsonObject(text));
+            } catch (final ParseException | RuntimeException e) {
+                // The parser reports some kinds of malformed input (like bare words) with unchecked exceptions
+                invalidLineConsumer.accept(e.getMessage(), line);
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
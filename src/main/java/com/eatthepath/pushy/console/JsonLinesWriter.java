@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.json.JsonSerializer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * Writes lines of JSON from any thread, flushing each line as soon as it's written so readers on the other end see
+ * results as they arrive. Write failures (usually because the reader went away) are remembered rather than thrown,
+ * since lines are typically written from completion handlers that have nobody to throw to.
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class JsonLinesWriter {
+
+    private final Writer writer;
+    private IOException writeFailure;
+
+    JsonLinesWriter(final Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Writes the given object as a single line of JSON, unless an earlier write has already failed.
+     *
+     * @param jsonObject the object to write
+     */
+    synchronized void writeLine(final Map<String, Object> jsonObject) {
+        if (writeFailure != null) {
+            return;
+        }
+
+        try {
+            JsonSerializer.writeJsonText(jsonObject, writer);
+            writer.write('\n');
+            writer.flush();
+        } catch (final IOException e) {
+            writeFailure = e;
+        }
+    }
+
+    /**
+     * Throws the exception that caused an earlier write to fail, if any.
+     *
+     * @throws IOException if an earlier write failed
+     */
+    synchronized void checkForFailure() throws IOException {
+        if (writeFailure != null) {
+            throw writeFailure;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.json.JsonSerializer;
+import com.eatthepath.pushy.apns.ApnsPushNotification;
+import com.eatthepath.pushy.apns.DeliveryPriority;
+import com.eatthepath.pushy.apns.PushNotificationResponse;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
+
+/**
+ * <p>Sends a stream of notifications from another program without ever showing a window, as in
+ * {@code generate-notifications | launcher --pipe > results.jsonl}. Notifications are read from standard input as JSON
+ * Lines in the form accepted by {@link NotificationRelay}, and each result is written to standard output as a line of
+ * JSON (with the same fields as a JSON Lines export) as soon as it arrives. Results may arrive in a different order
+ * than their notifications; lines that couldn't be understood are reported with their line numbers.</p>
+ *
+ * <p>Notifications are routed by topic with the user's saved credential profiles. Signing key profiles work as-is;
+ * certificate profiles are unlocked with the password in the {@value #CERTIFICATE_PASSWORD_VARIABLE} environment
+ * variable and skipped if it isn't set. Each set of credentials gets a single pooled client.</p>
+ *
+ * <p>Sending is handled by {@link BulkSender}, which bounds both the number of notifications in flight and the number
+ * waiting to be sent, and results are written out rather than kept, so memory use stays constant no matter how long the
+ * stream runs.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class NotificationPipe {
+
+    /**
+     * The command-line argument that starts Pushy Console in pipe mode.
+     */
+    static final String PIPE_ARGUMENT = "--pipe";
+
+    static final String CERTIFICATE_PASSWORD_VARIABLE = "PUSHY_CONSOLE_CERTIFICATE_PASSWORD";
+
+    private static final Duration CLIENT_CLOSE_TIMEOUT = Duration.ofSeconds(5);
+
+    private NotificationPipe() {
+    }
+
+    /**
+     * Runs pipe mode until standard input is exhausted.
+     *
+     * @param in the stream from which to read notifications
+     * @param out the stream to which to write results
+     * @param err the stream to which to write diagnostic messages
+     *
+     * @return a process exit status: zero if every notification was read and every result written, or non-zero
+     * otherwise
+     */
+    static int run(final InputStream in, final OutputStream out, final PrintStream err) {
+        final TopicRouter router = buildTopicRouter(CredentialProfile.loadProfiles(),
+                System.getenv(CERTIFICATE_PASSWORD_VARIABLE), err);
+
+        if (router.getRoutes().isEmpty()) {
+            err.println("No usable credential profiles; save at least one profile in Pushy Console first.");
+            return 2;
+        }
+
+        final ApnsClientPool apnsClientPool = new ApnsClientPool();
+
+        try {
+            final long sent = pipe(new InputStreamReader(in, StandardCharsets.UTF_8), router,
+                    (pushNotification, route) -> sendNotification(apnsClientPool, pushNotification, route),
+                    new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+
+            err.println("Sent " + sent + " notifications.");
+            return 0;
+        } catch (final IOException e) {
+            err.println("Pipe stopped: " + e.getMessage());
+            return 1;
+        } finally {
+            try {
+                apnsClientPool.close().get(CLIENT_CLOSE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (final TimeoutException | ExecutionException ignored) {
+                // We're on our way out anyway
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Sends every notification in the given JSON Lines stream and writes each result (or error) to the given writer as
+     * it arrives.
+     *
+     * @param input the source of JSON Lines notifications
+     * @param router the router that chooses credentials for each notification
+     * @param sendFunction a function that sends a single notification via the given route and returns a future that
+     * yields the result of the send
+     * @param output the writer to which to write results as JSON Lines
+     *
+     * @return the number of notifications sent
+     *
+     * @throws IOException if the input could not be read or results could not be written, in which case no more
+     * notifications are sent
+     */
+    static long pipe(final Reader input, final TopicRouter router,
+                     final BiFunction<ApnsPushNotification, TopicRouter.Route, CompletableFuture<NotificationResult>> sendFunction,
+                     final Writer output) throws IOException {
+
+        final JsonLinesWriter resultWriter = new JsonLinesWriter(output);
+
+        final Map<DeliveryPriority, DeliveryLaneStatistics> statistics = new EnumMap<>(DeliveryPriority.class);
+
+        for (final DeliveryPriority priority : DeliveryPriority.values()) {
+            statistics.put(priority, new DeliveryLaneStatistics());
+        }
+
+        final long sent;
+
+        try (final JsonLinesNotificationReader reader = new JsonLinesNotificationReader(input, (message, line) -> {
+            final Map<String, Object> jsonObject = new LinkedHashMap<>();
+            jsonObject.put("line", line);
+            jsonObject.put("error", message);
+
+            resultWriter.writeLine(jsonObject);
+        })) {
+            // Once results can't be written (if standard output was closed, for example), there's no sense sending more
+            sent = BulkSender.send(() -> {
+                resultWriter.checkForFailure();
+                return reader.read();
+            }, router, (pushNotification, route) ->
+                    sendFunction.apply(pushNotification, route).whenComplete((result, cause) -> {
+                        if (result != null) {
+                            resultWriter.writeLine(NotificationResultExporter.getJsonObject(result));
+                        } else if (cause != null) {
+                            final Throwable rootCause = cause instanceof CompletionException && cause.getCause() != null ?
+                                    cause.getCause() : cause;
+
+                            resultWriter.writeLine(getErrorObject(pushNotification, String.valueOf(rootCause.getMessage())));
+                        }
+                    }), false, pushNotification -> resultWriter.writeLine(getErrorObject(pushNotification,
+                            "No credentials available for topic " + pushNotification.getTopic())),
+                    pushNotification -> {}, statistics, read -> {});
+        }
+
+        resultWriter.checkForFailure();
+
+        return sent;
+    }
+
+    private static Map<String, Object> getErrorObject(final ApnsPushNotification pushNotification, final String message) {
+        final Map<String, Object> jsonObject = new LinkedHashMap<>();
+        jsonObject.put("token", pushNotification.getToken());
+        jsonObject.put("topic", pushNotification.getTopic());
+        jsonObject.put("error", message);
+
+        return jsonObject;
+    }
+
+    private static TopicRouter buildTopicRouter(final List<CredentialProfile> profiles, final String certificatePassword,
+                                                final PrintStream err) {
+
+        final ApnsCredentialsCache apnsCredentialsCache = new ApnsCredentialsCache();
+        final TopicRouter topicRouter = new TopicRouter();
+
+        for (final CredentialProfile profile : profiles) {
+            try {
+                if (!profile.isSigningKey() && certificatePassword != null && !profile.getTopics().isEmpty()) {
+                    // Certificates are only decrypted if something actually gets sent to one of their topics
+                    topicRouter.addRoute(new TopicRouter.Route(profile.getName(),
+                            () -> apnsCredentialsCache.getCertificateCredentials(profile.getCredentialsFile(), certificatePassword),
+                            profile.getDefaultTarget(), BulkSender.DEFAULT_MAX_CONCURRENT_SENDS_PER_ROUTE), profile.getTopics());
+                } else if (profile.isSigningKey()) {
+                    topicRouter.addSigningKeyRoute(new TopicRouter.Route(profile.getName(),
+                            apnsCredentialsCache.getSigningKeyCredentials(profile.getCredentialsFile(), profile.getKeyId(), profile.getTeamId()),
+                            profile.getDefaultTarget(), BulkSender.DEFAULT_MAX_CONCURRENT_SENDS_PER_ROUTE), profile.getTopics());
+                } else if (certificatePassword != null) {
+                    topicRouter.addCertificateRoute(new TopicRouter.Route(profile.getName(),
+                            apnsCredentialsCache.getCertificateCredentials(profile.getCredentialsFile(), certificatePassword),
+                            profile.getDefaultTarget(), BulkSender.DEFAULT_MAX_CONCURRENT_SENDS_PER_ROUTE));
+                } else {
+                    err.println("Skipping certificate profile \"" + profile.getName() + "\" because " +
+                            CERTIFICATE_PASSWORD_VARIABLE + " is not set.");
+                }
+            } catch (final IOException | GeneralSecurityException e) {
+                err.println("Skipping profile \"" + profile.getName() + "\": " + e.getMessage());
+            }
+        }
+
+        return topicRouter;
+    }
+
+    private static CompletableFuture<NotificationResult> sendNotification(final ApnsClientPool apnsClientPool,
+                                                                          final ApnsPushNotification pushNotification,
+                                                                          final TopicRouter.Route route) {
+        final CompletableFuture<PushNotificationResponse<ApnsPushNotification>> responseFuture;
+
+        try {
+            responseFuture = apnsClientPool.sendNotification(pushNotification, route.getCredentials(), route.getTarget(), route);
+        } catch (final IOException | GeneralSecurityException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        final Instant sendTimestamp = Instant.now();
+        final long start = System.nanoTime();
+
+        return responseFuture.thenApply(response ->
+                NotificationResult.fromResponse(response, route.getTarget(), sendTimestamp,
+                        Duration.ofNanos(System.nanoTime() - start)));
+    }
+}
@@ -0,0 +1,411 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.json.JsonDeserializer;
+import com.eatthepath.json.JsonSerializer;
+import com.eatthepath.json.ParseException;
+import com.eatthepath.pushy.apns.ApnsPushNotification;
+import com.eatthepath.pushy.apns.DeliveryPriority;
+import com.eatthepath.pushy.apns.util.SimpleApnsPushNotification;
+import com.eatthepath.pushy.apns.util.TokenUtil;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BiFunction;
+
+/**
+ * <p>A small HTTP server, bound to the loopback interface only, that lets other programs on the same machine send
+ * notifications with the console's credentials without ever handling the credentials themselves.</p>
+ *
+ * <p>Clients {@code POST} a JSON object to {@code /notifications}. The object may describe a single notification
+ * (with "topic," "token," and "payload" fields and optional "priority" and "collapseId" fields) or may have a
+ * "notifications" field that holds a list of such objects. Payloads may be given either as JSON objects or as strings.
+ * Each notification is routed by its topic with a {@link TopicRouter} and sent with the router's credentials.</p>
+ *
+ * <p>Results are streamed back as JSON Lines as each send completes, which may not be the order in which the
+ * notifications appeared in the request; each line has an "index" field that identifies the notification it
+ * describes, and the other fields match the JSON Lines files written by {@link NotificationResultExporter}.
+ * Notifications that could not be sent at all get a line with an "error" field instead.</p>
+ *
+ * <p>Being bound to the loopback interface keeps other machines out, but not web pages the user happens to open,
+ * which can send requests to loopback addresses, too. Every request must therefore carry the relay's access token, which
+ * is chosen at random each time the relay starts, as an {@code Authorization: Bearer} header, must have a
+ * {@code Content-Type} of {@code application/json}, and must name the relay's own address in its {@code Host} header
+ * (which defeats DNS rebinding). Requests with an {@code Origin} header come from browsers and are always rejected.</p>
+ *
+ * <p>The relay's router is built once when the relay starts and sends go through the console's pooled clients, so
+ * each set of credentials needs only one connection (and one TLS handshake) no matter how many requests arrive.
+ * Notifications are sent with a {@link BulkSender}, so even a large batch is held to each route's concurrency limit
+ * and to the bulk sender's bound on pending notifications.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class NotificationRelay implements Closeable {
+
+    private final TopicRouter router;
+    private final BiFunction<ApnsPushNotification, TopicRouter.Route, CompletableFuture<NotificationResult>> sendFunction;
+
+    private final HttpServer httpServer;
+    private final ExecutorService requestExecutorService;
+
+    private final String accessToken;
+    private final Set<String> allowedHosts;
+
+    /**
+     * The port on which the relay listens by default.
+     */
+    static final int DEFAULT_PORT = 8_765;
+
+    static final String NOTIFICATIONS_PATH = "/notifications";
+
+    // Keeps a single careless request from exhausting the console's memory
+    private static final int MAX_REQUEST_SIZE = 16 * 1024 * 1024;
+
+    private static final int MAX_CONCURRENT_REQUESTS = 4;
+
+    private static final int ACCESS_TOKEN_BYTES = 24;
+
+    /**
+     * Constructs and starts a new relay.
+     *
+     * @param port the loopback port on which to listen, or 0 to choose any free port
+     * @param router the router that chooses credentials for each notification
+     * @param sendFunction a function that sends a single notification via the given route and returns a future that
+     * yields the result of the send, or {@code null} if the notification was not actually sent
+     *
+     * @throws IOException if the relay could not bind to the given port
+     */
+    NotificationRelay(final int port, final TopicRouter router,
+                      final BiFunction<ApnsPushNotification, TopicRouter.Route, CompletableFuture<NotificationResult>> sendFunction) throws IOException {
+
+        this.router = router;
+        this.sendFunction = sendFunction;
+
+        final byte[] accessTokenBytes = new byte[ACCESS_TOKEN_BYTES];
+        new SecureRandom().nextBytes(accessTokenBytes);
+
+        this.accessToken = Base64.getUrlEncoder().withoutPadding().encodeToString(accessTokenBytes);
+
+        this.httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.requestExecutorService = Executors.newFixedThreadPool(MAX_CONCURRENT_REQUESTS, runnable -> {
+            final Thread thread = new Thread(runnable, "notification-relay");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        final int boundPort = httpServer.getAddress().getPort();
+        this.allowedHosts = Set.of("127.0.0.1:" + boundPort, "localhost:" + boundPort);
+
+        httpServer.setExecutor(requestExecutorService);
+        httpServer.createContext(NOTIFICATIONS_PATH, this::handleExchange);
+        httpServer.start();
+    }
+
+    /**
+     * Returns the loopback address and port on which this relay is listening.
+     *
+     * @return the address on which this relay is listening
+     */
+    InetSocketAddress getAddress() {
+        return httpServer.getAddress();
+    }
+
+    /**
+     * Returns the access token that clients must present as an {@code Authorization: Bearer} header with every
+     * request.
+     *
+     * @return this relay's access token
+     */
+    String getAccessToken() {
+        return accessToken;
+    }
+
+    private void handleExchange(final HttpExchange exchange) throws IOException {
+        try {
+            final String host = exchange.getRequestHeaders().getFirst("Host");
+
+            if (host == null || !allowedHosts.contains(host.toLowerCase(Locale.ROOT))) {
+                sendError(exchange, 403, "Requests must be addressed to localhost:" + getAddress().getPort() + ".");
+                return;
+            }
+
+            if (exchange.getRequestHeaders().containsKey("Origin")) {
+                sendError(exchange, 403, "Requests from web pages are not allowed.");
+                return;
+            }
+
+            if (!isAuthorized(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                exchange.getResponseHeaders().add("WWW-Authenticate", "Bearer");
+                sendError(exchange, 401, "Requests must include the relay's access token as a bearer token.");
+                return;
+            }
+
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().add("Allow", "POST");
+                sendError(exchange, 405, "Notifications must be sent with POST.");
+                return;
+            }
+
+            final String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+
+            if (contentType == null || !"application/json".equalsIgnoreCase(StringUtils.substringBefore(contentType, ";").trim())) {
+                sendError(exchange, 415, "Requests must have a content type of application/json.");
+                return;
+            }
+
+            final List<ApnsPushNotification> pushNotifications;
+
+            try {
+                pushNotifications = parseRequest(readRequestBody(exchange));
+            } catch (final ParseException | RuntimeException e) {
+                // The parser reports some kinds of malformed input (like bare words) with unchecked exceptions
+                sendError(exchange, 400, e.getMessage());
+                return;
+            }
+
+            exchange.getResponseHeaders().add("Content-Type", "application/x-ndjson; charset=utf-8");
+
+            // A response length of zero means "chunked," which lets results go out as soon as they're ready
+            exchange.sendResponseHeaders(200, 0);
+
+            final JsonLinesWriter responseWriter =
+                    new JsonLinesWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8));
+
+            final Map<ApnsPushNotification, Integer> indexes = new IdentityHashMap<>(pushNotifications.size());
+
+            for (int i = 0; i < pushNotifications.size(); i++) {
+                indexes.put(pushNotifications.get(i), i);
+            }
+
+            final Map<DeliveryPriority, DeliveryLaneStatistics> statistics = new EnumMap<>(DeliveryPriority.class);
+
+            for (final DeliveryPriority priority : DeliveryPriority.values()) {
+                statistics.put(priority, new DeliveryLaneStatistics());
+            }
+
+            final Iterator<ApnsPushNotification> notificationIterator = pushNotifications.iterator();
+
+            // Big batches go through the same per-route limits as bulk sends instead of all going out at once
+            // Stop sending if the client goes away, since there would be nobody to tell about the results
+            BulkSender.send(() -> {
+                responseWriter.checkForFailure();
+                return notificationIterator.hasNext() ? notificationIterator.next() : null;
+            }, router,
+                    (pushNotification, route) -> {
+                        final int index = indexes.get(pushNotification);
+
+                        CompletableFuture<NotificationResult> sendFuture;
+
+                        try {
+                            sendFuture = sendFunction.apply(pushNotification, route);
+                        } catch (final RuntimeException e) {
+                            sendFuture = CompletableFuture.failedFuture(e);
+                        }
+
+                        return sendFuture.whenComplete((result, cause) -> {
+                            if (cause != null) {
+                                final Throwable rootCause = cause instanceof CompletionException && cause.getCause() != null ?
+                                        cause.getCause() : cause;
+
+                                responseWriter.writeLine(getErrorLine(index, String.valueOf(rootCause.getMessage())));
+                            } else if (result != null) {
+                                final Map<String, Object> line = new LinkedHashMap<>();
+                                line.put("index", index);
+                                line.putAll(NotificationResultExporter.getJsonObject(result));
+
+                                responseWriter.writeLine(line);
+                            } else {
+                                responseWriter.writeLine(getErrorLine(index, "Notification was not sent."));
+                            }
+                        });
+                    }, false,
+                    pushNotification -> responseWriter.writeLine(getErrorLine(indexes.get(pushNotification),
+                            "No credentials available for topic " + pushNotification.getTopic())),
+                    pushNotification -> {}, statistics, read -> {});
+        } catch (final InterruptedIOException e) {
+            // The relay is shutting down; closing the exchange cuts off the response
+            Thread.currentThread().interrupt();
+        } catch (final IOException e) {
+            // The client went away, and there's nobody left to tell
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private boolean isAuthorized(final String authorization) {
+        final String bearerPrefix = "Bearer ";
+
+        if (authorization == null || !authorization.regionMatches(true, 0, bearerPrefix, 0, bearerPrefix.length())) {
+            return false;
+        }
+
+        // Compare in constant time so the token can't be guessed a character at a time
+        return MessageDigest.isEqual(accessToken.getBytes(StandardCharsets.UTF_8),
+                authorization.substring(bearerPrefix.length()).trim().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readRequestBody(final HttpExchange exchange) throws IOException {
+        final ByteArrayOutputStream requestBody = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+
+        try (final InputStream inputStream = exchange.getRequestBody()) {
+            for (int read = inputStream.read(buffer); read != -1; read = inputStream.read(buffer)) {
+                if (requestBody.size() + read > MAX_REQUEST_SIZE) {
+                    throw new IllegalArgumentException("Request body is larger than " + MAX_REQUEST_SIZE + " bytes.");
+                }
+
+                requestBody.write(buffer, 0, read);
+            }
+        }
+
+        return requestBody.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses the notifications in a relay request body.
+     *
+     * @param requestBody the JSON text of the request
+     *
+     * @return the notifications in the request, in order
+     *
+     * @throws ParseException if the request body is not a JSON object
+     * @throws IllegalArgumentException if any notification in the request is missing a required field or has a field
+     * with an invalid value
+     */
+    static List<ApnsPushNotification> parseRequest(final String requestBody) throws ParseException {
+        final Map<String, Object> request = new JsonDeserializer().parseJsonObject(requestBody);
+
+        if (request.containsKey("notifications")) {
+            if (!(request.get("notifications") instanceof List)) {
+                throw new IllegalArgumentException("\"notifications\" must be a list.");
+            }
+
+            final List<?> jsonNotifications = (List<?>) request.get("notifications");
+            final List<ApnsPushNotification> pushNotifications = new ArrayList<>(jsonNotifications.size());
+
+            for (int i = 0; i < jsonNotifications.size(); i++) {
+                if (!(jsonNotifications.get(i) instanceof Map)) {
+                    throw new IllegalArgumentException("Notification " + i + " is not a JSON object.");
+                }
+
+                try {
+                    pushNotifications.add(parseNotification((Map<?, ?>) jsonNotifications.get(i)));
+                } catch (final IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Notification " + i + ": " + e.getMessage(), e);
+                }
+            }
+
+            return pushNotifications;
+        }
+
+        return List.of(parseNotification(request));
+    }
+
+    /**
+     * Constructs a notification from a JSON object with "topic," "token," and "payload" fields and optional "priority"
+     * and "collapseId" fields. Payloads may be given either as JSON objects or as strings.
+     *
+     * @param jsonNotification the JSON object that describes the notification
+     *
+     * @return the notification described by the given JSON object
+     *
+     * @throws IllegalArgumentException if the given object is missing a required field or has a field with an invalid
+     * value
+     */
+    static ApnsPushNotification parseNotification(final Map<?, ?> jsonNotification) {
+        final String topic = StringUtils.trimToNull(getString(jsonNotification, "topic"));
+        final String token = StringUtils.trimToNull(getString(jsonNotification, "token"));
+
+        final Object jsonPayload = jsonNotification.get("payload");
+        final String payload = jsonPayload instanceof Map ?
+                JsonSerializer.writeJsonTextAsString((Map<?, ?>) jsonPayload) : getString(jsonNotification, "payload");
+
+        if (topic == null || token == null || StringUtils.isBlank(payload)) {
+            throw new IllegalArgumentException("Notifications must have a topic, token, and payload.");
+        }
+
+        final Object jsonPriority = jsonNotification.get("priority");
+        final DeliveryPriority priority;
+
+        if (jsonPriority == null) {
+            priority = DeliveryPriority.IMMEDIATE;
+        } else if (jsonPriority instanceof Number) {
+            priority = BulkSendFileReader.parseDeliveryPriority(String.valueOf(((Number) jsonPriority).intValue()));
+        } else {
+            priority = BulkSendFileReader.parseDeliveryPriority(jsonPriority.toString());
+        }
+
+        return new SimpleApnsPushNotification(TokenUtil.sanitizeTokenString(token), topic, payload,
+                Instant.now().plus(SimpleApnsPushNotification.DEFAULT_EXPIRATION_PERIOD), priority,
+                StringUtils.trimToNull(getString(jsonNotification, "collapseId")));
+    }
+
+    private static String getString(final Map<?, ?> jsonObject, final String key) {
+        final Object value = jsonObject.get(key);
+
+        if (value != null && !(value instanceof String)) {
+            throw new IllegalArgumentException("\"" + key + "\" must be a string.");
+        }
+
+        return (String) value;
+    }
+
+    private static Map<String, Object> getErrorLine(final int index, final String message) {
+        final Map<String, Object> line = new LinkedHashMap<>();
+        line.put("index", index);
+        line.put("error", message);
+
+        return line;
+    }
+
+    private static void sendError(final HttpExchange exchange, final int status, final String message) throws IOException {
+        final byte[] responseBody = (JsonSerializer.writeJsonTextAsString(Map.of("error", String.valueOf(message))) + "\n")
+                .getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, responseBody.length);
+        exchange.getResponseBody().write(responseBody);
+    }
+
+    /**
+     * Stops accepting requests and cuts off any responses still in progress. Sends that have already started are not
+     * cancelled.
+     */
+    @Override
+    public void close() {
+        httpServer.stop(0);
+        requestExecutorService.shutdownNow();
+    }
+}
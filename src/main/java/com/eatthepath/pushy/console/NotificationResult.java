@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.ApnsPushNotification;
+import com.eatthepath.pushy.apns.DeliveryPriority;
+import com.eatthepath.pushy.apns.PushNotificationResponse;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * The outcome of an attempt to send a push notification, including how long the APNs server took to respond.
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class NotificationResult {
+
+    /**
+     * The possible outcomes of an attempt to send a push notification.
+     */
+    enum Status {
+        /**
+         * The APNs server accepted the notification.
+         */
+        ACCEPTED,
+
+        /**
+         * The APNs server rejected the notification.
+         */
+        REJECTED,
+
+        /**
+         * The notification was never sent because its destination token was already known to be invalid.
+         */
+        SKIPPED
+    }
+
+    private final ApnsPushNotification pushNotification;
+    private final ApnsTarget target;
+    private final Status status;
+    private final UUID apnsId;
+    private final String rejectionReason;
+    private final Instant tokenInvalidationTimestamp;
+
+    private final Instant sendTimestamp;
+    private final Duration latency;
+
+    NotificationResult(final ApnsPushNotification pushNotification, final ApnsTarget target, final Status status,
+                       final UUID apnsId, final String rejectionReason, final Instant tokenInvalidationTimestamp,
+                       final Instant sendTimestamp, final Duration latency) {
+
+        this.pushNotification = Objects.requireNonNull(pushNotification, "Push notification must not be null.");
+        this.target = target;
+        this.status = Objects.requireNonNull(status, "Status must not be null.");
+        this.apnsId = apnsId;
+        this.rejectionReason = rejectionReason;
+        this.tokenInvalidationTimestamp = tokenInvalidationTimestamp;
+        this.sendTimestamp = sendTimestamp;
+        this.latency = latency;
+    }
+
+    /**
+     * Constructs a new result from a response from the APNs server.
+     *
+     * @param response the response from the APNs server
+     * @param target the server and port to which the notification was sent; may be {@code null} if unknown
+     * @param sendTimestamp the time at which the notification was sent; may be {@code null} if unknown
+     * @param latency the time between sending the notification and receiving a response; may be {@code null} if
+     * unknown
+     *
+     * @return a result that represents the given response
+     */
+    static NotificationResult fromResponse(final PushNotificationResponse<? extends ApnsPushNotification> response,
+                                           final ApnsTarget target, final Instant sendTimestamp, final Duration latency) {
+
+        return new NotificationResult(response.getPushNotification(),
+                target,
+                response.isAccepted() ? Status.ACCEPTED : Status.REJECTED,
+                response.getApnsId(),
+                response.getRejectionReason(),
+                response.getTokenInvalidationTimestamp(),
+                sendTimestamp,
+                latency);
+    }
+
+    /**
+     * Constructs a new result for a notification that was not sent because its destination token was already known to
+     * be invalid.
+     *
+     * @param pushNotification the notification that was not sent
+     * @param target the server and port to which the notification would have been sent; may be {@code null}
+     * @param tokenInvalidationTimestamp the time at which the notification's destination token became invalid
+     *
+     * @return a result that represents a skipped notification
+     */
+    static NotificationResult skipped(final ApnsPushNotification pushNotification, final ApnsTarget target,
+                                      final Instant tokenInvalidationTimestamp) {
+
+        return new NotificationResult(pushNotification, target, Status.SKIPPED, null, null, tokenInvalidationTimestamp, null, null);
+    }
+
+    ApnsPushNotification getPushNotification() {
+        return pushNotification;
+    }
+
+    /**
+     * Returns the server and port to which the notification was (or would have been) sent.
+     *
+     * @return the server and port to which the notification was sent, or an empty {@code Optional} if unknown
+     */
+    Optional<ApnsTarget> getTarget() {
+        return Optional.ofNullable(target);
+    }
+
+    /**
+     * Returns the delivery priority with which the notification was sent. Notifications without an explicit priority
+     * are delivered immediately by the APNs server, and are reported as such.
+     *
+     * @return the delivery priority with which the notification was sent
+     */
+    DeliveryPriority getDeliveryPriority() {
+        return pushNotification.getPriority() != null ? pushNotification.getPriority() : DeliveryPriority.IMMEDIATE;
+    }
+
+    Status getStatus() {
+        return status;
+    }
+
+    Optional<UUID> getApnsId() {
+        return Optional.ofNullable(apnsId);
+    }
+
+    Optional<String> getRejectionReason() {
+        return Optional.ofNullable(rejectionReason);
+    }
+
+    Optional<Instant> getTokenInvalidationTimestamp() {
+        return Optional.ofNullable(tokenInvalidationTimestamp);
+    }
+
+    Optional<Instant> getSendTimestamp() {
+        return Optional.ofNullable(sendTimestamp);
+    }
+
+    Optional<Duration> getLatency() {
+        return Optional.ofNullable(latency);
+    }
+}
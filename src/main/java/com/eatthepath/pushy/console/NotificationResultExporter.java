@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.json.JsonSerializer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+/**
+ * Writes notification results to a file as either CSV or JSON Lines. Results are written one at a time directly from
+ * the list of results, so exporting a large number of results never requires a second copy of the list.
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class NotificationResultExporter {
+
+    /**
+     * The formats in which notification results may be exported.
+     */
+    enum Format {
+        /**
+         * Comma-separated values with a header row.
+         */
+        CSV,
+
+        /**
+         * One JSON object per line (see <a href="https://jsonlines.org/">jsonlines.org</a>).
+         */
+        JSON_LINES
+    }
+
+    private static final String[] FIELD_NAMES = new String[] {
+            "token", "topic", "status", "reason", "tokenInvalidationTimestamp", "apnsId", "sendTimestamp", "latencyMillis",
+            "target"
+    };
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int PROGRESS_INTERVAL = 4096;
+
+    private NotificationResultExporter() {
+    }
+
+    /**
+     * Writes the first {@code count} results from the given list to the given file, replacing the file if it already
+     * exists.
+     *
+     * @param results the list from which to read results
+     * @param count the number of results to export
+     * @param file the file to which to write results
+     * @param format the format in which to write results
+     * @param progressConsumer a consumer to notify periodically with the number of results written so far
+     *
+     * @throws IOException if the results could not be written for any reason
+     * @throws InterruptedIOException if the calling thread was interrupted before the export finished
+     */
+    static void export(final List<NotificationResult> results, final int count, final Path file, final Format format,
+                       final LongConsumer progressConsumer) throws IOException {
+
+        try (final FileChannel fileChannel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             final Writer writer = new BufferedWriter(
+                     Channels.newWriter(fileChannel, StandardCharsets.UTF_8.newEncoder(), -1), BUFFER_SIZE)) {
+
+            if (format == Format.CSV) {
+                writeCsvRow(FIELD_NAMES, writer);
+            }
+
+            final Object[] fields = new Object[FIELD_NAMES.length];
+
+            for (int i = 0; i < count; i++) {
+                getFields(results.get(i), fields);
+
+                if (format == Format.CSV) {
+                    writeCsvRow(fields, writer);
+                } else {
+                    writeJsonLine(fields, writer);
+                }
+
+                if ((i + 1) % PROGRESS_INTERVAL == 0) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedIOException("Export interrupted after " + (i + 1) + " results.");
+                    }
+
+                    progressConsumer.accept(i + 1);
+                }
+            }
+
+            progressConsumer.accept(count);
+        }
+    }
+
+    private static void getFields(final NotificationResult result, final Object[] fields) {
+        fields[0] = result.getPushNotification().getToken();
+        fields[1] = result.getPushNotification().getTopic();
+        fields[2] = result.getStatus().name();
+        fields[3] = result.getRejectionReason().orElse(null);
+        fields[4] = result.getTokenInvalidationTimestamp().map(Object::toString).orElse(null);
+        fields[5] = result.getApnsId().map(Object::toString).orElse(null);
+        fields[6] = result.getSendTimestamp().map(Object::toString).orElse(null);
+
+        // Latency is reported in milliseconds with microsecond precision
+        fields[7] = result.getLatency().map(latency -> BigDecimal.valueOf(latency.toNanos() / 1_000, 3)).orElse(null);
+
+        fields[8] = result.getTarget().map(Object::toString).orElse(null);
+    }
+
+    private static void writeCsvRow(final Object[] fields, final Writer writer) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+
+            if (fields[i] != null) {
+                final String field = fields[i].toString();
+
+                if (field.indexOf(',') >= 0 || field.indexOf('"') >= 0 || field.indexOf('\n') >= 0 || field.indexOf('\r') >= 0) {
+                    writer.write('"');
+                    writer.write(field.replace("\"", "\"\""));
+                    writer.write('"');
+                } else {
+                    writer.write(field);
+                }
+            }
+        }
+
+        writer.write("\r\n");
+    }
+
+    private static void writeJsonLine(final Object[] fields, final Writer writer) throws IOException {
+        JsonSerializer.writeJsonText(toJsonObject(fields), writer);
+        writer.write('\n');
+    }
+
+    /**
+     * Returns a JSON-serializable map with the same fields as a single line of a JSON Lines export.
+     *
+     * @param result the result to describe
+     *
+     * @return a map of field names to values for the given result; fields with no value are omitted
+     */
+    static Map<String, Object> getJsonObject(final NotificationResult result) {
+        final Object[] fields = new Object[FIELD_NAMES.length];
+        getFields(result, fields);
+
+        return toJsonObject(fields);
+    }
+
+    private static Map<String, Object> toJsonObject(final Object[] fields) {
+        final Map<String, Object> jsonObject = new LinkedHashMap<>();
+
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i] != null) {
+                jsonObject.put(FIELD_NAMES[i], fields[i]);
+            }
+        }
+
+        return jsonObject;
+    }
+}
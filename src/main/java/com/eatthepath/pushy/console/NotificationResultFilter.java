@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.DeliveryPriority;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * A set of criteria for selecting notification results. Every criterion is optional; a result matches the filter if
+ * it matches all of the criteria that are present.
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class NotificationResultFilter {
+
+    private final NotificationResult.Status status;
+    private final String rejectionReason;
+    private final String topic;
+    private final DeliveryPriority priority;
+    private final ApnsTarget target;
+    private final String tokenPrefix;
+    private final UUID apnsId;
+
+    /**
+     * A filter with no criteria, which matches every result.
+     */
+    static final NotificationResultFilter EMPTY = new NotificationResultFilter(null, null, null, null, null, null, null);
+
+    /**
+     * Constructs a new result filter.
+     *
+     * @param status the status results must have; may be {@code null}
+     * @param rejectionReason the rejection reason results must have; may be {@code null}
+     * @param topic the topic to which results' notifications must have been sent; may be {@code null}
+     * @param priority the delivery priority with which results' notifications must have been sent; may be
+     * {@code null}
+     * @param target the server and port to which results' notifications must have been sent; may be {@code null}
+     * @param tokenPrefix a (case-insensitive) prefix of the token to which results' notifications must have been sent;
+     * may be {@code null}
+     * @param apnsId the APNs ID results must have; may be {@code null}
+     */
+    NotificationResultFilter(final NotificationResult.Status status, final String rejectionReason, final String topic,
+                             final DeliveryPriority priority, final ApnsTarget target, final String tokenPrefix,
+                             final UUID apnsId) {
+
+        this.status = status;
+        this.rejectionReason = StringUtils.trimToNull(rejectionReason);
+        this.topic = StringUtils.trimToNull(topic);
+        this.priority = priority;
+        this.target = target;
+        this.tokenPrefix = StringUtils.isNotBlank(tokenPrefix) ? tokenPrefix.trim().toLowerCase(Locale.ROOT) : null;
+        this.apnsId = apnsId;
+    }
+
+    Optional<NotificationResult.Status> getStatus() {
+        return Optional.ofNullable(status);
+    }
+
+    Optional<String> getRejectionReason() {
+        return Optional.ofNullable(rejectionReason);
+    }
+
+    Optional<String> getTopic() {
+        return Optional.ofNullable(topic);
+    }
+
+    Optional<DeliveryPriority> getPriority() {
+        return Optional.ofNullable(priority);
+    }
+
+    Optional<ApnsTarget> getTarget() {
+        return Optional.ofNullable(target);
+    }
+
+    Optional<String> getTokenPrefix() {
+        return Optional.ofNullable(tokenPrefix);
+    }
+
+    Optional<UUID> getApnsId() {
+        return Optional.ofNullable(apnsId);
+    }
+
+    /**
+     * Indicates whether this filter has no criteria, and therefore matches every result.
+     *
+     * @return {@code true} if this filter has no criteria or {@code false} otherwise
+     */
+    boolean isEmpty() {
+        return status == null && rejectionReason == null && topic == null && priority == null && target == null && tokenPrefix == null && apnsId == null;
+    }
+
+    /**
+     * Tests whether a single result matches this filter.
+     *
+     * @param result the result to test
+     *
+     * @return {@code true} if the given result matches all of this filter's criteria or {@code false} otherwise
+     */
+    boolean matches(final NotificationResult result) {
+        return (status == null || status == result.getStatus()) &&
+                (rejectionReason == null || rejectionReason.equals(result.getRejectionReason().orElse(null))) &&
+                (topic == null || topic.equals(result.getPushNotification().getTopic())) &&
+                (priority == null || priority == result.getDeliveryPriority()) &&
+                (target == null || target.equals(result.getTarget().orElse(null))) &&
+                (tokenPrefix == null || result.getPushNotification().getToken().toLowerCase(Locale.ROOT).startsWith(tokenPrefix)) &&
+                (apnsId == null || apnsId.equals(result.getApnsId().orElse(null)));
+    }
+
+    /**
+     * Tests whether a single row in a store matches this filter, reading only the columns this filter needs.
+     *
+     * @param store the store that holds the row to test
+     * @param rowId the ID of the row to test
+     *
+     * @return {@code true} if the result in the given row matches all of this filter's criteria or {@code false}
+     * otherwise
+     */
+    boolean matches(final NotificationResultStore store, final int rowId) {
+        return (status == null || status == store.getStatus(rowId)) &&
+                (rejectionReason == null || rejectionReason.equals(store.getRejectionReason(rowId))) &&
+                (topic == null || topic.equals(store.getTopic(rowId))) &&
+                (priority == null || priority == store.getDeliveryPriority(rowId)) &&
+                (target == null || target.equals(store.getTarget(rowId))) &&
+                (tokenPrefix == null || store.getToken(rowId).toLowerCase(Locale.ROOT).startsWith(tokenPrefix)) &&
+                (apnsId == null || apnsId.equals(store.getApnsId(rowId)));
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (this == other) {
+            return true;
+        }
+
+        if (other == null || getClass() != other.getClass()) {
+            return false;
+        }
+
+        final NotificationResultFilter that = (NotificationResultFilter) other;
+
+        return status == that.status &&
+                Objects.equals(rejectionReason, that.rejectionReason) &&
+                Objects.equals(topic, that.topic) &&
+                priority == that.priority &&
+                Objects.equals(target, that.target) &&
+                Objects.equals(tokenPrefix, that.tokenPrefix) &&
+                Objects.equals(apnsId, that.apnsId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(status, rejectionReason, topic, priority, target, tokenPrefix, apnsId);
+    }
+}
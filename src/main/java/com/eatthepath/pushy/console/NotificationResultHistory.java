@@ -0,0 +1,993 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.ApnsPushNotification;
+import com.eatthepath.pushy.apns.DeliveryPriority;
+import com.eatthepath.pushy.apns.PushType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>A persistent, append-only history of notification results that survives restarts.</p>
+ *
+ * <p>The history lives in two files. The "rows" file holds one fixed-width record per result, so finding any given
+ * row is a matter of arithmetic rather than searching. Variable-length values (topics, payloads, and so on) live in a
+ * separate "strings" file, and rows refer to them by offset; repeated values are written only once per session. Tokens
+ * that are 32 bytes written as lowercase hexadecimal digits (nearly all of them) are stored as raw bytes in the row
+ * itself.</p>
+ *
+ * <p>Individual columns of archived rows can be read without decoding the whole row (see
+ * {@link #readArchivedStatus(int)}, for example), which lets indexes and summaries catch up with a large history
+ * without reading any payloads or tokens as strings. Topics, rejection reasons, and targets take only a handful of
+ * distinct values, and are decoded once per distinct string rather than once per row.</p>
+ *
+ * <p>Appending a result only copies it into a buffer in memory; a background thread writes buffered results to disk a
+ * couple of times per second (and when the history is closed), so appending never waits for the disk. A crash may lose
+ * the last fraction of a second of results, but never leaves a row that refers to a string that wasn't written.</p>
+ *
+ * <p>The history holds a bounded number of rows. If a history holds more than its limit when it's opened, the oldest
+ * rows (and any strings only they refer to) are discarded so that only the newest three quarters of the limit remain;
+ * trimming by more than the excess means a history that's always near its limit isn't rewritten on every launch.</p>
+ *
+ * <p>Rows written by previous sessions are memory-mapped when the history is opened and decoded only when somebody
+ * asks for them, so opening even a very large history is nearly instantaneous and doesn't require holding every
+ * result on the heap. Payloads, which tend to be the largest part of a result, aren't read until they're needed.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class NotificationResultHistory implements Closeable {
+
+    static final String ROWS_FILENAME = "results.rows";
+    static final String STRINGS_FILENAME = "results.strings";
+
+    // Trimmed copies of the history, which replace the originals once the marker file exists
+    private static final String TRIMMED_ROWS_FILENAME = "results.rows.trimmed";
+    private static final String TRIMMED_STRINGS_FILENAME = "results.strings.trimmed";
+    private static final String TRIM_MARKER_FILENAME = "results.trim";
+
+    // Row layout
+    private static final int STATUS_OFFSET = 0;
+    private static final int PRIORITY_OFFSET = 1;
+    private static final int FLAGS_OFFSET = 2;
+    private static final int SEND_TIMESTAMP_OFFSET = 8;
+    private static final int LATENCY_OFFSET = 16;
+    private static final int APNS_ID_OFFSET = 24;
+    private static final int TOKEN_INVALIDATION_TIMESTAMP_OFFSET = 40;
+    private static final int TOKEN_OFFSET = 48;
+    private static final int TOPIC_OFFSET = 56;
+    private static final int PAYLOAD_OFFSET = 64;
+    private static final int COLLAPSE_ID_OFFSET = 72;
+    private static final int REJECTION_REASON_OFFSET = 80;
+    private static final int TARGET_OFFSET = 88;
+    private static final int HEX_TOKEN_OFFSET = 96;
+
+    static final int ROW_SIZE = HEX_TOKEN_OFFSET + NotificationResultStore.TOKEN_BYTES;
+
+    private static final int HAS_APNS_ID = 1;
+    private static final int HAS_TOKEN_INVALIDATION_TIMESTAMP = 1 << 1;
+    private static final int HAS_SEND_TIMESTAMP = 1 << 2;
+    private static final int HAS_LATENCY = 1 << 3;
+    private static final int HAS_HEX_TOKEN = 1 << 4;
+
+    private static final long NO_STRING = -1;
+
+    private static final int[] STRING_COLUMN_OFFSETS = new int[] {
+            TOKEN_OFFSET, TOPIC_OFFSET, PAYLOAD_OFFSET, COLLAPSE_ID_OFFSET, REJECTION_REASON_OFFSET, TARGET_OFFSET };
+
+    static final int DEFAULT_MAX_ROWS = 1_000_000;
+
+    private static final Duration FLUSH_INTERVAL = Duration.ofMillis(500);
+
+    // Flush right away instead of waiting for the next scheduled flush once this much is waiting to be written
+    private static final int MAX_PENDING_BYTES = 4 * 1024 * 1024;
+
+    private static final int TRIM_BATCH_ROWS = 4096;
+
+    // Keeps the map of already-written strings from growing without bound in a long session
+    private static final int MAX_WRITTEN_STRINGS = 16384;
+
+    private final Path directory;
+    private final int maxRows;
+
+    // Only touched while holding flushLock; replaced when the history is trimmed during a session
+    private FileChannel rowsChannel;
+    private FileChannel stringsChannel;
+
+    private final MappedFile archivedRows;
+    private final MappedFile archivedStrings;
+    private final int archivedRowCount;
+
+    // Only touched by the appending thread
+    private final Map<String, Long> writtenStringOffsets = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Long> eldest) {
+            return size() > MAX_WRITTEN_STRINGS;
+        }
+    };
+
+    // The offset at which the next new string will land once everything pending has been written, relative to the
+    // start of the strings file as of the most recent trim
+    private long nextStringOffset;
+
+    // The number of rows the history will hold once everything pending has been written and trimmed; only touched by
+    // the appending thread
+    private long rowCount;
+
+    // Only touched while holding flushLock; where the strings file stood after the most recent trim, which must be
+    // added to string offsets in rows appended since then
+    private long stringOffsetBase = 0;
+
+    // Rows and strings waiting for the writer thread; guarded by "this"
+    private final ByteArrayOutputStream pendingRows = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream pendingStrings = new ByteArrayOutputStream();
+    private boolean flushRequested = false;
+
+    // Rows and strings appended before a requested trim, which must be written before the trim happens; guarded by
+    // "this"
+    private byte[] rowsBeforeTrim;
+    private byte[] stringsBeforeTrim;
+
+    // Serializes flushes and guards "closed"
+    private final Object flushLock = new Object();
+    private boolean closed = false;
+
+    private volatile IOException writeFailure;
+
+    private final ScheduledExecutorService writerExecutorService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "result-history-writer");
+        thread.setDaemon(true);
+
+        return thread;
+    });
+
+    // Decoded topics, rejection reasons, and targets of archived rows by offset
+    private final Map<Long, String> archivedValueStrings = new ConcurrentHashMap<>();
+    private final Map<Long, ApnsTarget> archivedTargets = new ConcurrentHashMap<>();
+
+    // Keeps the caches of decoded values from growing without bound if a history somehow has many distinct values
+    private static final int MAX_CACHED_ARCHIVED_VALUES = 4096;
+
+    private final ByteBuffer rowBuffer = ByteBuffer.allocate(ROW_SIZE);
+
+    /**
+     * A read-only view of a file that may be larger than a single mapped buffer can address.
+     */
+    private static class MappedFile {
+
+        private final MappedByteBuffer[] segments;
+
+        private static final int SEGMENT_SHIFT = 30;
+        private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+
+        MappedFile(final FileChannel channel, final long size) throws IOException {
+            segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT)];
+
+            for (int i = 0; i < segments.length; i++) {
+                final long position = i * SEGMENT_SIZE;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(SEGMENT_SIZE, size - position));
+            }
+        }
+
+        byte get(final long position) {
+            return segments[(int) (position >>> SEGMENT_SHIFT)].get((int) (position & (SEGMENT_SIZE - 1)));
+        }
+
+        long getLong(final long position) {
+            final int offset = (int) (position & (SEGMENT_SIZE - 1));
+
+            if (offset + Long.BYTES <= SEGMENT_SIZE) {
+                return segments[(int) (position >>> SEGMENT_SHIFT)].getLong(offset);
+            }
+
+            long value = 0;
+
+            for (int i = 0; i < Long.BYTES; i++) {
+                value = (value << 8) | (get(position + i) & 0xFF);
+            }
+
+            return value;
+        }
+
+        int getInt(final long position) {
+            return (int) (((get(position) & 0xFFL) << 24) | ((get(position + 1) & 0xFFL) << 16) |
+                    ((get(position + 2) & 0xFFL) << 8) | (get(position + 3) & 0xFFL));
+        }
+
+        void get(final long position, final byte[] destination) {
+            get(position, destination, destination.length);
+        }
+
+        void get(final long position, final byte[] destination, final int length) {
+            final int offset = (int) (position & (SEGMENT_SIZE - 1));
+
+            if (offset + length <= SEGMENT_SIZE) {
+                segments[(int) (position >>> SEGMENT_SHIFT)].duplicate().position(offset).get(destination, 0, length);
+            } else {
+                for (int i = 0; i < length; i++) {
+                    destination[i] = get(position + i);
+                }
+            }
+        }
+    }
+
+    /**
+     * A push notification read from the history. Its payload stays on disk until somebody asks for it.
+     */
+    private class ArchivedPushNotification implements ApnsPushNotification {
+
+        private final String token;
+        private final String topic;
+        private final long payloadOffset;
+        private final DeliveryPriority priority;
+        private final String collapseId;
+
+        private ArchivedPushNotification(final String token, final String topic, final long payloadOffset,
+                                         final DeliveryPriority priority, final String collapseId) {
+            this.token = token;
+            this.topic = topic;
+            this.payloadOffset = payloadOffset;
+            this.priority = priority;
+            this.collapseId = collapseId;
+        }
+
+        @Override
+        public String getToken() {
+            return token;
+        }
+
+        @Override
+        public String getPayload() {
+            return readArchivedString(payloadOffset);
+        }
+
+        @Override
+        public Instant getExpiration() {
+            return null;
+        }
+
+        @Override
+        public DeliveryPriority getPriority() {
+            return priority;
+        }
+
+        @Override
+        public PushType getPushType() {
+            return null;
+        }
+
+        @Override
+        public String getTopic() {
+            return topic;
+        }
+
+        @Override
+        public String getCollapseId() {
+            return collapseId;
+        }
+
+        @Override
+        public UUID getApnsId() {
+            return null;
+        }
+    }
+
+    /**
+     * Opens (or creates) the history in the given directory with the default limit of {@value #DEFAULT_MAX_ROWS} rows.
+     *
+     * @param directory the directory that contains the history's files
+     *
+     * @throws IOException if the history could not be opened for any reason
+     */
+    NotificationResultHistory(final Path directory) throws IOException {
+        this(directory, DEFAULT_MAX_ROWS);
+    }
+
+    /**
+     * Opens (or creates) the history in the given directory. Any partially-written row at the end of the history (if,
+     * for example, the application crashed while writing it) is discarded, and if the history holds more than the given
+     * number of rows, its oldest rows are discarded, too. The oldest rows are discarded in the same way whenever
+     * appending to the history would take it past the given number of rows; rows written by previous sessions remain
+     * readable until the history is closed even after they've been trimmed from disk.
+     *
+     * <p>Trimming a large history can take a while, so histories should be opened on a background thread.</p>
+     *
+     * @param directory the directory that contains the history's files
+     * @param maxRows the maximum number of rows to keep in the history
+     *
+     * @throws IOException if the history could not be opened for any reason
+     */
+    NotificationResultHistory(final Path directory, final int maxRows) throws IOException {
+        this.directory = directory;
+        this.maxRows = maxRows;
+
+        Files.createDirectories(directory);
+
+        if (Files.exists(directory.resolve(TRIM_MARKER_FILENAME))) {
+            // A previous trim wrote its copies in full, but was interrupted while moving them into place
+            finishTrim(directory);
+        } else {
+            Files.deleteIfExists(directory.resolve(TRIMMED_ROWS_FILENAME));
+            Files.deleteIfExists(directory.resolve(TRIMMED_STRINGS_FILENAME));
+        }
+
+        final Path rowsFile = directory.resolve(ROWS_FILENAME);
+
+        if (Files.exists(rowsFile) && Files.size(rowsFile) / ROW_SIZE > maxRows) {
+            trim(directory, Files.size(rowsFile) / ROW_SIZE, getRowsToKeepWhenTrimming());
+        }
+
+        rowsChannel = FileChannel.open(directory.resolve(ROWS_FILENAME),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+            stringsChannel = FileChannel.open(directory.resolve(STRINGS_FILENAME),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (final IOException e) {
+            rowsChannel.close();
+            throw e;
+        }
+
+        try {
+            final long rowCount = rowsChannel.size() / ROW_SIZE;
+
+            if (rowCount > Integer.MAX_VALUE) {
+                throw new IOException("Result history has too many rows: " + rowCount);
+            }
+
+            archivedRowCount = (int) rowCount;
+            this.rowCount = rowCount;
+
+            rowsChannel.truncate(rowCount * ROW_SIZE);
+            rowsChannel.position(rowCount * ROW_SIZE);
+            stringsChannel.position(stringsChannel.size());
+            nextStringOffset = stringsChannel.size();
+
+            archivedRows = new MappedFile(rowsChannel, rowCount * ROW_SIZE);
+            archivedStrings = new MappedFile(stringsChannel, stringsChannel.size());
+        } catch (final IOException e) {
+            close();
+            throw e;
+        }
+
+        writerExecutorService.scheduleWithFixedDelay(this::flushQuietly,
+                FLUSH_INTERVAL.toMillis(), FLUSH_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private int getRowsToKeepWhenTrimming() {
+        // Leave some room so we're not trimming again after every few rows
+        return maxRows - (maxRows / 4);
+    }
+
+    /**
+     * Copies the newest rows of the history (and the strings they refer to) into new files, then replaces the
+     * history's files with the copies. The copies are written in full before a marker file is created and the copies
+     * are moved into place, so if the application stops partway through, the next attempt to open the history either
+     * discards incomplete copies or finishes moving complete copies into place.
+     */
+    private static void trim(final Path directory, final long rowCount, final int rowsToKeep) throws IOException {
+        try (final FileChannel rowsIn = FileChannel.open(directory.resolve(ROWS_FILENAME), StandardOpenOption.READ);
+             final FileChannel stringsIn = FileChannel.open(directory.resolve(STRINGS_FILENAME), StandardOpenOption.READ);
+             final FileChannel rowsOut = FileChannel.open(directory.resolve(TRIMMED_ROWS_FILENAME),
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             final FileChannel stringsOut = FileChannel.open(directory.resolve(TRIMMED_STRINGS_FILENAME),
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            final Map<Long, Long> copiedStringOffsets = new HashMap<>();
+            final ByteBuffer rows = ByteBuffer.allocate(ROW_SIZE * TRIM_BATCH_ROWS);
+
+            final long end = rowCount * ROW_SIZE;
+            long position = (rowCount - rowsToKeep) * ROW_SIZE;
+
+            while (position < end) {
+                rows.clear();
+                rows.limit((int) Math.min(rows.capacity(), end - position));
+                readFully(rowsIn, rows, position);
+                position += rows.limit();
+
+                for (int row = 0; row < rows.limit(); row += ROW_SIZE) {
+                    for (final int column : STRING_COLUMN_OFFSETS) {
+                        final long offset = rows.getLong(row + column);
+
+                        if (offset != NO_STRING) {
+                            Long copiedOffset = copiedStringOffsets.get(offset);
+
+                            if (copiedOffset == null) {
+                                if (copiedStringOffsets.size() >= MAX_WRITTEN_STRINGS) {
+                                    copiedStringOffsets.clear();
+                                }
+
+                                copiedOffset = copyString(stringsIn, offset, stringsOut);
+                                copiedStringOffsets.put(offset, copiedOffset);
+                            }
+
+                            rows.putLong(row + column, copiedOffset);
+                        }
+                    }
+                }
+
+                rows.flip();
+                writeFully(rowsOut, rows);
+            }
+
+            rowsOut.force(true);
+            stringsOut.force(true);
+        }
+
+        Files.createFile(directory.resolve(TRIM_MARKER_FILENAME));
+        finishTrim(directory);
+    }
+
+    private static void finishTrim(final Path directory) throws IOException {
+        // Strings go first so the rows in place never refer to strings that aren't
+        final Path trimmedStringsFile = directory.resolve(TRIMMED_STRINGS_FILENAME);
+        final Path trimmedRowsFile = directory.resolve(TRIMMED_ROWS_FILENAME);
+
+        if (Files.exists(trimmedStringsFile)) {
+            Files.move(trimmedStringsFile, directory.resolve(STRINGS_FILENAME), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        if (Files.exists(trimmedRowsFile)) {
+            Files.move(trimmedRowsFile, directory.resolve(ROWS_FILENAME), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        Files.delete(directory.resolve(TRIM_MARKER_FILENAME));
+    }
+
+    private static long copyString(final FileChannel in, final long offset, final FileChannel out) throws IOException {
+        final ByteBuffer lengthBuffer = ByteBuffer.allocate(Integer.BYTES);
+        readFully(in, lengthBuffer, offset);
+
+        final ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + lengthBuffer.getInt(0));
+        readFully(in, buffer, offset);
+        buffer.flip();
+
+        final long copiedOffset = out.position();
+        writeFully(out, buffer);
+
+        return copiedOffset;
+    }
+
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+        final int start = buffer.position();
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position() - start) < 0) {
+                throw new EOFException("Result history ended unexpectedly");
+            }
+        }
+    }
+
+    /**
+     * Returns the number of rows that were already in the history when it was opened.
+     *
+     * @return the number of rows written by previous sessions
+     */
+    int getArchivedRowCount() {
+        return archivedRowCount;
+    }
+
+    /**
+     * Reads a row written by a previous session. May be called from any thread.
+     *
+     * @param rowId the ID of the row to read; must be less than {@link #getArchivedRowCount()}
+     *
+     * @return the result stored in the given row
+     */
+    NotificationResult readArchivedRow(final int rowId) {
+        final long row = getArchivedRowPosition(rowId);
+        final int flags = archivedRows.get(row + FLAGS_OFFSET);
+
+        final int priorityCode = archivedRows.get(row + PRIORITY_OFFSET);
+
+        final ApnsPushNotification pushNotification = new ArchivedPushNotification(
+                readArchivedToken(rowId),
+                readArchivedValueString(archivedRows.getLong(row + TOPIC_OFFSET)),
+                archivedRows.getLong(row + PAYLOAD_OFFSET),
+                priorityCode != 0 ? DeliveryPriority.getFromCode(priorityCode) : null,
+                readArchivedString(archivedRows.getLong(row + COLLAPSE_ID_OFFSET)));
+
+        return new NotificationResult(pushNotification,
+                readArchivedTarget(rowId),
+                NotificationResult.Status.values()[archivedRows.get(row + STATUS_OFFSET)],
+                (flags & HAS_APNS_ID) != 0 ?
+                        new UUID(archivedRows.getLong(row + APNS_ID_OFFSET), archivedRows.getLong(row + APNS_ID_OFFSET + 8)) : null,
+                readArchivedValueString(archivedRows.getLong(row + REJECTION_REASON_OFFSET)),
+                (flags & HAS_TOKEN_INVALIDATION_TIMESTAMP) != 0 ?
+                        fromMicros(archivedRows.getLong(row + TOKEN_INVALIDATION_TIMESTAMP_OFFSET)) : null,
+                (flags & HAS_SEND_TIMESTAMP) != 0 ? fromMicros(archivedRows.getLong(row + SEND_TIMESTAMP_OFFSET)) : null,
+                (flags & HAS_LATENCY) != 0 ? Duration.ofNanos(archivedRows.getLong(row + LATENCY_OFFSET)) : null);
+    }
+
+    private long getArchivedRowPosition(final int rowId) {
+        if (rowId < 0 || rowId >= archivedRowCount) {
+            throw new IndexOutOfBoundsException("Row ID: " + rowId);
+        }
+
+        return (long) rowId * ROW_SIZE;
+    }
+
+    /**
+     * Reads the status of a row written by a previous session. May be called from any thread.
+     *
+     * @param rowId the ID of the row to read; must be less than {@link #getArchivedRowCount()}
+     *
+     * @return the status of the result stored in the given row
+     */
+    NotificationResult.Status readArchivedStatus(final int rowId) {
+        return NotificationResult.Status.values()[archivedRows.get(getArchivedRowPosition(rowId) + STATUS_OFFSET)];
+    }
+
+    /**
+     * Reads the delivery priority of a row written by a previous session. May be called from any thread.
+     *
+     * @param rowId the ID of the row to read; must be less than {@link #getArchivedRowCount()}
+     *
+     * @return the delivery priority of the notification stored in the given row, or {@code null} if the notification
+     * had no explicit priority
+     */
+    DeliveryPriority readArchivedPriority(final int rowId) {
+        final int priorityCode = archivedRows.get(getArchivedRowPosition(rowId) + PRIORITY_OFFSET);
+        return priorityCode != 0 ? DeliveryPriority.getFromCode(priorityCode) : null;
+    }
+
+    /**
+     * Reads the topic of a row written by a previous session. May be called from any thread.
+     *
+     * @param rowId the ID of the row to read; must be less than {@link #getArchivedRowCount()}
+     *
+     * @return the topic of the notification stored in the given row
+     */
+    String readArchivedTopic(final int rowId) {
+        return readArchivedValueString(archivedRows.getLong(getArchivedRowPosition(rowId) + TOPIC_OFFSET));
+    }
+
+    /**
+     * Reads the rejection reason of a row written by a previous session. May be called from any thread.
+     *
+     * @param rowId the ID of the row to read; must be less than {@link #getArchivedRowCount()}
+     *
+     * @return the rejection reason of the result stored in the given row, or {@code null} if the result has no
+     * rejection reason
+     */
+    String readArchivedRejectionReason(final int rowId) {
+        return readArchivedValueString(archivedRows.getLong(getArchivedRowPosition(rowId) + REJECTION_REASON_OFFSET));
+    }
+
+    /**
+     * Reads the target of a row written by a previous session. May be called from any thread.
+     *
+     * @param rowId the ID of the row to read; must be less than {@link #getArchivedRowCount()}
+     *
+     * @return the target of the result stored in the given row, or {@code null} if the result has no target
+     */
+    ApnsTarget readArchivedTarget(final int rowId) {
+        final long offset = archivedRows.getLong(getArchivedRowPosition(rowId) + TARGET_OFFSET);
+
+        if (offset == NO_STRING) {
+            return null;
+        }
+
+        final ApnsTarget cachedTarget = archivedTargets.get(offset);
+
+        if (cachedTarget != null) {
+            return cachedTarget;
+        }
+
+        if (archivedTargets.size() >= MAX_CACHED_ARCHIVED_VALUES) {
+            archivedTargets.clear();
+        }
+
+        final ApnsTarget target = ApnsTarget.parse(readArchivedString(offset));
+        archivedTargets.put(offset, target);
+
+        return target;
+    }
+
+    /**
+     * Reads the APNs ID of a row written by a previous session. May be called from any thread.
+     *
+     * @param rowId the ID of the row to read; must be less than {@link #getArchivedRowCount()}
+     *
+     * @return the APNs ID of the result stored in the given row, or {@code null} if the result has no APNs ID
+     */
+    UUID readArchivedApnsId(final int rowId) {
+        final long row = getArchivedRowPosition(rowId);
+
+        return (archivedRows.get(row + FLAGS_OFFSET) & HAS_APNS_ID) != 0 ?
+                new UUID(archivedRows.getLong(row + APNS_ID_OFFSET), archivedRows.getLong(row + APNS_ID_OFFSET + 8)) : null;
+    }
+
+    /**
+     * Reads the device token of a row written by a previous session. May be called from any thread.
+     *
+     * @param rowId the ID of the row to read; must be less than {@link #getArchivedRowCount()}
+     *
+     * @return the device token of the notification stored in the given row
+     */
+    String readArchivedToken(final int rowId) {
+        final long row = getArchivedRowPosition(rowId);
+
+        if ((archivedRows.get(row + FLAGS_OFFSET) & HAS_HEX_TOKEN) != 0) {
+            final byte[] hexToken = new byte[NotificationResultStore.TOKEN_BYTES];
+            archivedRows.get(row + HEX_TOKEN_OFFSET, hexToken);
+
+            return NotificationResultStore.unpackHexToken(hexToken, 0);
+        }
+
+        return readArchivedString(archivedRows.getLong(row + TOKEN_OFFSET));
+    }
+
+    /**
+     * Copies the raw bytes of the device token of a row written by a previous session into the given array if the
+     * token was stored as raw bytes. May be called from any thread.
+     *
+     * @param rowId the ID of the row to read; must be less than {@link #getArchivedRowCount()}
+     * @param destination an array of at least {@link NotificationResultStore#TOKEN_BYTES} bytes
+     *
+     * @return {@code true} if the token was stored as raw bytes and was copied into the given array or {@code false}
+     * otherwise
+     */
+    boolean readArchivedHexToken(final int rowId, final byte[] destination) {
+        final long row = getArchivedRowPosition(rowId);
+
+        if ((archivedRows.get(row + FLAGS_OFFSET) & HAS_HEX_TOKEN) == 0) {
+            return false;
+        }
+
+        archivedRows.get(row + HEX_TOKEN_OFFSET, destination, NotificationResultStore.TOKEN_BYTES);
+        return true;
+    }
+
+    private String readArchivedValueString(final long offset) {
+        if (offset == NO_STRING) {
+            return null;
+        }
+
+        final String cachedString = archivedValueStrings.get(offset);
+
+        if (cachedString != null) {
+            return cachedString;
+        }
+
+        if (archivedValueStrings.size() >= MAX_CACHED_ARCHIVED_VALUES) {
+            archivedValueStrings.clear();
+        }
+
+        final String string = readArchivedString(offset);
+        archivedValueStrings.put(offset, string);
+
+        return string;
+    }
+
+    private String readArchivedString(final long offset) {
+        if (offset == NO_STRING) {
+            return null;
+        }
+
+        final byte[] bytes = new byte[archivedStrings.getInt(offset)];
+        archivedStrings.get(offset + Integer.BYTES, bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Appends a result to the end of the history. The result is buffered in memory and written to disk by a background
+     * thread shortly afterward. Must be called from only one thread at a time.
+     *
+     * @param result the result to append
+     *
+     * @throws IOException if a previously-appended result could not be written, in which case nothing more will be
+     * written
+     */
+    void append(final NotificationResult result) throws IOException {
+        if (writeFailure != null) {
+            throw writeFailure;
+        }
+
+        if (rowCount >= maxRows) {
+            requestTrim();
+        }
+
+        final ApnsPushNotification pushNotification = result.getPushNotification();
+
+        final boolean hexToken = NotificationResultStore.isLowercaseHexToken(pushNotification.getToken());
+        final long tokenOffset = hexToken ? NO_STRING : writeString(pushNotification.getToken());
+        final long topicOffset = writeString(pushNotification.getTopic());
+        final long payloadOffset = writeString(pushNotification.getPayload());
+        final long collapseIdOffset = writeString(pushNotification.getCollapseId());
+        final long rejectionReasonOffset = writeString(result.getRejectionReason().orElse(null));
+        final long targetOffset = writeString(result.getTarget().map(ApnsTarget::toString).orElse(null));
+
+        int flags = 0;
+
+        Arrays.fill(rowBuffer.array(), (byte) 0);
+        rowBuffer.clear();
+
+        rowBuffer.put(STATUS_OFFSET, (byte) result.getStatus().ordinal());
+        rowBuffer.put(PRIORITY_OFFSET, (byte) (pushNotification.getPriority() != null ? pushNotification.getPriority().getCode() : 0));
+
+        if (result.getSendTimestamp().isPresent()) {
+            flags |= HAS_SEND_TIMESTAMP;
+            rowBuffer.putLong(SEND_TIMESTAMP_OFFSET, toMicros(result.getSendTimestamp().get()));
+        }
+
+        if (result.getLatency().isPresent()) {
+            flags |= HAS_LATENCY;
+            rowBuffer.putLong(LATENCY_OFFSET, result.getLatency().get().toNanos());
+        }
+
+        if (result.getApnsId().isPresent()) {
+            flags |= HAS_APNS_ID;
+            rowBuffer.putLong(APNS_ID_OFFSET, result.getApnsId().get().getMostSignificantBits());
+            rowBuffer.putLong(APNS_ID_OFFSET + 8, result.getApnsId().get().getLeastSignificantBits());
+        }
+
+        if (result.getTokenInvalidationTimestamp().isPresent()) {
+            flags |= HAS_TOKEN_INVALIDATION_TIMESTAMP;
+            rowBuffer.putLong(TOKEN_INVALIDATION_TIMESTAMP_OFFSET, toMicros(result.getTokenInvalidationTimestamp().get()));
+        }
+
+        if (hexToken) {
+            flags |= HAS_HEX_TOKEN;
+            NotificationResultStore.packHexToken(pushNotification.getToken(), rowBuffer.array(), HEX_TOKEN_OFFSET);
+        }
+
+        rowBuffer.put(FLAGS_OFFSET, (byte) flags);
+        rowBuffer.putLong(TOKEN_OFFSET, tokenOffset);
+        rowBuffer.putLong(TOPIC_OFFSET, topicOffset);
+        rowBuffer.putLong(PAYLOAD_OFFSET, payloadOffset);
+        rowBuffer.putLong(COLLAPSE_ID_OFFSET, collapseIdOffset);
+        rowBuffer.putLong(REJECTION_REASON_OFFSET, rejectionReasonOffset);
+        rowBuffer.putLong(TARGET_OFFSET, targetOffset);
+
+        rowCount += 1;
+
+        synchronized (this) {
+            pendingRows.write(rowBuffer.array(), 0, ROW_SIZE);
+
+            if (!flushRequested && pendingRows.size() + pendingStrings.size() >= MAX_PENDING_BYTES) {
+                flushRequested = true;
+                writerExecutorService.execute(this::flushQuietly);
+            }
+        }
+    }
+
+    /**
+     * Asks the writer thread to trim the history once everything appended so far has been written. The trim moves
+     * strings around, so rows appended after this point start over with an empty set of written strings and offsets
+     * relative to wherever the strings file stands after the trim.
+     */
+    private void requestTrim() {
+        synchronized (this) {
+            if (rowsBeforeTrim != null) {
+                // The writer hasn't gotten to the last trim yet; we'll try again with the next row, and the history may
+                // run a little past its limit in the meantime
+                return;
+            }
+
+            rowsBeforeTrim = pendingRows.toByteArray();
+            stringsBeforeTrim = pendingStrings.toByteArray();
+
+            pendingRows.reset();
+            pendingStrings.reset();
+
+            if (!flushRequested) {
+                flushRequested = true;
+                writerExecutorService.execute(this::flushQuietly);
+            }
+        }
+
+        writtenStringOffsets.clear();
+        nextStringOffset = 0;
+        rowCount = getRowsToKeepWhenTrimming();
+    }
+
+    private long writeString(final String string) {
+        if (string == null) {
+            return NO_STRING;
+        }
+
+        final Long existingOffset = writtenStringOffsets.get(string);
+
+        if (existingOffset != null) {
+            return existingOffset;
+        }
+
+        final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        final long offset = nextStringOffset;
+
+        synchronized (this) {
+            pendingStrings.write(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array(), 0, Integer.BYTES);
+            pendingStrings.write(bytes, 0, bytes.length);
+        }
+
+        nextStringOffset += Integer.BYTES + bytes.length;
+        writtenStringOffsets.put(string, offset);
+
+        return offset;
+    }
+
+    /**
+     * Writes every buffered result to disk.
+     *
+     * @throws IOException if buffered results could not be written for any reason
+     */
+    void flush() throws IOException {
+        synchronized (flushLock) {
+            if (closed || writeFailure != null) {
+                return;
+            }
+
+            final byte[] stringsBeforeTrim;
+            final byte[] rowsBeforeTrim;
+            final byte[] strings;
+            final byte[] rows;
+
+            synchronized (this) {
+                stringsBeforeTrim = this.stringsBeforeTrim;
+                rowsBeforeTrim = this.rowsBeforeTrim;
+                strings = pendingStrings.toByteArray();
+                rows = pendingRows.toByteArray();
+
+                this.stringsBeforeTrim = null;
+                this.rowsBeforeTrim = null;
+                pendingStrings.reset();
+                pendingRows.reset();
+                flushRequested = false;
+            }
+
+            try {
+                if (rowsBeforeTrim != null) {
+                    write(stringsBeforeTrim, rowsBeforeTrim);
+                    trimInPlace();
+                }
+
+                write(strings, rows);
+            } catch (final IOException e) {
+                writeFailure = e;
+                throw e;
+            }
+        }
+    }
+
+    private void write(final byte[] strings, final byte[] rows) throws IOException {
+        if (stringOffsetBase != 0) {
+            final ByteBuffer rowBuffer = ByteBuffer.wrap(rows);
+
+            for (int row = 0; row < rows.length; row += ROW_SIZE) {
+                for (final int column : STRING_COLUMN_OFFSETS) {
+                    final long offset = rowBuffer.getLong(row + column);
+
+                    if (offset != NO_STRING) {
+                        rowBuffer.putLong(row + column, offset + stringOffsetBase);
+                    }
+                }
+            }
+        }
+
+        // Write strings before the rows that refer to them so a crash never leaves a row pointing at nothing
+        writeFully(stringsChannel, ByteBuffer.wrap(strings));
+        writeFully(rowsChannel, ByteBuffer.wrap(rows));
+    }
+
+    /**
+     * Trims the history's files while the history is open. Rows written by previous sessions are still read from the
+     * original files, which stay mapped (and readable) after they've been replaced.
+     */
+    private void trimInPlace() throws IOException {
+        final long rowCount = rowsChannel.size() / ROW_SIZE;
+
+        rowsChannel.close();
+        stringsChannel.close();
+
+        trim(directory, rowCount, (int) Math.min(rowCount, getRowsToKeepWhenTrimming()));
+
+        rowsChannel = FileChannel.open(directory.resolve(ROWS_FILENAME), StandardOpenOption.WRITE);
+        rowsChannel.position(rowsChannel.size());
+
+        stringsChannel = FileChannel.open(directory.resolve(STRINGS_FILENAME), StandardOpenOption.WRITE);
+        stringsChannel.position(stringsChannel.size());
+
+        stringOffsetBase = stringsChannel.size();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (final IOException ignored) {
+            // The failure is reported by the next call to append or close
+        }
+    }
+
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static long toMicros(final Instant instant) {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, instant);
+    }
+
+    private static Instant fromMicros(final long micros) {
+        return Instant.EPOCH.plus(micros, ChronoUnit.MICROS);
+    }
+
+    /**
+     * Writes any buffered results to disk, then closes the history.
+     *
+     * @throws IOException if buffered results could not be written or the history's files could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        writerExecutorService.shutdown();
+
+        synchronized (flushLock) {
+            try {
+                if (rowsChannel != null && stringsChannel != null) {
+                    flush();
+                }
+            } finally {
+                closed = true;
+
+                try {
+                    if (rowsChannel != null) {
+                        rowsChannel.close();
+                    }
+                } finally {
+                    if (stringsChannel != null) {
+                        stringsChannel.close();
+                    }
+                }
+            }
+        }
+
+        if (writeFailure != null) {
+            throw writeFailure;
+        }
+    }
+}
@@ -0,0 +1,476 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.DeliveryPriority;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.util.*;
+
+/**
+ * <p>A set of secondary indexes over the results in a {@link NotificationResultStore}. The index listens for new
+ * results and updates itself incrementally as they arrive, so answering a {@link NotificationResultFilter} never
+ * requires a scan over every result in the store.</p>
+ *
+ * <p>Status, rejection reason, topic, delivery priority, and target are indexed as lists of row IDs per distinct value. Tokens are indexed in
+ * sorted order so that all tokens with a given prefix occupy a single contiguous range, and APNs IDs (which are unique)
+ * are indexed in a compact open-addressing table.</p>
+ *
+ * <p>Nearly every row has a distinct token, so the token index can't afford a per-token object. Instead, it's a
+ * primitive array of row IDs sorted by token; the tokens themselves stay in the store, where most of them are 32 raw
+ * bytes, and are compared in place. New rows wait in a short unsorted list until there are enough of them to be worth
+ * sorting and merging into the sorted array. Either way, the index costs about four bytes per row.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class NotificationResultIndex {
+
+    private final NotificationResultStore store;
+
+    private final Map<NotificationResult.Status, IntList> rowsByStatus = new EnumMap<>(NotificationResult.Status.class);
+    private final Map<String, IntList> rowsByRejectionReason = new HashMap<>();
+    private final Map<String, IntList> rowsByTopic = new HashMap<>();
+    private final Map<DeliveryPriority, IntList> rowsByPriority = new EnumMap<>(DeliveryPriority.class);
+    private final Map<ApnsTarget, IntList> rowsByTarget = new HashMap<>();
+    private final TokenIndex rowsByToken = new TokenIndex();
+    private final ApnsIdTable rowsByApnsId = new ApnsIdTable();
+
+    private final ObservableList<String> rejectionReasons = FXCollections.observableArrayList();
+    private final ObservableList<String> topics = FXCollections.observableArrayList();
+    private final ObservableList<ApnsTarget> targets = FXCollections.observableArrayList();
+
+    private int indexedRows = 0;
+    private boolean catchUpScheduled = false;
+
+    /**
+     * An open-addressing hash table that maps APNs IDs to row IDs using parallel primitive arrays.
+     */
+    private static class ApnsIdTable {
+
+        private long[] mostSignificantBits = new long[1024];
+        private long[] leastSignificantBits = new long[1024];
+
+        // Row IDs are stored plus one so that zero can mark an empty slot
+        private int[] rowIds = new int[1024];
+
+        private int size = 0;
+
+        void put(final UUID apnsId, final int rowId) {
+            if ((size + 1) * 2 > rowIds.length) {
+                resize();
+            }
+
+            final int slot = findSlot(apnsId.getMostSignificantBits(), apnsId.getLeastSignificantBits());
+
+            if (rowIds[slot] == 0) {
+                size += 1;
+            }
+
+            mostSignificantBits[slot] = apnsId.getMostSignificantBits();
+            leastSignificantBits[slot] = apnsId.getLeastSignificantBits();
+            rowIds[slot] = rowId + 1;
+        }
+
+        int get(final UUID apnsId) {
+            return rowIds[findSlot(apnsId.getMostSignificantBits(), apnsId.getLeastSignificantBits())] - 1;
+        }
+
+        private int findSlot(final long msb, final long lsb) {
+            final int mask = rowIds.length - 1;
+            int slot = (int) ((msb ^ lsb) ^ ((msb ^ lsb) >>> 32)) & mask;
+
+            while (rowIds[slot] != 0 && (mostSignificantBits[slot] != msb || leastSignificantBits[slot] != lsb)) {
+                slot = (slot + 1) & mask;
+            }
+
+            return slot;
+        }
+
+        private void resize() {
+            final long[] oldMostSignificantBits = mostSignificantBits;
+            final long[] oldLeastSignificantBits = leastSignificantBits;
+            final int[] oldRowIds = rowIds;
+
+            mostSignificantBits = new long[oldRowIds.length * 2];
+            leastSignificantBits = new long[oldRowIds.length * 2];
+            rowIds = new int[oldRowIds.length * 2];
+
+            for (int i = 0; i < oldRowIds.length; i++) {
+                if (oldRowIds[i] != 0) {
+                    final int slot = findSlot(oldMostSignificantBits[i], oldLeastSignificantBits[i]);
+
+                    mostSignificantBits[slot] = oldMostSignificantBits[i];
+                    leastSignificantBits[slot] = oldLeastSignificantBits[i];
+                    rowIds[slot] = oldRowIds[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Row IDs sorted by the tokens in those rows. Tokens stored as raw bytes are compared byte by byte, which sorts them
+     * the same way as their (lowercase) hexadecimal strings; any other tokens are compared as lowercase strings.
+     */
+    private class TokenIndex {
+
+        private int[] sortedRows = new int[0];
+
+        // Recently-added rows that haven't been merged into the sorted rows yet, in ascending order
+        private final IntList unsortedRows = new IntList();
+
+        // Scratch space for reading tokens from the store without allocating
+        private final byte[] firstToken = new byte[NotificationResultStore.TOKEN_BYTES];
+        private final byte[] secondToken = new byte[NotificationResultStore.TOKEN_BYTES];
+
+        // Merging costs a copy of the whole sorted array, so let the unsorted list grow with the sorted array
+        private static final int MIN_UNSORTED_ROWS = 4096;
+
+        void add(final int rowId) {
+            unsortedRows.add(rowId);
+
+            if (unsortedRows.size() >= Math.max(MIN_UNSORTED_ROWS, sortedRows.length / 8)) {
+                merge();
+            }
+        }
+
+        /**
+         * Returns the IDs of all rows whose tokens start with the given prefix.
+         *
+         * @param prefix a lowercase token prefix
+         *
+         * @return the IDs of all rows whose tokens start with the given prefix, in ascending order
+         */
+        int[] getRowsWithPrefix(final String prefix) {
+            int low = 0;
+            int high = sortedRows.length;
+
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+
+                if (compareToPrefix(sortedRows[middle], prefix) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+
+            final IntList matchingRows = new IntList();
+
+            for (int i = low; i < sortedRows.length && compareToPrefix(sortedRows[i], prefix) == 0; i++) {
+                matchingRows.add(sortedRows[i]);
+            }
+
+            for (int i = 0; i < unsortedRows.size(); i++) {
+                if (compareToPrefix(unsortedRows.get(i), prefix) == 0) {
+                    matchingRows.add(unsortedRows.get(i));
+                }
+            }
+
+            final int[] rows = matchingRows.toArray();
+            Arrays.sort(rows);
+
+            return rows;
+        }
+
+        private void merge() {
+            final int[] newRows = unsortedRows.toArray();
+            unsortedRows.clear();
+
+            mergeSort(newRows, new int[newRows.length], 0, newRows.length);
+
+            final int[] mergedRows = new int[sortedRows.length + newRows.length];
+            int i = 0;
+            int j = 0;
+
+            for (int k = 0; k < mergedRows.length; k++) {
+                if (j == newRows.length || (i < sortedRows.length && compareTokens(sortedRows[i], newRows[j]) <= 0)) {
+                    mergedRows[k] = sortedRows[i++];
+                } else {
+                    mergedRows[k] = newRows[j++];
+                }
+            }
+
+            sortedRows = mergedRows;
+        }
+
+        private void mergeSort(final int[] rows, final int[] scratch, final int from, final int to) {
+            if (to - from < 2) {
+                return;
+            }
+
+            final int middle = (from + to) >>> 1;
+
+            mergeSort(rows, scratch, from, middle);
+            mergeSort(rows, scratch, middle, to);
+
+            if (compareTokens(rows[middle - 1], rows[middle]) <= 0) {
+                // Already in order, which is common when a bulk send goes out in token order
+                return;
+            }
+
+            System.arraycopy(rows, from, scratch, from, to - from);
+
+            int i = from;
+            int j = middle;
+
+            for (int k = from; k < to; k++) {
+                if (j == to || (i < middle && compareTokens(scratch[i], scratch[j]) <= 0)) {
+                    rows[k] = scratch[i++];
+                } else {
+                    rows[k] = scratch[j++];
+                }
+            }
+        }
+
+        private int compareTokens(final int firstRowId, final int secondRowId) {
+            final boolean firstIsHex = store.getHexToken(firstRowId, firstToken);
+            final boolean secondIsHex = store.getHexToken(secondRowId, secondToken);
+
+            if (firstIsHex && secondIsHex) {
+                return Arrays.compareUnsigned(firstToken, secondToken);
+            }
+
+            return getLowercaseToken(firstRowId, firstIsHex, firstToken)
+                    .compareTo(getLowercaseToken(secondRowId, secondIsHex, secondToken));
+        }
+
+        /**
+         * Compares the token in the given row to the given prefix.
+         *
+         * @return zero if the token starts with the given prefix, or a negative or positive number if the token sorts
+         * before or after every token that starts with the given prefix
+         */
+        private int compareToPrefix(final int rowId, final String prefix) {
+            if (store.getHexToken(rowId, firstToken)) {
+                final int digits = Math.min(prefix.length(), NotificationResultStore.TOKEN_BYTES * 2);
+
+                for (int i = 0; i < digits; i++) {
+                    final int packedByte = firstToken[i >> 1];
+                    final char digit = Character.forDigit((i & 1) == 0 ? (packedByte >> 4) & 0xF : packedByte & 0xF, 16);
+
+                    if (digit != prefix.charAt(i)) {
+                        return digit - prefix.charAt(i);
+                    }
+                }
+
+                // A token that's shorter than the prefix sorts before it
+                return prefix.length() > digits ? -1 : 0;
+            }
+
+            final String token = store.getToken(rowId).toLowerCase(Locale.ROOT);
+            return token.startsWith(prefix) ? 0 : token.compareTo(prefix);
+        }
+
+        private String getLowercaseToken(final int rowId, final boolean isHex, final byte[] hexToken) {
+            return isHex ? NotificationResultStore.unpackHexToken(hexToken, 0) : store.getToken(rowId).toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Constructs a new index over the given store, indexing any results already in the store and any results added
+     * later.
+     *
+     * @param store the store to index
+     */
+    NotificationResultIndex(final NotificationResultStore store) {
+        this.store = store;
+
+        store.addListener((ListChangeListener<NotificationResult>) change -> indexNewRows());
+        indexNewRows();
+    }
+
+    private void indexNewRows() {
+        final int size = Math.min(store.size(), indexedRows + NotificationResultStore.MAX_ROWS_PER_PASS);
+
+        // Read only the indexed columns so catching up with a large history never decodes whole results
+        while (indexedRows < size) {
+            final int rowId = indexedRows++;
+
+            rowsByStatus.computeIfAbsent(store.getStatus(rowId), status -> new IntList()).add(rowId);
+
+            final String rejectionReason = store.getRejectionReason(rowId);
+
+            if (rejectionReason != null) {
+                rowsByRejectionReason.computeIfAbsent(rejectionReason, reason -> {
+                    rejectionReasons.add(reason);
+                    return new IntList();
+                }).add(rowId);
+            }
+
+            rowsByTopic.computeIfAbsent(store.getTopic(rowId), topic -> {
+                topics.add(topic);
+                return new IntList();
+            }).add(rowId);
+
+            rowsByPriority.computeIfAbsent(store.getDeliveryPriority(rowId), priority -> new IntList()).add(rowId);
+
+            final ApnsTarget target = store.getTarget(rowId);
+
+            if (target != null) {
+                rowsByTarget.computeIfAbsent(target, t -> {
+                    targets.add(t);
+                    return new IntList();
+                }).add(rowId);
+            }
+
+            rowsByToken.add(rowId);
+
+            final UUID apnsId = store.getApnsId(rowId);
+
+            if (apnsId != null) {
+                rowsByApnsId.put(apnsId, rowId);
+            }
+        }
+
+        if (indexedRows < store.size() && !catchUpScheduled) {
+            catchUpScheduled = true;
+
+            Platform.runLater(() -> {
+                catchUpScheduled = false;
+                indexNewRows();
+            });
+        }
+    }
+
+    /**
+     * Returns the number of rows from the store that have been indexed so far. Rows from previous sessions are indexed
+     * a batch at a time, so the index may briefly lag behind a store that was opened with a large history.
+     *
+     * @return the number of rows that have been indexed
+     */
+    int getIndexedRowCount() {
+        return indexedRows;
+    }
+
+    /**
+     * Returns a live list of all of the distinct rejection reasons in the indexed store, in the order in which they
+     * first appeared.
+     *
+     * @return a live list of distinct rejection reasons
+     */
+    ObservableList<String> getRejectionReasons() {
+        return FXCollections.unmodifiableObservableList(rejectionReasons);
+    }
+
+    /**
+     * Returns a live list of all of the distinct topics in the indexed store, in the order in which they first
+     * appeared.
+     *
+     * @return a live list of distinct topics
+     */
+    ObservableList<String> getTopics() {
+        return FXCollections.unmodifiableObservableList(topics);
+    }
+
+    /**
+     * Returns a live list of all of the distinct targets in the indexed store, in the order in which they first
+     * appeared.
+     *
+     * @return a live list of distinct targets
+     */
+    ObservableList<ApnsTarget> getTargets() {
+        return FXCollections.unmodifiableObservableList(targets);
+    }
+
+    /**
+     * Returns the IDs of all rows that match the given filter.
+     *
+     * @param filter the filter to apply
+     *
+     * @return the IDs of all matching rows among the first {@link #getIndexedRowCount()} rows in the store, in
+     * ascending order
+     */
+    int[] query(final NotificationResultFilter filter) {
+        final List<int[]> candidates = new ArrayList<>(7);
+
+        filter.getStatus().ifPresent(status -> candidates.add(toArray(rowsByStatus.get(status))));
+        filter.getRejectionReason().ifPresent(reason -> candidates.add(toArray(rowsByRejectionReason.get(reason))));
+        filter.getTopic().ifPresent(topic -> candidates.add(toArray(rowsByTopic.get(topic))));
+        filter.getPriority().ifPresent(priority -> candidates.add(toArray(rowsByPriority.get(priority))));
+        filter.getTarget().ifPresent(target -> candidates.add(toArray(rowsByTarget.get(target))));
+        filter.getTokenPrefix().ifPresent(prefix -> candidates.add(rowsByToken.getRowsWithPrefix(prefix)));
+
+        filter.getApnsId().ifPresent(apnsId -> {
+            final int rowId = rowsByApnsId.get(apnsId);
+            candidates.add(rowId >= 0 ? new int[] { rowId } : new int[0]);
+        });
+
+        if (candidates.isEmpty()) {
+            final int[] allRows = new int[indexedRows];
+
+            for (int i = 0; i < allRows.length; i++) {
+                allRows[i] = i;
+            }
+
+            return allRows;
+        }
+
+        // Intersect the smallest candidate sets first so intermediate results stay as small as possible
+        candidates.sort(Comparator.comparingInt(rows -> rows.length));
+
+        int[] rows = candidates.get(0);
+
+        for (int i = 1; i < candidates.size() && rows.length > 0; i++) {
+            rows = intersect(rows, candidates.get(i));
+        }
+
+        return rows;
+    }
+
+    private static int[] toArray(final IntList rows) {
+        return rows != null ? rows.toArray() : new int[0];
+    }
+
+    static int[] intersect(final int[] smaller, final int[] larger) {
+        final int[] intersection = new int[smaller.length];
+        int size = 0;
+
+        int j = 0;
+
+        for (int i = 0; i < smaller.length && j < larger.length; i++) {
+            final int rowId = smaller[i];
+
+            // Gallop ahead in the larger list to bracket the row ID, then binary search within the bracket
+            int step = 1;
+
+            while (j + step < larger.length && larger[j + step] < rowId) {
+                j += step;
+                step <<= 1;
+            }
+
+            final int position = Arrays.binarySearch(larger, j, Math.min(j + step + 1, larger.length), rowId);
+
+            if (position >= 0) {
+                intersection[size++] = rowId;
+                j = position + 1;
+            } else {
+                j = -position - 1;
+            }
+        }
+
+        return Arrays.copyOf(intersection, size);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import javafx.scene.control.ListCell;
+
+import java.util.ResourceBundle;
+
+class NotificationResultStatusListCell extends ListCell<NotificationResult.Status> {
+
+    @Override
+    public void updateItem(final NotificationResult.Status status, final boolean empty) {
+        super.updateItem(status, empty);
+
+        if (!empty && status != null) {
+            setText(getLocalizedStatus(status));
+        } else {
+            setText(null);
+        }
+    }
+
+    static String getLocalizedStatus(final NotificationResult.Status status) {
+        final ResourceBundle resourceBundle = PushyConsoleApplication.RESOURCE_BUNDLE;
+
+        switch (status) {
+            case ACCEPTED:
+                return resourceBundle.getString("notification-result.status.accepted");
+
+            case REJECTED:
+                return resourceBundle.getString("notification-result.status.rejected");
+
+            case SKIPPED:
+                return resourceBundle.getString("notification-result.status.skipped");
+
+            default:
+                throw new IllegalArgumentException("Unexpected status: " + status);
+        }
+    }
+}
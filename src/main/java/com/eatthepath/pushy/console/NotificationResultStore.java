@@ -0,0 +1,610 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.ApnsPushNotification;
+import com.eatthepath.pushy.apns.DeliveryPriority;
+import com.eatthepath.pushy.apns.PushType;
+import javafx.collections.ObservableListBase;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>An append-only store of notification results. Each result is identified by its row ID, which is simply its
+ * position in the store and never changes once assigned.</p>
+ *
+ * <p>The store is itself an observable list, and can back a table view directly without copying its contents. Results
+ * must only be added on the JavaFX application thread, but any thread may read results that have already been added;
+ * readers should take a snapshot of {@link #size()} and only read rows below that limit.</p>
+ *
+ * <p>Bulk sends can produce millions of results that share a handful of payloads, topics, and rejection reasons, so
+ * results aren't kept as objects. Instead, each result is broken down into columns of primitive values, and
+ * repeated strings are stored once in {@link InternTable}s and referred to by ID; hexadecimal tokens are stored as
+ * raw bytes. A result takes about fifty bytes plus its token, and is only turned back into a
+ * {@link NotificationResult} when somebody asks for it.</p>
+ *
+ * <p>A store may be backed by a {@link NotificationResultHistory} (either from the start or
+ * {@linkplain #attachHistory(NotificationResultHistory) once the history has been opened}), in which case the rows
+ * written to the history by previous sessions occupy the first row IDs in the store. Those rows are read from the history on demand rather than
+ * held in memory. Because a history can be very large, consumers that visit every row in the store should do so in
+ * batches of at most {@link #MAX_ROWS_PER_PASS} rows per pass so they don't stall the JavaFX application thread, and
+ * should read only the columns they need (with methods like {@link #getStatus(int)} and {@link #getTopic(int)}) rather
+ * than decoding whole results with {@link #get(int)}. Column reads never touch payloads and never displace the rows a
+ * table is displaying from the store's cache of decoded rows.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class NotificationResultStore extends ObservableListBase<NotificationResult> {
+
+    // Rows live in fixed-size chunks so that growing the store never copies existing rows, and so readers on other
+    // threads never observe a half-copied backing array.
+    private volatile Chunk[] chunks = new Chunk[16];
+    private volatile int size;
+
+    private final InternTable<String> payloads = new InternTable<>();
+    private final InternTable<String> topics = new InternTable<>();
+    private final InternTable<String> collapseIds = new InternTable<>();
+    private final InternTable<String> rejectionReasons = new InternTable<>();
+    private final InternTable<ApnsTarget> targets = new InternTable<>();
+
+    // Very few results have a token invalidation timestamp, so there's no sense reserving space for one in every row
+    private final Map<Integer, Instant> tokenInvalidationTimestamps = new ConcurrentHashMap<>();
+
+    // Both are set before the store's size is published, so readers that respect the size see them, too
+    private NotificationResultHistory history;
+    private int archivedRowCount;
+
+    // Tables ask for the same handful of visible rows over and over, and should get the same objects back each time
+    private final Map<Integer, NotificationResult> decodedRowCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Integer, NotificationResult> eldest) {
+            return size() > MAX_CACHED_DECODED_ROWS;
+        }
+    };
+
+    private static final int CHUNK_SHIFT = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /**
+     * The length, in bytes, of tokens that can be stored as raw bytes. Nearly every token is 32 bytes written as 64
+     * lowercase hex digits.
+     */
+    static final int TOKEN_BYTES = 32;
+
+    private static final int HAS_APNS_ID = 1;
+    private static final int HAS_SEND_TIMESTAMP = 1 << 1;
+    private static final int HAS_LATENCY = 1 << 2;
+    private static final int HAS_HEX_TOKEN = 1 << 3;
+
+    private static final PushType[] PUSH_TYPES = PushType.values();
+
+    private static final int MAX_CACHED_DECODED_ROWS = 1024;
+
+    /**
+     * The maximum number of rows consumers should visit in a single pass when catching up with the store.
+     */
+    static final int MAX_ROWS_PER_PASS = 8192;
+
+    /**
+     * The columns for a contiguous block of rows. Interned values are stored as their ID plus one so that zero can
+     * stand for "no value."
+     */
+    private static class Chunk {
+
+        private final byte[] statuses = new byte[CHUNK_SIZE];
+        private final byte[] priorityCodes = new byte[CHUNK_SIZE];
+        private final byte[] pushTypes = new byte[CHUNK_SIZE];
+        private final byte[] flags = new byte[CHUNK_SIZE];
+
+        private final int[] payloadIds = new int[CHUNK_SIZE];
+        private final int[] topicIds = new int[CHUNK_SIZE];
+        private final int[] collapseIds = new int[CHUNK_SIZE];
+        private final int[] rejectionReasonIds = new int[CHUNK_SIZE];
+        private final int[] targetIds = new int[CHUNK_SIZE];
+
+        private final long[] sendTimestampMicros = new long[CHUNK_SIZE];
+        private final int[] latencyMicros = new int[CHUNK_SIZE];
+        private final long[] apnsIdMostSignificantBits = new long[CHUNK_SIZE];
+        private final long[] apnsIdLeastSignificantBits = new long[CHUNK_SIZE];
+
+        private final byte[] hexTokens = new byte[CHUNK_SIZE * TOKEN_BYTES];
+
+        // Only allocated if a chunk has a token that isn't 64 lowercase hex digits
+        private volatile String[] otherTokens;
+    }
+
+    /**
+     * A push notification reconstituted from a row in the store.
+     */
+    private static class StoredPushNotification implements ApnsPushNotification {
+
+        private final String token;
+        private final String topic;
+        private final String payload;
+        private final DeliveryPriority priority;
+        private final PushType pushType;
+        private final String collapseId;
+
+        private StoredPushNotification(final String token, final String topic, final String payload,
+                                       final DeliveryPriority priority, final PushType pushType, final String collapseId) {
+            this.token = token;
+            this.topic = topic;
+            this.payload = payload;
+            this.priority = priority;
+            this.pushType = pushType;
+            this.collapseId = collapseId;
+        }
+
+        @Override
+        public String getToken() {
+            return token;
+        }
+
+        @Override
+        public String getPayload() {
+            return payload;
+        }
+
+        @Override
+        public Instant getExpiration() {
+            return null;
+        }
+
+        @Override
+        public DeliveryPriority getPriority() {
+            return priority;
+        }
+
+        @Override
+        public PushType getPushType() {
+            return pushType;
+        }
+
+        @Override
+        public String getTopic() {
+            return topic;
+        }
+
+        @Override
+        public String getCollapseId() {
+            return collapseId;
+        }
+
+        @Override
+        public UUID getApnsId() {
+            return null;
+        }
+    }
+
+    /**
+     * Constructs a new, empty store.
+     */
+    NotificationResultStore() {
+        this(null);
+    }
+
+    /**
+     * Constructs a new store whose first rows are the rows written to the given history by previous sessions.
+     *
+     * @param history the history from which to read rows from previous sessions; may be {@code null}
+     */
+    NotificationResultStore(final NotificationResultHistory history) {
+        this.history = history;
+        this.archivedRowCount = history != null ? history.getArchivedRowCount() : 0;
+        this.size = archivedRowCount;
+    }
+
+    /**
+     * Attaches a history to this store, making the rows written to the history by previous sessions the first rows in
+     * the store. Because row IDs never change, a history can only be attached to a store that doesn't have any rows
+     * yet. Must be called on the JavaFX application thread.
+     *
+     * @param history the history from which to read rows from previous sessions
+     *
+     * @throws IllegalStateException if this store already has a history or already has rows
+     */
+    void attachHistory(final NotificationResultHistory history) {
+        Objects.requireNonNull(history, "History must not be null.");
+
+        if (this.history != null || size != 0) {
+            throw new IllegalStateException("A history can only be attached to an empty store");
+        }
+
+        this.history = history;
+        this.archivedRowCount = history.getArchivedRowCount();
+        size = archivedRowCount;
+
+        if (archivedRowCount > 0) {
+            beginChange();
+            nextAdd(0, archivedRowCount);
+            endChange();
+        }
+    }
+
+    /**
+     * Appends a result to the end of this store. The store keeps the result's values, but not the result itself;
+     * notification expiration times and push notification APNs IDs are not retained.
+     *
+     * @param result the result to append
+     *
+     * @return the row ID assigned to the given result
+     */
+    int append(final NotificationResult result) {
+        Objects.requireNonNull(result, "Result must not be null.");
+
+        final int rowId = size;
+        final int liveRowId = rowId - archivedRowCount;
+        final int chunkIndex = liveRowId >>> CHUNK_SHIFT;
+        final int row = liveRowId & CHUNK_MASK;
+
+        Chunk[] chunks = this.chunks;
+
+        if (chunkIndex == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunks.length * 2);
+        }
+
+        if (chunks[chunkIndex] == null) {
+            chunks[chunkIndex] = new Chunk();
+        }
+
+        final Chunk chunk = chunks[chunkIndex];
+        final ApnsPushNotification pushNotification = result.getPushNotification();
+
+        int flags = 0;
+
+        if (isLowercaseHexToken(pushNotification.getToken())) {
+            flags |= HAS_HEX_TOKEN;
+            packHexToken(pushNotification.getToken(), chunk.hexTokens, row * TOKEN_BYTES);
+        } else {
+            if (chunk.otherTokens == null) {
+                chunk.otherTokens = new String[CHUNK_SIZE];
+            }
+
+            chunk.otherTokens[row] = pushNotification.getToken();
+        }
+
+        chunk.statuses[row] = (byte) result.getStatus().ordinal();
+        chunk.priorityCodes[row] = (byte) (pushNotification.getPriority() != null ? pushNotification.getPriority().getCode() : 0);
+        chunk.pushTypes[row] = (byte) (pushNotification.getPushType() != null ? pushNotification.getPushType().ordinal() + 1 : 0);
+
+        chunk.payloadIds[row] = intern(payloads, pushNotification.getPayload());
+        chunk.topicIds[row] = intern(topics, pushNotification.getTopic());
+        chunk.collapseIds[row] = intern(collapseIds, pushNotification.getCollapseId());
+        chunk.rejectionReasonIds[row] = intern(rejectionReasons, result.getRejectionReason().orElse(null));
+        chunk.targetIds[row] = intern(targets, result.getTarget().orElse(null));
+
+        if (result.getSendTimestamp().isPresent()) {
+            flags |= HAS_SEND_TIMESTAMP;
+            chunk.sendTimestampMicros[row] = ChronoUnit.MICROS.between(Instant.EPOCH, result.getSendTimestamp().get());
+        }
+
+        if (result.getLatency().isPresent()) {
+            flags |= HAS_LATENCY;
+            chunk.latencyMicros[row] = (int) Math.min(result.getLatency().get().toNanos() / 1_000, Integer.MAX_VALUE);
+        }
+
+        if (result.getApnsId().isPresent()) {
+            flags |= HAS_APNS_ID;
+            chunk.apnsIdMostSignificantBits[row] = result.getApnsId().get().getMostSignificantBits();
+            chunk.apnsIdLeastSignificantBits[row] = result.getApnsId().get().getLeastSignificantBits();
+        }
+
+        chunk.flags[row] = (byte) flags;
+
+        result.getTokenInvalidationTimestamp().ifPresent(timestamp -> tokenInvalidationTimestamps.put(rowId, timestamp));
+
+        // Publish the new chunk table (if any) before the new size so readers never see a row they can't reach.
+        this.chunks = chunks;
+        size = rowId + 1;
+
+        beginChange();
+        nextAdd(rowId, rowId + 1);
+        endChange();
+
+        return rowId;
+    }
+
+    private static <T> int intern(final InternTable<T> table, final T value) {
+        return value != null ? table.intern(value) + 1 : 0;
+    }
+
+    private static <T> T lookUp(final InternTable<T> table, final int id) {
+        return id != 0 ? table.get(id - 1) : null;
+    }
+
+    /**
+     * Indicates whether the given token is exactly {@link #TOKEN_BYTES} bytes written as lowercase hexadecimal digits,
+     * and can therefore be stored as raw bytes.
+     *
+     * @param token the token to check
+     *
+     * @return {@code true} if the given token can be stored as raw bytes or {@code false} otherwise
+     */
+    static boolean isLowercaseHexToken(final String token) {
+        if (token.length() != TOKEN_BYTES * 2) {
+            return false;
+        }
+
+        for (int i = 0; i < token.length(); i++) {
+            final char c = token.charAt(i);
+
+            if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public NotificationResult get(final int rowId) {
+        if (rowId < 0 || rowId >= size) {
+            throw new IndexOutOfBoundsException("Row ID: " + rowId);
+        }
+
+        synchronized (decodedRowCache) {
+            return decodedRowCache.computeIfAbsent(rowId,
+                    id -> id < archivedRowCount ? history.readArchivedRow(id) : decodeLiveRow(id));
+        }
+    }
+
+    private NotificationResult decodeLiveRow(final int rowId) {
+        final int liveRowId = rowId - archivedRowCount;
+        final Chunk chunk = chunks[liveRowId >>> CHUNK_SHIFT];
+        final int row = liveRowId & CHUNK_MASK;
+
+        final int flags = chunk.flags[row];
+
+        final String token = (flags & HAS_HEX_TOKEN) != 0 ?
+                unpackHexToken(chunk.hexTokens, row * TOKEN_BYTES) : chunk.otherTokens[row];
+
+        final int priorityCode = chunk.priorityCodes[row];
+        final int pushType = chunk.pushTypes[row];
+
+        final ApnsPushNotification pushNotification = new StoredPushNotification(token,
+                lookUp(topics, chunk.topicIds[row]),
+                lookUp(payloads, chunk.payloadIds[row]),
+                priorityCode != 0 ? DeliveryPriority.getFromCode(priorityCode) : null,
+                pushType != 0 ? PUSH_TYPES[pushType - 1] : null,
+                lookUp(collapseIds, chunk.collapseIds[row]));
+
+        return new NotificationResult(pushNotification,
+                lookUp(targets, chunk.targetIds[row]),
+                NotificationResult.Status.values()[chunk.statuses[row]],
+                (flags & HAS_APNS_ID) != 0 ?
+                        new UUID(chunk.apnsIdMostSignificantBits[row], chunk.apnsIdLeastSignificantBits[row]) : null,
+                lookUp(rejectionReasons, chunk.rejectionReasonIds[row]),
+                tokenInvalidationTimestamps.get(rowId),
+                (flags & HAS_SEND_TIMESTAMP) != 0 ?
+                        Instant.EPOCH.plus(chunk.sendTimestampMicros[row], ChronoUnit.MICROS) : null,
+                (flags & HAS_LATENCY) != 0 ? Duration.ofNanos(chunk.latencyMicros[row] * 1_000L) : null);
+    }
+
+    static void packHexToken(final String token, final byte[] destination, final int offset) {
+        for (int i = 0; i < TOKEN_BYTES; i++) {
+            destination[offset + i] =
+                    (byte) (Character.digit(token.charAt(i * 2), 16) << 4 | Character.digit(token.charAt(i * 2 + 1), 16));
+        }
+    }
+
+    static String unpackHexToken(final byte[] source, final int offset) {
+        final char[] hexDigits = new char[TOKEN_BYTES * 2];
+
+        for (int i = 0; i < TOKEN_BYTES; i++) {
+            hexDigits[i * 2] = Character.forDigit((source[offset + i] >> 4) & 0xF, 16);
+            hexDigits[i * 2 + 1] = Character.forDigit(source[offset + i] & 0xF, 16);
+        }
+
+        return new String(hexDigits);
+    }
+
+    private void checkRowId(final int rowId) {
+        if (rowId < 0 || rowId >= size) {
+            throw new IndexOutOfBoundsException("Row ID: " + rowId);
+        }
+    }
+
+    private Chunk getChunk(final int rowId) {
+        return chunks[(rowId - archivedRowCount) >>> CHUNK_SHIFT];
+    }
+
+    private int getRow(final int rowId) {
+        return (rowId - archivedRowCount) & CHUNK_MASK;
+    }
+
+    /**
+     * Returns the status of the result in the given row without decoding the rest of the result.
+     *
+     * @param rowId the ID of the row to read
+     *
+     * @return the status of the result in the given row
+     */
+    NotificationResult.Status getStatus(final int rowId) {
+        checkRowId(rowId);
+
+        return rowId < archivedRowCount ?
+                history.readArchivedStatus(rowId) :
+                NotificationResult.Status.values()[getChunk(rowId).statuses[getRow(rowId)]];
+    }
+
+    /**
+     * Returns the delivery priority of the notification in the given row without decoding the rest of the result.
+     *
+     * @param rowId the ID of the row to read
+     *
+     * @return the delivery priority of the notification in the given row
+     *
+     * @see NotificationResult#getDeliveryPriority()
+     */
+    DeliveryPriority getDeliveryPriority(final int rowId) {
+        checkRowId(rowId);
+
+        final DeliveryPriority priority;
+
+        if (rowId < archivedRowCount) {
+            priority = history.readArchivedPriority(rowId);
+        } else {
+            final int priorityCode = getChunk(rowId).priorityCodes[getRow(rowId)];
+            priority = priorityCode != 0 ? DeliveryPriority.getFromCode(priorityCode) : null;
+        }
+
+        return priority != null ? priority : DeliveryPriority.IMMEDIATE;
+    }
+
+    /**
+     * Returns the topic of the notification in the given row without decoding the rest of the result.
+     *
+     * @param rowId the ID of the row to read
+     *
+     * @return the topic of the notification in the given row
+     */
+    String getTopic(final int rowId) {
+        checkRowId(rowId);
+
+        return rowId < archivedRowCount ?
+                history.readArchivedTopic(rowId) :
+                lookUp(topics, getChunk(rowId).topicIds[getRow(rowId)]);
+    }
+
+    /**
+     * Returns the rejection reason of the result in the given row without decoding the rest of the result.
+     *
+     * @param rowId the ID of the row to read
+     *
+     * @return the rejection reason of the result in the given row, or {@code null} if the result has no rejection
+     * reason
+     */
+    String getRejectionReason(final int rowId) {
+        checkRowId(rowId);
+
+        return rowId < archivedRowCount ?
+                history.readArchivedRejectionReason(rowId) :
+                lookUp(rejectionReasons, getChunk(rowId).rejectionReasonIds[getRow(rowId)]);
+    }
+
+    /**
+     * Returns the server and port to which the notification in the given row was sent without decoding the rest of the
+     * result.
+     *
+     * @param rowId the ID of the row to read
+     *
+     * @return the target of the result in the given row, or {@code null} if the result has no target
+     */
+    ApnsTarget getTarget(final int rowId) {
+        checkRowId(rowId);
+
+        return rowId < archivedRowCount ?
+                history.readArchivedTarget(rowId) :
+                lookUp(targets, getChunk(rowId).targetIds[getRow(rowId)]);
+    }
+
+    /**
+     * Returns the APNs ID of the result in the given row without decoding the rest of the result.
+     *
+     * @param rowId the ID of the row to read
+     *
+     * @return the APNs ID of the result in the given row, or {@code null} if the result has no APNs ID
+     */
+    UUID getApnsId(final int rowId) {
+        checkRowId(rowId);
+
+        if (rowId < archivedRowCount) {
+            return history.readArchivedApnsId(rowId);
+        }
+
+        final Chunk chunk = getChunk(rowId);
+        final int row = getRow(rowId);
+
+        return (chunk.flags[row] & HAS_APNS_ID) != 0 ?
+                new UUID(chunk.apnsIdMostSignificantBits[row], chunk.apnsIdLeastSignificantBits[row]) : null;
+    }
+
+    /**
+     * Returns the device token of the notification in the given row without decoding the rest of the result.
+     *
+     * @param rowId the ID of the row to read
+     *
+     * @return the device token of the notification in the given row
+     */
+    String getToken(final int rowId) {
+        checkRowId(rowId);
+
+        if (rowId < archivedRowCount) {
+            return history.readArchivedToken(rowId);
+        }
+
+        final Chunk chunk = getChunk(rowId);
+        final int row = getRow(rowId);
+
+        return (chunk.flags[row] & HAS_HEX_TOKEN) != 0 ?
+                unpackHexToken(chunk.hexTokens, row * TOKEN_BYTES) : chunk.otherTokens[row];
+    }
+
+    /**
+     * Copies the raw bytes of the device token in the given row into the given array if the token is
+     * {@linkplain #isLowercaseHexToken(String) stored as raw bytes}.
+     *
+     * @param rowId the ID of the row to read
+     * @param destination an array of at least {@link #TOKEN_BYTES} bytes into which to copy the token's bytes
+     *
+     * @return {@code true} if the token was stored as raw bytes and was copied into the given array or {@code false}
+     * if the token must be read with {@link #getToken(int)} instead
+     */
+    boolean getHexToken(final int rowId, final byte[] destination) {
+        checkRowId(rowId);
+
+        if (rowId < archivedRowCount) {
+            return history.readArchivedHexToken(rowId, destination);
+        }
+
+        final Chunk chunk = getChunk(rowId);
+        final int row = getRow(rowId);
+
+        if ((chunk.flags[row] & HAS_HEX_TOKEN) == 0) {
+            return false;
+        }
+
+        System.arraycopy(chunk.hexTokens, row * TOKEN_BYTES, destination, 0, TOKEN_BYTES);
+        return true;
+    }
+
+    /**
+     * Returns the number of rows at the start of this store that were read from a history written by a previous
+     * session.
+     *
+     * @return the number of rows from previous sessions
+     */
+    int getArchivedRowCount() {
+        return archivedRowCount;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
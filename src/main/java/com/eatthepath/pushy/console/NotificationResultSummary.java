@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.DeliveryPriority;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * <p>Running totals of the results in a {@link NotificationResultStore}, grouped by status, rejection reason, topic,
+ * delivery priority, and target. The summary listens for new results and increments exactly one counter per group for each
+ * new result, so the totals stay current without ever re-aggregating the store. Counts are added up in plain integers
+ * as each batch of new results is counted, and each bucket's observable count changes only once per batch, so catching
+ * up with a large history doesn't flood the bucket's listeners with millions of changes.</p>
+ *
+ * <p>Each group has a bucket that counts every result in the group (the group's "total" bucket) and one bucket for
+ * each distinct value within the group. Buckets for values that haven't been seen yet are created when the first
+ * result with that value arrives.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class NotificationResultSummary {
+
+    /**
+     * The dimensions by which results are summarized.
+     */
+    enum Group {
+        STATUS,
+        REJECTION_REASON,
+        TOPIC,
+        PRIORITY,
+        TARGET
+    }
+
+    /**
+     * A single counter within a summary group.
+     */
+    static class Bucket {
+
+        private final Group group;
+        private final Object value;
+
+        private final ReadOnlyIntegerWrapper count = new ReadOnlyIntegerWrapper();
+
+        // Results counted in the current pass, but not yet reflected in the observable count
+        private int uncommittedCount = 0;
+
+        private Bucket(final Group group, final Object value) {
+            this.group = Objects.requireNonNull(group);
+            this.value = value;
+        }
+
+        Group getGroup() {
+            return group;
+        }
+
+        /**
+         * Returns the value counted by this bucket. Depending on this bucket's group, the value is a
+         * {@link NotificationResult.Status}, a rejection reason or topic {@link String}, a {@link DeliveryPriority}, or
+         * an {@link ApnsTarget}.
+         *
+         * @return the value counted by this bucket, or {@code null} if this is the total bucket for its group
+         */
+        Object getValue() {
+            return value;
+        }
+
+        boolean isTotal() {
+            return value == null;
+        }
+
+        ReadOnlyIntegerProperty countProperty() {
+            return count.getReadOnlyProperty();
+        }
+
+        int getCount() {
+            return count.get();
+        }
+
+        /**
+         * Counts a result in the current pass.
+         *
+         * @return {@code true} if this is the first result this bucket has counted in the current pass
+         */
+        private boolean increment() {
+            return uncommittedCount++ == 0;
+        }
+
+        private void commit() {
+            count.set(count.get() + uncommittedCount);
+            uncommittedCount = 0;
+        }
+
+        /**
+         * Returns a filter that selects exactly the results counted by this bucket.
+         *
+         * @return a filter that selects exactly the results counted by this bucket
+         */
+        NotificationResultFilter toFilter() {
+            switch (group) {
+                case STATUS:
+                    return new NotificationResultFilter((NotificationResult.Status) value, null, null, null, null, null, null);
+
+                case REJECTION_REASON:
+                    return value != null ?
+                            new NotificationResultFilter(null, (String) value, null, null, null, null, null) :
+                            new NotificationResultFilter(NotificationResult.Status.REJECTED, null, null, null, null, null, null);
+
+                case TOPIC:
+                    return new NotificationResultFilter(null, null, (String) value, null, null, null, null);
+
+                case PRIORITY:
+                    return new NotificationResultFilter(null, null, null, (DeliveryPriority) value, null, null, null);
+
+                case TARGET:
+                    return new NotificationResultFilter(null, null, null, null, (ApnsTarget) value, null, null);
+
+                default:
+                    throw new IllegalArgumentException("Unexpected group: " + group);
+            }
+        }
+    }
+
+    private final NotificationResultStore store;
+
+    private final Map<Group, Bucket> totalBuckets = new EnumMap<>(Group.class);
+    private final Map<Group, ObservableList<Bucket>> bucketsByGroup = new EnumMap<>(Group.class);
+
+    private final Map<NotificationResult.Status, Bucket> statusBuckets = new EnumMap<>(NotificationResult.Status.class);
+    private final Map<String, Bucket> rejectionReasonBuckets = new HashMap<>();
+    private final Map<String, Bucket> topicBuckets = new HashMap<>();
+    private final Map<DeliveryPriority, Bucket> priorityBuckets = new EnumMap<>(DeliveryPriority.class);
+    private final Map<ApnsTarget, Bucket> targetBuckets = new HashMap<>();
+
+    private final List<Bucket> uncommittedBuckets = new ArrayList<>();
+
+    private int countedRows = 0;
+    private boolean catchUpScheduled = false;
+
+    /**
+     * Constructs a new summary of the given store, counting any results already in the store and any results added
+     * later.
+     *
+     * @param store the store to summarize
+     */
+    NotificationResultSummary(final NotificationResultStore store) {
+        this.store = store;
+
+        for (final Group group : Group.values()) {
+            totalBuckets.put(group, new Bucket(group, null));
+            bucketsByGroup.put(group, FXCollections.observableArrayList());
+        }
+
+        // Statuses are few and fixed, and it's useful to see zero counts for them, so create their buckets up front.
+        for (final NotificationResult.Status status : NotificationResult.Status.values()) {
+            getBucket(statusBuckets, Group.STATUS, status);
+        }
+
+        store.addListener((ListChangeListener<NotificationResult>) change -> countNewRows());
+        countNewRows();
+    }
+
+    private void countNewRows() {
+        final int size = Math.min(store.size(), countedRows + NotificationResultStore.MAX_ROWS_PER_PASS);
+
+        // Read only the summarized columns so catching up with a large history never decodes whole results
+        while (countedRows < size) {
+            final int rowId = countedRows++;
+
+            increment(totalBuckets.get(Group.STATUS));
+            increment(getBucket(statusBuckets, Group.STATUS, store.getStatus(rowId)));
+
+            final String rejectionReason = store.getRejectionReason(rowId);
+
+            if (rejectionReason != null) {
+                increment(totalBuckets.get(Group.REJECTION_REASON));
+                increment(getBucket(rejectionReasonBuckets, Group.REJECTION_REASON, rejectionReason));
+            }
+
+            increment(totalBuckets.get(Group.TOPIC));
+            increment(getBucket(topicBuckets, Group.TOPIC, store.getTopic(rowId)));
+
+            increment(totalBuckets.get(Group.PRIORITY));
+            increment(getBucket(priorityBuckets, Group.PRIORITY, store.getDeliveryPriority(rowId)));
+
+            increment(totalBuckets.get(Group.TARGET));
+
+            final ApnsTarget target = store.getTarget(rowId);
+
+            if (target != null) {
+                increment(getBucket(targetBuckets, Group.TARGET, target));
+            }
+        }
+
+        uncommittedBuckets.forEach(Bucket::commit);
+        uncommittedBuckets.clear();
+
+        if (countedRows < store.size() && !catchUpScheduled) {
+            catchUpScheduled = true;
+
+            Platform.runLater(() -> {
+                catchUpScheduled = false;
+                countNewRows();
+            });
+        }
+    }
+
+    private void increment(final Bucket bucket) {
+        if (bucket.increment()) {
+            uncommittedBuckets.add(bucket);
+        }
+    }
+
+    private <K> Bucket getBucket(final Map<K, Bucket> buckets, final Group group, final K value) {
+        return buckets.computeIfAbsent(value, v -> {
+            final Bucket bucket = new Bucket(group, v);
+            bucketsByGroup.get(group).add(bucket);
+
+            return bucket;
+        });
+    }
+
+    /**
+     * Returns the bucket that counts every result in the given group.
+     *
+     * @param group the group for which to retrieve a total
+     *
+     * @return the total bucket for the given group
+     */
+    Bucket getTotal(final Group group) {
+        return totalBuckets.get(group);
+    }
+
+    /**
+     * Returns a live list of the per-value buckets in the given group, in the order in which each value first
+     * appeared.
+     *
+     * @param group the group for which to retrieve buckets
+     *
+     * @return a live list of the per-value buckets in the given group
+     */
+    ObservableList<Bucket> getBuckets(final Group group) {
+        return FXCollections.unmodifiableObservableList(bucketsByGroup.get(group));
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.DeliveryPriority;
+import javafx.beans.binding.Bindings;
+import javafx.scene.control.TreeCell;
+
+import java.text.MessageFormat;
+import java.util.ResourceBundle;
+
+/**
+ * A tree cell that displays the label and live count of a {@link NotificationResultSummary.Bucket}.
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class NotificationResultSummaryTreeCell extends TreeCell<NotificationResultSummary.Bucket> {
+
+    @Override
+    public void updateItem(final NotificationResultSummary.Bucket bucket, final boolean empty) {
+        super.updateItem(bucket, empty);
+
+        textProperty().unbind();
+
+        if (!empty && bucket != null) {
+            final MessageFormat bucketFormat =
+                    new MessageFormat(PushyConsoleApplication.RESOURCE_BUNDLE.getString("summary.bucket"));
+
+            final String label = getLabel(bucket);
+
+            textProperty().bind(Bindings.createStringBinding(
+                    () -> bucketFormat.format(new Object[] { label, bucket.getCount() }), bucket.countProperty()));
+        } else {
+            setText(null);
+        }
+    }
+
+    private static String getLabel(final NotificationResultSummary.Bucket bucket) {
+        final ResourceBundle resourceBundle = PushyConsoleApplication.RESOURCE_BUNDLE;
+
+        switch (bucket.getGroup()) {
+            case STATUS:
+                return bucket.isTotal() ?
+                        resourceBundle.getString("summary.group.status") :
+                        NotificationResultStatusListCell.getLocalizedStatus((NotificationResult.Status) bucket.getValue());
+
+            case REJECTION_REASON:
+                return bucket.isTotal() ?
+                        resourceBundle.getString("summary.group.rejection-reason") : (String) bucket.getValue();
+
+            case TOPIC:
+                return bucket.isTotal() ?
+                        resourceBundle.getString("summary.group.topic") : (String) bucket.getValue();
+
+            case PRIORITY:
+                return bucket.isTotal() ?
+                        resourceBundle.getString("summary.group.priority") :
+                        DeliveryPriorityListCell.getLocalizedPriority((DeliveryPriority) bucket.getValue());
+
+            case TARGET:
+                return bucket.isTotal() ?
+                        resourceBundle.getString("summary.group.target") : bucket.getValue().toString();
+
+            default:
+                throw new IllegalArgumentException("Unexpected group: " + bucket.getGroup());
+        }
+    }
+}
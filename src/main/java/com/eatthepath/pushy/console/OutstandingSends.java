@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <p>Keeps track of notifications that have been sent, but whose results haven't yet been recorded. A send is
+ * outstanding from the time it's added until the time its result (or failure) has been handled, which may be some time
+ * after the APNs server responds.</p>
+ *
+ * <p>Once closed, the tracker refuses new sends so that the set of outstanding sends can only shrink, and the future
+ * returned by {@link #close()} completes when the last outstanding send has been removed.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class OutstandingSends {
+
+    private final Set<CompletableFuture<?>> outstandingSends = new HashSet<>();
+    private boolean closed = false;
+
+    private final CompletableFuture<Void> drainedFuture = new CompletableFuture<>();
+
+    /**
+     * Adds a send to the set of outstanding sends unless this tracker has been closed.
+     *
+     * @param sendFuture a future that completes when the send completes
+     *
+     * @return {@code true} if the send was added or {@code false} if this tracker has been closed and the send should
+     * not proceed
+     */
+    synchronized boolean add(final CompletableFuture<?> sendFuture) {
+        if (closed) {
+            return false;
+        }
+
+        outstandingSends.add(sendFuture);
+        return true;
+    }
+
+    /**
+     * Removes a send from the set of outstanding sends once its result has been handled. Removing a send that was
+     * never added has no effect.
+     *
+     * @param sendFuture the future for the send to remove
+     */
+    synchronized void remove(final CompletableFuture<?> sendFuture) {
+        outstandingSends.remove(sendFuture);
+
+        if (closed && outstandingSends.isEmpty()) {
+            drainedFuture.complete(null);
+        }
+    }
+
+    /**
+     * Stops accepting new sends.
+     *
+     * @return a future that completes when every send that was outstanding at the time this tracker was closed has
+     * been removed
+     */
+    synchronized CompletableFuture<Void> close() {
+        closed = true;
+
+        if (outstandingSends.isEmpty()) {
+            drainedFuture.complete(null);
+        }
+
+        return drainedFuture;
+    }
+
+    /**
+     * Cancels every outstanding send. Cancelled sends remain outstanding until they're removed, just like sends that
+     * completed normally.
+     */
+    void cancelAll() {
+        final List<CompletableFuture<?>> sendsToCancel;
+
+        synchronized (this) {
+            sendsToCancel = new ArrayList<>(outstandingSends);
+        }
+
+        // Cancelling a send may cause it to be removed right away, so don't hold the lock while cancelling
+        for (final CompletableFuture<?> sendFuture : sendsToCancel) {
+            sendFuture.cancel(false);
+        }
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    synchronized int size() {
+        return outstandingSends.size();
+    }
+}
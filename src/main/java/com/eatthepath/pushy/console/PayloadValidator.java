@@ -0,0 +1,518 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+
+/**
+ * <p>Checks that a notification payload is a well-formed JSON object and that it fits within the APNs payload size
+ * limit.</p>
+ *
+ * <p>The validator makes a single pass over the payload without building a document tree, and keeps track of nesting
+ * with an explicit stack rather than recursion, so even very large or very deeply-nested input is checked in linear
+ * time and constant stack space. Validation checks the calling thread's interrupt status periodically and stops early
+ * (by throwing a {@link CancellationException}) if the thread has been interrupted.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class PayloadValidator {
+
+    /**
+     * The maximum size, in bytes, of a (non-VoIP) notification payload.
+     */
+    static final int MAX_PAYLOAD_SIZE = 4096;
+
+    private static final int INTERRUPT_CHECK_INTERVAL = 4096;
+
+    /**
+     * The kinds of problems the validator can detect.
+     */
+    enum Error {
+        /**
+         * The payload is not a JSON object.
+         */
+        NOT_AN_OBJECT,
+
+        /**
+         * The payload contains a character that isn't allowed at its position.
+         */
+        UNEXPECTED_CHARACTER,
+
+        /**
+         * The payload ends before its top-level object is complete.
+         */
+        UNEXPECTED_END,
+
+        /**
+         * The payload contains an invalid escape sequence within a string.
+         */
+        INVALID_ESCAPE,
+
+        /**
+         * The payload contains an unescaped control character within a string.
+         */
+        CONTROL_CHARACTER_IN_STRING,
+
+        /**
+         * The payload contains a malformed number.
+         */
+        INVALID_NUMBER,
+
+        /**
+         * The payload contains something other than whitespace after its top-level object.
+         */
+        TRAILING_CONTENT,
+
+        /**
+         * The payload is well-formed, but is larger than {@link #MAX_PAYLOAD_SIZE} when encoded as UTF-8.
+         */
+        TOO_LARGE
+    }
+
+    /**
+     * The outcome of validating a single payload.
+     */
+    static class Result {
+
+        private final int byteLength;
+
+        private final Error error;
+        private final int errorOffset;
+        private final int errorLine;
+        private final int errorColumn;
+
+        private Result(final int byteLength, final Error error, final int errorOffset, final int errorLine, final int errorColumn) {
+            this.byteLength = byteLength;
+            this.error = error;
+            this.errorOffset = errorOffset;
+            this.errorLine = errorLine;
+            this.errorColumn = errorColumn;
+        }
+
+        /**
+         * Returns the size of the payload in bytes when encoded as UTF-8.
+         *
+         * @return the size of the payload in bytes
+         */
+        int getByteLength() {
+            return byteLength;
+        }
+
+        boolean isValid() {
+            return error == null;
+        }
+
+        /**
+         * Returns the first problem found in the payload.
+         *
+         * @return the first problem found in the payload, or {@code null} if the payload is valid
+         */
+        Error getError() {
+            return error;
+        }
+
+        /**
+         * Returns the (zero-based) character offset at which the first problem in the payload was found.
+         *
+         * @return the character offset of the first problem in the payload, or -1 if the payload is valid
+         */
+        int getErrorOffset() {
+            return errorOffset;
+        }
+
+        /**
+         * Returns the (one-based) line on which the first problem in the payload was found.
+         *
+         * @return the line of the first problem in the payload, or -1 if the payload is valid
+         */
+        int getErrorLine() {
+            return errorLine;
+        }
+
+        /**
+         * Returns the (one-based) column at which the first problem in the payload was found.
+         *
+         * @return the column of the first problem in the payload, or -1 if the payload is valid
+         */
+        int getErrorColumn() {
+            return errorColumn;
+        }
+    }
+
+    private static class ValidationException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Error error;
+        private final int offset;
+
+        private ValidationException(final Error error, final int offset) {
+            super(null, null, false, false);
+
+            this.error = error;
+            this.offset = offset;
+        }
+    }
+
+    private PayloadValidator() {
+    }
+
+    /**
+     * Validates the given payload.
+     *
+     * @param payload the payload to validate
+     *
+     * @return the outcome of validating the given payload
+     *
+     * @throws CancellationException if the calling thread was interrupted before validation finished
+     */
+    static Result validate(final String payload) {
+        Objects.requireNonNull(payload);
+
+        int byteLength = 0;
+        int firstOversizeOffset = -1;
+
+        for (int i = 0; i < payload.length(); i++) {
+            final char c = payload.charAt(i);
+
+            if (c < 0x80) {
+                byteLength += 1;
+            } else if (c < 0x800) {
+                byteLength += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < payload.length() && Character.isLowSurrogate(payload.charAt(i + 1))) {
+                byteLength += 4;
+                i += 1;
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogates get replaced with a single-byte replacement character when encoded
+                byteLength += 1;
+            } else {
+                byteLength += 3;
+            }
+
+            if (firstOversizeOffset < 0 && byteLength > MAX_PAYLOAD_SIZE) {
+                firstOversizeOffset = Character.isLowSurrogate(c) ? i - 1 : i;
+            }
+
+            if (i % INTERRUPT_CHECK_INTERVAL == 0) {
+                checkInterrupted();
+            }
+        }
+
+        try {
+            checkJsonObject(payload);
+        } catch (final ValidationException e) {
+            return getErrorResult(payload, byteLength, e.error, e.offset);
+        }
+
+        if (firstOversizeOffset >= 0) {
+            return getErrorResult(payload, byteLength, Error.TOO_LARGE, firstOversizeOffset);
+        }
+
+        return new Result(byteLength, null, -1, -1, -1);
+    }
+
+    private static Result getErrorResult(final String payload, final int byteLength, final Error error, final int offset) {
+        int line = 1;
+        int lineStart = 0;
+
+        for (int i = 0; i < offset; i++) {
+            if (payload.charAt(i) == '\n') {
+                line += 1;
+                lineStart = i + 1;
+            }
+        }
+
+        return new Result(byteLength, error, offset, line, offset - lineStart + 1);
+    }
+
+    private static void checkInterrupted() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Payload validation interrupted.");
+        }
+    }
+
+    private enum State {
+        OBJECT_START,
+        KEY,
+        COLON,
+        ARRAY_START,
+        VALUE,
+        AFTER_VALUE
+    }
+
+    private static void checkJsonObject(final String json) throws ValidationException {
+        final int length = json.length();
+
+        int position = skipWhitespace(json, 0);
+
+        if (position >= length) {
+            throw new ValidationException(Error.UNEXPECTED_END, position);
+        }
+
+        if (json.charAt(position) != '{') {
+            throw new ValidationException(Error.NOT_AN_OBJECT, position);
+        }
+
+        // Each element is either '{' or '[', depending on the kind of container we're in at that depth
+        char[] containers = new char[16];
+        int depth = 0;
+
+        containers[depth++] = '{';
+        position += 1;
+
+        State state = State.OBJECT_START;
+        int nextInterruptCheck = position + INTERRUPT_CHECK_INTERVAL;
+
+        while (depth > 0) {
+            if (position >= nextInterruptCheck) {
+                checkInterrupted();
+                nextInterruptCheck = position + INTERRUPT_CHECK_INTERVAL;
+            }
+
+            position = skipWhitespace(json, position);
+
+            if (position >= length) {
+                throw new ValidationException(Error.UNEXPECTED_END, position);
+            }
+
+            final char c = json.charAt(position);
+
+            switch (state) {
+                case OBJECT_START:
+                    if (c == '}') {
+                        depth -= 1;
+                        position += 1;
+                        state = State.AFTER_VALUE;
+                        break;
+                    }
+
+                    // Otherwise, this had better be a key
+                    state = State.KEY;
+                    break;
+
+                case KEY:
+                    if (c != '"') {
+                        throw new ValidationException(Error.UNEXPECTED_CHARACTER, position);
+                    }
+
+                    position = skipString(json, position);
+                    state = State.COLON;
+                    break;
+
+                case COLON:
+                    if (c != ':') {
+                        throw new ValidationException(Error.UNEXPECTED_CHARACTER, position);
+                    }
+
+                    position += 1;
+                    state = State.VALUE;
+                    break;
+
+                case ARRAY_START:
+                    if (c == ']') {
+                        depth -= 1;
+                        position += 1;
+                        state = State.AFTER_VALUE;
+                        break;
+                    }
+
+                    // Otherwise, this had better be a value
+                    state = State.VALUE;
+                    break;
+
+                case VALUE:
+                    if (c == '{' || c == '[') {
+                        if (depth == containers.length) {
+                            containers = Arrays.copyOf(containers, containers.length * 2);
+                        }
+
+                        containers[depth++] = c;
+                        position += 1;
+                        state = c == '{' ? State.OBJECT_START : State.ARRAY_START;
+                    } else {
+                        if (c == '"') {
+                            position = skipString(json, position);
+                        } else if (c == '-' || (c >= '0' && c <= '9')) {
+                            position = skipNumber(json, position);
+                        } else if (json.startsWith("true", position)) {
+                            position += 4;
+                        } else if (json.startsWith("false", position)) {
+                            position += 5;
+                        } else if (json.startsWith("null", position)) {
+                            position += 4;
+                        } else {
+                            throw new ValidationException(Error.UNEXPECTED_CHARACTER, position);
+                        }
+
+                        state = State.AFTER_VALUE;
+                    }
+
+                    break;
+
+                case AFTER_VALUE: {
+                    final char container = containers[depth - 1];
+
+                    if (c == ',') {
+                        state = container == '{' ? State.KEY : State.VALUE;
+                    } else if ((container == '{' && c == '}') || (container == '[' && c == ']')) {
+                        depth -= 1;
+                    } else {
+                        throw new ValidationException(Error.UNEXPECTED_CHARACTER, position);
+                    }
+
+                    position += 1;
+                    break;
+                }
+            }
+        }
+
+        position = skipWhitespace(json, position);
+
+        if (position < length) {
+            throw new ValidationException(Error.TRAILING_CONTENT, position);
+        }
+    }
+
+    private static int skipWhitespace(final String json, int position) {
+        while (position < json.length()) {
+            final char c = json.charAt(position);
+
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                break;
+            }
+
+            position += 1;
+        }
+
+        return position;
+    }
+
+    /**
+     * Skips over a string starting at the given position (which must be the opening quotation mark).
+     *
+     * @return the position immediately after the string's closing quotation mark
+     */
+    private static int skipString(final String json, int position) throws ValidationException {
+        // Skip the opening quotation mark
+        position += 1;
+
+        while (position < json.length()) {
+            final char c = json.charAt(position);
+
+            if (c == '"') {
+                return position + 1;
+            } else if (c == '\\') {
+                if (position + 1 >= json.length()) {
+                    break;
+                }
+
+                final char escaped = json.charAt(position + 1);
+
+                if (escaped == 'u') {
+                    for (int i = position + 2; i < position + 6; i++) {
+                        if (i >= json.length()) {
+                            throw new ValidationException(Error.UNEXPECTED_END, json.length());
+                        }
+
+                        if (Character.digit(json.charAt(i), 16) < 0) {
+                            throw new ValidationException(Error.INVALID_ESCAPE, position);
+                        }
+                    }
+
+                    position += 6;
+                } else if ("\"\\/bfnrt".indexOf(escaped) >= 0) {
+                    position += 2;
+                } else {
+                    throw new ValidationException(Error.INVALID_ESCAPE, position);
+                }
+            } else if (c < 0x20) {
+                throw new ValidationException(Error.CONTROL_CHARACTER_IN_STRING, position);
+            } else {
+                position += 1;
+            }
+        }
+
+        throw new ValidationException(Error.UNEXPECTED_END, json.length());
+    }
+
+    /**
+     * Skips over a number starting at the given position.
+     *
+     * @return the position immediately after the number
+     */
+    private static int skipNumber(final String json, final int start) throws ValidationException {
+        int position = start;
+
+        if (json.charAt(position) == '-') {
+            position += 1;
+        }
+
+        // Integer part: either a single zero or a non-zero digit followed by any number of digits
+        if (position < json.length() && json.charAt(position) == '0') {
+            position += 1;
+        } else {
+            final int digitsStart = position;
+            position = skipDigits(json, position);
+
+            if (position == digitsStart) {
+                throw new ValidationException(Error.INVALID_NUMBER, start);
+            }
+        }
+
+        if (position < json.length() && json.charAt(position) == '.') {
+            final int fractionStart = position + 1;
+            position = skipDigits(json, fractionStart);
+
+            if (position == fractionStart) {
+                throw new ValidationException(Error.INVALID_NUMBER, start);
+            }
+        }
+
+        if (position < json.length() && (json.charAt(position) == 'e' || json.charAt(position) == 'E')) {
+            position += 1;
+
+            if (position < json.length() && (json.charAt(position) == '+' || json.charAt(position) == '-')) {
+                position += 1;
+            }
+
+            final int exponentStart = position;
+            position = skipDigits(json, exponentStart);
+
+            if (position == exponentStart) {
+                throw new ValidationException(Error.INVALID_NUMBER, start);
+            }
+        }
+
+        return position;
+    }
+
+    private static int skipDigits(final String json, int position) {
+        while (position < json.length() && json.charAt(position) >= '0' && json.charAt(position) <= '9') {
+            position += 1;
+        }
+
+        return position;
+    }
+}
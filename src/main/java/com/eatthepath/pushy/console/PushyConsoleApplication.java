@@ -28,6 +28,8 @@ import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ResourceBundle;
 
 /**
@@ -43,6 +45,23 @@ public class PushyConsoleApplication extends Application {
     // Based heavily upon https://softwarei18n.org/using-unicode-in-java-resource-bundles-6220776b6099
     static final ResourceBundle RESOURCE_BUNDLE = ResourceBundle.getBundle("com/eatthepath/pushy/console/pushy-console");
 
+    static final String DATA_DIRECTORY_PROPERTY = "pushy.console.dataDirectory";
+
+    /**
+     * Returns the directory in which Pushy Console keeps persistent data that doesn't fit in user preferences. The
+     * directory is {@code .pushy-console} in the user's home directory unless overridden with the
+     * {@code pushy.console.dataDirectory} system property; it may not exist yet.
+     *
+     * @return the directory in which Pushy Console keeps persistent data
+     */
+    static Path getDataDirectory() {
+        final String dataDirectory = System.getProperty(DATA_DIRECTORY_PROPERTY);
+
+        return dataDirectory != null ?
+                Paths.get(dataDirectory) :
+                Paths.get(System.getProperty("user.home"), ".pushy-console");
+    }
+
     /**
      * Launches the Pushy Console application.
      *
@@ -61,13 +80,19 @@ public class PushyConsoleApplication extends Application {
      */
     @Override
     public void start(final Stage primaryStage) throws Exception {
+        StartupTimer.logPhase("application started");
+
         final FXMLLoader fxmlLoader = new FXMLLoader(getClass().getResource("main.fxml"), RESOURCE_BUNDLE);
         final Parent root = fxmlLoader.load();
         pushyConsoleController = fxmlLoader.getController();
 
+        StartupTimer.logPhase("main window loaded");
+
         primaryStage.setTitle(RESOURCE_BUNDLE.getString("pushy-console.title"));
         primaryStage.setScene(new Scene(root));
         primaryStage.show();
+
+        StartupTimer.logPhase("main window shown");
     }
 
     /**
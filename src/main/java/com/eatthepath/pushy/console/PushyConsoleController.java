@@ -23,21 +23,63 @@
 package com.eatthepath.pushy.console;
 
 import com.eatthepath.pushy.apns.*;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.PauseTransition;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
+import javafx.beans.binding.Bindings;
 import javafx.beans.binding.BooleanBinding;
+import javafx.beans.binding.StringBinding;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.ReadOnlyStringWrapper;
 import javafx.beans.property.SimpleBooleanProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
 import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
+import javafx.scene.chart.LineChart;
+import javafx.scene.chart.XYChart;
 import javafx.scene.control.*;
+import javafx.stage.FileChooser;
+import org.apache.commons.lang3.StringUtils;
 
-import java.io.PrintWriter;
-import java.io.StringWriter;
+import javax.net.ssl.SSLException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
 import java.text.MessageFormat;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A controller for the main pushy console window. The console controller delegates notification composition to a
@@ -52,27 +94,179 @@ public class PushyConsoleController {
 
     @FXML ComposeNotificationController composeNotificationController;
 
-    @FXML TableView<PushNotificationResponse<ApnsPushNotification>> notificationResultTableView;
+    @FXML TableView<NotificationResult> notificationResultTableView;
 
-    @FXML private TableColumn<PushNotificationResponse<ApnsPushNotification>, String> notificationResultTopicColumn;
-    @FXML private TableColumn<PushNotificationResponse<ApnsPushNotification>, String> notificationResultTokenColumn;
-    @FXML private TableColumn<PushNotificationResponse<ApnsPushNotification>, String> notificationResultPayloadColumn;
-    @FXML private TableColumn<PushNotificationResponse<ApnsPushNotification>, String> notificationResultCollapseIdColumn;
-    @FXML private TableColumn<PushNotificationResponse<ApnsPushNotification>, String> notificationResultPriorityColumn;
+    @FXML private TableColumn<NotificationResult, String> notificationResultTopicColumn;
+    @FXML private TableColumn<NotificationResult, String> notificationResultTokenColumn;
+    @FXML private TableColumn<NotificationResult, String> notificationResultPayloadColumn;
+    @FXML private TableColumn<NotificationResult, String> notificationResultCollapseIdColumn;
+    @FXML private TableColumn<NotificationResult, String> notificationResultPriorityColumn;
+    @FXML private TableColumn<NotificationResult, String> notificationResultTargetColumn;
 
-    @FXML private TableColumn<PushNotificationResponse<ApnsPushNotification>, String> notificationResultStatusColumn;
-    @FXML private TableColumn<PushNotificationResponse<ApnsPushNotification>, String> notificationResultDetailsColumn;
-    @FXML private TableColumn<PushNotificationResponse<ApnsPushNotification>, String> notificationResultApnsIdColumn;
+    @FXML private TableColumn<NotificationResult, String> notificationResultStatusColumn;
+    @FXML private TableColumn<NotificationResult, String> notificationResultDetailsColumn;
+    @FXML private TableColumn<NotificationResult, String> notificationResultApnsIdColumn;
+
+    @FXML ComboBox<NotificationResult.Status> statusFilterComboBox;
+    @FXML ComboBox<String> rejectionReasonFilterComboBox;
+    @FXML ComboBox<String> topicFilterComboBox;
+    @FXML ComboBox<DeliveryPriority> priorityFilterComboBox;
+    @FXML ComboBox<ApnsTarget> targetFilterComboBox;
+    @FXML TextField tokenFilterTextField;
+    @FXML TextField apnsIdFilterTextField;
+
+    @FXML TreeView<NotificationResultSummary.Bucket> notificationResultSummaryTreeView;
+
+    @FXML private MenuItem exportResultsMenuItem;
+    @FXML private CheckMenuItem recordSessionMenuItem;
+    @FXML private MenuItem replaySessionMenuItem;
+    @FXML private MenuItem bulkSendMenuItem;
+    @FXML private CheckMenuItem coalesceBulkSendsMenuItem;
+    @FXML private CheckMenuItem notificationRelayMenuItem;
+
+    @FXML private Label connectionStatusLabel;
+
+    @FXML TextField scheduleTextField;
+    @FXML ToggleButton scheduleToggleButton;
+    @FXML private Label scheduleStatusLabel;
+
+    @FXML private Label sendQueueStatusLabel;
+    @FXML private Button cancelSendsButton;
+    @FXML private Button sendNotificationButton;
+
+    @FXML private Label sendMetricsLabel;
+    @FXML private Label deliveryLaneStatisticsLabel;
+    @FXML private LineChart<Number, Number> concurrencyLimitChart;
+
+    @FXML private TitledPane errorLogTitledPane;
+    @FXML private ListView<ErrorLog.Entry> errorLogListView;
+    @FXML private TextArea errorLogDetailsTextArea;
 
     private final BooleanProperty readyToSendProperty = new SimpleBooleanProperty();
 
-    private final ExecutorService sendNotificationExecutorService = Executors.newSingleThreadExecutor();
+    // The history is opened in the background; results that arrive before it's ready wait here so they land after the
+    // results from previous sessions
+    private NotificationResultHistory notificationResultHistory;
+    private List<NotificationResult> notificationResultsAwaitingHistory = new ArrayList<>();
+
+    private final NotificationResultStore notificationResultStore = new NotificationResultStore();
+    private final NotificationResultIndex notificationResultIndex = new NotificationResultIndex(notificationResultStore);
+    private final NotificationResultSummary notificationResultSummary = new NotificationResultSummary(notificationResultStore);
+    private final FilteredNotificationResultList filteredNotificationResults = new FilteredNotificationResultList(notificationResultStore);
+
+    private boolean updatingFilterControls = false;
+
+    private final ErrorLog errorLog = new ErrorLog(ErrorLog.DEFAULT_CAPACITY);
+
+    private final ApnsClientPool apnsClientPool = new ApnsClientPool();
+    private final ApnsConnectionWarmer apnsConnectionWarmer = new ApnsConnectionWarmer(apnsClientPool);
+    private final PauseTransition warmConnectionsDelay = new PauseTransition(WARM_CONNECTIONS_DELAY);
+    private final SendScheduler sendScheduler = new SendScheduler();
+    private final SendQueue sendQueue = new SendQueue();
+    private final ExecutorService exportResultsExecutorService = Executors.newSingleThreadExecutor();
+    private final ExecutorService resultHistoryExecutorService = Executors.newSingleThreadExecutor();
+    private final ExecutorService replaySessionExecutorService = Executors.newSingleThreadExecutor();
+    private final ExecutorService bulkSendExecutorService = Executors.newSingleThreadExecutor();
+
+    private final OutstandingSends outstandingSends = new OutstandingSends();
+
+    private final Timeline sendQueueStatusTimeline =
+            new Timeline(new KeyFrame(SEND_QUEUE_STATUS_INTERVAL, event -> updateSendQueueStatus()));
+
+    private Task<?> replaySessionTask;
+    private Task<?> bulkSendTask;
+
+    private final XYChart.Series<Number, Number> concurrencyLimitSeries = new XYChart.Series<>();
+    private final XYChart.Series<Number, Number> inFlightSeries = new XYChart.Series<>();
+    private final Timeline sendMetricsTimeline =
+            new Timeline(new KeyFrame(SEND_METRICS_INTERVAL, event -> sampleSendMetrics()));
+
+    private List<TopicRouter.Route> sendMetricsRoutes = List.of();
+    private Map<DeliveryPriority, DeliveryLaneStatistics> sendMetricsDeliveryLaneStatistics = Map.of();
+    private final AtomicLong coalescedBulkSends = new AtomicLong();
+    private long sendMetricsStartNanos;
+
+    private SessionLog.Writer sessionLogWriter;
+    private NotificationRelay notificationRelay;
+    private TopicRouter notificationRelayRouter;
+
+    // Read from the scheduler thread as well as the JavaFX application thread
+    private volatile InvalidTokenRegistry invalidTokenRegistry;
+
+    private static final String INVALID_TOKEN_REGISTRY_FILENAME = "invalid-tokens.db";
+    private static final String RESULT_HISTORY_DIRECTORY = "history";
+
+    private static final javafx.util.Duration SEND_QUEUE_STATUS_INTERVAL = javafx.util.Duration.millis(250);
+
+    private static final javafx.util.Duration WARM_CONNECTIONS_DELAY = javafx.util.Duration.millis(500);
+
+    private static final javafx.util.Duration SEND_METRICS_INTERVAL = javafx.util.Duration.seconds(1);
+    private static final int MAX_SEND_METRICS_SAMPLES = 600;
+
+    private static final Duration SHUTDOWN_DRAIN_PERIOD = Duration.ofSeconds(10);
+    private static final Duration CLIENT_CLOSE_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration EXECUTOR_SHUTDOWN_TIMEOUT = Duration.ofSeconds(2);
+
+    private static final System.Logger log = System.getLogger(PushyConsoleController.class.getName());
+
+    private void openNotificationResultHistory() {
+        // Opening a large history may mean trimming it, which can take a while
+        final Task<NotificationResultHistory> openResultHistoryTask = new Task<>() {
+            @Override
+            protected NotificationResultHistory call() throws IOException {
+                return new NotificationResultHistory(PushyConsoleApplication.getDataDirectory().resolve(RESULT_HISTORY_DIRECTORY));
+            }
+        };
+
+        openResultHistoryTask.setOnSucceeded(event -> handleNotificationResultHistoryOpened(openResultHistoryTask.getValue()));
+
+        // We can still send notifications without a history; results just won't survive a restart.
+        openResultHistoryTask.setOnFailed(event -> handleNotificationResultHistoryOpened(null));
+
+        resultHistoryExecutorService.execute(openResultHistoryTask);
+    }
+
+    private void handleNotificationResultHistoryOpened(final NotificationResultHistory notificationResultHistory) {
+        if (resultHistoryExecutorService.isShutdown()) {
+            // We've already stopped, and nobody will be around to close the history later
+            if (notificationResultHistory != null) {
+                try {
+                    notificationResultHistory.close();
+                } catch (final IOException ignored) {
+                    // Nothing was written to it, so there's nothing to lose
+                }
+            }
+
+            return;
+        }
+
+        if (notificationResultHistory != null) {
+            notificationResultStore.attachHistory(notificationResultHistory);
+            this.notificationResultHistory = notificationResultHistory;
+        }
+
+        final List<NotificationResult> notificationResultsAwaitingHistory = this.notificationResultsAwaitingHistory;
+        this.notificationResultsAwaitingHistory = null;
+
+        notificationResultsAwaitingHistory.forEach(this::recordNotificationResult);
+    }
 
     /**
      * Initializes the controller and its various controls and bindings.
      */
     public void initialize() {
+        try {
+            invalidTokenRegistry = new InvalidTokenRegistry(
+                    PushyConsoleApplication.getDataDirectory().resolve(INVALID_TOKEN_REGISTRY_FILENAME));
+        } catch (final IOException e) {
+            // We can still send notifications without a registry; we just won't be able to skip known-invalid tokens.
+            invalidTokenRegistry = null;
+        }
+
+        openNotificationResultHistory();
+
         notificationResultTableView.setPlaceholder(new Label(resources.getString("notification-result.placeholder")));
+        notificationResultTableView.setItems(notificationResultStore);
 
         notificationResultTopicColumn.setCellValueFactory(cellDataFeatures ->
                 new ReadOnlyStringWrapper(cellDataFeatures.getValue().getPushNotification().getTopic()));
@@ -89,30 +283,49 @@ public class PushyConsoleController {
                 new ReadOnlyStringWrapper(cellDataFeatures.getValue().getPushNotification().getCollapseId()));
 
         notificationResultPriorityColumn.setCellValueFactory(cellDataFeatures -> new ReadOnlyStringWrapper(
-                cellDataFeatures.getValue().getPushNotification().getPriority() == DeliveryPriority.IMMEDIATE ?
-                        resources.getString("delivery-priority.immediate") :
-                        resources.getString("delivery-priority.conserve-power")));
+                DeliveryPriorityListCell.getLocalizedPriority(cellDataFeatures.getValue().getDeliveryPriority())));
+
+        notificationResultTargetColumn.setCellValueFactory(cellDataFeatures ->
+                new ReadOnlyStringWrapper(cellDataFeatures.getValue().getTarget().map(ApnsTarget::toString).orElse(null)));
 
         notificationResultStatusColumn.setCellValueFactory(cellDataFeatures -> new ReadOnlyStringWrapper(
-                cellDataFeatures.getValue().isAccepted() ?
-                        resources.getString("notification-result.status.accepted") :
-                        resources.getString("notification-result.status.rejected")));
+                NotificationResultStatusListCell.getLocalizedStatus(cellDataFeatures.getValue().getStatus())));
 
         notificationResultDetailsColumn.setCellValueFactory(cellDataFeatures -> {
-            final PushNotificationResponse<ApnsPushNotification> pushNotificationResponse = cellDataFeatures.getValue();
+            final NotificationResult notificationResult = cellDataFeatures.getValue();
 
             final String details;
 
-            if (pushNotificationResponse.isAccepted()) {
-                details = resources.getString("notification-result.details.accepted");
-            } else {
-                if (pushNotificationResponse.getTokenInvalidationTimestamp() == null) {
-                    details = pushNotificationResponse.getRejectionReason();
-                } else {
-                    details = new MessageFormat(resources.getString("notification-result.details.expiration")).format(
-                            new Object[] {
-                                    cellDataFeatures.getValue().getRejectionReason(),
-                                    cellDataFeatures.getValue().getTokenInvalidationTimestamp() });
+            switch (notificationResult.getStatus()) {
+                case ACCEPTED: {
+                    details = resources.getString("notification-result.details.accepted");
+                    break;
+                }
+
+                case REJECTED: {
+                    final String rejectionReason = notificationResult.getRejectionReason().orElse(null);
+
+                    details = notificationResult.getTokenInvalidationTimestamp()
+                            .map(tokenInvalidationTimestamp ->
+                                    new MessageFormat(resources.getString("notification-result.details.expiration")).format(
+                                            new Object[] { rejectionReason, Date.from(tokenInvalidationTimestamp) }))
+                            .orElse(rejectionReason);
+
+                    break;
+                }
+
+                case SKIPPED: {
+                    details = notificationResult.getTokenInvalidationTimestamp()
+                            .map(tokenInvalidationTimestamp ->
+                                    new MessageFormat(resources.getString("notification-result.details.skipped")).format(
+                                            new Object[] { Date.from(tokenInvalidationTimestamp) }))
+                            .orElse(null);
+
+                    break;
+                }
+
+                default: {
+                    throw new IllegalArgumentException("Unexpected status: " + notificationResult.getStatus());
                 }
             }
 
@@ -120,7 +333,138 @@ public class PushyConsoleController {
         });
 
         notificationResultApnsIdColumn.setCellValueFactory(cellDataFeatures ->
-                new ReadOnlyStringWrapper(cellDataFeatures.getValue().getApnsId().toString()));
+                new ReadOnlyStringWrapper(cellDataFeatures.getValue().getApnsId().map(UUID::toString).orElse(null)));
+
+        statusFilterComboBox.setCellFactory(listView -> new NotificationResultStatusListCell());
+        statusFilterComboBox.setButtonCell(new NotificationResultStatusListCell());
+        statusFilterComboBox.setItems(FXCollections.observableArrayList(NotificationResult.Status.values()));
+
+        rejectionReasonFilterComboBox.setItems(notificationResultIndex.getRejectionReasons());
+        topicFilterComboBox.setItems(notificationResultIndex.getTopics());
+
+        priorityFilterComboBox.setCellFactory(listView -> new DeliveryPriorityListCell());
+        priorityFilterComboBox.setButtonCell(new DeliveryPriorityListCell());
+        priorityFilterComboBox.setItems(FXCollections.observableArrayList(DeliveryPriority.values()));
+
+        targetFilterComboBox.setItems(notificationResultIndex.getTargets());
+
+        statusFilterComboBox.valueProperty().addListener(observable -> applyNotificationResultFilter());
+        rejectionReasonFilterComboBox.valueProperty().addListener(observable -> applyNotificationResultFilter());
+        topicFilterComboBox.valueProperty().addListener(observable -> applyNotificationResultFilter());
+        priorityFilterComboBox.valueProperty().addListener(observable -> applyNotificationResultFilter());
+        targetFilterComboBox.valueProperty().addListener(observable -> applyNotificationResultFilter());
+        tokenFilterTextField.textProperty().addListener(observable -> applyNotificationResultFilter());
+        apnsIdFilterTextField.textProperty().addListener(observable -> applyNotificationResultFilter());
+
+        {
+            final TreeItem<NotificationResultSummary.Bucket> root = new TreeItem<>();
+
+            for (final NotificationResultSummary.Group group : NotificationResultSummary.Group.values()) {
+                root.getChildren().add(createSummaryTreeItem(group));
+            }
+
+            notificationResultSummaryTreeView.setRoot(root);
+            notificationResultSummaryTreeView.setCellFactory(treeView -> new NotificationResultSummaryTreeCell());
+
+            notificationResultSummaryTreeView.getSelectionModel().selectedItemProperty().addListener(
+                    (observable, oldValue, newValue) -> {
+                        if (newValue != null) {
+                            showNotificationResultSummaryBucket(newValue.getValue());
+                        }
+                    });
+        }
+
+        concurrencyLimitSeries.setName(resources.getString("send-metrics.series.limit"));
+        inFlightSeries.setName(resources.getString("send-metrics.series.in-flight"));
+        concurrencyLimitChart.getData().add(concurrencyLimitSeries);
+        concurrencyLimitChart.getData().add(inFlightSeries);
+
+        sendMetricsLabel.setText(resources.getString("send-metrics.idle"));
+        sendMetricsTimeline.setCycleCount(Animation.INDEFINITE);
+
+        sendQueueStatusTimeline.setCycleCount(Animation.INDEFINITE);
+        sendQueueStatusTimeline.play();
+        updateSendQueueStatus();
+
+        errorLogListView.setItems(errorLog);
+        errorLogListView.setCellFactory(listView -> new ErrorLogEntryListCell());
+        errorLogListView.setPlaceholder(new Label(resources.getString("error-log.placeholder")));
+
+        // Stack traces are only formatted when somebody actually wants to read one
+        errorLogListView.getSelectionModel().selectedItemProperty().addListener((observable, oldEntry, newEntry) ->
+                errorLogDetailsTextArea.setText(newEntry != null ? newEntry.getStackTrace() : null));
+
+        errorLogTitledPane.textProperty().bind(Bindings.createStringBinding(() ->
+                new MessageFormat(resources.getString("error-log.title")).format(new Object[] { errorLog.totalErrorCountProperty().get() }),
+                errorLog.totalErrorCountProperty()));
+
+        // Open connections as soon as we know where to connect and how to authenticate, so the first send doesn't have to
+        // wait for a new connection; wait for the selection to settle first so typing a topic doesn't send a probe per
+        // keystroke
+        warmConnectionsDelay.setOnFinished(event -> warmConnections());
+
+        composeNotificationController.apnsCredentialsProperty().addListener(observable -> warmConnectionsDelay.playFromStart());
+        composeNotificationController.topicProperty().addListener(observable -> warmConnectionsDelay.playFromStart());
+        composeNotificationController.apnsTargetsProperty().addListener((ListChangeListener<ApnsTarget>) change ->
+                warmConnectionsDelay.playFromStart());
+
+        connectionStatusLabel.textProperty().bind(new StringBinding() {
+            {
+                super.bind(apnsConnectionWarmer.stateProperty(), apnsConnectionWarmer.failureReasonProperty());
+            }
+
+            @Override
+            protected String computeValue() {
+                switch (apnsConnectionWarmer.stateProperty().get()) {
+                    case IDLE:
+                        return resources.getString("connection-status.idle");
+
+                    case CONNECTING:
+                        return resources.getString("connection-status.connecting");
+
+                    case CONNECTED:
+                        return resources.getString("connection-status.connected");
+
+                    case FAILED:
+                        return new MessageFormat(resources.getString("connection-status.failed")).format(
+                                new Object[] { apnsConnectionWarmer.failureReasonProperty().get() });
+
+                    default:
+                        throw new IllegalArgumentException("Unexpected state: " + apnsConnectionWarmer.stateProperty().get());
+                }
+            }
+        });
+
+        warmConnections();
+
+        sendScheduler.runningProperty().addListener((observable, wasRunning, running) ->
+                scheduleToggleButton.setSelected(running));
+
+        scheduleStatusLabel.textProperty().bind(new StringBinding() {
+            {
+                super.bind(sendScheduler.sentTicksProperty(),
+                        sendScheduler.coalescedTicksProperty(),
+                        sendScheduler.lastDriftProperty(),
+                        sendScheduler.maxDriftProperty(),
+                        sendScheduler.lastLatencyProperty());
+            }
+
+            @Override
+            protected String computeValue() {
+                if (sendScheduler.lastDriftProperty().get() == null) {
+                    return null;
+                }
+
+                final Duration lastLatency = sendScheduler.lastLatencyProperty().get();
+
+                return new MessageFormat(resources.getString("schedule-status")).format(new Object[] {
+                        sendScheduler.sentTicksProperty().get(),
+                        sendScheduler.coalescedTicksProperty().get(),
+                        sendScheduler.lastDriftProperty().get().toMillis(),
+                        sendScheduler.maxDriftProperty().get().toMillis(),
+                        lastLatency != null ? lastLatency.toMillis() : -1 });
+            }
+        });
 
         readyToSendProperty.bind(new BooleanBinding() {
             {
@@ -136,81 +480,1073 @@ public class PushyConsoleController {
         });
     }
 
+    private void warmConnections() {
+        apnsConnectionWarmer.warm(composeNotificationController.apnsCredentialsProperty().get(),
+                composeNotificationController.getTopic(), composeNotificationController.getApnsTargets());
+    }
+
     @FXML
     void handleSendNotificationButtonAction(final ActionEvent event) {
-        if (readyToSendProperty.get()) {
-            composeNotificationController.handleNotificationSent();
+        if (readyToSendProperty.get() && composeNotificationController.validatePayload().isValid()) {
+            final ApnsPushNotification pushNotification = composeNotificationController.pushNotificationProperty().get();
+            final ApnsCredentials credentials = composeNotificationController.apnsCredentialsProperty().get();
+            final List<ApnsTarget> targets = composeNotificationController.getApnsTargets();
 
-            final Task<PushNotificationResponse<ApnsPushNotification>> sendNotificationTask = new Task<PushNotificationResponse<ApnsPushNotification>>() {
+            final Optional<Instant> tokenInvalidationTimestamp = getTokenInvalidationTimestamp(pushNotification.getToken());
 
-                @Override
-                protected PushNotificationResponse<ApnsPushNotification> call() throws Exception {
-                    final String server = composeNotificationController.apnsServerProperty().get();
-                    final int port = composeNotificationController.apnsPortProperty().get();
-                    final ApnsCredentials credentials = composeNotificationController.apnsCredentialsProperty().get();
+            if (tokenInvalidationTimestamp.isPresent()) {
+                // APNs has already told us this token is no longer valid, and sending to it again would only waste
+                // time (and goodwill with the APNs server).
+                composeNotificationController.handleNotificationSent();
+
+                for (final ApnsTarget target : targets) {
+                    handleNotificationResult(NotificationResult.skipped(pushNotification, target, tokenInvalidationTimestamp.get()));
+                }
+
+                return;
+            }
+
+            final boolean queued = sendQueue.offer(() -> {
+                final List<CompletableFuture<NotificationResult>> resultFutures =
+                        sendNotificationToAllTargets(pushNotification, credentials, targets);
 
-                    final ApnsClientBuilder apnsClientBuilder = new ApnsClientBuilder();
-                    apnsClientBuilder.setApnsServer(server, port);
+                return CompletableFuture.allOf(resultFutures.toArray(new CompletableFuture<?>[0]))
+                        .whenComplete((ignored, cause) -> Platform.runLater(() -> handleNotificationResults(resultFutures)));
+            });
 
-                    credentials.getCertificateAndPrivateKey().ifPresent(certificateAndPrivateKey ->
-                            apnsClientBuilder.setClientCredentials(certificateAndPrivateKey.getKey(), certificateAndPrivateKey.getValue(), null));
+            if (queued) {
+                composeNotificationController.handleNotificationSent();
+            } else {
+                // The send button is disabled while the queue is full, so this should only happen if the queue filled
+                // up since the last status update; either way, the user should know the notification wasn't sent
+                reportPushNotificationError(new RejectedExecutionException(resources.getString("send-queue.rejected")));
+                updateSendQueueStatus();
+            }
+        } else {
+            composeNotificationController.setRequiredFieldGroupHighlighted(true);
+        }
+    }
+
+    @FXML
+    void handleScheduleToggleButtonAction(final ActionEvent event) {
+        if (!scheduleToggleButton.isSelected()) {
+            sendScheduler.stop();
+            return;
+        }
+
+        // The toggle button only stays selected if the scheduler actually starts
+        scheduleToggleButton.setSelected(false);
+
+        if (!readyToSendProperty.get() || !composeNotificationController.validatePayload().isValid()) {
+            composeNotificationController.setRequiredFieldGroupHighlighted(true);
+            return;
+        }
 
-                    credentials.getSigningKey().ifPresent(apnsClientBuilder::setSigningKey);
+        final SendSchedule schedule;
 
-                    final ApnsClient apnsClient = apnsClientBuilder.build();
+        try {
+            schedule = SendSchedule.parse(StringUtils.defaultString(scheduleTextField.getText()), ZoneId.systemDefault());
+        } catch (final IllegalArgumentException e) {
+            final Alert alert = new Alert(Alert.AlertType.WARNING);
 
-                    try {
-                        return apnsClient.sendNotification(composeNotificationController.pushNotificationProperty().get()).get();
-                    } finally {
-                        apnsClient.close();
+            alert.setTitle(resources.getString("alert.bad-schedule.title"));
+            alert.setHeaderText(resources.getString("alert.bad-schedule.header"));
+            alert.setContentText(resources.getString("alert.bad-schedule.content-text"));
+
+            alert.show();
+            return;
+        }
+
+        composeNotificationController.handleNotificationSent();
+
+        // Scheduled sends repeat the notification as it was when the schedule started, even if the notification being
+        // composed changes in the meantime
+        final ApnsPushNotification pushNotification = composeNotificationController.pushNotificationProperty().get();
+        final ApnsCredentials credentials = composeNotificationController.apnsCredentialsProperty().get();
+        final List<ApnsTarget> targets = composeNotificationController.getApnsTargets();
+
+        final Optional<Instant> tokenInvalidationTimestamp = getTokenInvalidationTimestamp(pushNotification.getToken());
+
+        if (tokenInvalidationTimestamp.isPresent()) {
+            for (final ApnsTarget target : targets) {
+                handleNotificationResult(NotificationResult.skipped(pushNotification, target, tokenInvalidationTimestamp.get()));
+            }
+
+            return;
+        }
+
+        sendScheduler.start(schedule, () -> {
+            // APNs may report the token as unregistered partway through a long-running schedule; there's no point in
+            // sending to it again after that
+            final Optional<Instant> invalidationTimestamp = getTokenInvalidationTimestamp(pushNotification.getToken());
+
+            if (invalidationTimestamp.isPresent()) {
+                Platform.runLater(() -> {
+                    for (final ApnsTarget target : targets) {
+                        handleNotificationResult(NotificationResult.skipped(pushNotification, target, invalidationTimestamp.get()));
                     }
+
+                    sendScheduler.stop();
+                });
+
+                return CompletableFuture.completedFuture(null);
+            }
+
+            final List<CompletableFuture<NotificationResult>> resultFutures =
+                    sendNotificationToAllTargets(pushNotification, credentials, targets);
+
+            return CompletableFuture.allOf(resultFutures.toArray(new CompletableFuture<?>[0]))
+                    .handle((ignored, cause) -> {
+                        Platform.runLater(() -> handleNotificationResults(resultFutures));
+
+                        return resultFutures.stream()
+                                .filter(resultFuture -> !resultFuture.isCompletedExceptionally())
+                                .map(resultFuture -> resultFuture.join().getLatency().orElse(Duration.ZERO))
+                                .max(Comparator.naturalOrder())
+                                .orElse(null);
+                    });
+        });
+    }
+
+    /**
+     * Sends a notification to every given target at once. Callers should wait for all of the responses before
+     * reporting any of them so results from a single fan-out land in the table together and in a consistent order.
+     */
+    private List<CompletableFuture<NotificationResult>> sendNotificationToAllTargets(final ApnsPushNotification pushNotification,
+                                                                                   final ApnsCredentials credentials,
+                                                                                   final List<ApnsTarget> targets) {
+
+        final List<CompletableFuture<NotificationResult>> resultFutures = new ArrayList<>(targets.size());
+
+        for (final ApnsTarget target : targets) {
+            resultFutures.add(sendNotification(pushNotification, credentials, target));
+        }
+
+        return resultFutures;
+    }
+
+    private void handleNotificationResults(final List<CompletableFuture<NotificationResult>> resultFutures) {
+        for (final CompletableFuture<NotificationResult> resultFuture : resultFutures) {
+            try {
+                handleNotificationResult(resultFuture.join());
+            } catch (final CompletionException e) {
+                reportPushNotificationError(e.getCause());
+            } catch (final CancellationException ignored) {
+                // The user asked for this send to be cancelled, and doesn't need to be told that it was
+            } finally {
+                outstandingSends.remove(resultFuture);
+            }
+        }
+    }
+
+    private CompletableFuture<NotificationResult> sendNotification(final ApnsPushNotification pushNotification,
+                                                                   final ApnsCredentials credentials,
+                                                                   final ApnsTarget target) {
+
+        return sendNotification(pushNotification, credentials, target, null);
+    }
+
+    /**
+     * Sends a notification with a pooled client. If an owner is given, the client stays pinned in the pool until the
+     * owner is released.
+     */
+    private CompletableFuture<NotificationResult> sendNotification(final ApnsPushNotification pushNotification,
+                                                                   final ApnsCredentials credentials,
+                                                                   final ApnsTarget target,
+                                                                   final Object owner) {
+
+        final CompletableFuture<NotificationResult> resultFuture = new CompletableFuture<>();
+
+        if (!outstandingSends.add(resultFuture)) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Pushy Console is shutting down."));
+        }
+
+        final CompletableFuture<PushNotificationResponse<ApnsPushNotification>> responseFuture;
+
+        try {
+            responseFuture = apnsClientPool.sendNotification(pushNotification, credentials, target, owner);
+        } catch (final SSLException e) {
+            resultFuture.completeExceptionally(e);
+            return resultFuture;
+        }
+
+        final Instant sendTimestamp = Instant.now();
+        final long start = System.nanoTime();
+
+        responseFuture.whenComplete((response, cause) -> {
+            if (response != null) {
+                resultFuture.complete(NotificationResult.fromResponse(response, target, sendTimestamp,
+                        Duration.ofNanos(System.nanoTime() - start)));
+            } else {
+                resultFuture.completeExceptionally(cause);
+            }
+        });
+
+        return resultFuture;
+    }
+
+    void handlePushNotificationResponse(final PushNotificationResponse<ApnsPushNotification> pushNotificationPushNotificationResponse) {
+        handleNotificationResult(NotificationResult.fromResponse(pushNotificationPushNotificationResponse, null, null, null));
+    }
+
+    private void handleNotificationResult(final NotificationResult notificationResult) {
+        if (notificationResultsAwaitingHistory != null) {
+            notificationResultsAwaitingHistory.add(notificationResult);
+        } else {
+            recordNotificationResult(notificationResult);
+        }
+
+        if (sessionLogWriter != null) {
+            try {
+                sessionLogWriter.write(notificationResult);
+            } catch (final IOException e) {
+                stopRecordingSession();
+                reportPushNotificationError(e);
+            }
+        }
+
+        try {
+            updateInvalidTokenRegistry(notificationResult);
+        } catch (final IOException e) {
+            reportPushNotificationError(e);
+        }
+    }
+
+    private void recordNotificationResult(final NotificationResult notificationResult) {
+        notificationResultStore.append(notificationResult);
+
+        if (notificationResultHistory != null) {
+            try {
+                notificationResultHistory.append(notificationResult);
+            } catch (final IOException e) {
+                // Stop trying to write to the history rather than reporting the same problem for every result
+                closeNotificationResultHistory();
+                reportPushNotificationError(e);
+            }
+        }
+    }
+
+    private void closeNotificationResultHistory() {
+        if (notificationResultHistory != null) {
+            try {
+                notificationResultHistory.close();
+            } catch (final IOException ignored) {
+                // There's nothing more we can do for results that couldn't be written
+            } finally {
+                notificationResultHistory = null;
+            }
+        }
+    }
+
+    private Optional<Instant> getTokenInvalidationTimestamp(final String token) {
+        return invalidTokenRegistry != null ? invalidTokenRegistry.getInvalidationTimestamp(token) : Optional.empty();
+    }
+
+    private void updateInvalidTokenRegistry(final NotificationResult notificationResult) throws IOException {
+        if (invalidTokenRegistry != null) {
+            final String token = notificationResult.getPushNotification().getToken();
+
+            if (notificationResult.getStatus() == NotificationResult.Status.ACCEPTED) {
+                invalidTokenRegistry.removeToken(token);
+            } else if (notificationResult.getStatus() == NotificationResult.Status.REJECTED &&
+                    notificationResult.getTokenInvalidationTimestamp().isPresent()) {
+
+                invalidTokenRegistry.registerInvalidToken(token, notificationResult.getTokenInvalidationTimestamp().get());
+            }
+        }
+    }
+
+    private TreeItem<NotificationResultSummary.Bucket> createSummaryTreeItem(final NotificationResultSummary.Group group) {
+        final TreeItem<NotificationResultSummary.Bucket> groupItem =
+                new TreeItem<>(notificationResultSummary.getTotal(group));
+
+        groupItem.setExpanded(true);
+
+        final ObservableList<NotificationResultSummary.Bucket> buckets = notificationResultSummary.getBuckets(group);
+        buckets.forEach(bucket -> groupItem.getChildren().add(new TreeItem<>(bucket)));
+
+        // Buckets are only ever added, and only at the end of the list
+        buckets.addListener((ListChangeListener<NotificationResultSummary.Bucket>) change -> {
+            while (change.next()) {
+                change.getAddedSubList().forEach(bucket -> groupItem.getChildren().add(new TreeItem<>(bucket)));
+            }
+        });
+
+        return groupItem;
+    }
+
+    private void showNotificationResultSummaryBucket(final NotificationResultSummary.Bucket bucket) {
+        final NotificationResultFilter filter = bucket.toFilter();
+
+        updatingFilterControls = true;
+
+        try {
+            statusFilterComboBox.setValue(filter.getStatus().orElse(null));
+            rejectionReasonFilterComboBox.setValue(filter.getRejectionReason().orElse(null));
+            topicFilterComboBox.setValue(filter.getTopic().orElse(null));
+            priorityFilterComboBox.setValue(filter.getPriority().orElse(null));
+            targetFilterComboBox.setValue(filter.getTarget().orElse(null));
+            tokenFilterTextField.clear();
+            apnsIdFilterTextField.clear();
+        } finally {
+            updatingFilterControls = false;
+        }
+
+        setNotificationResultFilter(filter);
+    }
+
+    private void applyNotificationResultFilter() {
+        if (updatingFilterControls) {
+            return;
+        }
+
+        // The filter no longer necessarily corresponds to a summary bucket
+        notificationResultSummaryTreeView.getSelectionModel().clearSelection();
+
+        UUID apnsId;
+
+        try {
+            apnsId = StringUtils.isNotBlank(apnsIdFilterTextField.getText()) ?
+                    UUID.fromString(apnsIdFilterTextField.getText().trim()) : null;
+        } catch (final IllegalArgumentException e) {
+            // The user is probably still typing; ignore the APNs ID until it's complete.
+            apnsId = null;
+        }
+
+        setNotificationResultFilter(new NotificationResultFilter(statusFilterComboBox.getValue(),
+                rejectionReasonFilterComboBox.getValue(),
+                topicFilterComboBox.getValue(),
+                priorityFilterComboBox.getValue(),
+                targetFilterComboBox.getValue(),
+                tokenFilterTextField.getText(),
+                apnsId));
+    }
+
+    void setNotificationResultFilter(final NotificationResultFilter filter) {
+        if (filter.isEmpty()) {
+            notificationResultTableView.setItems(notificationResultStore);
+        } else if (!filter.equals(filteredNotificationResults.getFilter()) ||
+                notificationResultTableView.getItems() != filteredNotificationResults) {
+
+            filteredNotificationResults.setFilter(filter, notificationResultIndex.query(filter),
+                    notificationResultIndex.getIndexedRowCount());
+            notificationResultTableView.setItems(filteredNotificationResults);
+        }
+    }
+
+    @FXML
+    private void handleClearFilterButtonAction(final ActionEvent event) {
+        statusFilterComboBox.setValue(null);
+        rejectionReasonFilterComboBox.setValue(null);
+        topicFilterComboBox.setValue(null);
+        priorityFilterComboBox.setValue(null);
+        targetFilterComboBox.setValue(null);
+        tokenFilterTextField.clear();
+        apnsIdFilterTextField.clear();
+    }
+
+    @FXML
+    private void handleExportResultsMenuItemAction(final ActionEvent event) {
+        final FileChooser.ExtensionFilter csvExtensionFilter =
+                new FileChooser.ExtensionFilter(resources.getString("export-chooser.filter.csv"), "*.csv");
+
+        final FileChooser.ExtensionFilter jsonLinesExtensionFilter =
+                new FileChooser.ExtensionFilter(resources.getString("export-chooser.filter.json-lines"), "*.jsonl");
+
+        final FileChooser fileChooser = new FileChooser();
+        fileChooser.getExtensionFilters().addAll(csvExtensionFilter, jsonLinesExtensionFilter);
+
+        final File file = fileChooser.showSaveDialog(notificationResultTableView.getScene().getWindow());
+
+        if (file != null) {
+            final NotificationResultExporter.Format format =
+                    fileChooser.getSelectedExtensionFilter() == jsonLinesExtensionFilter || file.getName().endsWith(".jsonl") ?
+                            NotificationResultExporter.Format.JSON_LINES : NotificationResultExporter.Format.CSV;
+
+            // Results can only be appended, so everything below the current size is safe to read from another thread
+            // even as new results arrive.
+            final int resultCount = notificationResultStore.size();
+
+            final Task<Void> exportResultsTask = new Task<Void>() {
+
+                @Override
+                protected Void call() throws Exception {
+                    NotificationResultExporter.export(notificationResultStore, resultCount, file.toPath(), format,
+                            exported -> updateProgress(exported, resultCount));
+
+                    return null;
                 }
             };
 
-            sendNotificationTask.setOnSucceeded(workerStateEvent ->
-                    handlePushNotificationResponse(sendNotificationTask.getValue()));
+            exportResultsMenuItem.disableProperty().bind(exportResultsTask.runningProperty());
 
-            sendNotificationTask.setOnFailed(workerStateEvent ->
-                    reportPushNotificationError(sendNotificationTask.getException()));
+            exportResultsTask.setOnFailed(workerStateEvent -> {
+                final Alert alert = new Alert(Alert.AlertType.WARNING);
 
-            sendNotificationExecutorService.execute(sendNotificationTask);
-        } else {
+                alert.setTitle(resources.getString("alert.export-failed.title"));
+                alert.setHeaderText(resources.getString("alert.export-failed.header"));
+                alert.setContentText(exportResultsTask.getException().getLocalizedMessage());
+
+                alert.show();
+            });
+
+            exportResultsExecutorService.execute(exportResultsTask);
+        }
+    }
+
+    @FXML
+    private void handleRecordSessionMenuItemAction(final ActionEvent event) {
+        if (!recordSessionMenuItem.isSelected()) {
+            stopRecordingSession();
+            return;
+        }
+
+        recordSessionMenuItem.setSelected(false);
+
+        final FileChooser fileChooser = new FileChooser();
+        fileChooser.getExtensionFilters().add(
+                new FileChooser.ExtensionFilter(resources.getString("session-chooser.filter"), "*.pushylog"));
+
+        final File file = fileChooser.showSaveDialog(notificationResultTableView.getScene().getWindow());
+
+        if (file != null) {
+            try {
+                sessionLogWriter = new SessionLog.Writer(file.toPath());
+                recordSessionMenuItem.setSelected(true);
+            } catch (final IOException e) {
+                reportSessionError(e);
+            }
+        }
+    }
+
+    private void stopRecordingSession() {
+        recordSessionMenuItem.setSelected(false);
+
+        if (sessionLogWriter != null) {
+            try {
+                sessionLogWriter.close();
+            } catch (final IOException e) {
+                reportSessionError(e);
+            } finally {
+                sessionLogWriter = null;
+            }
+        }
+    }
+
+    @FXML
+    private void handleReplaySessionMenuItemAction(final ActionEvent event) {
+        final ApnsCredentials credentials = composeNotificationController.apnsCredentialsProperty().get();
+
+        if (credentials == null) {
             composeNotificationController.setRequiredFieldGroupHighlighted(true);
+            return;
+        }
+
+        final FileChooser fileChooser = new FileChooser();
+        fileChooser.getExtensionFilters().add(
+                new FileChooser.ExtensionFilter(resources.getString("session-chooser.filter"), "*.pushylog"));
+
+        final File file = fileChooser.showOpenDialog(notificationResultTableView.getScene().getWindow());
+
+        if (file == null) {
+            return;
+        }
+
+        final Map<String, Double> speedsByLabel = new LinkedHashMap<>();
+        speedsByLabel.put(resources.getString("replay-speed.original"), 1.0);
+        speedsByLabel.put(new MessageFormat(resources.getString("replay-speed.multiple")).format(new Object[] { 2 }), 2.0);
+        speedsByLabel.put(new MessageFormat(resources.getString("replay-speed.multiple")).format(new Object[] { 10 }), 10.0);
+        speedsByLabel.put(resources.getString("replay-speed.as-fast-as-possible"), SessionReplayer.AS_FAST_AS_POSSIBLE);
+
+        final ChoiceDialog<String> speedDialog =
+                new ChoiceDialog<>(speedsByLabel.keySet().iterator().next(), speedsByLabel.keySet());
+
+        speedDialog.setTitle(resources.getString("replay-speed-dialog.title"));
+        speedDialog.setHeaderText(new MessageFormat(resources.getString("replay-speed-dialog.header")).format(
+                new Object[] { file.getName() }));
+        speedDialog.setContentText(resources.getString("replay-speed-dialog.prompt"));
+
+        final Optional<String> speedLabel = speedDialog.showAndWait();
+
+        if (speedLabel.isEmpty()) {
+            return;
         }
+
+        // Replays go to whichever servers are selected now, which needn't be the servers to which the session was
+        // originally sent
+        final List<ApnsTarget> targets = composeNotificationController.getApnsTargets();
+        final double speed = speedsByLabel.get(speedLabel.get());
+
+        final Task<Long> replaySessionTask = new Task<>() {
+
+            @Override
+            protected Long call() throws Exception {
+                try (final SessionLog.Reader reader = new SessionLog.Reader(file.toPath())) {
+                    return SessionReplayer.replay(reader, speed, pushNotification -> {
+                        try {
+                            // Waits for room in the send queue, so a fast replay can't bury interactive sends
+                            return sendQueue.put(() -> {
+                                final List<CompletableFuture<NotificationResult>> resultFutures =
+                                        sendNotificationToAllTargets(pushNotification, credentials, targets);
+
+                                return CompletableFuture.allOf(resultFutures.toArray(new CompletableFuture<?>[0]))
+                                        .whenComplete((ignored, cause) ->
+                                                Platform.runLater(() -> handleNotificationResults(resultFutures)));
+                            });
+                        } catch (final InterruptedException e) {
+                            // The replayer will notice the interruption the next time it waits
+                            Thread.currentThread().interrupt();
+                            return CompletableFuture.failedFuture(e);
+                        }
+                    }, sent -> updateMessage(String.valueOf(sent)));
+                }
+            }
+        };
+
+        this.replaySessionTask = replaySessionTask;
+
+        replaySessionMenuItem.disableProperty().bind(replaySessionTask.runningProperty());
+
+        replaySessionTask.setOnFailed(workerStateEvent -> reportSessionError(replaySessionTask.getException()));
+
+        replaySessionExecutorService.execute(replaySessionTask);
     }
 
-    void handlePushNotificationResponse(final PushNotificationResponse<ApnsPushNotification> pushNotificationPushNotificationResponse) {
-        notificationResultTableView.getItems().add(pushNotificationPushNotificationResponse);
+    @FXML
+    private void handleBulkSendMenuItemAction(final ActionEvent event) {
+        final FileChooser fileChooser = new FileChooser();
+        fileChooser.getExtensionFilters().add(
+                new FileChooser.ExtensionFilter(resources.getString("bulk-send-chooser.filter"), "*.csv"));
+
+        final File file = fileChooser.showOpenDialog(notificationResultTableView.getScene().getWindow());
+
+        if (file == null) {
+            return;
+        }
+
+        final TopicRouter topicRouter;
+
+        try {
+            topicRouter = buildTopicRouter();
+        } catch (final IOException | GeneralSecurityException e) {
+            reportBulkSendError(e);
+            return;
+        }
+
+        if (topicRouter.getRoutes().isEmpty()) {
+            final Alert alert = new Alert(Alert.AlertType.WARNING);
+
+            alert.setTitle(resources.getString("alert.no-bulk-send-routes.title"));
+            alert.setHeaderText(resources.getString("alert.no-bulk-send-routes.header"));
+            alert.setContentText(resources.getString("alert.no-bulk-send-routes.content-text"));
+
+            alert.show();
+            return;
+        }
+
+        // Only read and written on the bulk send thread until the task finishes
+        final Set<String> unroutedTopics = new TreeSet<>();
+        final long[] unroutedNotifications = new long[1];
+
+        final boolean coalesce = coalesceBulkSendsMenuItem.isSelected();
+
+        final Map<DeliveryPriority, DeliveryLaneStatistics> deliveryLaneStatistics = new EnumMap<>(DeliveryPriority.class);
+
+        for (final DeliveryPriority priority : DeliveryPriority.values()) {
+            deliveryLaneStatistics.put(priority, new DeliveryLaneStatistics());
+        }
+
+        final Task<Long> bulkSendTask = new Task<>() {
+
+            @Override
+            protected Long call() throws Exception {
+                try (final BulkSendFileReader reader = new BulkSendFileReader(
+                        Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8))) {
+
+                    return BulkSender.send(reader, topicRouter, PushyConsoleController.this::sendRoutedNotification, coalesce, pushNotification -> {
+                        unroutedTopics.add(pushNotification.getTopic());
+                        unroutedNotifications[0] += 1;
+                    }, pushNotification -> coalescedBulkSends.incrementAndGet(), deliveryLaneStatistics,
+                            read -> updateMessage(String.valueOf(read)));
+                }
+            }
+        };
+
+        this.bulkSendTask = bulkSendTask;
+
+        bulkSendMenuItem.disableProperty().bind(bulkSendTask.runningProperty());
+
+        bulkSendTask.setOnRunning(workerStateEvent -> startSendMetrics(topicRouter.getRoutes(), deliveryLaneStatistics));
+
+        bulkSendTask.setOnSucceeded(workerStateEvent -> {
+            stopSendMetrics();
+            releaseRoutes(topicRouter);
+
+            if (!unroutedTopics.isEmpty()) {
+                final Alert alert = new Alert(Alert.AlertType.WARNING);
+
+                alert.setTitle(resources.getString("alert.unrouted-topics.title"));
+                alert.setHeaderText(new MessageFormat(resources.getString("alert.unrouted-topics.header"))
+                        .format(new Object[] { unroutedNotifications[0] }));
+                alert.setContentText(String.join("\n", unroutedTopics));
+
+                alert.show();
+            }
+        });
+
+        bulkSendTask.setOnCancelled(workerStateEvent -> {
+            stopSendMetrics();
+            releaseRoutes(topicRouter);
+        });
+
+        bulkSendTask.setOnFailed(workerStateEvent -> {
+            stopSendMetrics();
+            releaseRoutes(topicRouter);
+            reportBulkSendError(bulkSendTask.getException());
+        });
+
+        bulkSendExecutorService.execute(bulkSendTask);
     }
 
-    private void reportPushNotificationError(final Throwable exception) {
+    /**
+     * Sends a notification via the given route (unless its token is known to be invalid) and records its result once
+     * the send completes. May be called from any thread.
+     *
+     * @return a future that yields the result of the send, or {@code null} if the notification was skipped
+     */
+    private CompletableFuture<NotificationResult> sendRoutedNotification(final ApnsPushNotification pushNotification,
+                                                                         final TopicRouter.Route route) {
+
+        final Optional<Instant> tokenInvalidationTimestamp = getTokenInvalidationTimestamp(pushNotification.getToken());
+
+        if (tokenInvalidationTimestamp.isPresent()) {
+            Platform.runLater(() -> handleNotificationResult(NotificationResult.skipped(
+                    pushNotification, route.getTarget(), tokenInvalidationTimestamp.get())));
+
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<NotificationResult> sendFuture;
+
+        try {
+            // Routes pin their clients so a job spanning many credentials never loses (and has to re-establish) a
+            // connection partway through
+            sendFuture = sendNotification(pushNotification, route.getCredentials(), route.getTarget(), route);
+        } catch (final IOException | GeneralSecurityException e) {
+            sendFuture = CompletableFuture.failedFuture(e);
+        }
+
+        final CompletableFuture<NotificationResult> resultFuture = sendFuture;
+
+        return resultFuture.whenComplete((ignored, cause) ->
+                Platform.runLater(() -> handleNotificationResults(List.of(resultFuture))));
+    }
+
+    @FXML
+    private void handleNotificationRelayMenuItemAction(final ActionEvent event) {
+        if (!notificationRelayMenuItem.isSelected()) {
+            stopNotificationRelay();
+            return;
+        }
+
+        notificationRelayMenuItem.setSelected(false);
+
+        final TopicRouter topicRouter;
+
+        try {
+            // The relay keeps this router (and therefore these exact credentials) for as long as it runs, so every
+            // request reuses the same pooled client and connection for each set of credentials
+            topicRouter = buildTopicRouter();
+        } catch (final IOException | GeneralSecurityException e) {
+            reportNotificationRelayError(e);
+            return;
+        }
+
+        if (topicRouter.getRoutes().isEmpty()) {
+            final Alert alert = new Alert(Alert.AlertType.WARNING);
+
+            alert.setTitle(resources.getString("alert.no-relay-routes.title"));
+            alert.setHeaderText(resources.getString("alert.no-relay-routes.header"));
+            alert.setContentText(resources.getString("alert.no-bulk-send-routes.content-text"));
+
+            alert.show();
+            return;
+        }
+
+        try {
+            notificationRelay = new NotificationRelay(NotificationRelay.DEFAULT_PORT, topicRouter, this::sendRoutedNotification);
+        } catch (final IOException e) {
+            reportNotificationRelayError(e);
+            return;
+        }
+
+        notificationRelayRouter = topicRouter;
+
+        final InetSocketAddress address = notificationRelay.getAddress();
+
+        final String relayUrl = "http://localhost:" + address.getPort() + NotificationRelay.NOTIFICATIONS_PATH;
+
+        notificationRelayMenuItem.setSelected(true);
+        notificationRelayMenuItem.setText(new MessageFormat(resources.getString("notification-relay.running"))
+                .format(new Object[] { relayUrl }));
+
+        // The token changes every time the relay starts, so it goes somewhere it can be copied
+        final TextField accessTokenField = new TextField(notificationRelay.getAccessToken());
+        accessTokenField.setEditable(false);
+
+        final Alert alert = new Alert(Alert.AlertType.INFORMATION);
+
+        alert.setTitle(resources.getString("alert.relay-started.title"));
+        alert.setHeaderText(new MessageFormat(resources.getString("alert.relay-started.header"))
+                .format(new Object[] { relayUrl }));
+        alert.getDialogPane().setContent(accessTokenField);
+
+        alert.show();
+    }
+
+    private void stopNotificationRelay() {
+        notificationRelayMenuItem.setSelected(false);
+        notificationRelayMenuItem.setText(resources.getString("fxml.menu.notification-relay.label"));
+
+        if (notificationRelay != null) {
+            notificationRelay.close();
+            notificationRelay = null;
+
+            releaseRoutes(notificationRelayRouter);
+            notificationRelayRouter = null;
+        }
+    }
+
+    /**
+     * Unpins the pooled clients used by a router's routes once the job using the router is done with them.
+     */
+    private void releaseRoutes(final TopicRouter topicRouter) {
+        for (final TopicRouter.Route route : topicRouter.getRoutes()) {
+            apnsClientPool.release(route);
+        }
+    }
+
+    private void reportNotificationRelayError(final Throwable exception) {
         final Alert alert = new Alert(Alert.AlertType.WARNING);
 
-        alert.setTitle(resources.getString("alert.notification-failed.title"));
-        alert.setHeaderText(resources.getString("alert.notification-failed.header"));
+        alert.setTitle(resources.getString("alert.relay-failed.title"));
+        alert.setHeaderText(resources.getString("alert.relay-failed.header"));
         alert.setContentText(exception.getLocalizedMessage());
 
-        final String stackTrace;
-        {
-            final StringWriter stringWriter = new StringWriter();
-            final PrintWriter printWriter = new PrintWriter(stringWriter);
+        alert.show();
+    }
+
+    private void startSendMetrics(final List<TopicRouter.Route> routes,
+                                  final Map<DeliveryPriority, DeliveryLaneStatistics> deliveryLaneStatistics) {
+
+        sendMetricsRoutes = routes;
+        sendMetricsDeliveryLaneStatistics = deliveryLaneStatistics;
+        sendMetricsStartNanos = System.nanoTime();
+        coalescedBulkSends.set(0);
+
+        concurrencyLimitSeries.getData().clear();
+        inFlightSeries.getData().clear();
+
+        sampleSendMetrics();
+        sendMetricsTimeline.play();
+    }
+
+    private void stopSendMetrics() {
+        sendMetricsTimeline.stop();
+
+        // Leave the last run's history in place so it can be examined after the fact
+        sampleSendMetrics();
+    }
+
+    private void sampleSendMetrics() {
+        int limit = 0;
+        int inFlight = 0;
+        Duration minLatency = null;
+
+        for (final TopicRouter.Route route : sendMetricsRoutes) {
+            final AdaptiveConcurrencyLimiter limiter = route.getConcurrencyLimiter();
+
+            limit += limiter.getLimit();
+            inFlight += limiter.getInFlight();
+
+            final Optional<Duration> routeMinLatency = limiter.getMinLatency();
+
+            if (routeMinLatency.isPresent() && (minLatency == null || routeMinLatency.get().compareTo(minLatency) < 0)) {
+                minLatency = routeMinLatency.get();
+            }
+        }
+
+        final double elapsedSeconds = (System.nanoTime() - sendMetricsStartNanos) / 1e9;
+
+        addSendMetricsSample(concurrencyLimitSeries, elapsedSeconds, limit);
+        addSendMetricsSample(inFlightSeries, elapsedSeconds, inFlight);
+
+        sendMetricsLabel.setText(new MessageFormat(resources.getString("send-metrics.summary")).format(new Object[] {
+                limit, inFlight, sendMetricsRoutes.size(), minLatency != null ? minLatency.toMillis() : 0,
+                coalescedBulkSends.get() }));
+
+        final MessageFormat deliveryLaneFormat = new MessageFormat(resources.getString("send-metrics.delivery-lane"));
+        final StringJoiner deliveryLaneText = new StringJoiner("\n");
+
+        sendMetricsDeliveryLaneStatistics.forEach((priority, statistics) -> deliveryLaneText.add(
+                deliveryLaneFormat.format(new Object[] {
+                        DeliveryPriorityListCell.getLocalizedPriority(priority),
+                        statistics.getQueued(),
+                        statistics.getInFlight(),
+                        statistics.getMeanWait().map(Duration::toMillis).orElse(0L),
+                        statistics.getMaxWait().toMillis(),
+                        statistics.getMeanLatency().map(Duration::toMillis).orElse(0L) })));
+
+        deliveryLaneStatisticsLabel.setText(deliveryLaneText.toString());
+    }
+
+    private static void addSendMetricsSample(final XYChart.Series<Number, Number> series, final double elapsedSeconds, final int value) {
+        series.getData().add(new XYChart.Data<>(elapsedSeconds, value));
+
+        if (series.getData().size() > MAX_SEND_METRICS_SAMPLES) {
+            series.getData().remove(0);
+        }
+    }
+
+    /**
+     * Builds a router from the user's credential profiles, giving precedence to the currently-selected profile (if
+     * any) when several profiles serve the same topic. Profiles that know their topics become routes whose credentials
+     * aren't loaded until a notification is actually sent with them, so building a router from hundreds of imported
+     * profiles doesn't decrypt hundreds of certificates (or ask for their passwords) up front. Certificate profiles
+     * saved before topics were recorded still have to be loaded here to find their topics; users will be asked for any
+     * of their passwords they haven't already entered in this session.
+     */
+    private TopicRouter buildTopicRouter() throws IOException, GeneralSecurityException {
+        final List<CredentialProfile> profiles = new ArrayList<>(composeNotificationController.getCredentialProfiles());
+
+        composeNotificationController.getSelectedCredentialProfile().ifPresent(selectedProfile -> {
+            profiles.remove(selectedProfile);
+            profiles.add(0, selectedProfile);
+        });
+
+        final TopicRouter topicRouter = new TopicRouter();
+
+        for (final CredentialProfile profile : profiles) {
+            if (!profile.getTopics().isEmpty()) {
+                topicRouter.addRoute(new TopicRouter.Route(profile.getName(),
+                        () -> composeNotificationController.loadRouteCredentials(profile),
+                        profile.getDefaultTarget(), BulkSender.DEFAULT_MAX_CONCURRENT_SENDS_PER_ROUTE), profile.getTopics());
+            } else if (!profile.isSigningKey()) {
+                final Optional<ApnsCredentials> credentials = composeNotificationController.loadCredentials(profile);
+
+                if (credentials.isPresent()) {
+                    final TopicRouter.Route route = new TopicRouter.Route(profile.getName(), credentials.get(),
+                            profile.getDefaultTarget(), BulkSender.DEFAULT_MAX_CONCURRENT_SENDS_PER_ROUTE);
+
+                    topicRouter.addCertificateRoute(route);
+
+                    composeNotificationController.recordCertificateTopics(profile,
+                            CertificateUtil.extractApnsTopicsFromCertificate(credentials.get().getCertificateAndPrivateKey()
+                                    .orElseThrow().getKey()));
+                }
+            }
+        }
+
+        return topicRouter;
+    }
+
+    @FXML
+    private void handleCancelSendsButtonAction(final ActionEvent event) {
+        sendScheduler.stop();
+
+        if (replaySessionTask != null) {
+            replaySessionTask.cancel();
+        }
+
+        if (bulkSendTask != null) {
+            bulkSendTask.cancel();
+        }
+
+        sendQueue.cancel();
+
+        // Results for cancelled sends are still handled (if only to mark them as no longer outstanding) once the
+        // cancellation reaches the code waiting for them
+        outstandingSends.cancelAll();
+
+        updateSendQueueStatus();
+    }
+
+    private void updateSendQueueStatus() {
+        final int depth = sendQueue.getDepth();
+        final int inFlight = outstandingSends.size();
 
-            exception.printStackTrace(printWriter);
+        if (depth > 0) {
+            sendQueueStatusLabel.setText(new MessageFormat(resources.getString(
+                    sendQueue.isFull() ? "send-queue-status.full" : "send-queue-status.queued")).format(new Object[] {
+                    depth, sendQueue.getOldestAge().orElse(Duration.ZERO).toMillis(), inFlight }));
+        } else if (inFlight > 0) {
+            sendQueueStatusLabel.setText(new MessageFormat(resources.getString("send-queue-status.in-flight"))
+                    .format(new Object[] { inFlight }));
+        } else {
+            sendQueueStatusLabel.setText(null);
+        }
+
+        sendNotificationButton.setDisable(sendQueue.isFull());
+
+        final boolean replaying = replaySessionTask != null && replaySessionTask.isRunning();
+        final boolean bulkSending = bulkSendTask != null && bulkSendTask.isRunning();
 
-            stackTrace = stringWriter.toString();
+        cancelSendsButton.setDisable(depth == 0 && inFlight == 0 && !replaying && !bulkSending &&
+                !sendScheduler.runningProperty().get());
+    }
+
+    private void reportBulkSendError(final Throwable exception) {
+        if (outstandingSends.isClosed()) {
+            // Bulk sends are interrupted on purpose when the console shuts down
+            return;
         }
 
-        final TextArea stackTraceTextArea = new TextArea(stackTrace);
-        stackTraceTextArea.setEditable(false);
-        stackTraceTextArea.setMaxWidth(Double.MAX_VALUE);
-        stackTraceTextArea.setMaxHeight(Double.MAX_VALUE);
+        final Alert alert = new Alert(Alert.AlertType.WARNING);
+
+        alert.setTitle(resources.getString("alert.bulk-send-failed.title"));
+        alert.setHeaderText(resources.getString("alert.bulk-send-failed.header"));
+        alert.setContentText(exception.getLocalizedMessage());
+
+        alert.show();
+    }
+
+    private void reportSessionError(final Throwable exception) {
+        if (outstandingSends.isClosed()) {
+            // Replays are interrupted on purpose when the console shuts down
+            return;
+        }
+
+        final Alert alert = new Alert(Alert.AlertType.WARNING);
+
+        alert.setTitle(resources.getString("alert.session-failed.title"));
+        alert.setHeaderText(resources.getString("alert.session-failed.header"));
+        alert.setContentText(exception.getLocalizedMessage());
+
+        alert.show();
+    }
 
-        alert.getDialogPane().setExpandableContent(stackTraceTextArea);
+    private void reportPushNotificationError(final Throwable exception) {
+        errorLog.record(exception);
+    }
 
-        alert.showAndWait();
+    @FXML
+    private void handleClearErrorLogButtonAction(final ActionEvent event) {
+        errorLog.clear();
     }
 
+    /**
+     * Shuts down the controller. New sends are refused immediately, and notifications that are already in flight are
+     * given up to {@link #SHUTDOWN_DRAIN_PERIOD} to finish so their results can be recorded before clients and stores
+     * are closed. Must be called on the JavaFX application thread.
+     */
     void stop() {
-        sendNotificationExecutorService.shutdown();
+        composeNotificationController.stop();
+
+        if (notificationRelay != null) {
+            notificationRelay.close();
+        }
+
+        // Stop intake first so the set of outstanding sends can only shrink from here on
+        final CompletableFuture<Void> drainedFuture = outstandingSends.close();
+
+        sendMetricsTimeline.stop();
+
+        sendScheduler.shutdown();
+        sendQueueStatusTimeline.stop();
+
+        final int discardedSends = sendQueue.shutdown();
+
+        if (discardedSends > 0) {
+            log.log(System.Logger.Level.WARNING, "Abandoned {0} notifications that were still waiting to be sent",
+                    discardedSends);
+        }
+
+        replaySessionExecutorService.shutdownNow();
+        bulkSendExecutorService.shutdownNow();
+        exportResultsExecutorService.shutdown();
+        resultHistoryExecutorService.shutdown();
+        warmConnectionsDelay.stop();
+        apnsConnectionWarmer.stop();
+
+        awaitOutstandingSends(drainedFuture);
+
+        final int abandonedSends = outstandingSends.size();
+
+        if (abandonedSends > 0) {
+            log.log(System.Logger.Level.WARNING, "Abandoned {0} notifications that were still in flight after {1} ms",
+                    abandonedSends, SHUTDOWN_DRAIN_PERIOD.toMillis());
+        }
+
+        // Bulk sends and replays submit notifications through the client pool, so make sure they've actually stopped
+        // before closing it out from under them
+        awaitTermination(bulkSendExecutorService, "bulk send");
+        awaitTermination(replaySessionExecutorService, "session replay");
+
+        try {
+            apnsClientPool.close().get(CLIENT_CLOSE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (final TimeoutException e) {
+            log.log(System.Logger.Level.WARNING, "Not all APNs clients closed within {0} ms", CLIENT_CLOSE_TIMEOUT.toMillis());
+        } catch (final ExecutionException e) {
+            log.log(System.Logger.Level.WARNING, "Failed to close APNs clients", e.getCause());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (sessionLogWriter != null) {
+            try {
+                sessionLogWriter.close();
+            } catch (final IOException ignored) {
+                // Nothing we can do about this on the way out
+            } finally {
+                sessionLogWriter = null;
+            }
+        }
+
+        closeNotificationResultHistory();
+
+        if (invalidTokenRegistry != null) {
+            try {
+                invalidTokenRegistry.close();
+            } catch (final IOException ignored) {
+                // We're shutting down anyway, and the registry is only a cache of information from the APNs server.
+            }
+        }
+    }
+
+    private static void awaitTermination(final ExecutorService executorService, final String description) {
+        try {
+            if (!executorService.awaitTermination(EXECUTOR_SHUTDOWN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                log.log(System.Logger.Level.WARNING, "Gave up waiting for {0} tasks to stop after {1} ms",
+                        description, EXECUTOR_SHUTDOWN_TIMEOUT.toMillis());
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void awaitOutstandingSends(final CompletableFuture<Void> drainedFuture) {
+        if (drainedFuture.isDone()) {
+            return;
+        }
+
+        if (Platform.isFxApplicationThread()) {
+            // Results are recorded on the JavaFX application thread, so we need to keep processing events while we
+            // wait for them; blocking here would leave every remaining result stuck in the event queue.
+            final Object nestedLoopKey = new Object();
+
+            drainedFuture.copy()
+                    .completeOnTimeout(null, SHUTDOWN_DRAIN_PERIOD.toMillis(), TimeUnit.MILLISECONDS)
+                    .thenRun(() -> Platform.runLater(() -> Platform.exitNestedEventLoop(nestedLoopKey, null)));
+
+            Platform.enterNestedEventLoop(nestedLoopKey);
+        } else {
+            try {
+                drainedFuture.get(SHUTDOWN_DRAIN_PERIOD.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (final TimeoutException | ExecutionException ignored) {
+                // Whatever's still outstanding will be reported as abandoned
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 }
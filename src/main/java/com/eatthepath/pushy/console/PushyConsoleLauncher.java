@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import javafx.application.Application;
+
+import java.util.Arrays;
+
+/**
+ * <p>Chooses how to run Pushy Console based on its command-line arguments. Pushy Console normally runs as a graphical
+ * application, but runs without a window in pipe mode when given the {@code --pipe} argument.</p>
+ *
+ * <p>This class deliberately does not extend {@link Application}; Java's launcher would otherwise start the JavaFX
+ * toolkit (which needs a display) before {@link #main(String...)} had a chance to look at its arguments.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+public class PushyConsoleLauncher {
+
+    private PushyConsoleLauncher() {
+    }
+
+    /**
+     * Launches Pushy Console.
+     *
+     * @param args a list of command-line arguments
+     */
+    public static void main(final String... args) {
+        if (Arrays.asList(args).contains(NotificationPipe.PIPE_ARGUMENT)) {
+            System.exit(NotificationPipe.run(System.in, System.out, System.err));
+        } else {
+            Application.launch(PushyConsoleApplication.class, args);
+        }
+    }
+}
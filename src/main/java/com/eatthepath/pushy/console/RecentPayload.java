@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import javafx.collections.ListChangeListener;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * A recently-sent payload along with a one-line preview of the payload. Previews are computed once when the recent
+ * payload is created so that displaying or searching a long list of recent payloads never requires reformatting them.
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class RecentPayload {
+
+    private final String payload;
+    private final String preview;
+    private final String searchText;
+
+    private static final int MAX_PREVIEW_LENGTH = 256;
+
+    RecentPayload(final String payload) {
+        this.payload = Objects.requireNonNull(payload);
+
+        final String normalizedPayload = StringUtils.normalizeSpace(payload);
+
+        this.preview = StringUtils.abbreviate(normalizedPayload, MAX_PREVIEW_LENGTH);
+        this.searchText = normalizedPayload.toLowerCase(Locale.ROOT);
+    }
+
+    String getPayload() {
+        return payload;
+    }
+
+    /**
+     * Returns a single-line, possibly-abbreviated preview of this payload.
+     *
+     * @return a single-line preview of this payload
+     */
+    String getPreview() {
+        return preview;
+    }
+
+    /**
+     * Tests whether this payload contains the given (lower-case, whitespace-normalized) search query.
+     *
+     * @param normalizedQuery the query for which to search
+     *
+     * @return {@code true} if this payload contains the given query or {@code false} otherwise
+     */
+    boolean matches(final String normalizedQuery) {
+        return searchText.contains(normalizedQuery);
+    }
+
+    /**
+     * Normalizes a search query for use with {@link #matches(String)}.
+     *
+     * @param query the query to normalize
+     *
+     * @return a normalized version of the given query
+     */
+    static String normalizeQuery(final String query) {
+        return StringUtils.normalizeSpace(StringUtils.defaultString(query)).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Applies a change to a list of recent payloads to a parallel list of recent payload entries one piece at a time,
+     * so each entry's preview only gets computed once, when the payload first gets added to the list.
+     *
+     * @param change the change to the list of recent payloads
+     * @param entries the list of entries to update; must match the list of recent payloads as it was before the change
+     */
+    static void applyChange(final ListChangeListener.Change<? extends String> change, final List<RecentPayload> entries) {
+        while (change.next()) {
+            if (change.wasPermutated()) {
+                final List<RecentPayload> permutedEntries =
+                        new ArrayList<>(entries.subList(change.getFrom(), change.getTo()));
+
+                for (int i = change.getFrom(); i < change.getTo(); i++) {
+                    permutedEntries.set(change.getPermutation(i) - change.getFrom(), entries.get(i));
+                }
+
+                for (int i = 0; i < permutedEntries.size(); i++) {
+                    entries.set(change.getFrom() + i, permutedEntries.get(i));
+                }
+            } else {
+                if (change.wasRemoved()) {
+                    entries.subList(change.getFrom(), change.getFrom() + change.getRemovedSize()).clear();
+                }
+
+                if (change.wasAdded()) {
+                    final List<RecentPayload> addedEntries = new ArrayList<>(change.getAddedSize());
+
+                    for (final String payload : change.getAddedSubList()) {
+                        addedEntries.add(new RecentPayload(payload));
+                    }
+
+                    entries.addAll(change.getFrom(), addedEntries);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * <p>A bounded queue of sends waiting to be dispatched. Sends are dispatched in order by a single background thread,
+ * and at most a fixed number of dispatched sends may be in flight at once; once the queue is full, producers must
+ * either wait for room ({@link #put(Supplier)}) or be turned away ({@link #offer(Supplier)}).</p>
+ *
+ * <p>The queue's depth, the age of its oldest entry, and the number of sends in flight may be read from any thread.
+ * {@link #cancel()} discards every send that hasn't yet been dispatched. Sends that are already in flight are left
+ * alone; their results usually still need to be handled (even if only to note that they were cancelled), so it's up to
+ * the code that started them to cancel them.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class SendQueue {
+
+    static final int DEFAULT_CAPACITY = 1024;
+    static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+    private final BlockingQueue<PendingSend> pendingSends;
+    private final Semaphore inFlightPermits;
+    private final AtomicInteger inFlightSends = new AtomicInteger();
+
+    // Incremented on every cancellation so a send the dispatcher had already taken when the queue was cancelled
+    // doesn't slip through
+    private volatile long generation = 0;
+
+    private final ExecutorService dispatchExecutorService = Executors.newSingleThreadExecutor();
+
+    private class PendingSend {
+        private final Supplier<? extends CompletableFuture<?>> sendAction;
+        private final CompletableFuture<Void> completionFuture = new CompletableFuture<>();
+
+        private final long enqueuedNanos = System.nanoTime();
+        private final long sendGeneration = generation;
+
+        private PendingSend(final Supplier<? extends CompletableFuture<?>> sendAction) {
+            this.sendAction = sendAction;
+        }
+    }
+
+    SendQueue() {
+        this(DEFAULT_CAPACITY, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * Constructs a new send queue and starts its dispatch thread.
+     *
+     * @param capacity the maximum number of sends that may wait in the queue
+     * @param maxInFlight the maximum number of dispatched sends that may be in flight at once
+     */
+    SendQueue(final int capacity, final int maxInFlight) {
+        this.pendingSends = new ArrayBlockingQueue<>(capacity);
+        this.inFlightPermits = new Semaphore(maxInFlight);
+
+        dispatchExecutorService.execute(this::dispatch);
+    }
+
+    /**
+     * Adds a send to the queue if there's room. Suitable for callers (like the JavaFX application thread) that must
+     * never block.
+     *
+     * @param sendAction an action that starts a send and returns a future that completes when the send has completed;
+     * called on the dispatch thread
+     *
+     * @return {@code true} if the send was added to the queue or {@code false} if the queue was full
+     */
+    boolean offer(final Supplier<? extends CompletableFuture<?>> sendAction) {
+        return pendingSends.offer(new PendingSend(sendAction));
+    }
+
+    /**
+     * Adds a send to the queue, waiting for room if the queue is full.
+     *
+     * @param sendAction an action that starts a send and returns a future that completes when the send has completed;
+     * called on the dispatch thread
+     *
+     * @return a future that completes when the send has completed, or that is cancelled if the send is cancelled
+     * before it has completed
+     *
+     * @throws InterruptedException if the calling thread was interrupted while waiting for room in the queue
+     */
+    CompletableFuture<Void> put(final Supplier<? extends CompletableFuture<?>> sendAction) throws InterruptedException {
+        final PendingSend pendingSend = new PendingSend(sendAction);
+        pendingSends.put(pendingSend);
+
+        return pendingSend.completionFuture;
+    }
+
+    private void dispatch() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                // Wait for a permit before taking a send so the queue holds exactly as many sends as it says it does
+                inFlightPermits.acquire();
+
+                final PendingSend pendingSend;
+
+                try {
+                    pendingSend = pendingSends.take();
+                } catch (final InterruptedException e) {
+                    inFlightPermits.release();
+                    throw e;
+                }
+
+                if (pendingSend.sendGeneration != generation) {
+                    inFlightPermits.release();
+                    pendingSend.completionFuture.cancel(false);
+
+                    continue;
+                }
+
+                CompletableFuture<?> sendFuture;
+
+                try {
+                    sendFuture = pendingSend.sendAction.get();
+                } catch (final RuntimeException e) {
+                    sendFuture = CompletableFuture.failedFuture(e);
+                }
+
+                inFlightSends.incrementAndGet();
+
+                sendFuture.whenComplete((ignored, cause) -> {
+                    inFlightSends.decrementAndGet();
+                    inFlightPermits.release();
+
+                    if (cause instanceof CancellationException) {
+                        pendingSend.completionFuture.cancel(false);
+                    } else {
+                        pendingSend.completionFuture.complete(null);
+                    }
+                });
+            }
+        } catch (final InterruptedException ignored) {
+            // We're shutting down
+        }
+    }
+
+    /**
+     * Discards every send that hasn't been dispatched yet. Producers waiting for room in the queue will be allowed to
+     * proceed, and sends they add afterward will be dispatched normally.
+     *
+     * @return the number of sends that were discarded before they could be dispatched
+     */
+    synchronized int cancel() {
+        generation += 1;
+
+        final List<PendingSend> discardedSends = new ArrayList<>(pendingSends.size());
+        pendingSends.drainTo(discardedSends);
+
+        for (final PendingSend discardedSend : discardedSends) {
+            discardedSend.completionFuture.cancel(false);
+        }
+
+        return discardedSends.size();
+    }
+
+    /**
+     * Returns the number of sends waiting to be dispatched.
+     *
+     * @return the number of sends waiting to be dispatched
+     */
+    int getDepth() {
+        return pendingSends.size();
+    }
+
+    boolean isFull() {
+        return pendingSends.remainingCapacity() == 0;
+    }
+
+    /**
+     * Returns the length of time the oldest send in the queue has been waiting.
+     *
+     * @return the length of time the oldest send in the queue has been waiting, or empty if the queue is empty
+     */
+    Optional<Duration> getOldestAge() {
+        final PendingSend oldestSend = pendingSends.peek();
+
+        return oldestSend != null ?
+                Optional.of(Duration.ofNanos(System.nanoTime() - oldestSend.enqueuedNanos)) :
+                Optional.empty();
+    }
+
+    /**
+     * Returns the number of dispatched sends that have not yet completed.
+     *
+     * @return the number of dispatched sends that have not yet completed
+     */
+    int getInFlight() {
+        return inFlightSends.get();
+    }
+
+    /**
+     * Stops dispatching sends. Sends that are already in flight are unaffected.
+     *
+     * @return the number of sends that were discarded before they could be dispatched
+     */
+    int shutdown() {
+        dispatchExecutorService.shutdownNow();
+        return cancel();
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>A schedule on which to send notifications repeatedly. Schedules are either fixed-rate schedules (like "30s" or
+ * "5m") or five-field cron-style schedules (like "*&#47;5 * * * *").</p>
+ *
+ * <p>Cron-style schedules follow the usual conventions: the fields are minute, hour, day of month, month, and day of
+ * week (where both 0 and 7 mean Sunday), and each field is a comma-separated list of values, ranges, or
+ * {@code *}, each optionally followed by a step like {@code /5}. If both the day of month and day of week are
+ * restricted, a day matches if it matches either field.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+abstract class SendSchedule {
+
+    private static final Pattern FIXED_RATE_PATTERN = Pattern.compile("(\\d+)\\s*(ms|s|m|h)");
+
+    /**
+     * Returns the first time strictly after the given time at which a notification should be sent.
+     *
+     * @param previousSendTime the time at which the previous notification was scheduled to be sent
+     *
+     * @return the time at which the next notification should be sent
+     */
+    abstract Instant getNextSendTime(Instant previousSendTime);
+
+    /**
+     * Parses a schedule from a fixed-rate interval (a whole number followed by "ms", "s", "m", or "h", or an ISO-8601
+     * duration) or a five-field cron expression.
+     *
+     * @param schedule the schedule to parse
+     * @param zone the time zone in which to interpret cron expressions
+     *
+     * @return the parsed schedule
+     *
+     * @throws IllegalArgumentException if the given string could not be parsed as a schedule, or if it describes a
+     * schedule that would never send a notification
+     */
+    static SendSchedule parse(final String schedule, final ZoneId zone) {
+        final String trimmedSchedule = schedule.trim();
+
+        final Matcher fixedRateMatcher = FIXED_RATE_PATTERN.matcher(trimmedSchedule.toLowerCase(Locale.ROOT));
+
+        if (fixedRateMatcher.matches()) {
+            final long amount = Long.parseLong(fixedRateMatcher.group(1));
+
+            switch (fixedRateMatcher.group(2)) {
+                case "ms": return new FixedRateSendSchedule(Duration.ofMillis(amount));
+                case "s": return new FixedRateSendSchedule(Duration.ofSeconds(amount));
+                case "m": return new FixedRateSendSchedule(Duration.ofMinutes(amount));
+                default: return new FixedRateSendSchedule(Duration.ofHours(amount));
+            }
+        }
+
+        if (trimmedSchedule.toUpperCase(Locale.ROOT).startsWith("P")) {
+            try {
+                return new FixedRateSendSchedule(Duration.parse(trimmedSchedule));
+            } catch (final DateTimeParseException e) {
+                throw new IllegalArgumentException("Could not parse duration: " + trimmedSchedule, e);
+            }
+        }
+
+        return new CronSendSchedule(trimmedSchedule, zone);
+    }
+
+    /**
+     * A schedule that sends notifications at a fixed interval.
+     */
+    static class FixedRateSendSchedule extends SendSchedule {
+
+        private final Duration period;
+
+        FixedRateSendSchedule(final Duration period) {
+            if (period.isNegative() || period.isZero()) {
+                throw new IllegalArgumentException("Period must be positive");
+            }
+
+            this.period = period;
+        }
+
+        @Override
+        Instant getNextSendTime(final Instant previousSendTime) {
+            return previousSendTime.plus(period);
+        }
+    }
+
+    /**
+     * A schedule that sends notifications at the start of every minute that matches a cron expression.
+     */
+    static class CronSendSchedule extends SendSchedule {
+
+        private final BitSet minutes;
+        private final BitSet hours;
+        private final BitSet daysOfMonth;
+        private final BitSet months;
+        private final BitSet daysOfWeek;
+
+        private final boolean daysOfMonthRestricted;
+        private final boolean daysOfWeekRestricted;
+
+        private final ZoneId zone;
+
+        // Leap days are the rarest days a cron expression can match, and one of those comes along at least every
+        // eight years.
+        private static final long MAX_SEARCH_YEARS = 8;
+
+        CronSendSchedule(final String expression, final ZoneId zone) {
+            final String[] fields = expression.trim().split("\\s+");
+
+            if (fields.length != 5) {
+                throw new IllegalArgumentException("Cron expressions must have exactly five fields: " + expression);
+            }
+
+            minutes = parseField(fields[0], 0, 59);
+            hours = parseField(fields[1], 0, 23);
+            daysOfMonth = parseField(fields[2], 1, 31);
+            months = parseField(fields[3], 1, 12);
+            daysOfWeek = parseField(fields[4], 0, 7);
+
+            // Sunday may be written as either 0 or 7
+            if (daysOfWeek.get(7)) {
+                daysOfWeek.set(0);
+            }
+
+            daysOfMonthRestricted = !fields[2].equals("*");
+            daysOfWeekRestricted = !fields[4].equals("*");
+
+            this.zone = zone;
+
+            // Make sure the expression describes at least one real point in time (i.e. not "February 30")
+            getNextSendTime(Instant.now());
+        }
+
+        private static BitSet parseField(final String field, final int min, final int max) {
+            final BitSet values = new BitSet(max + 1);
+
+            for (final String item : field.split(",")) {
+                final String range;
+                final int step;
+                {
+                    final int slash = item.indexOf('/');
+
+                    if (slash >= 0) {
+                        range = item.substring(0, slash);
+                        step = parseValue(item.substring(slash + 1), 1, Integer.MAX_VALUE);
+                    } else {
+                        range = item;
+                        step = 1;
+                    }
+                }
+
+                final int start;
+                final int end;
+
+                if (range.equals("*")) {
+                    start = min;
+                    end = max;
+                } else {
+                    final int dash = range.indexOf('-');
+
+                    if (dash >= 0) {
+                        start = parseValue(range.substring(0, dash), min, max);
+                        end = parseValue(range.substring(dash + 1), start, max);
+                    } else {
+                        start = parseValue(range, min, max);
+                        end = item.indexOf('/') >= 0 ? max : start;
+                    }
+                }
+
+                for (int value = start; value <= end; value += step) {
+                    values.set(value);
+                }
+            }
+
+            return values;
+        }
+
+        private static int parseValue(final String value, final int min, final int max) {
+            final int parsedValue;
+
+            try {
+                parsedValue = Integer.parseInt(value);
+            } catch (final NumberFormatException e) {
+                throw new IllegalArgumentException("Could not parse cron field value: " + value, e);
+            }
+
+            if (parsedValue < min || parsedValue > max) {
+                throw new IllegalArgumentException("Cron field value " + parsedValue + " must be between " + min + " and " + max);
+            }
+
+            return parsedValue;
+        }
+
+        @Override
+        Instant getNextSendTime(final Instant previousSendTime) {
+            ZonedDateTime candidate = ZonedDateTime.ofInstant(previousSendTime, zone)
+                    .truncatedTo(ChronoUnit.MINUTES)
+                    .plusMinutes(1);
+
+            final ZonedDateTime searchLimit = candidate.plusYears(MAX_SEARCH_YEARS);
+
+            // Rather than checking every minute, skip ahead a month, day, or hour at a time when a whole unit of time
+            // can't possibly match
+            while (candidate.isBefore(searchLimit)) {
+                if (!months.get(candidate.getMonthValue())) {
+                    candidate = candidate.truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1).plusMonths(1);
+                } else if (!matchesDay(candidate)) {
+                    candidate = candidate.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+                } else if (!hours.get(candidate.getHour())) {
+                    candidate = candidate.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+                } else if (!minutes.get(candidate.getMinute())) {
+                    candidate = candidate.plusMinutes(1);
+                } else {
+                    return candidate.toInstant();
+                }
+            }
+
+            throw new IllegalArgumentException("Cron expression never matches any point in time");
+        }
+
+        private boolean matchesDay(final ZonedDateTime dateTime) {
+            final boolean dayOfMonthMatches = daysOfMonth.get(dateTime.getDayOfMonth());
+            final boolean dayOfWeekMatches = daysOfWeek.get(dateTime.getDayOfWeek().getValue() % 7);
+
+            if (daysOfMonthRestricted && daysOfWeekRestricted) {
+                return dayOfMonthMatches || dayOfWeekMatches;
+            }
+
+            return dayOfMonthMatches && dayOfWeekMatches;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * <p>Sends notifications repeatedly according to a {@link SendSchedule} and keeps track of how closely actual sends
+ * follow the schedule.</p>
+ *
+ * <p>Ticks that come due while the previous tick's notifications are still in flight, or that were missed entirely
+ * (because the computer was asleep, for example), are coalesced rather than queued; the scheduler sends at most one
+ * round of notifications at a time, then picks up with the next scheduled time that hasn't already passed.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class SendScheduler {
+
+    private final ScheduledExecutorService schedulerExecutorService = Executors.newSingleThreadScheduledExecutor();
+
+    // Only accessed from the scheduler thread
+    private ScheduledFuture<?> nextTickFuture;
+    private CompletableFuture<Duration> inFlightSendFuture;
+
+    // Incremented every time the scheduler starts or stops so stale statistics can be discarded
+    private long generation = 0;
+
+    private final ReadOnlyBooleanWrapper runningWrapper = new ReadOnlyBooleanWrapper(false);
+    private final ReadOnlyIntegerWrapper sentTicksWrapper = new ReadOnlyIntegerWrapper(0);
+    private final ReadOnlyIntegerWrapper coalescedTicksWrapper = new ReadOnlyIntegerWrapper(0);
+    private final ReadOnlyObjectWrapper<Duration> lastDriftWrapper = new ReadOnlyObjectWrapper<>();
+    private final ReadOnlyObjectWrapper<Duration> maxDriftWrapper = new ReadOnlyObjectWrapper<>();
+    private final ReadOnlyObjectWrapper<Duration> lastLatencyWrapper = new ReadOnlyObjectWrapper<>();
+
+    /**
+     * Starts sending notifications according to the given schedule, replacing any schedule that was already running.
+     * The first round of notifications is sent immediately. Must be called on the JavaFX application thread.
+     *
+     * @param schedule the schedule on which to send notifications
+     * @param sendAction an action that sends a round of notifications; the action is called from a background thread,
+     * and returns a future that yields the longest latency of any notification in the round once every notification
+     * in the round has been sent
+     */
+    void start(final SendSchedule schedule, final Supplier<CompletableFuture<Duration>> sendAction) {
+        final long scheduleGeneration = ++generation;
+
+        runningWrapper.set(true);
+        sentTicksWrapper.set(0);
+        coalescedTicksWrapper.set(0);
+        lastDriftWrapper.set(null);
+        maxDriftWrapper.set(null);
+        lastLatencyWrapper.set(null);
+
+        schedulerExecutorService.execute(() -> {
+            cancelNextTick();
+            scheduleTick(scheduleGeneration, schedule, sendAction, Instant.now());
+        });
+    }
+
+    /**
+     * Stops sending notifications. Notifications already in flight are unaffected. Must be called on the JavaFX
+     * application thread.
+     */
+    void stop() {
+        generation += 1;
+        runningWrapper.set(false);
+
+        schedulerExecutorService.execute(this::cancelNextTick);
+    }
+
+    private void cancelNextTick() {
+        if (nextTickFuture != null) {
+            nextTickFuture.cancel(false);
+            nextTickFuture = null;
+        }
+    }
+
+    private void scheduleTick(final long scheduleGeneration, final SendSchedule schedule,
+                              final Supplier<CompletableFuture<Duration>> sendAction, final Instant scheduledTime) {
+        final long delayNanos = Math.max(0, Duration.between(Instant.now(), scheduledTime).toNanos());
+
+        nextTickFuture = schedulerExecutorService.schedule(() -> tick(scheduleGeneration, schedule, sendAction, scheduledTime),
+                delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void tick(final long scheduleGeneration, final SendSchedule schedule,
+                      final Supplier<CompletableFuture<Duration>> sendAction, final Instant scheduledTime) {
+        final Instant actualTime = Instant.now();
+        final Duration drift = Duration.between(scheduledTime, actualTime);
+
+        int coalescedTicks = 0;
+        final boolean sent;
+
+        if (inFlightSendFuture == null || inFlightSendFuture.isDone()) {
+            final CompletableFuture<Duration> sendFuture = sendAction.get();
+            inFlightSendFuture = sendFuture;
+            sent = true;
+
+            sendFuture.thenAccept(latency -> Platform.runLater(() -> {
+                if (generation == scheduleGeneration) {
+                    lastLatencyWrapper.set(latency);
+                }
+            }));
+        } else {
+            // The previous round hasn't finished yet; fold this tick into it rather than piling on
+            coalescedTicks += 1;
+            sent = false;
+        }
+
+        Instant nextScheduledTime = schedule.getNextSendTime(scheduledTime);
+
+        while (!nextScheduledTime.isAfter(actualTime)) {
+            coalescedTicks += 1;
+            nextScheduledTime = schedule.getNextSendTime(nextScheduledTime);
+        }
+
+        final int finalCoalescedTicks = coalescedTicks;
+
+        Platform.runLater(() -> {
+            if (generation == scheduleGeneration) {
+                if (sent) {
+                    sentTicksWrapper.set(sentTicksWrapper.get() + 1);
+                    lastDriftWrapper.set(drift);
+
+                    if (maxDriftWrapper.get() == null || drift.compareTo(maxDriftWrapper.get()) > 0) {
+                        maxDriftWrapper.set(drift);
+                    }
+                }
+
+                coalescedTicksWrapper.set(coalescedTicksWrapper.get() + finalCoalescedTicks);
+            }
+        });
+
+        scheduleTick(scheduleGeneration, schedule, sendAction, nextScheduledTime);
+    }
+
+    ReadOnlyBooleanProperty runningProperty() {
+        return runningWrapper.getReadOnlyProperty();
+    }
+
+    /**
+     * Returns a property containing the number of rounds of notifications sent since the scheduler last started.
+     *
+     * @return a property containing the number of rounds of notifications sent
+     */
+    ReadOnlyIntegerProperty sentTicksProperty() {
+        return sentTicksWrapper.getReadOnlyProperty();
+    }
+
+    /**
+     * Returns a property containing the number of scheduled rounds of notifications that were skipped because they
+     * came due while another round was in flight or were missed entirely.
+     *
+     * @return a property containing the number of coalesced rounds of notifications
+     */
+    ReadOnlyIntegerProperty coalescedTicksProperty() {
+        return coalescedTicksWrapper.getReadOnlyProperty();
+    }
+
+    /**
+     * Returns a property containing the difference between the scheduled and actual start times of the most recent
+     * round of notifications.
+     *
+     * @return a property containing the most recent drift; {@code null} if no notifications have been sent
+     */
+    ReadOnlyObjectProperty<Duration> lastDriftProperty() {
+        return lastDriftWrapper.getReadOnlyProperty();
+    }
+
+    ReadOnlyObjectProperty<Duration> maxDriftProperty() {
+        return maxDriftWrapper.getReadOnlyProperty();
+    }
+
+    /**
+     * Returns a property containing the longest latency of any notification in the most recently-completed round of
+     * notifications.
+     *
+     * @return a property containing the most recent round's latency; {@code null} if no round has completed
+     */
+    ReadOnlyObjectProperty<Duration> lastLatencyProperty() {
+        return lastLatencyWrapper.getReadOnlyProperty();
+    }
+
+    void shutdown() {
+        schedulerExecutorService.shutdownNow();
+    }
+}
@@ -0,0 +1,409 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.ApnsPushNotification;
+import com.eatthepath.pushy.apns.DeliveryPriority;
+import com.eatthepath.pushy.apns.util.SimpleApnsPushNotification;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * <p>Reads and writes compact binary logs of sent notifications and their results.</p>
+ *
+ * <p>A log starts with a short header (a magic number, a format version, and the time at which recording started)
+ * followed by a sequence of records. Topics, payloads, collapse IDs, and rejection reasons tend to repeat many times
+ * in a session, so each distinct string is written once in a "string" record and referred to by its position in the
+ * log thereafter. Each "entry" record describes a single notification and its result; send times are stored as the
+ * difference from the previous entry's send time, and hexadecimal tokens are stored as raw bytes. All integers are
+ * variable-length, so a typical entry takes fewer than 50 bytes.</p>
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class SessionLog {
+
+    private static final byte[] MAGIC = "PUSHYLOG".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+
+    private static final int STRING_RECORD = 1;
+    private static final int ENTRY_RECORD = 2;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private SessionLog() {
+    }
+
+    /**
+     * A single notification read from a session log, along with its recorded result.
+     */
+    static class Entry {
+
+        private final Instant sendTimestamp;
+        private final ApnsPushNotification pushNotification;
+        private final NotificationResult.Status status;
+        private final String rejectionReason;
+        private final Duration latency;
+
+        Entry(final Instant sendTimestamp, final ApnsPushNotification pushNotification,
+              final NotificationResult.Status status, final String rejectionReason, final Duration latency) {
+
+            this.sendTimestamp = sendTimestamp;
+            this.pushNotification = pushNotification;
+            this.status = status;
+            this.rejectionReason = rejectionReason;
+            this.latency = latency;
+        }
+
+        Instant getSendTimestamp() {
+            return sendTimestamp;
+        }
+
+        ApnsPushNotification getPushNotification() {
+            return pushNotification;
+        }
+
+        NotificationResult.Status getStatus() {
+            return status;
+        }
+
+        Optional<String> getRejectionReason() {
+            return Optional.ofNullable(rejectionReason);
+        }
+
+        Optional<Duration> getLatency() {
+            return Optional.ofNullable(latency);
+        }
+    }
+
+    /**
+     * Writes notification results to a session log.
+     */
+    static class Writer implements Closeable {
+
+        private final DataOutputStream out;
+
+        private final Map<String, Integer> stringIds = new HashMap<>();
+        private long previousTimestampMicros;
+
+        /**
+         * Creates a new session log at the given path, replacing any file that already exists there.
+         *
+         * @param file the path at which to create the log
+         *
+         * @throws IOException if the log could not be created for any reason
+         */
+        Writer(final Path file) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE));
+
+            previousTimestampMicros = toMicros(Instant.now());
+
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(previousTimestampMicros);
+        }
+
+        /**
+         * Appends a result to the log. Results without a send timestamp (i.e. results for notifications that were
+         * never actually sent) are ignored.
+         *
+         * @param result the result to append
+         *
+         * @throws IOException if the result could not be written for any reason
+         */
+        void write(final NotificationResult result) throws IOException {
+            if (!result.getSendTimestamp().isPresent()) {
+                return;
+            }
+
+            final ApnsPushNotification pushNotification = result.getPushNotification();
+
+            // Define any strings we haven't seen before so the entry itself can refer to them by ID
+            final int topicId = getStringId(pushNotification.getTopic());
+            final int payloadId = getStringId(pushNotification.getPayload());
+            final int collapseId = pushNotification.getCollapseId() != null ? getStringId(pushNotification.getCollapseId()) + 1 : 0;
+            final int rejectionReasonId = result.getRejectionReason().isPresent() ?
+                    getStringId(result.getRejectionReason().get()) + 1 : 0;
+
+            final long timestampMicros = toMicros(result.getSendTimestamp().get());
+
+            out.writeByte(ENTRY_RECORD);
+
+            // Results don't necessarily arrive in the order notifications were sent, so deltas may be negative
+            writeSignedVarLong(timestampMicros - previousTimestampMicros);
+            previousTimestampMicros = timestampMicros;
+
+            writeToken(pushNotification.getToken());
+            writeVarLong(topicId);
+            writeVarLong(payloadId);
+            out.writeByte(pushNotification.getPriority() != null ? pushNotification.getPriority().getCode() : 0);
+            writeVarLong(collapseId);
+            out.writeByte(result.getStatus().ordinal());
+            writeVarLong(rejectionReasonId);
+            writeVarLong(result.getLatency().map(latency -> latency.toNanos() / 1_000 + 1).orElse(0L));
+        }
+
+        private int getStringId(final String string) throws IOException {
+            final Integer existingId = stringIds.get(string);
+
+            if (existingId != null) {
+                return existingId;
+            }
+
+            final int id = stringIds.size();
+
+            final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+
+            out.writeByte(STRING_RECORD);
+            writeVarLong(bytes.length);
+            out.write(bytes);
+
+            stringIds.put(string, id);
+
+            return id;
+        }
+
+        private void writeToken(final String token) throws IOException {
+            // Tokens are almost always hex strings, which take half as much space as raw bytes; the lowest bit of the
+            // length tells us which representation follows
+            if (isLowercaseHex(token)) {
+                writeVarLong(((long) token.length() / 2) << 1 | 1);
+
+                for (int i = 0; i < token.length(); i += 2) {
+                    out.writeByte(Character.digit(token.charAt(i), 16) << 4 | Character.digit(token.charAt(i + 1), 16));
+                }
+            } else {
+                final byte[] bytes = token.getBytes(StandardCharsets.UTF_8);
+
+                writeVarLong((long) bytes.length << 1);
+                out.write(bytes);
+            }
+        }
+
+        private static boolean isLowercaseHex(final String token) {
+            if (token.isEmpty() || token.length() % 2 != 0) {
+                return false;
+            }
+
+            for (int i = 0; i < token.length(); i++) {
+                final char c = token.charAt(i);
+
+                if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        private void writeSignedVarLong(final long value) throws IOException {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        private void writeVarLong(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+
+            out.writeByte((int) value);
+        }
+
+        void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads entries from a session log.
+     */
+    static class Reader implements Closeable {
+
+        private final DataInputStream in;
+
+        private final List<String> strings = new ArrayList<>();
+        private long previousTimestampMicros;
+
+        /**
+         * Opens the session log at the given path.
+         *
+         * @param file the path of the log to read
+         *
+         * @throws IOException if the file could not be opened or is not a session log
+         */
+        Reader(final Path file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE));
+
+            try {
+                final byte[] magic = new byte[MAGIC.length];
+                in.readFully(magic);
+
+                if (!Arrays.equals(MAGIC, magic)) {
+                    throw new IOException("Not a session log: " + file);
+                }
+
+                final int version = in.readUnsignedByte();
+
+                if (version != VERSION) {
+                    throw new IOException("Unsupported session log version: " + version);
+                }
+
+                previousTimestampMicros = in.readLong();
+            } catch (final IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Reads the next entry from the log.
+         *
+         * @return the next entry from the log, or {@code null} if the end of the log has been reached
+         *
+         * @throws IOException if the log could not be read or is corrupt
+         */
+        Entry read() throws IOException {
+            while (true) {
+                final int recordType = in.read();
+
+                if (recordType == -1) {
+                    return null;
+                } else if (recordType == STRING_RECORD) {
+                    final byte[] bytes = new byte[(int) readVarLong()];
+                    in.readFully(bytes);
+
+                    strings.add(new String(bytes, StandardCharsets.UTF_8));
+                } else if (recordType == ENTRY_RECORD) {
+                    return readEntry();
+                } else {
+                    throw new IOException("Unexpected record type: " + recordType);
+                }
+            }
+        }
+
+        private Entry readEntry() throws IOException {
+            final long encodedTimestampDelta = readVarLong();
+            previousTimestampMicros += (encodedTimestampDelta >>> 1) ^ -(encodedTimestampDelta & 1);
+
+            final String token = readToken();
+            final String topic = getString(readVarLong());
+            final String payload = getString(readVarLong());
+            final int priorityCode = in.readUnsignedByte();
+            final long collapseId = readVarLong();
+            final int statusOrdinal = in.readUnsignedByte();
+            final long rejectionReasonId = readVarLong();
+            final long latencyMicros = readVarLong();
+
+            final NotificationResult.Status[] statuses = NotificationResult.Status.values();
+
+            if (statusOrdinal >= statuses.length) {
+                throw new IOException("Unexpected status: " + statusOrdinal);
+            }
+
+            final DeliveryPriority priority;
+
+            try {
+                priority = priorityCode != 0 ? DeliveryPriority.getFromCode(priorityCode) : null;
+            } catch (final IllegalArgumentException e) {
+                throw new IOException("Unexpected delivery priority: " + priorityCode, e);
+            }
+
+            return new Entry(
+                    Instant.EPOCH.plus(previousTimestampMicros, ChronoUnit.MICROS),
+                    new SimpleApnsPushNotification(token, topic, payload, null, priority,
+                            collapseId != 0 ? getString(collapseId - 1) : null),
+                    statuses[statusOrdinal],
+                    rejectionReasonId != 0 ? getString(rejectionReasonId - 1) : null,
+                    latencyMicros != 0 ? Duration.of(latencyMicros - 1, ChronoUnit.MICROS) : null);
+        }
+
+        private String readToken() throws IOException {
+            final long header = readVarLong();
+            final byte[] bytes = new byte[(int) (header >>> 1)];
+            in.readFully(bytes);
+
+            if ((header & 1) == 0) {
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            final char[] token = new char[bytes.length * 2];
+
+            for (int i = 0; i < bytes.length; i++) {
+                token[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+                token[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xF];
+            }
+
+            return new String(token);
+        }
+
+        private String getString(final long id) throws IOException {
+            if (id < 0 || id >= strings.size()) {
+                throw new IOException("Reference to undefined string: " + id);
+            }
+
+            return strings.get((int) id);
+        }
+
+        private long readVarLong() throws IOException {
+            long value = 0;
+
+            for (int shift = 0; shift < 64; shift += 7) {
+                final int b = in.readUnsignedByte();
+                value |= (long) (b & 0x7F) << shift;
+
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+
+            throw new IOException("Malformed variable-length integer");
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static long toMicros(final Instant instant) {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, instant);
+    }
+}
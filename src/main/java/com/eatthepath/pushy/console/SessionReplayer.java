@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.ApnsPushNotification;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+
+/**
+ * Re-sends the notifications recorded in a {@link SessionLog}, either at (a multiple of) the pace at which they were
+ * originally sent or as quickly as possible.
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class SessionReplayer {
+
+    /**
+     * A replay speed that sends every notification as soon as the previous one has been handed off.
+     */
+    static final double AS_FAST_AS_POSSIBLE = Double.POSITIVE_INFINITY;
+
+    // Keeps replays of very large sessions from buffering an unbounded number of notifications when the server can't
+    // keep up
+    private static final int MAX_IN_FLIGHT_NOTIFICATIONS = 1024;
+
+    private static final int PROGRESS_INTERVAL = 256;
+
+    private SessionReplayer() {
+    }
+
+    /**
+     * Re-sends every notification in a session log, blocking until all of the notifications have been sent and
+     * every send has completed.
+     *
+     * @param reader the reader from which to read recorded notifications
+     * @param speed the multiple of the original pace at which to send notifications (i.e. 2 replays a session in half
+     * the time it took to record it), or {@link #AS_FAST_AS_POSSIBLE}
+     * @param sendFunction a function that sends a single notification and returns a future that completes when the
+     * send has completed
+     * @param progressConsumer a consumer to notify periodically with the number of notifications sent so far
+     *
+     * @return the number of notifications sent
+     *
+     * @throws IOException if the session log could not be read
+     * @throws InterruptedIOException if the calling thread was interrupted before the replay finished
+     */
+    static long replay(final SessionLog.Reader reader, final double speed,
+                       final Function<ApnsPushNotification, CompletableFuture<?>> sendFunction,
+                       final LongConsumer progressConsumer) throws IOException {
+
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("Speed must be positive");
+        }
+
+        final Semaphore inFlightPermits = new Semaphore(MAX_IN_FLIGHT_NOTIFICATIONS);
+
+        Instant firstSendTimestamp = null;
+        final long replayStartNanos = System.nanoTime();
+
+        long sent = 0;
+
+        try {
+            for (SessionLog.Entry entry = reader.read(); entry != null; entry = reader.read()) {
+                if (firstSendTimestamp == null) {
+                    firstSendTimestamp = entry.getSendTimestamp();
+                }
+
+                if (speed != AS_FAST_AS_POSSIBLE) {
+                    final long offsetNanos = (long) (Duration.between(firstSendTimestamp, entry.getSendTimestamp()).toNanos() / speed);
+                    final long waitNanos = replayStartNanos + offsetNanos - System.nanoTime();
+
+                    // Entries are recorded in the order results arrived, which may differ slightly from the order in
+                    // which notifications were sent; anything "overdue" goes out right away
+                    if (waitNanos > 0) {
+                        TimeUnit.NANOSECONDS.sleep(waitNanos);
+                    }
+                }
+
+                inFlightPermits.acquire();
+
+                sendFunction.apply(entry.getPushNotification()).whenComplete((ignored, cause) -> inFlightPermits.release());
+
+                if (++sent % PROGRESS_INTERVAL == 0) {
+                    progressConsumer.accept(sent);
+                }
+            }
+
+            // Wait for the last few sends to complete
+            inFlightPermits.acquire(MAX_IN_FLIGHT_NOTIFICATIONS);
+        } catch (final InterruptedException e) {
+            throw new InterruptedIOException("Replay interrupted after " + sent + " notifications.");
+        }
+
+        progressConsumer.accept(sent);
+
+        return sent;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Logs the time at which the application reaches each phase of its startup process, measured from the time the
+ * process started. The phase at which recently-used values have been loaded marks the point at which the console is
+ * fully interactive.
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class StartupTimer {
+
+    private static final System.Logger log = System.getLogger(StartupTimer.class.getName());
+
+    private static final Instant PROCESS_START = ProcessHandle.current().info().startInstant().orElse(Instant.now());
+
+    private static Instant previousPhase = PROCESS_START;
+
+    private static final Map<String, Duration> elapsedTimesByPhase = new LinkedHashMap<>();
+
+    private StartupTimer() {
+    }
+
+    /**
+     * Logs that the application has reached the given startup phase.
+     *
+     * @param phase a short description of the startup phase the application has reached
+     */
+    static synchronized void logPhase(final String phase) {
+        final Instant now = Instant.now();
+
+        elapsedTimesByPhase.put(phase, Duration.between(PROCESS_START, now));
+
+        log.log(System.Logger.Level.INFO, "Reached startup phase \"{0}\" after {1} ms ({2} ms since previous phase)",
+                phase, Duration.between(PROCESS_START, now).toMillis(), Duration.between(previousPhase, now).toMillis());
+
+        previousPhase = now;
+    }
+
+    /**
+     * Returns the time, measured from the time the process started, at which the application most recently reached
+     * each startup phase.
+     *
+     * @return a map of startup phases to the elapsed time at which the application reached them, in the order in
+     * which the phases were first reached
+     */
+    static synchronized Map<String, Duration> getElapsedTimesByPhase() {
+        return new LinkedHashMap<>(elapsedTimesByPhase);
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStoreException;
+import java.util.*;
+
+/**
+ * Chooses the credentials with which to send a notification based on the notification's topic, so a single bulk send
+ * can cover several apps at once. Certificates are routed by the topics named in the certificate itself, while signing
+ * keys (which may send to any topic belonging to their team) are routed by an explicit list of topics.
+ *
+ * @author <a href="https://github.com/jchambers/">Jon Chambers</a>
+ */
+class TopicRouter {
+
+    private final Map<String, Route> routesByTopic = new HashMap<>();
+    private final List<Route> routes = new ArrayList<>();
+
+    /**
+     * Loads the credentials for a route the first time they're needed.
+     */
+    @FunctionalInterface
+    interface CredentialsLoader {
+        ApnsCredentials load() throws IOException, GeneralSecurityException;
+    }
+
+    /**
+     * A destination for notifications: a set of credentials, the server to which notifications sent with those
+     * credentials should go, and the most notifications that may be in flight for those credentials at once. Within
+     * that ceiling, each route's {@link AdaptiveConcurrencyLimiter} finds the limit that gives the best throughput.
+     */
+    static class Route {
+
+        private final String name;
+        private final ApnsTarget target;
+        private final int maxConcurrentSends;
+        private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+        private CredentialsLoader credentialsLoader;
+        private ApnsCredentials credentials;
+        private Exception credentialsException;
+
+        Route(final String name, final ApnsCredentials credentials, final ApnsTarget target, final int maxConcurrentSends) {
+            this(name, () -> credentials, target, maxConcurrentSends);
+
+            this.credentials = Objects.requireNonNull(credentials);
+            this.credentialsLoader = null;
+        }
+
+        /**
+         * Constructs a route whose credentials aren't loaded until a notification is actually sent with them. Routers
+         * built from hundreds of profiles can then be assembled instantly, and only decrypt the credentials for the
+         * topics that actually come up.
+         *
+         * @param name the name of the route
+         * @param credentialsLoader a loader for the route's credentials, which will be called at most once and may be
+         * called from any thread
+         * @param target the server and port to which notifications sent via this route should go
+         * @param maxConcurrentSends the most notifications that may be in flight via this route at once
+         */
+        Route(final String name, final CredentialsLoader credentialsLoader, final ApnsTarget target, final int maxConcurrentSends) {
+            if (maxConcurrentSends < 1) {
+                throw new IllegalArgumentException("Maximum concurrent sends must be positive.");
+            }
+
+            this.name = Objects.requireNonNull(name);
+            this.credentialsLoader = Objects.requireNonNull(credentialsLoader);
+            this.target = Objects.requireNonNull(target);
+            this.maxConcurrentSends = maxConcurrentSends;
+            this.concurrencyLimiter = new AdaptiveConcurrencyLimiter(maxConcurrentSends);
+        }
+
+        String getName() {
+            return name;
+        }
+
+        /**
+         * Returns this route's credentials, loading them if they haven't been loaded already. If loading fails, the
+         * same failure is reported for every later call rather than trying (and, for example, asking for a password)
+         * again for every notification.
+         *
+         * @return this route's credentials
+         *
+         * @throws IOException if the route's credentials could not be read
+         * @throws GeneralSecurityException if the route's credentials could not be loaded for any other reason
+         */
+        synchronized ApnsCredentials getCredentials() throws IOException, GeneralSecurityException {
+            if (credentials == null && credentialsException == null) {
+                try {
+                    credentials = Objects.requireNonNull(credentialsLoader.load());
+                } catch (final IOException | GeneralSecurityException | RuntimeException e) {
+                    credentialsException = e;
+                } finally {
+                    credentialsLoader = null;
+                }
+            }
+
+            if (credentialsException instanceof IOException) {
+                throw (IOException) credentialsException;
+            } else if (credentialsException instanceof GeneralSecurityException) {
+                throw (GeneralSecurityException) credentialsException;
+            } else if (credentialsException != null) {
+                throw (RuntimeException) credentialsException;
+            }
+
+            return credentials;
+        }
+
+        ApnsTarget getTarget() {
+            return target;
+        }
+
+        int getMaxConcurrentSends() {
+            return maxConcurrentSends;
+        }
+
+        AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+            return concurrencyLimiter;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * Adds a route for every topic named in the given route's certificate.
+     *
+     * @param route a route whose credentials contain a certificate
+     *
+     * @throws IllegalArgumentException if the given route's credentials do not contain a certificate
+     * @throws IOException if the topics could not be read from the route's certificate
+     * @throws KeyStoreException if the route's certificate does not name any topics
+     * @throws GeneralSecurityException if the route's credentials could not be loaded
+     */
+    void addCertificateRoute(final Route route) throws IOException, GeneralSecurityException {
+        final Set<String> topics = CertificateUtil.extractApnsTopicsFromCertificate(route.getCredentials()
+                .getCertificateAndPrivateKey()
+                .orElseThrow(() -> new IllegalArgumentException("Route credentials do not contain a certificate."))
+                .getKey());
+
+        if (topics.isEmpty()) {
+            throw new KeyStoreException("Certificate for " + route.getName() + " does not name any APNs topics.");
+        }
+
+        addRoute(route, topics);
+    }
+
+    /**
+     * Adds a route for each of the given topics.
+     *
+     * @param route a route whose credentials contain a signing key
+     * @param topics the topics to send with the route's signing key
+     *
+     * @throws IllegalArgumentException if the given route's credentials do not contain a signing key
+     * @throws IOException if the route's credentials could not be read
+     * @throws GeneralSecurityException if the route's credentials could not be loaded
+     */
+    void addSigningKeyRoute(final Route route, final Collection<String> topics) throws IOException, GeneralSecurityException {
+        if (route.getCredentials().getSigningKey().isEmpty()) {
+            throw new IllegalArgumentException("Route credentials do not contain a signing key.");
+        }
+
+        addRoute(route, topics);
+    }
+
+    /**
+     * Adds a route for each of the given topics without loading (or checking) the route's credentials, for callers
+     * that already know which topics the credentials serve.
+     *
+     * @param route the route to add
+     * @param topics the topics to send via the given route
+     */
+    void addRoute(final Route route, final Collection<String> topics) {
+        boolean added = false;
+
+        for (final String topic : topics) {
+            // The first route registered for a topic wins, so callers can give precedence to (for example) the
+            // credentials that are currently selected
+            if (routesByTopic.putIfAbsent(topic, route) == null) {
+                added = true;
+            }
+        }
+
+        if (added) {
+            routes.add(route);
+        }
+    }
+
+    /**
+     * Returns the route for notifications with the given topic.
+     *
+     * @param topic the topic for which to find a route
+     *
+     * @return the route for the given topic, or empty if no route has been added for the topic
+     */
+    Optional<Route> getRoute(final String topic) {
+        return Optional.ofNullable(routesByTopic.get(topic));
+    }
+
+    /**
+     * Returns every route that serves at least one topic, in the order in which the routes were added.
+     *
+     * @return every route that serves at least one topic
+     */
+    List<Route> getRoutes() {
+        return Collections.unmodifiableList(routes);
+    }
+}
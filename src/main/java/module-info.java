@@ -1,5 +1,6 @@
 module pushy.console {
     requires java.prefs;
+    requires jdk.httpserver;
 
     requires bcprov.jdk15on;
     requires bcpkix.jdk15on;
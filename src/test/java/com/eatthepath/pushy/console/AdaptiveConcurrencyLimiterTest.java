@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+    private static final long MILLISECOND = Duration.ofMillis(1).toNanos();
+
+    @Test
+    public void testTryAcquire() {
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 4);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(2, limiter.getInFlight());
+
+        limiter.onIgnored();
+
+        assertEquals(2, limiter.getLimit());
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    public void testAdditiveIncrease() {
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 8);
+
+        // Keep the pipe full at a steady latency; the limit should grow by about one per "round trip" (i.e. per limit's
+        // worth of responses) until it reaches the maximum
+        long now = 0;
+
+        while (limiter.tryAcquire()) {
+        }
+
+        for (int i = 0; i < 30; i++) {
+            limiter.onSuccess(now, now + 10 * MILLISECOND);
+            now += MILLISECOND;
+
+            while (limiter.tryAcquire()) {
+            }
+        }
+
+        assertEquals(8, limiter.getLimit());
+        assertEquals(Duration.ofMillis(10), limiter.getMinLatency().orElse(null));
+    }
+
+    @Test
+    public void testNoIncreaseWhenUnsaturated() {
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 8);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.onSuccess(i * MILLISECOND, (i + 10) * MILLISECOND);
+        }
+
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    public void testMultiplicativeDecrease() {
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(16, 16);
+
+        for (int i = 0; i < 16; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+
+        limiter.onSuccess(0, 10 * MILLISECOND);
+        assertEquals(16, limiter.getLimit());
+
+        // A latency spike cuts the limit...
+        limiter.onSuccess(0, 50 * MILLISECOND);
+        assertEquals(8, limiter.getLimit());
+
+        // ...but other notifications sent before the cut don't cut it again
+        limiter.onDropped(0, 60 * MILLISECOND);
+        assertEquals(8, limiter.getLimit());
+
+        // A failure for a notification sent after the cut does
+        limiter.onDropped(55 * MILLISECOND, 70 * MILLISECOND);
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    public void testRecoverFromFastOutlier() {
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 8);
+
+        long now = 0;
+
+        while (limiter.tryAcquire()) {
+        }
+
+        // One unusually fast response...
+        limiter.onSuccess(now, now + MILLISECOND);
+        now += MILLISECOND;
+
+        // ...followed by a long run of perfectly ordinary ones
+        for (int i = 0; i < 30_000; i++) {
+            while (limiter.tryAcquire()) {
+            }
+
+            limiter.onSuccess(now, now + 10 * MILLISECOND);
+            now += MILLISECOND;
+        }
+
+        assertEquals(Duration.ofMillis(10), limiter.getMinLatency().orElse(null));
+        assertEquals(8, limiter.getLimit());
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.ApnsPushNotification;
+import com.eatthepath.pushy.apns.PushNotificationResponse;
+import com.eatthepath.pushy.apns.util.SimpleApnsPushNotification;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class ApnsClientPoolTest {
+
+    private ApnsCredentials credentials;
+
+    private List<TestClient> createdClients;
+    private ApnsClientPool apnsClientPool;
+
+    private static final String CERTIFICATE_FILENAME = "apns-client.p12";
+    private static final String CERTIFICATE_PASSWORD = "pushy-test";
+
+    private static final ApnsTarget FIRST_TARGET = new ApnsTarget("api.sandbox.push.apple.com", 443);
+    private static final ApnsTarget SECOND_TARGET = new ApnsTarget("api.sandbox.push.apple.com", 2197);
+    private static final ApnsTarget THIRD_TARGET = new ApnsTarget("api.push.apple.com", 443);
+
+    private static final SimpleApnsPushNotification PUSH_NOTIFICATION =
+            new SimpleApnsPushNotification("00", "com.example.app", "{}");
+
+    private static class TestClient implements ApnsClientPool.Client {
+
+        private final ApnsTarget target;
+        private final List<CompletableFuture<?>> responseFutures = new ArrayList<>();
+        private boolean closed = false;
+
+        private TestClient(final ApnsTarget target) {
+            this.target = target;
+        }
+
+        @Override
+        public <T extends ApnsPushNotification> CompletableFuture<PushNotificationResponse<T>> sendNotification(final T pushNotification) {
+            final CompletableFuture<PushNotificationResponse<T>> responseFuture = new CompletableFuture<>();
+            responseFutures.add(responseFuture);
+
+            return responseFuture;
+        }
+
+        @Override
+        public CompletableFuture<Void> close() {
+            closed = true;
+            return CompletableFuture.completedFuture(null);
+        }
+
+        void completeSends() {
+            responseFutures.forEach(responseFuture -> responseFuture.completeExceptionally(new Exception("Test")));
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        credentials = new ApnsCredentials(FileUtils.toFile(getClass().getResource(CERTIFICATE_FILENAME)), CERTIFICATE_PASSWORD);
+
+        createdClients = new ArrayList<>();
+        apnsClientPool = new ApnsClientPool(2, (credentials, target) -> {
+            final TestClient client = new TestClient(target);
+            createdClients.add(client);
+
+            return client;
+        });
+    }
+
+    @Test
+    public void testReuseClients() throws Exception {
+        apnsClientPool.sendNotification(PUSH_NOTIFICATION, credentials, FIRST_TARGET, null);
+        apnsClientPool.sendNotification(PUSH_NOTIFICATION, credentials, FIRST_TARGET, null);
+
+        assertEquals(1, createdClients.size());
+        assertEquals(2, createdClients.get(0).responseFutures.size());
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() throws Exception {
+        sendAndComplete(FIRST_TARGET, null);
+        sendAndComplete(SECOND_TARGET, null);
+        sendAndComplete(FIRST_TARGET, null);
+        sendAndComplete(THIRD_TARGET, null);
+
+        assertEquals(2, apnsClientPool.size());
+        assertEquals(SECOND_TARGET, createdClients.get(1).target);
+        assertTrue(createdClients.get(1).closed);
+        assertFalse(createdClients.get(0).closed);
+    }
+
+    @Test
+    public void testPinnedClientsNotEvicted() throws Exception {
+        final Object owner = new Object();
+
+        sendAndComplete(FIRST_TARGET, owner);
+        sendAndComplete(SECOND_TARGET, owner);
+        sendAndComplete(THIRD_TARGET, null);
+
+        // Every client but the newest is pinned, so the pool grows beyond its usual bound
+        assertEquals(3, apnsClientPool.size());
+
+        for (final TestClient client : createdClients) {
+            assertFalse(client.closed);
+        }
+
+        apnsClientPool.release(owner);
+
+        assertEquals(2, apnsClientPool.size());
+        assertTrue(createdClients.get(0).closed);
+        assertFalse(createdClients.get(1).closed);
+    }
+
+    @Test
+    public void testEvictedClientNotClosedWhileSending() throws Exception {
+        final CompletableFuture<?> inFlightFuture =
+                apnsClientPool.sendNotification(PUSH_NOTIFICATION, credentials, FIRST_TARGET, null);
+
+        sendAndComplete(SECOND_TARGET, null);
+        sendAndComplete(THIRD_TARGET, null);
+
+        assertEquals(2, apnsClientPool.size());
+        assertFalse(inFlightFuture.isDone());
+        assertFalse(createdClients.get(0).closed);
+
+        createdClients.get(0).completeSends();
+
+        assertTrue(inFlightFuture.isDone());
+        assertTrue(createdClients.get(0).closed);
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        apnsClientPool.sendNotification(PUSH_NOTIFICATION, credentials, FIRST_TARGET, null);
+        sendAndComplete(SECOND_TARGET, null);
+        sendAndComplete(THIRD_TARGET, null);
+
+        apnsClientPool.close().join();
+
+        assertEquals(0, apnsClientPool.size());
+
+        for (final TestClient client : createdClients) {
+            assertTrue(client.closed);
+        }
+    }
+
+    private void sendAndComplete(final ApnsTarget target, final Object owner) throws Exception {
+        apnsClientPool.sendNotification(PUSH_NOTIFICATION, credentials, target, owner);
+
+        for (final TestClient client : createdClients) {
+            if (client.target.equals(target)) {
+                client.completeSends();
+            }
+        }
+    }
+}
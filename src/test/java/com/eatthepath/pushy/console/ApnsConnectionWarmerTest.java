@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.ApnsPushNotification;
+import com.eatthepath.pushy.apns.PushNotificationResponse;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class ApnsConnectionWarmerTest {
+
+    private ApnsCredentials credentials;
+
+    private List<ApnsPushNotification> sentNotifications;
+    private String rejectionReason;
+
+    private ApnsConnectionWarmer apnsConnectionWarmer;
+
+    private static final String CERTIFICATE_FILENAME = "apns-client.p12";
+    private static final String CERTIFICATE_PASSWORD = "pushy-test";
+
+    private static final String TOPIC = "com.example.app";
+
+    private static final List<ApnsTarget> TARGETS = List.of(
+            new ApnsTarget("api.sandbox.push.apple.com", 443),
+            new ApnsTarget("api.sandbox.push.apple.com", 2197));
+
+    @Before
+    public void setUp() throws Exception {
+        credentials = new ApnsCredentials(FileUtils.toFile(getClass().getResource(CERTIFICATE_FILENAME)), CERTIFICATE_PASSWORD);
+        sentNotifications = new ArrayList<>();
+
+        apnsConnectionWarmer = new ApnsConnectionWarmer(new ApnsClientPool(ApnsClientPool.DEFAULT_MAX_CLIENTS,
+                (credentials, target) -> new ApnsClientPool.Client() {
+                    @Override
+                    public <T extends ApnsPushNotification> CompletableFuture<PushNotificationResponse<T>> sendNotification(final T pushNotification) {
+                        sentNotifications.add(pushNotification);
+
+                        return CompletableFuture.completedFuture(getResponse(pushNotification, rejectionReason));
+                    }
+
+                    @Override
+                    public CompletableFuture<Void> close() {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                }));
+    }
+
+    @After
+    public void tearDown() {
+        apnsConnectionWarmer.stop();
+    }
+
+    @Test
+    public void testProbeSendsSelectedTopic() {
+        rejectionReason = "BadDeviceToken";
+        apnsConnectionWarmer.probe(credentials, TOPIC, TARGETS).join();
+
+        assertEquals(TARGETS.size(), sentNotifications.size());
+
+        for (final ApnsPushNotification pushNotification : sentNotifications) {
+            assertEquals(TOPIC, pushNotification.getTopic());
+            assertEquals(ApnsConnectionWarmer.PROBE_TOKEN, pushNotification.getToken());
+        }
+    }
+
+    @Test
+    public void testProbeSkipsWarmConnections() {
+        rejectionReason = "BadDeviceToken";
+
+        assertNull(apnsConnectionWarmer.probe(credentials, TOPIC, TARGETS).join());
+        assertEquals(TARGETS.size(), sentNotifications.size());
+
+        // Both connections are open and known to work, so there's nothing to learn from probing them again...
+        assertNull(apnsConnectionWarmer.probe(credentials, TOPIC, TARGETS).join());
+        assertEquals(TARGETS.size(), sentNotifications.size());
+
+        // ...but a different topic still needs checking
+        assertNull(apnsConnectionWarmer.probe(credentials, "com.example.other", TARGETS).join());
+        assertEquals(TARGETS.size() * 2, sentNotifications.size());
+    }
+
+    @Test
+    public void testProbeRetriesFailedProbes() {
+        rejectionReason = "TopicDisallowed";
+        assertEquals("TopicDisallowed", apnsConnectionWarmer.probe(credentials, TOPIC, TARGETS).join());
+
+        rejectionReason = "BadDeviceToken";
+        assertNull(apnsConnectionWarmer.probe(credentials, TOPIC, TARGETS).join());
+        assertEquals(TARGETS.size() * 2, sentNotifications.size());
+    }
+
+    @Test
+    public void testProbeBadDeviceToken() {
+        rejectionReason = "BadDeviceToken";
+        assertNull(apnsConnectionWarmer.probe(credentials, TOPIC, TARGETS).join());
+    }
+
+    @Test
+    public void testProbeCredentialsRejected() {
+        rejectionReason = "InvalidProviderToken";
+        assertEquals("InvalidProviderToken", apnsConnectionWarmer.probe(credentials, TOPIC, TARGETS).join());
+    }
+
+    @Test
+    public void testProbeTopicRejected() {
+        rejectionReason = "TopicDisallowed";
+        assertEquals("TopicDisallowed", apnsConnectionWarmer.probe(credentials, TOPIC, TARGETS).join());
+    }
+
+    @Test
+    public void testProbeAccepted() {
+        rejectionReason = null;
+        assertNotNull(apnsConnectionWarmer.probe(credentials, TOPIC, TARGETS).join());
+    }
+
+    @Test
+    public void testProbeConnectionFailed() {
+        final ApnsConnectionWarmer failingWarmer = new ApnsConnectionWarmer(new ApnsClientPool(ApnsClientPool.DEFAULT_MAX_CLIENTS,
+                (credentials, target) -> new ApnsClientPool.Client() {
+                    @Override
+                    public <T extends ApnsPushNotification> CompletableFuture<PushNotificationResponse<T>> sendNotification(final T pushNotification) {
+                        return CompletableFuture.failedFuture(new Exception("Connection refused"));
+                    }
+
+                    @Override
+                    public CompletableFuture<Void> close() {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                }));
+
+        try {
+            assertEquals("Connection refused", failingWarmer.probe(credentials, TOPIC, TARGETS).join());
+        } finally {
+            failingWarmer.stop();
+        }
+    }
+
+    private static <T extends ApnsPushNotification> PushNotificationResponse<T> getResponse(final T pushNotification, final String rejectionReason) {
+        return new PushNotificationResponse<>() {
+
+            @Override
+            public T getPushNotification() {
+                return pushNotification;
+            }
+
+            @Override
+            public boolean isAccepted() {
+                return rejectionReason == null;
+            }
+
+            @Override
+            public UUID getApnsId() {
+                return UUID.randomUUID();
+            }
+
+            @Override
+            public String getRejectionReason() {
+                return rejectionReason;
+            }
+
+            @Override
+            public Instant getTokenInvalidationTimestamp() {
+                return null;
+            }
+        };
+    }
+}
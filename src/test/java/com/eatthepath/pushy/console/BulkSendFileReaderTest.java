@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.ApnsPushNotification;
+import com.eatthepath.pushy.apns.DeliveryPriority;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+public class BulkSendFileReaderTest {
+
+    @Test
+    public void testRead() throws IOException {
+        final String csv = "token,extra,payload,topic\r\n" +
+                "<0123 4567 89ab cdef>,ignored,\"{\"\"aps\"\":{\"\"alert\"\":\"\"Hello, world\"\"}}\",com.example.app\r\n" +
+                "\r\n" +
+                "fedcba9876543210,,\"{\n  \"\"aps\"\": {}\n}\", com.example.other \n";
+
+        try (final BulkSendFileReader reader = new BulkSendFileReader(new StringReader(csv))) {
+            final ApnsPushNotification first = reader.read();
+
+            assertEquals("0123456789abcdef", first.getToken());
+            assertEquals("com.example.app", first.getTopic());
+            assertEquals("{\"aps\":{\"alert\":\"Hello, world\"}}", first.getPayload());
+
+            final ApnsPushNotification second = reader.read();
+
+            assertEquals("fedcba9876543210", second.getToken());
+            assertEquals("com.example.other", second.getTopic());
+            assertEquals("{\n  \"aps\": {}\n}", second.getPayload());
+
+            assertNull(reader.read());
+        }
+    }
+
+    @Test
+    public void testReadCollapseId() throws IOException {
+        final String csv = "topic,token,payload,collapseId\n" +
+                "com.example.app,0123456789abcdef,{},score\n" +
+                "com.example.app,0123456789abcdef,{}, \n";
+
+        try (final BulkSendFileReader reader = new BulkSendFileReader(new StringReader(csv))) {
+            assertEquals("score", reader.read().getCollapseId());
+            assertNull(reader.read().getCollapseId());
+        }
+    }
+
+    @Test
+    public void testReadPriority() throws IOException {
+        final String csv = "topic,token,payload,priority\n" +
+                "com.example.app,0123456789abcdef,{},5\n" +
+                "com.example.app,0123456789abcdef,{},Conserve-Power\n" +
+                "com.example.app,0123456789abcdef,{},10\n" +
+                "com.example.app,0123456789abcdef,{},\n";
+
+        try (final BulkSendFileReader reader = new BulkSendFileReader(new StringReader(csv))) {
+            assertEquals(DeliveryPriority.CONSERVE_POWER, reader.read().getPriority());
+            assertEquals(DeliveryPriority.CONSERVE_POWER, reader.read().getPriority());
+            assertEquals(DeliveryPriority.IMMEDIATE, reader.read().getPriority());
+            assertEquals(DeliveryPriority.IMMEDIATE, reader.read().getPriority());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadBadPriority() throws IOException {
+        try (final BulkSendFileReader reader =
+                     new BulkSendFileReader(new StringReader("topic,token,payload,priority\ncom.example.app,0123456789abcdef,{},1\n"))) {
+            reader.read();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadMissingColumn() throws IOException {
+        new BulkSendFileReader(new StringReader("token,payload\n0123456789abcdef,{}\n"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadMissingField() throws IOException {
+        try (final BulkSendFileReader reader =
+                     new BulkSendFileReader(new StringReader("topic,token,payload\ncom.example.app,,{}\n"))) {
+            reader.read();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.ApnsPushNotification;
+import com.eatthepath.pushy.apns.DeliveryPriority;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class BulkSenderTest {
+
+    private static final String CERTIFICATE_FILENAME = "apns-client.p12";
+    private static final String CERTIFICATE_PASSWORD = "pushy-test";
+
+    @Test
+    public void testSendCoalesced() throws Exception {
+        final ApnsCredentials credentials = getCredentials();
+        final String topic = getTopic(credentials);
+
+        // With only one notification in flight at a time, the second and third notifications have to wait in line,
+        // and the third should replace the second
+        final TopicRouter router = new TopicRouter();
+        router.addCertificateRoute(new TopicRouter.Route("Test", credentials,
+                new ApnsTarget("api.sandbox.push.apple.com", 443), 1));
+
+        final String csv = "topic,token,payload,collapseId\n" +
+                topic + ",0123456789abcdef,\"{\"\"n\"\":1}\",score\n" +
+                topic + ",0123456789abcdef,\"{\"\"n\"\":2}\",score\n" +
+                topic + ",0123456789abcdef,\"{\"\"n\"\":3}\",score\n";
+
+        final List<String> sentPayloads = new ArrayList<>();
+        final List<CompletableFuture<NotificationResult>> sendFutures = new ArrayList<>();
+        final List<ApnsPushNotification> coalescedNotifications = new ArrayList<>();
+
+        final long sent;
+
+        try (final BulkSendFileReader reader = new BulkSendFileReader(new StringReader(csv))) {
+            sent = BulkSender.send(reader, router, (pushNotification, route) -> {
+                sentPayloads.add(pushNotification.getPayload());
+
+                // Only the first send is held up; the rest finish immediately
+                final CompletableFuture<NotificationResult> sendFuture = sendFutures.isEmpty() ?
+                        new CompletableFuture<>() : CompletableFuture.completedFuture(null);
+
+                sendFutures.add(sendFuture);
+
+                return sendFuture;
+            }, true, pushNotification -> fail("Notification should have been routed"), pushNotification -> {
+                coalescedNotifications.add(pushNotification);
+
+                // Let the first notification finish so the (coalesced) second place in line can go out
+                sendFutures.get(0).complete(null);
+            }, createStatistics(), read -> {});
+        }
+
+        assertEquals(2, sent);
+        assertEquals(List.of("{\"n\":1}", "{\"n\":3}"), sentPayloads);
+        assertEquals(1, coalescedNotifications.size());
+    }
+
+    @Test
+    public void testSendImmediateAheadOfConservePower() throws Exception {
+        final ApnsCredentials credentials = getCredentials();
+        final String topic = getTopic(credentials);
+
+        // With only one notification in flight at a time, everything after the first notification waits in line; the
+        // immediate notification at the end of the file should still go out before the power-conserving notifications
+        final TopicRouter router = new TopicRouter();
+        router.addCertificateRoute(new TopicRouter.Route("Test", credentials,
+                new ApnsTarget("api.sandbox.push.apple.com", 443), 1));
+
+        final String csv = "topic,token,payload,priority\n" +
+                topic + ",0123456789abcdef,1,10\n" +
+                topic + ",0123456789abcdef,2,5\n" +
+                topic + ",0123456789abcdef,3,5\n" +
+                topic + ",0123456789abcdef,4,10\n" +
+                "com.example.unrouted,0123456789abcdef,5,10\n";
+
+        final List<String> sentPayloads = new ArrayList<>();
+        final List<CompletableFuture<NotificationResult>> sendFutures = new ArrayList<>();
+        final Map<DeliveryPriority, DeliveryLaneStatistics> statistics = createStatistics();
+
+        try (final BulkSendFileReader reader = new BulkSendFileReader(new StringReader(csv))) {
+            BulkSender.send(reader, router, (pushNotification, route) -> {
+                sentPayloads.add(pushNotification.getPayload());
+
+                // Only the first send is held up; the rest finish immediately
+                final CompletableFuture<NotificationResult> sendFuture = sendFutures.isEmpty() ?
+                        new CompletableFuture<>() : CompletableFuture.completedFuture(null);
+
+                sendFutures.add(sendFuture);
+
+                return sendFuture;
+            }, false, pushNotification -> {
+                // Everything else is in line by the time the last (unrouted) row is read
+                sendFutures.get(0).complete(null);
+            }, pushNotification -> fail("Notification should not have been coalesced"), statistics, read -> {});
+        }
+
+        assertEquals(List.of("1", "4", "2", "3"), sentPayloads);
+
+        for (final DeliveryLaneStatistics laneStatistics : statistics.values()) {
+            assertEquals(0, laneStatistics.getQueued());
+            assertEquals(0, laneStatistics.getInFlight());
+            assertTrue(laneStatistics.getMeanWait().isPresent());
+            assertTrue(laneStatistics.getMeanLatency().isPresent());
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void testSlowRouteDoesNotBlockOtherRoutes() throws Exception {
+        final ApnsCredentials credentials = getCredentials();
+        final ApnsTarget target = new ApnsTarget("api.sandbox.push.apple.com", 443);
+
+        final TopicRouter router = new TopicRouter();
+        router.addRoute(new TopicRouter.Route("Slow", credentials, target, 1), List.of("com.example.slow"));
+        router.addRoute(new TopicRouter.Route("Fast", credentials, target, 1), List.of("com.example.fast"));
+
+        // Each route may only hold one pending notification of its own, and the slow route's second notification takes
+        // the only overflow permit; the fast route's notifications should still go out while the slow route is stuck
+        final String csv = "topic,token,payload\n" +
+                "com.example.slow,0123456789abcdef,s1\n" +
+                "com.example.slow,0123456789abcdef,s2\n" +
+                "com.example.fast,0123456789abcdef,f1\n" +
+                "com.example.fast,0123456789abcdef,f2\n" +
+                "com.example.fast,0123456789abcdef,f3\n" +
+                "com.example.slow,0123456789abcdef,s3\n";
+
+        final List<String> sentPayloads = new ArrayList<>();
+        final CompletableFuture<NotificationResult> stuckSendFuture = new CompletableFuture<>();
+
+        final long sent;
+
+        try (final BulkSendFileReader reader = new BulkSendFileReader(new StringReader(csv))) {
+            sent = BulkSender.send(reader, router, (pushNotification, route) -> {
+                sentPayloads.add(pushNotification.getPayload());
+
+                if ("s1".equals(pushNotification.getPayload())) {
+                    return stuckSendFuture;
+                }
+
+                if ("f3".equals(pushNotification.getPayload())) {
+                    stuckSendFuture.complete(null);
+                }
+
+                return CompletableFuture.completedFuture(null);
+            }, false, pushNotification -> fail("Notification should have been routed"),
+                    pushNotification -> fail("Notification should not have been coalesced"),
+                    createStatistics(), read -> {}, 1, 1);
+        }
+
+        assertEquals(6, sent);
+        assertEquals(List.of("s1", "f1", "f2", "f3", "s2", "s3"), sentPayloads);
+    }
+
+    private ApnsCredentials getCredentials() throws Exception {
+        return new ApnsCredentials(FileUtils.toFile(getClass().getResource(CERTIFICATE_FILENAME)), CERTIFICATE_PASSWORD);
+    }
+
+    private static String getTopic(final ApnsCredentials credentials) throws Exception {
+        return CertificateUtil.extractApnsTopicsFromCertificate(
+                credentials.getCertificateAndPrivateKey().orElseThrow().getKey()).iterator().next();
+    }
+
+    private static Map<DeliveryPriority, DeliveryLaneStatistics> createStatistics() {
+        final Map<DeliveryPriority, DeliveryLaneStatistics> statistics = new EnumMap<>(DeliveryPriority.class);
+
+        for (final DeliveryPriority priority : DeliveryPriority.values()) {
+            statistics.put(priority, new DeliveryLaneStatistics());
+        }
+
+        return statistics;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CredentialDirectoryImporterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static final String CERTIFICATE_FILENAME = "apns-client.p12";
+    private static final String CERTIFICATE_PASSWORD = "pushy-test";
+
+    @Test
+    public void testImportDirectory() throws Exception {
+        final Path directory = temporaryFolder.newFolder("credentials").toPath();
+        final Path certificateFile = directory.resolve(CERTIFICATE_FILENAME);
+
+        Files.copy(FileUtils.toFile(getClass().getResource(CERTIFICATE_FILENAME)).toPath(), certificateFile);
+        Files.write(directory.resolve("not-a-certificate.p12"), new byte[] { 1, 2, 3 });
+        Files.write(directory.resolve("ignored.txt"), new byte[] { 1, 2, 3 });
+
+        final CredentialIndex index = CredentialDirectoryImporter.importDirectory(directory,
+                List.of("wrong-password", CERTIFICATE_PASSWORD), new CredentialIndex(), 2);
+
+        assertEquals(1, index.getEntries().size());
+
+        final CredentialIndex.Entry entry = index.getEntries().iterator().next();
+
+        assertEquals(certificateFile.toAbsolutePath(), entry.getFile());
+        assertEquals(CredentialIndex.Type.CERTIFICATE, entry.getType());
+        assertFalse(entry.getTopics().isEmpty());
+        assertTrue(entry.getExpiration().isPresent());
+        assertEquals(CERTIFICATE_PASSWORD, entry.getPassword().orElse(null));
+
+        final Path indexFile = temporaryFolder.getRoot().toPath().resolve("index.json");
+        index.save(indexFile);
+
+        final CredentialIndex loadedIndex = CredentialIndex.load(indexFile);
+
+        // Unchanged files come straight from the saved index, even without the password that unlocks them
+        final CredentialIndex reimportedIndex =
+                CredentialDirectoryImporter.importDirectory(directory, Collections.emptyList(), loadedIndex, 2);
+
+        assertEquals(1, reimportedIndex.getEntries().size());
+
+        final CredentialIndex.Entry reimportedEntry = reimportedIndex.getEntries().iterator().next();
+
+        assertEquals(entry.getTopics(), reimportedEntry.getTopics());
+        assertEquals(entry.getExpiration(), reimportedEntry.getExpiration());
+        assertFalse(reimportedEntry.getPassword().isPresent());
+
+        // ...but changed files have to be parsed again
+        Files.setLastModifiedTime(certificateFile, FileTime.fromMillis(entry.getLastModifiedMillis() + 1000));
+
+        assertTrue(CredentialDirectoryImporter.importDirectory(directory, Collections.emptyList(), loadedIndex, 2)
+                .getEntries().isEmpty());
+    }
+}
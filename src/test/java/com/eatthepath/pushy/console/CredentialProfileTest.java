@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.json.JsonDeserializer;
+import com.eatthepath.json.JsonSerializer;
+import com.eatthepath.json.ParseException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class CredentialProfileTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testJsonRoundTrip() throws ParseException {
+        final CredentialProfile signingKeyProfile = new CredentialProfile("Production",
+                new File("/tmp/AuthKey_KEYID12345.p8"), "KEYID12345", "TEAMID1234",
+                new ApnsTarget("api.push.apple.com", 443), List.of("com.example.app", "com.example.app.voip"));
+
+        final CredentialProfile certificateProfile = new CredentialProfile("Development",
+                new File("/tmp/development.p12"), null, null,
+                new ApnsTarget("api.sandbox.push.apple.com", 2197), null);
+
+        for (final CredentialProfile profile : new CredentialProfile[] { signingKeyProfile, certificateProfile }) {
+            final String json = JsonSerializer.writeJsonTextAsString(profile.toJsonObject());
+            final CredentialProfile parsedProfile =
+                    CredentialProfile.fromJsonObject((Map<?, ?>) new JsonDeserializer().parseJsonObject(json));
+
+            assertEquals(profile.getName(), parsedProfile.getName());
+            assertEquals(profile.getCredentialsFile().getAbsoluteFile(), parsedProfile.getCredentialsFile());
+            assertEquals(profile.isSigningKey(), parsedProfile.isSigningKey());
+            assertEquals(profile.getKeyId(), parsedProfile.getKeyId());
+            assertEquals(profile.getTeamId(), parsedProfile.getTeamId());
+            assertEquals(profile.getDefaultTarget(), parsedProfile.getDefaultTarget());
+            assertEquals(profile.getTopics(), parsedProfile.getTopics());
+        }
+    }
+
+    @Test
+    public void testCertificateTopicsRoundTrip() throws ParseException {
+        final CredentialProfile profile = new CredentialProfile("Imported",
+                new File("/tmp/imported.p12"), null, null,
+                new ApnsTarget("api.push.apple.com", 443), List.of("com.example.app", "com.example.app.voip"));
+
+        final CredentialProfile parsedProfile = CredentialProfile.fromJsonObject((Map<?, ?>)
+                new JsonDeserializer().parseJsonObject(JsonSerializer.writeJsonTextAsString(profile.toJsonObject())));
+
+        assertFalse(parsedProfile.isSigningKey());
+        assertEquals(profile.getTopics(), parsedProfile.getTopics());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFromJsonObjectMissingFile() {
+        CredentialProfile.fromJsonObject(Map.of("name", "Broken", "server", "api.push.apple.com", "port", 443));
+    }
+
+    @Test
+    public void testSaveAndLoadProfiles() throws IOException {
+        final Path profilesFile = temporaryFolder.getRoot().toPath().resolve("credential-profiles.json");
+
+        final CredentialProfile profile = new CredentialProfile("Development",
+                new File("/tmp/development.p12"), null, null,
+                new ApnsTarget("api.sandbox.push.apple.com", 443), null);
+
+        CredentialProfile.saveProfiles(List.of(profile), profilesFile);
+
+        final List<CredentialProfile> loadedProfiles = CredentialProfile.loadProfiles(profilesFile);
+
+        assertEquals(1, loadedProfiles.size());
+        assertEquals("Development", loadedProfiles.get(0).getName());
+        assertFalse(Files.exists(profilesFile.resolveSibling("credential-profiles.json.tmp")));
+    }
+
+    @Test
+    public void testLoadProfilesMissingFile() {
+        assertTrue(CredentialProfile.loadProfiles(temporaryFolder.getRoot().toPath().resolve("missing.json")).isEmpty());
+    }
+
+    @Test
+    public void testLoadProfilesCorruptFile() throws IOException {
+        final Path profilesFile = temporaryFolder.getRoot().toPath().resolve("credential-profiles.json");
+        Files.writeString(profilesFile, "{\"profiles\": [{\"name\": \"Trunc", StandardCharsets.UTF_8);
+
+        assertTrue(CredentialProfile.loadProfiles(profilesFile).isEmpty());
+
+        // The unreadable file should be kept rather than overwritten by the next save
+        assertFalse(Files.exists(profilesFile));
+        assertTrue(Files.exists(profilesFile.resolveSibling("credential-profiles.json.corrupt")));
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class DeviceTokenHistoryTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static final Instant NOW = Instant.ofEpochMilli(1_600_000_000_000L);
+
+    @Test
+    public void testComplete() {
+        final DeviceTokenHistory history = new DeviceTokenHistory();
+
+        history.record("3f0a11", NOW);
+        history.record("3F0A22", NOW.plusSeconds(2));
+        history.record("3f0b", NOW.plusSeconds(3));
+        history.record("3f0", NOW.plusSeconds(1));
+        history.record("4000", NOW.plusSeconds(4));
+
+        assertEquals(List.of("3f0a22", "3f0a11"), getTokens(history.complete("3f0a", 10)));
+        assertEquals(List.of("3f0b", "3f0a22", "3f0", "3f0a11"), getTokens(history.complete("3F", 10)));
+        assertEquals(List.of("3f0b", "3f0a22"), getTokens(history.complete("3f", 2)));
+        assertEquals(List.of("4000", "3f0b"), getTokens(history.complete("", 2)));
+        assertTrue(history.complete("5", 10).isEmpty());
+        assertTrue(history.complete("not hex", 10).isEmpty());
+    }
+
+    @Test
+    public void testRecordExistingToken() {
+        final DeviceTokenHistory history = new DeviceTokenHistory();
+
+        history.record("abcd", NOW);
+        history.setLabel("abcd", "Test phone");
+        history.record("abcd", NOW.plusSeconds(60));
+
+        assertEquals(1, history.size());
+
+        final DeviceTokenHistory.Entry entry = history.get("abcd");
+
+        assertEquals("Test phone", entry.getLabel());
+        assertEquals(NOW.plusSeconds(60), entry.getLastUsed());
+    }
+
+    @Test
+    public void testForgetLeastRecentlyUsed() {
+        final DeviceTokenHistory history = new DeviceTokenHistory(2);
+
+        history.record("aa", NOW.plusSeconds(1));
+        history.record("bb", NOW);
+        history.record("cc", NOW.plusSeconds(2));
+
+        assertEquals(2, history.size());
+        assertNull(history.get("bb"));
+        assertEquals(List.of("cc", "aa"), getTokens(history.complete("", 10)));
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        final Path historyFile = temporaryFolder.getRoot().toPath().resolve("device-token-history.bin");
+        final Random random = new Random(0);
+
+        final DeviceTokenHistory history = new DeviceTokenHistory();
+
+        for (int i = 0; i < 10_000; i++) {
+            final byte[] tokenBytes = new byte[32];
+            random.nextBytes(tokenBytes);
+
+            final StringBuilder tokenBuilder = new StringBuilder();
+
+            for (final byte b : tokenBytes) {
+                tokenBuilder.append(String.format("%02x", b));
+            }
+
+            history.record(tokenBuilder.toString(), NOW.plusMillis(i));
+        }
+
+        history.setLabel("abc", "Odd length");
+        history.save(historyFile);
+
+        final DeviceTokenHistory loadedHistory = DeviceTokenHistory.load(historyFile);
+
+        assertEquals(history.size(), loadedHistory.size());
+        assertEquals("Odd length", loadedHistory.get("abc").getLabel());
+        assertEquals(getTokens(history.complete("a", 20)), getTokens(loadedHistory.complete("a", 20)));
+    }
+
+    @Test
+    public void testLoadMissingFile() throws Exception {
+        assertEquals(0, DeviceTokenHistory.load(temporaryFolder.getRoot().toPath().resolve("missing.bin")).size());
+    }
+
+    @Test
+    public void testLoadUnreadableFile() throws Exception {
+        final Path historyFile = temporaryFolder.getRoot().toPath().resolve("unreadable.bin");
+        final byte[] unreadableContents = "Not a device token history".getBytes(StandardCharsets.UTF_8);
+
+        Files.write(historyFile, unreadableContents);
+
+        assertEquals(0, DeviceTokenHistory.load(historyFile).size());
+
+        // The unreadable file should be set aside rather than left to be overwritten by the next save
+        assertFalse(Files.exists(historyFile));
+        assertArrayEquals(unreadableContents, Files.readAllBytes(
+                historyFile.resolveSibling(historyFile.getFileName() + DeviceTokenHistory.UNREADABLE_FILE_SUFFIX)));
+    }
+
+    private static List<String> getTokens(final List<DeviceTokenHistory.Entry> entries) {
+        return entries.stream().map(DeviceTokenHistory.Entry::getToken).collect(Collectors.toList());
+    }
+}
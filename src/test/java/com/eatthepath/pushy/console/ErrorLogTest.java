@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Instant;
+
+import static org.junit.Assert.*;
+
+public class ErrorLogTest {
+
+    @Test
+    public void testAddCollapsesIdenticalErrors() {
+        final ErrorLog errorLog = new ErrorLog(4);
+
+        final Instant firstOccurrence = Instant.parse("2020-06-01T12:00:00Z");
+        final Instant lastOccurrence = Instant.parse("2020-06-01T12:00:05Z");
+
+        errorLog.add(buildException("Connection reset"), 1, firstOccurrence);
+        errorLog.add(buildException("Connection reset"), 2, lastOccurrence);
+        errorLog.add(buildException("Connection refused"), 1, lastOccurrence);
+
+        assertEquals(2, errorLog.size());
+        assertEquals(4, errorLog.totalErrorCountProperty().get());
+
+        final ErrorLog.Entry entry = errorLog.get(0);
+
+        assertEquals("Connection reset", entry.getMessage());
+        assertEquals(3, entry.getCount());
+        assertEquals(firstOccurrence, entry.getFirstOccurrence());
+        assertEquals(lastOccurrence, entry.getLastOccurrence());
+        assertTrue(entry.getStackTrace().startsWith(IOException.class.getName()));
+    }
+
+    @Test
+    public void testAddDiscardsOldestEntryWhenFull() {
+        final ErrorLog errorLog = new ErrorLog(2);
+
+        errorLog.add(buildException("first"), 1, Instant.now());
+        errorLog.add(buildException("second"), 1, Instant.now());
+        errorLog.add(buildException("third"), 1, Instant.now());
+
+        assertEquals(2, errorLog.size());
+        assertEquals("second", errorLog.get(0).getMessage());
+        assertEquals("third", errorLog.get(1).getMessage());
+        assertEquals(3, errorLog.totalErrorCountProperty().get());
+
+        // The first error's entry was discarded, so it starts over as a new entry
+        errorLog.add(buildException("first"), 1, Instant.now());
+
+        assertEquals("third", errorLog.get(0).getMessage());
+        assertEquals("first", errorLog.get(1).getMessage());
+        assertEquals(1, errorLog.get(1).getCount());
+
+        errorLog.clear();
+
+        assertTrue(errorLog.isEmpty());
+        assertEquals(0, errorLog.totalErrorCountProperty().get());
+    }
+
+    private static IOException buildException(final String message) {
+        return new IOException(message);
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class InvalidTokenRegistryTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static final String TOKEN = "4F3C2D1E0A9B8C7D6E5F4A3B2C1D0E9F8A7B6C5D4E3F2A1B0C9D8E7F6A5B4C3D";
+    private static final Instant INVALIDATION_TIMESTAMP = Instant.ofEpochMilli(1_600_000_000_000L);
+
+    @Test
+    public void testRegisterInvalidToken() throws Exception {
+        try (final InvalidTokenRegistry registry = new InvalidTokenRegistry(getRegistryFile())) {
+            assertFalse(registry.getInvalidationTimestamp(TOKEN).isPresent());
+
+            registry.registerInvalidToken(TOKEN, INVALIDATION_TIMESTAMP);
+
+            assertEquals(Optional.of(INVALIDATION_TIMESTAMP), registry.getInvalidationTimestamp(TOKEN));
+            assertEquals(Optional.of(INVALIDATION_TIMESTAMP), registry.getInvalidationTimestamp(TOKEN.toLowerCase()));
+            assertEquals(1, registry.size());
+        }
+    }
+
+    @Test
+    public void testRegisterInvalidTokenKeepsLaterTimestamp() throws Exception {
+        try (final InvalidTokenRegistry registry = new InvalidTokenRegistry(getRegistryFile())) {
+            final Instant laterTimestamp = INVALIDATION_TIMESTAMP.plusSeconds(60);
+
+            registry.registerInvalidToken(TOKEN, laterTimestamp);
+            registry.registerInvalidToken(TOKEN, INVALIDATION_TIMESTAMP);
+
+            assertEquals(Optional.of(laterTimestamp), registry.getInvalidationTimestamp(TOKEN));
+            assertEquals(1, registry.size());
+        }
+    }
+
+    @Test
+    public void testRegisterNonStandardToken() throws Exception {
+        try (final InvalidTokenRegistry registry = new InvalidTokenRegistry(getRegistryFile())) {
+            registry.registerInvalidToken("EXAMPLETOKEN", INVALIDATION_TIMESTAMP);
+
+            assertEquals(Optional.of(INVALIDATION_TIMESTAMP), registry.getInvalidationTimestamp("EXAMPLETOKEN"));
+            assertFalse(registry.getInvalidationTimestamp("OTHERTOKEN").isPresent());
+        }
+    }
+
+    @Test
+    public void testRemoveToken() throws Exception {
+        try (final InvalidTokenRegistry registry = new InvalidTokenRegistry(getRegistryFile())) {
+            assertFalse(registry.removeToken(TOKEN));
+
+            registry.registerInvalidToken(TOKEN, INVALIDATION_TIMESTAMP);
+
+            assertTrue(registry.removeToken(TOKEN));
+            assertFalse(registry.getInvalidationTimestamp(TOKEN).isPresent());
+            assertEquals(0, registry.size());
+        }
+    }
+
+    @Test
+    public void testManyTokens() throws Exception {
+        final String[] tokens = generateTokens(10_000);
+
+        try (final InvalidTokenRegistry registry = new InvalidTokenRegistry(getRegistryFile())) {
+            for (int i = 0; i < tokens.length; i++) {
+                registry.registerInvalidToken(tokens[i], INVALIDATION_TIMESTAMP.plusMillis(i));
+            }
+
+            // Remove every third token to exercise deletion in the middle of probe runs
+            for (int i = 0; i < tokens.length; i += 3) {
+                assertTrue(registry.removeToken(tokens[i]));
+            }
+
+            for (int i = 0; i < tokens.length; i++) {
+                if (i % 3 == 0) {
+                    assertFalse(registry.getInvalidationTimestamp(tokens[i]).isPresent());
+                } else {
+                    assertEquals(Optional.of(INVALIDATION_TIMESTAMP.plusMillis(i)), registry.getInvalidationTimestamp(tokens[i]));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testReopenRegistry() throws Exception {
+        final Path registryFile = getRegistryFile();
+        final String[] tokens = generateTokens(2_000);
+
+        try (final InvalidTokenRegistry registry = new InvalidTokenRegistry(registryFile)) {
+            for (final String token : tokens) {
+                registry.registerInvalidToken(token, INVALIDATION_TIMESTAMP);
+            }
+        }
+
+        try (final InvalidTokenRegistry registry = new InvalidTokenRegistry(registryFile)) {
+            assertEquals(tokens.length, registry.size());
+
+            for (final String token : tokens) {
+                assertEquals(Optional.of(INVALIDATION_TIMESTAMP), registry.getInvalidationTimestamp(token));
+            }
+        }
+    }
+
+    @Test
+    public void testResizeLeavesNoTemporaryFile() throws Exception {
+        final Path registryFile = getRegistryFile();
+
+        try (final InvalidTokenRegistry registry = new InvalidTokenRegistry(registryFile)) {
+            for (final String token : generateTokens(2_000)) {
+                registry.registerInvalidToken(token, INVALIDATION_TIMESTAMP);
+            }
+        }
+
+        try (final Stream<Path> files = Files.list(registryFile.getParent())) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    public void testReopenRegistryWithBadSize() throws Exception {
+        final Path registryFile = getRegistryFile();
+        final String[] tokens = generateTokens(100);
+
+        try (final InvalidTokenRegistry registry = new InvalidTokenRegistry(registryFile)) {
+            for (final String token : tokens) {
+                registry.registerInvalidToken(token, INVALIDATION_TIMESTAMP);
+            }
+        }
+
+        // Claim that the table holds far more tokens than it possibly could
+        try (final FileChannel fileChannel = FileChannel.open(registryFile, StandardOpenOption.WRITE)) {
+            fileChannel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, 1_000_000), 12);
+        }
+
+        try (final InvalidTokenRegistry registry = new InvalidTokenRegistry(registryFile)) {
+            assertEquals(tokens.length, registry.size());
+
+            for (final String token : tokens) {
+                assertEquals(Optional.of(INVALIDATION_TIMESTAMP), registry.getInvalidationTimestamp(token));
+            }
+
+            registry.registerInvalidToken(TOKEN, INVALIDATION_TIMESTAMP);
+            assertEquals(tokens.length + 1, registry.size());
+        }
+    }
+
+    private Path getRegistryFile() {
+        return temporaryFolder.getRoot().toPath().resolve("invalid-tokens.db");
+    }
+
+    private static String[] generateTokens(final int count) {
+        final Random random = new Random(17);
+        final String[] tokens = new String[count];
+
+        for (int i = 0; i < count; i++) {
+            final StringBuilder tokenBuilder = new StringBuilder();
+
+            for (int j = 0; j < InvalidTokenRegistry.KEY_LENGTH; j++) {
+                tokenBuilder.append(String.format("%02x", random.nextInt(256)));
+            }
+
+            tokens[i] = tokenBuilder.toString();
+        }
+
+        return tokens;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.json.JsonDeserializer;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class NotificationPipeTest {
+
+    private static final String CERTIFICATE_FILENAME = "apns-client.p12";
+    private static final String CERTIFICATE_PASSWORD = "pushy-test";
+
+    @Test
+    public void testPipe() throws Exception {
+        final ApnsCredentials credentials =
+                new ApnsCredentials(FileUtils.toFile(getClass().getResource(CERTIFICATE_FILENAME)), CERTIFICATE_PASSWORD);
+
+        final String topic = CertificateUtil.extractApnsTopicsFromCertificate(
+                credentials.getCertificateAndPrivateKey().orElseThrow().getKey()).iterator().next();
+
+        final TopicRouter router = new TopicRouter();
+        router.addCertificateRoute(new TopicRouter.Route("Test", credentials,
+                new ApnsTarget("api.sandbox.push.apple.com", 443), 1));
+
+        final String input = "{\"topic\":\"" + topic + "\",\"token\":\"01234567\",\"payload\":{}}\n" +
+                "\n" +
+                "not json\n" +
+                "{\"topic\":\"com.example.unrouted\",\"token\":\"89abcdef\",\"payload\":{}}\n" +
+                "{\"topic\":\"" + topic + "\",\"token\":\"fedcba98\",\"payload\":{}}\n";
+
+        final StringWriter output = new StringWriter();
+
+        final long sent = NotificationPipe.pipe(new StringReader(input), router, (pushNotification, route) ->
+                "fedcba98".equals(pushNotification.getToken()) ?
+                        CompletableFuture.failedFuture(new IllegalStateException("Connection lost")) :
+                        CompletableFuture.completedFuture(NotificationResult.skipped(pushNotification, route.getTarget(), null)),
+                output);
+
+        assertEquals(2, sent);
+
+        final List<Map<String, Object>> lines = new ArrayList<>();
+
+        for (final String line : output.toString().split("\n")) {
+            lines.add(new JsonDeserializer().parseJsonObject(line));
+        }
+
+        assertEquals(4, lines.size());
+
+        assertEquals("01234567", lines.get(0).get("token"));
+        assertEquals("SKIPPED", lines.get(0).get("status"));
+
+        assertEquals(3L, ((Number) lines.get(1).get("line")).longValue());
+        assertTrue(lines.get(1).containsKey("error"));
+
+        assertEquals("com.example.unrouted", lines.get(2).get("topic"));
+        assertTrue(lines.get(2).containsKey("error"));
+
+        assertEquals("fedcba98", lines.get(3).get("token"));
+        assertEquals("Connection lost", lines.get(3).get("error"));
+    }
+
+    @Test
+    public void testPipeStopsWhenOutputFails() throws Exception {
+        final ApnsCredentials credentials =
+                new ApnsCredentials(FileUtils.toFile(getClass().getResource(CERTIFICATE_FILENAME)), CERTIFICATE_PASSWORD);
+
+        final TopicRouter router = new TopicRouter();
+        router.addRoute(new TopicRouter.Route("Test", credentials,
+                new ApnsTarget("api.sandbox.push.apple.com", 443), 1), List.of("com.example.app"));
+
+        final StringBuilder input = new StringBuilder();
+
+        for (int i = 0; i < 10_000; i++) {
+            input.append("{\"topic\":\"com.example.app\",\"token\":\"").append(i).append("\",\"payload\":{}}\n");
+        }
+
+        final Writer closedOutput = new Writer() {
+            @Override
+            public void write(final char[] buffer, final int offset, final int length) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        final AtomicInteger sendCount = new AtomicInteger();
+
+        try {
+            NotificationPipe.pipe(new StringReader(input.toString()), router, (pushNotification, route) -> {
+                sendCount.incrementAndGet();
+                return CompletableFuture.completedFuture(NotificationResult.skipped(pushNotification, route.getTarget(), null));
+            }, closedOutput);
+
+            fail("Pipe should stop when its output fails");
+        } catch (final IOException e) {
+            assertEquals("Broken pipe", e.getMessage());
+        }
+
+        assertTrue(sendCount.get() < 10);
+    }
+}
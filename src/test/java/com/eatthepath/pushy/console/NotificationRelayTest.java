@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.json.JsonDeserializer;
+import com.eatthepath.pushy.apns.ApnsPushNotification;
+import com.eatthepath.pushy.apns.DeliveryPriority;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class NotificationRelayTest {
+
+    private static final String CERTIFICATE_FILENAME = "apns-client.p12";
+    private static final String CERTIFICATE_PASSWORD = "pushy-test";
+
+    @Test
+    public void testParseRequest() throws Exception {
+        final List<ApnsPushNotification> single =
+                NotificationRelay.parseRequest("{\"topic\":\"com.example.app\",\"token\":\"<0123 4567>\",\"payload\":{\"aps\":{}},\"priority\":5,\"collapseId\":\"score\"}");
+
+        assertEquals(1, single.size());
+        assertEquals("01234567", single.get(0).getToken());
+        assertEquals("{\"aps\":{}}", single.get(0).getPayload());
+        assertEquals(DeliveryPriority.CONSERVE_POWER, single.get(0).getPriority());
+        assertEquals("score", single.get(0).getCollapseId());
+
+        final List<ApnsPushNotification> batch = NotificationRelay.parseRequest("{\"notifications\":[" +
+                "{\"topic\":\"com.example.app\",\"token\":\"01234567\",\"payload\":\"{}\"}," +
+                "{\"topic\":\"com.example.other\",\"token\":\"89abcdef\",\"payload\":\"{}\",\"priority\":\"immediate\"}]}");
+
+        assertEquals(2, batch.size());
+        assertEquals("com.example.other", batch.get(1).getTopic());
+        assertEquals(DeliveryPriority.IMMEDIATE, batch.get(1).getPriority());
+        assertNull(batch.get(1).getCollapseId());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseRequestMissingField() throws Exception {
+        NotificationRelay.parseRequest("{\"notifications\":[{\"topic\":\"com.example.app\",\"payload\":\"{}\"}]}");
+    }
+
+    @Test
+    public void testRelay() throws Exception {
+        final ApnsCredentials credentials =
+                new ApnsCredentials(FileUtils.toFile(getClass().getResource(CERTIFICATE_FILENAME)), CERTIFICATE_PASSWORD);
+
+        final String topic = CertificateUtil.extractApnsTopicsFromCertificate(
+                credentials.getCertificateAndPrivateKey().orElseThrow().getKey()).iterator().next();
+
+        final TopicRouter router = new TopicRouter();
+        router.addCertificateRoute(new TopicRouter.Route("Test", credentials,
+                new ApnsTarget("api.sandbox.push.apple.com", 443), 1));
+
+        final List<ApnsPushNotification> sentNotifications = Collections.synchronizedList(new ArrayList<>());
+
+        try (final NotificationRelay relay = new NotificationRelay(0, router, (pushNotification, route) -> {
+            sentNotifications.add(pushNotification);
+            return CompletableFuture.completedFuture(NotificationResult.skipped(pushNotification, route.getTarget(), null));
+        })) {
+            assertTrue(relay.getAddress().getAddress().isLoopbackAddress());
+
+            final HttpURLConnection connection = (HttpURLConnection) new URL("http", relay.getAddress().getHostString(),
+                    relay.getAddress().getPort(), NotificationRelay.NOTIFICATIONS_PATH).openConnection();
+
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Authorization", "Bearer " + relay.getAccessToken());
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setDoOutput(true);
+
+            try (final OutputStream outputStream = connection.getOutputStream()) {
+                outputStream.write(("{\"notifications\":[" +
+                        "{\"topic\":\"" + topic + "\",\"token\":\"01234567\",\"payload\":\"{}\"}," +
+                        "{\"topic\":\"com.example.unrouted\",\"token\":\"89abcdef\",\"payload\":\"{}\"}]}")
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+
+            assertEquals(200, connection.getResponseCode());
+
+            final Map<Long, Map<String, Object>> linesByIndex = new HashMap<>();
+
+            try (final BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    final Map<String, Object> jsonLine = new JsonDeserializer().parseJsonObject(line);
+                    linesByIndex.put(((Number) jsonLine.get("index")).longValue(), jsonLine);
+                }
+            }
+
+            assertEquals(2, linesByIndex.size());
+            assertEquals("SKIPPED", linesByIndex.get(0L).get("status"));
+            assertTrue(linesByIndex.get(1L).containsKey("error"));
+
+            assertEquals(1, sentNotifications.size());
+            assertEquals(topic, sentNotifications.get(0).getTopic());
+        }
+    }
+
+    @Test
+    public void testRejectUnauthorizedRequests() throws Exception {
+        final List<ApnsPushNotification> sentNotifications = Collections.synchronizedList(new ArrayList<>());
+
+        try (final NotificationRelay relay = new NotificationRelay(0, new TopicRouter(), (pushNotification, route) -> {
+            sentNotifications.add(pushNotification);
+            return CompletableFuture.completedFuture(null);
+        })) {
+            final int port = relay.getAddress().getPort();
+            final String body = "{\"topic\":\"com.example.app\",\"token\":\"01234567\",\"payload\":\"{}\"}";
+
+            final Map<String, String> headers = new LinkedHashMap<>();
+            headers.put("Host", "127.0.0.1:" + port);
+            headers.put("Authorization", "Bearer " + relay.getAccessToken());
+            headers.put("Content-Type", "application/json");
+
+            // No credentials match the topic, but the request itself is acceptable
+            assertEquals(200, getResponseStatus(relay.getAddress(), "POST", headers, body));
+            assertEquals(200, getResponseStatus(relay.getAddress(), "POST", withHeader(headers, "Host", "localhost:" + port), body));
+            assertEquals(401, getResponseStatus(relay.getAddress(), "POST", withHeader(headers, "Authorization", null), body));
+            assertEquals(401, getResponseStatus(relay.getAddress(), "POST", withHeader(headers, "Authorization", "Bearer not-the-token"), body));
+            assertEquals(403, getResponseStatus(relay.getAddress(), "POST", withHeader(headers, "Origin", "https://example.com"), body));
+            assertEquals(415, getResponseStatus(relay.getAddress(), "POST", withHeader(headers, "Content-Type", "text/plain"), body));
+            assertEquals(415, getResponseStatus(relay.getAddress(), "POST", withHeader(headers, "Content-Type", null), body));
+            assertEquals(403, getResponseStatus(relay.getAddress(), "POST", withHeader(headers, "Host", "attacker.example.com:" + port), body));
+            assertEquals(403, getResponseStatus(relay.getAddress(), "POST", withHeader(headers, "Host", "localhost:" + (port + 1)), body));
+
+            assertEquals(405, getResponseStatus(relay.getAddress(), "GET", headers, ""));
+        }
+
+        assertTrue(sentNotifications.isEmpty());
+    }
+
+    private static Map<String, String> withHeader(final Map<String, String> headers, final String name, final String value) {
+        final Map<String, String> modifiedHeaders = new LinkedHashMap<>(headers);
+
+        if (value != null) {
+            modifiedHeaders.put(name, value);
+        } else {
+            modifiedHeaders.remove(name);
+        }
+
+        return modifiedHeaders;
+    }
+
+    private static int getResponseStatus(final InetSocketAddress address, final String method,
+                                         final Map<String, String> headers, final String body) throws IOException {
+
+        final byte[] bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+        final StringBuilder request = new StringBuilder(method + " " + NotificationRelay.NOTIFICATIONS_PATH + " HTTP/1.1\r\n");
+
+        headers.forEach((name, value) -> request.append(name).append(": ").append(value).append("\r\n"));
+
+        request.append("Content-Length: ").append(bodyBytes.length).append("\r\n");
+        request.append("Connection: close\r\n\r\n");
+
+        try (final Socket socket = new Socket(address.getAddress(), address.getPort())) {
+            final OutputStream outputStream = socket.getOutputStream();
+            outputStream.write(request.toString().getBytes(StandardCharsets.US_ASCII));
+            outputStream.write(bodyBytes);
+            outputStream.flush();
+
+            final String statusLine = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII)).readLine();
+
+            return Integer.parseInt(statusLine.split(" ")[1]);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.json.JsonDeserializer;
+import com.eatthepath.pushy.apns.util.SimpleApnsPushNotification;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+
+public class NotificationResultExporterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private NotificationResultStore notificationResultStore;
+
+    private static final UUID APNS_ID = UUID.fromString("8a0c2d9e-6a53-4a3d-9a3a-95b2c0b0a5f1");
+    private static final ApnsTarget TARGET = new ApnsTarget("api.sandbox.push.apple.com", 443);
+    private static final Instant SEND_TIMESTAMP = Instant.parse("2020-06-01T12:00:00Z");
+
+    @Before
+    public void setUp() {
+        notificationResultStore = new NotificationResultStore();
+
+        notificationResultStore.append(new NotificationResult(
+                new SimpleApnsPushNotification("token-a", "com.example.topic", "{}"), TARGET,
+                NotificationResult.Status.ACCEPTED, APNS_ID, null, null, SEND_TIMESTAMP, Duration.ofNanos(12_345_000)));
+
+        notificationResultStore.append(new NotificationResult(
+                new SimpleApnsPushNotification("token-b", "com.example.\"quoted\",topic", "{}"), null,
+                NotificationResult.Status.REJECTED, APNS_ID, "Unregistered", SEND_TIMESTAMP, null, null));
+    }
+
+    @Test
+    public void testExportCsv() throws Exception {
+        final Path file = temporaryFolder.getRoot().toPath().resolve("results.csv");
+
+        NotificationResultExporter.export(notificationResultStore, notificationResultStore.size(), file,
+                NotificationResultExporter.Format.CSV, exported -> {});
+
+        final List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+
+        assertEquals(3, lines.size());
+        assertEquals("token,topic,status,reason,tokenInvalidationTimestamp,apnsId,sendTimestamp,latencyMillis,target", lines.get(0));
+        assertEquals("token-a,com.example.topic,ACCEPTED,,," + APNS_ID + "," + SEND_TIMESTAMP + ",12.345," + TARGET, lines.get(1));
+        assertEquals("token-b,\"com.example.\"\"quoted\"\",topic\",REJECTED,Unregistered," + SEND_TIMESTAMP + "," + APNS_ID + ",,,", lines.get(2));
+    }
+
+    @Test
+    public void testExportJsonLines() throws Exception {
+        final Path file = temporaryFolder.getRoot().toPath().resolve("results.jsonl");
+
+        NotificationResultExporter.export(notificationResultStore, notificationResultStore.size(), file,
+                NotificationResultExporter.Format.JSON_LINES, exported -> {});
+
+        final List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+
+        assertEquals(2, lines.size());
+
+        final Map<String, Object> rejectedResult = new JsonDeserializer().parseJsonObject(lines.get(1));
+
+        assertEquals("token-b", rejectedResult.get("token"));
+        assertEquals("com.example.\"quoted\",topic", rejectedResult.get("topic"));
+        assertEquals("REJECTED", rejectedResult.get("status"));
+        assertEquals("Unregistered", rejectedResult.get("reason"));
+        assertEquals(SEND_TIMESTAMP.toString(), rejectedResult.get("tokenInvalidationTimestamp"));
+    }
+
+    @Test
+    public void testExportPartialStore() throws Exception {
+        final Path file = temporaryFolder.getRoot().toPath().resolve("results.jsonl");
+
+        NotificationResultExporter.export(notificationResultStore, 1, file,
+                NotificationResultExporter.Format.JSON_LINES, exported -> {});
+
+        assertEquals(1, Files.readAllLines(file, StandardCharsets.UTF_8).size());
+    }
+}
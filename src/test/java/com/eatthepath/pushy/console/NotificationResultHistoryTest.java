@@ -0,0 +1,298 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.DeliveryPriority;
+import com.eatthepath.pushy.apns.util.SimpleApnsPushNotification;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class NotificationResultHistoryTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testAppendAndReopen() throws IOException {
+        final Path directory = temporaryFolder.newFolder().toPath();
+
+        final Instant sendTimestamp = Instant.parse("2020-01-01T00:00:00.123456Z");
+        final UUID apnsId = UUID.randomUUID();
+
+        final NotificationResult accepted = new NotificationResult(
+                new SimpleApnsPushNotification("token-1", "com.example.topic", "{\"aps\":{}}", null, DeliveryPriority.CONSERVE_POWER, "collapse"),
+                new ApnsTarget("api.push.apple.com", 443), NotificationResult.Status.ACCEPTED, apnsId, null, null,
+                sendTimestamp, Duration.ofNanos(12_345_678));
+
+        final NotificationResult rejected = new NotificationResult(
+                new SimpleApnsPushNotification("token-2", "com.example.topic", "{\"aps\":{}}"),
+                null, NotificationResult.Status.REJECTED, null, "Unregistered", Instant.parse("2019-12-31T00:00:00Z"),
+                sendTimestamp, null);
+
+        try (final NotificationResultHistory history = new NotificationResultHistory(directory)) {
+            assertEquals(0, history.getArchivedRowCount());
+
+            history.append(accepted);
+            history.append(rejected);
+        }
+
+        try (final NotificationResultHistory history = new NotificationResultHistory(directory)) {
+            assertEquals(2, history.getArchivedRowCount());
+
+            final NotificationResult first = history.readArchivedRow(0);
+
+            assertEquals("token-1", first.getPushNotification().getToken());
+            assertEquals("com.example.topic", first.getPushNotification().getTopic());
+            assertEquals("{\"aps\":{}}", first.getPushNotification().getPayload());
+            assertEquals(DeliveryPriority.CONSERVE_POWER, first.getPushNotification().getPriority());
+            assertEquals("collapse", first.getPushNotification().getCollapseId());
+            assertEquals(new ApnsTarget("api.push.apple.com", 443), first.getTarget().orElse(null));
+            assertEquals(NotificationResult.Status.ACCEPTED, first.getStatus());
+            assertEquals(apnsId, first.getApnsId().orElse(null));
+            assertFalse(first.getRejectionReason().isPresent());
+            assertEquals(sendTimestamp, first.getSendTimestamp().orElse(null));
+            assertEquals(Duration.ofNanos(12_345_678), first.getLatency().orElse(null));
+
+            final NotificationResult second = history.readArchivedRow(1);
+
+            assertEquals("token-2", second.getPushNotification().getToken());
+            assertEquals(DeliveryPriority.IMMEDIATE, second.getPushNotification().getPriority());
+            assertNull(second.getPushNotification().getCollapseId());
+            assertFalse(second.getTarget().isPresent());
+            assertEquals("Unregistered", second.getRejectionReason().orElse(null));
+            assertEquals(Instant.parse("2019-12-31T00:00:00Z"), second.getTokenInvalidationTimestamp().orElse(null));
+            assertFalse(second.getApnsId().isPresent());
+            assertFalse(second.getLatency().isPresent());
+
+            // New rows go after the archived rows, but aren't archived until the next session
+            history.append(accepted);
+            assertEquals(2, history.getArchivedRowCount());
+        }
+
+        // Simulate a crash in the middle of writing a row
+        Files.write(directory.resolve(NotificationResultHistory.ROWS_FILENAME), new byte[NotificationResultHistory.ROW_SIZE / 2], StandardOpenOption.APPEND);
+
+        try (final NotificationResultHistory history = new NotificationResultHistory(directory)) {
+            assertEquals(3, history.getArchivedRowCount());
+            assertEquals("token-1", history.readArchivedRow(2).getPushNotification().getToken());
+        }
+    }
+
+    @Test
+    public void testFlush() throws IOException {
+        final Path directory = temporaryFolder.newFolder().toPath();
+
+        try (final NotificationResultHistory history = new NotificationResultHistory(directory)) {
+            history.append(new NotificationResult(new SimpleApnsPushNotification("token", "com.example.topic", "{}"),
+                    null, NotificationResult.Status.ACCEPTED, null, null, null, null, null));
+
+            history.flush();
+
+            assertEquals(NotificationResultHistory.ROW_SIZE, Files.size(directory.resolve(NotificationResultHistory.ROWS_FILENAME)));
+        }
+    }
+
+    @Test
+    public void testTrimOnOpen() throws IOException {
+        final Path directory = temporaryFolder.newFolder().toPath();
+
+        try (final NotificationResultHistory history = new NotificationResultHistory(directory)) {
+            for (int i = 0; i < 10; i++) {
+                history.append(new NotificationResult(
+                        new SimpleApnsPushNotification("token-" + i, "com.example.topic", "{\"i\":" + i + "}"),
+                        null, NotificationResult.Status.ACCEPTED, null, null, null, null, null));
+            }
+        }
+
+        // Leftovers from a trim that never finished writing its copies should be ignored
+        Files.write(directory.resolve("results.rows.trimmed"), new byte[NotificationResultHistory.ROW_SIZE]);
+
+        try (final NotificationResultHistory history = new NotificationResultHistory(directory, 10)) {
+            assertEquals(10, history.getArchivedRowCount());
+        }
+
+        assertFalse(Files.exists(directory.resolve("results.rows.trimmed")));
+
+        try (final NotificationResultHistory history = new NotificationResultHistory(directory, 8)) {
+            assertEquals(6, history.getArchivedRowCount());
+
+            for (int rowId = 0; rowId < 6; rowId++) {
+                final NotificationResult result = history.readArchivedRow(rowId);
+
+                assertEquals("token-" + (rowId + 4), result.getPushNotification().getToken());
+                assertEquals("com.example.topic", result.getPushNotification().getTopic());
+                assertEquals("{\"i\":" + (rowId + 4) + "}", result.getPushNotification().getPayload());
+            }
+
+            history.append(new NotificationResult(new SimpleApnsPushNotification("token-10", "com.example.topic", "{}"),
+                    null, NotificationResult.Status.ACCEPTED, null, null, null, null, null));
+        }
+
+        try (final NotificationResultHistory history = new NotificationResultHistory(directory, 8)) {
+            assertEquals(7, history.getArchivedRowCount());
+            assertEquals("token-10", history.readArchivedRow(6).getPushNotification().getToken());
+            assertEquals("{}", history.readArchivedRow(6).getPushNotification().getPayload());
+            assertEquals("{\"i\":9}", history.readArchivedRow(5).getPushNotification().getPayload());
+        }
+    }
+
+    @Test
+    public void testTrimWhileOpen() throws IOException {
+        final Path directory = temporaryFolder.newFolder().toPath();
+
+        try (final NotificationResultHistory history = new NotificationResultHistory(directory, 8)) {
+            for (int i = 0; i < 8; i++) {
+                history.append(new NotificationResult(
+                        new SimpleApnsPushNotification("token-" + i, "com.example.topic", "{\"i\":" + i + "}"),
+                        null, NotificationResult.Status.ACCEPTED, null, null, null, null, null));
+            }
+        }
+
+        try (final NotificationResultHistory history = new NotificationResultHistory(directory, 8)) {
+            assertEquals(8, history.getArchivedRowCount());
+
+            for (int i = 8; i < 20; i++) {
+                history.append(new NotificationResult(
+                        new SimpleApnsPushNotification("token-" + i, "com.example.topic", "{\"i\":" + i + "}"),
+                        null, NotificationResult.Status.ACCEPTED, null, null, null, null, null));
+
+                // Give the writer a chance to keep up so every trim happens right when it's requested
+                history.flush();
+            }
+
+            assertTrue(Files.size(directory.resolve(NotificationResultHistory.ROWS_FILENAME)) <= 8L * NotificationResultHistory.ROW_SIZE);
+
+            // Rows from the previous session should still be readable even though they're gone from disk
+            assertEquals("token-0", history.readArchivedRow(0).getPushNotification().getToken());
+            assertEquals("{\"i\":0}", history.readArchivedRow(0).getPushNotification().getPayload());
+        }
+
+        try (final NotificationResultHistory history = new NotificationResultHistory(directory, 8)) {
+            final int archivedRowCount = history.getArchivedRowCount();
+
+            assertTrue(archivedRowCount <= 8);
+
+            for (int rowId = 0; rowId < archivedRowCount; rowId++) {
+                final int i = 20 - archivedRowCount + rowId;
+                final NotificationResult result = history.readArchivedRow(rowId);
+
+                assertEquals("token-" + i, result.getPushNotification().getToken());
+                assertEquals("com.example.topic", result.getPushNotification().getTopic());
+                assertEquals("{\"i\":" + i + "}", result.getPushNotification().getPayload());
+            }
+        }
+    }
+
+    @Test
+    public void testReadArchivedColumns() throws IOException {
+        final Path directory = temporaryFolder.newFolder().toPath();
+
+        final String hexToken = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+        final ApnsTarget target = new ApnsTarget("api.push.apple.com", 443);
+
+        try (final NotificationResultHistory history = new NotificationResultHistory(directory)) {
+            history.append(new NotificationResult(
+                    new SimpleApnsPushNotification(hexToken, "com.example.topic", "{}", null, DeliveryPriority.CONSERVE_POWER, (String) null),
+                    target, NotificationResult.Status.ACCEPTED, UUID.randomUUID(), null, null, null, null));
+
+            history.append(new NotificationResult(
+                    new SimpleApnsPushNotification("Not-A-Hex-Token", "com.example.other", "{}"),
+                    null, NotificationResult.Status.REJECTED, null, "BadDeviceToken", null, null, null));
+        }
+
+        try (final NotificationResultHistory history = new NotificationResultHistory(directory)) {
+            final NotificationResultStore store = new NotificationResultStore(history);
+
+            final byte[] tokenBytes = new byte[NotificationResultStore.TOKEN_BYTES];
+
+            assertTrue(store.getHexToken(0, tokenBytes));
+            assertEquals(hexToken, NotificationResultStore.unpackHexToken(tokenBytes, 0));
+            assertFalse(store.getHexToken(1, tokenBytes));
+
+            for (int rowId = 0; rowId < store.size(); rowId++) {
+                final NotificationResult result = history.readArchivedRow(rowId);
+
+                assertEquals(result.getStatus(), store.getStatus(rowId));
+                assertEquals(result.getDeliveryPriority(), store.getDeliveryPriority(rowId));
+                assertEquals(result.getPushNotification().getTopic(), store.getTopic(rowId));
+                assertEquals(result.getPushNotification().getToken(), store.getToken(rowId));
+                assertEquals(result.getRejectionReason().orElse(null), store.getRejectionReason(rowId));
+                assertEquals(result.getTarget().orElse(null), store.getTarget(rowId));
+                assertEquals(result.getApnsId().orElse(null), store.getApnsId(rowId));
+            }
+
+            final NotificationResultFilter filter =
+                    new NotificationResultFilter(null, null, "com.example.topic", DeliveryPriority.CONSERVE_POWER, target, "0123", null);
+
+            assertTrue(filter.matches(store, 0));
+            assertFalse(filter.matches(store, 1));
+        }
+    }
+
+    @Test
+    public void testStoreWithHistory() throws IOException {
+        final Path directory = temporaryFolder.newFolder().toPath();
+
+        try (final NotificationResultHistory history = new NotificationResultHistory(directory)) {
+            for (int i = 0; i < 10; i++) {
+                history.append(new NotificationResult(
+                        new SimpleApnsPushNotification("token-" + i, "com.example.topic", "{}"),
+                        null, i % 2 == 0 ? NotificationResult.Status.ACCEPTED : NotificationResult.Status.REJECTED,
+                        null, null, null, null, null));
+            }
+        }
+
+        try (final NotificationResultHistory history = new NotificationResultHistory(directory)) {
+            final NotificationResultStore store = new NotificationResultStore();
+            final NotificationResultIndex index = new NotificationResultIndex(store);
+
+            assertEquals(0, store.size());
+
+            store.attachHistory(history);
+
+            assertEquals(10, store.size());
+            assertEquals(10, store.getArchivedRowCount());
+            assertSame(store.get(3), store.get(3));
+
+            store.append(new NotificationResult(new SimpleApnsPushNotification("token-10", "com.example.topic", "{}"),
+                    null, NotificationResult.Status.ACCEPTED, null, null, null, null, null));
+
+            assertEquals(11, store.size());
+            assertEquals("token-10", store.get(10).getPushNotification().getToken());
+
+            assertArrayEquals(new int[] { 0, 2, 4, 6, 8, 10 }, index.query(new NotificationResultFilter(
+                    NotificationResult.Status.ACCEPTED, null, null, null, null, null, null)));
+        }
+    }
+}
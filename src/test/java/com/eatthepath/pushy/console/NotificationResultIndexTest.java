@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.util.SimpleApnsPushNotification;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class NotificationResultIndexTest {
+
+    private NotificationResultStore notificationResultStore;
+    private NotificationResultIndex notificationResultIndex;
+
+    private static final UUID APNS_ID = UUID.fromString("8a0c2d9e-6a53-4a3d-9a3a-95b2c0b0a5f1");
+
+    @Before
+    public void setUp() {
+        notificationResultStore = new NotificationResultStore();
+
+        // Add one result before creating the index to make sure existing results get indexed, too
+        addResult("abcd0001", "com.example.a", NotificationResult.Status.ACCEPTED, null, APNS_ID);
+
+        notificationResultIndex = new NotificationResultIndex(notificationResultStore);
+
+        addResult("abcd0002", "com.example.a", NotificationResult.Status.REJECTED, "BadDeviceToken", UUID.randomUUID());
+        addResult("ABCE0003", "com.example.b", NotificationResult.Status.REJECTED, "Unregistered", UUID.randomUUID());
+        addResult("abcd0001", "com.example.b", NotificationResult.Status.REJECTED, "BadDeviceToken", UUID.randomUUID());
+        addResult("ffff0004", "com.example.a", NotificationResult.Status.SKIPPED, null, null);
+    }
+
+    private void addResult(final String token, final String topic, final NotificationResult.Status status,
+                           final String rejectionReason, final UUID apnsId) {
+
+        notificationResultStore.append(new NotificationResult(new SimpleApnsPushNotification(token, topic, "{}"), null,
+                status, apnsId, rejectionReason, null, Instant.now(), null));
+    }
+
+    @Test
+    public void testQuery() {
+        assertArrayEquals(new int[] { 0, 1, 2, 3, 4 }, notificationResultIndex.query(NotificationResultFilter.EMPTY));
+
+        assertArrayEquals(new int[] { 1, 2, 3 }, notificationResultIndex.query(
+                new NotificationResultFilter(NotificationResult.Status.REJECTED, null, null, null, null, null, null)));
+
+        assertArrayEquals(new int[] { 1, 3 }, notificationResultIndex.query(
+                new NotificationResultFilter(null, "BadDeviceToken", null, null, null, null, null)));
+
+        assertArrayEquals(new int[] { 3 }, notificationResultIndex.query(
+                new NotificationResultFilter(null, "BadDeviceToken", "com.example.b", null, null, null, null)));
+
+        assertArrayEquals(new int[] { 0, 1, 2, 3 }, notificationResultIndex.query(
+                new NotificationResultFilter(null, null, null, null, null, "abc", null)));
+
+        assertArrayEquals(new int[] { 0, 3 }, notificationResultIndex.query(
+                new NotificationResultFilter(null, null, null, null, null, "ABCD0001", null)));
+
+        assertArrayEquals(new int[] { 0 }, notificationResultIndex.query(
+                new NotificationResultFilter(null, null, null, null, null, null, APNS_ID)));
+
+        assertArrayEquals(new int[0], notificationResultIndex.query(
+                new NotificationResultFilter(NotificationResult.Status.ACCEPTED, null, "com.example.b", null, null, null, null)));
+
+        assertArrayEquals(new int[0], notificationResultIndex.query(
+                new NotificationResultFilter(null, "PayloadTooLarge", null, null, null, null, null)));
+    }
+
+    @Test
+    public void testQueryByTarget() {
+        final ApnsTarget target = new ApnsTarget("api.sandbox.push.apple.com", 443);
+
+        notificationResultStore.append(new NotificationResult(new SimpleApnsPushNotification("abcd0005", "com.example.a", "{}"),
+                target, NotificationResult.Status.ACCEPTED, UUID.randomUUID(), null, null, Instant.now(), null));
+
+        assertEquals(Arrays.asList(target), notificationResultIndex.getTargets());
+
+        assertArrayEquals(new int[] { 5 }, notificationResultIndex.query(
+                new NotificationResultFilter(null, null, null, null, target, null, null)));
+
+        assertArrayEquals(new int[0], notificationResultIndex.query(
+                new NotificationResultFilter(null, null, null, null, new ApnsTarget("api.push.apple.com", 443), null, null)));
+    }
+
+    @Test
+    public void testQueryMatchesFilter() {
+        final NotificationResultFilter filter =
+                new NotificationResultFilter(NotificationResult.Status.REJECTED, null, "com.example.b", null, null, "ab", null);
+
+        final int[] rowIds = notificationResultIndex.query(filter);
+
+        for (int rowId = 0; rowId < notificationResultStore.size(); rowId++) {
+            assertEquals(filter.matches(notificationResultStore.get(rowId)),
+                    Arrays.binarySearch(rowIds, rowId) >= 0);
+        }
+    }
+
+    @Test
+    public void testQueryByTokenPrefix() {
+        final Random random = new Random(1);
+
+        // Enough rows that most tokens have been sorted and merged, and some are still waiting to be
+        for (int i = 0; i < 10_000; i++) {
+            final String token = i % 100 == 0 ?
+                    "ABCD" + i :
+                    String.format("%016x%016x%016x%016x", random.nextLong(), random.nextLong(), random.nextLong(), random.nextLong());
+
+            addResult(token, "com.example.a", NotificationResult.Status.ACCEPTED, null, null);
+        }
+
+        for (final String prefix : new String[] { "0", "ab", "abcd", "f00", "abcd5", "7e" }) {
+            final NotificationResultFilter filter = new NotificationResultFilter(null, null, null, null, null, prefix, null);
+            final int[] rowIds = notificationResultIndex.query(filter);
+
+            final IntList expectedRowIds = new IntList();
+
+            for (int rowId = 0; rowId < notificationResultStore.size(); rowId++) {
+                if (filter.matches(notificationResultStore.get(rowId))) {
+                    expectedRowIds.add(rowId);
+                }
+            }
+
+            assertArrayEquals(prefix, expectedRowIds.toArray(), rowIds);
+        }
+    }
+
+    @Test
+    public void testDistinctValues() {
+        assertEquals(Arrays.asList("BadDeviceToken", "Unregistered"), notificationResultIndex.getRejectionReasons());
+        assertEquals(Arrays.asList("com.example.a", "com.example.b"), notificationResultIndex.getTopics());
+    }
+
+    @Test
+    public void testFilteredListReceivesNewRows() {
+        final FilteredNotificationResultList filteredList = new FilteredNotificationResultList(notificationResultStore);
+        final NotificationResultFilter filter = new NotificationResultFilter(null, "BadDeviceToken", null, null, null, null, null);
+
+        filteredList.setFilter(filter, notificationResultIndex.query(filter), notificationResultStore.size());
+        assertEquals(2, filteredList.size());
+
+        addResult("0000", "com.example.c", NotificationResult.Status.REJECTED, "BadDeviceToken", UUID.randomUUID());
+        addResult("0001", "com.example.c", NotificationResult.Status.ACCEPTED, null, UUID.randomUUID());
+
+        assertEquals(3, filteredList.size());
+        assertEquals("0000", filteredList.get(2).getPushNotification().getToken());
+    }
+
+    @Test
+    public void testIntersect() {
+        assertArrayEquals(new int[] { 3, 70, 512 }, NotificationResultIndex.intersect(
+                new int[] { 1, 3, 70, 71, 512 },
+                new int[] { 0, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 70, 200, 300, 400, 512, 513 }));
+
+        assertArrayEquals(new int[0], NotificationResultIndex.intersect(new int[] { 1 }, new int[0]));
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.DeliveryPriority;
+import com.eatthepath.pushy.apns.PushType;
+import com.eatthepath.pushy.apns.util.SimpleApnsPushNotification;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class NotificationResultStoreTest {
+
+    private static final ApnsTarget TARGET = new ApnsTarget("api.sandbox.push.apple.com", 443);
+
+    @Test
+    public void testAppendAndGet() {
+        final NotificationResultStore store = new NotificationResultStore();
+
+        final String hexToken = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+        final UUID apnsId = UUID.randomUUID();
+        final Instant sendTimestamp = Instant.parse("2020-06-01T12:00:00.123456Z");
+        final Instant tokenInvalidationTimestamp = Instant.parse("2020-05-01T00:00:00Z");
+
+        store.append(new NotificationResult(
+                new SimpleApnsPushNotification(hexToken, "com.example.topic", "{}", null, DeliveryPriority.CONSERVE_POWER,
+                        PushType.BACKGROUND, "collapse"),
+                TARGET, NotificationResult.Status.ACCEPTED, apnsId, null, null, sendTimestamp, Duration.ofMillis(12)));
+
+        store.append(new NotificationResult(
+                new SimpleApnsPushNotification("Not-A-Hex-Token", "com.example.topic", "{}"),
+                null, NotificationResult.Status.REJECTED, null, "Unregistered", tokenInvalidationTimestamp, null, null));
+
+        assertEquals(2, store.size());
+
+        final NotificationResult accepted = store.get(0);
+
+        assertEquals(hexToken, accepted.getPushNotification().getToken());
+        assertEquals("com.example.topic", accepted.getPushNotification().getTopic());
+        assertEquals("{}", accepted.getPushNotification().getPayload());
+        assertEquals(DeliveryPriority.CONSERVE_POWER, accepted.getDeliveryPriority());
+        assertEquals(PushType.BACKGROUND, accepted.getPushNotification().getPushType());
+        assertEquals("collapse", accepted.getPushNotification().getCollapseId());
+        assertEquals(TARGET, accepted.getTarget().orElse(null));
+        assertEquals(NotificationResult.Status.ACCEPTED, accepted.getStatus());
+        assertEquals(apnsId, accepted.getApnsId().orElse(null));
+        assertFalse(accepted.getRejectionReason().isPresent());
+        assertEquals(sendTimestamp, accepted.getSendTimestamp().orElse(null));
+        assertEquals(Duration.ofMillis(12), accepted.getLatency().orElse(null));
+
+        final NotificationResult rejected = store.get(1);
+
+        assertEquals("Not-A-Hex-Token", rejected.getPushNotification().getToken());
+        assertNull(rejected.getPushNotification().getCollapseId());
+        assertEquals(DeliveryPriority.IMMEDIATE, rejected.getDeliveryPriority());
+        assertFalse(rejected.getTarget().isPresent());
+        assertEquals("Unregistered", rejected.getRejectionReason().orElse(null));
+        assertEquals(tokenInvalidationTimestamp, rejected.getTokenInvalidationTimestamp().orElse(null));
+        assertFalse(rejected.getSendTimestamp().isPresent());
+        assertFalse(rejected.getLatency().isPresent());
+    }
+
+    @Test
+    public void testRepeatedStringsStoredOnce() {
+        final NotificationResultStore store = new NotificationResultStore();
+
+        // More rows than the store will keep decoded at once, and more than fit in a single chunk
+        for (int i = 0; i < 10_000; i++) {
+            store.append(new NotificationResult(
+                    new SimpleApnsPushNotification(String.format("%064x", i), "com.example.topic", new String("{\"aps\":{}}")),
+                    TARGET, NotificationResult.Status.REJECTED, null, new String("BadDeviceToken"), null, null, null));
+        }
+
+        assertEquals(10_000, store.size());
+        assertEquals(String.format("%064x", 9_999), store.get(9_999).getPushNotification().getToken());
+
+        assertSame(store.get(0).getPushNotification().getPayload(), store.get(9_999).getPushNotification().getPayload());
+        assertSame(store.get(0).getRejectionReason().get(), store.get(9_999).getRejectionReason().get());
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.DeliveryPriority;
+import com.eatthepath.pushy.apns.util.SimpleApnsPushNotification;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class NotificationResultSummaryTest {
+
+    private NotificationResultStore notificationResultStore;
+    private NotificationResultSummary notificationResultSummary;
+
+    @Before
+    public void setUp() {
+        notificationResultStore = new NotificationResultStore();
+        notificationResultSummary = new NotificationResultSummary(notificationResultStore);
+    }
+
+    private void addResult(final String topic, final DeliveryPriority priority, final NotificationResult.Status status,
+                           final String rejectionReason) {
+
+        notificationResultStore.append(new NotificationResult(
+                new SimpleApnsPushNotification("token", topic, "{}", null, priority), null,
+                status, null, rejectionReason, null, null, null));
+    }
+
+    private Optional<NotificationResultSummary.Bucket> getBucket(final NotificationResultSummary.Group group, final Object value) {
+        return notificationResultSummary.getBuckets(group).stream()
+                .filter(bucket -> value.equals(bucket.getValue()))
+                .findFirst();
+    }
+
+    @Test
+    public void testCounts() {
+        // Status buckets exist even before any results arrive
+        assertEquals(NotificationResult.Status.values().length,
+                notificationResultSummary.getBuckets(NotificationResultSummary.Group.STATUS).size());
+
+        assertEquals(0, getBucket(NotificationResultSummary.Group.STATUS, NotificationResult.Status.REJECTED).get().getCount());
+
+        addResult("com.example.a", DeliveryPriority.IMMEDIATE, NotificationResult.Status.ACCEPTED, null);
+        addResult("com.example.a", DeliveryPriority.CONSERVE_POWER, NotificationResult.Status.REJECTED, "BadDeviceToken");
+        addResult("com.example.b", DeliveryPriority.IMMEDIATE, NotificationResult.Status.REJECTED, "BadDeviceToken");
+        addResult("com.example.b", DeliveryPriority.IMMEDIATE, NotificationResult.Status.REJECTED, "Unregistered");
+
+        assertEquals(4, notificationResultSummary.getTotal(NotificationResultSummary.Group.STATUS).getCount());
+        assertEquals(3, notificationResultSummary.getTotal(NotificationResultSummary.Group.REJECTION_REASON).getCount());
+
+        assertEquals(1, getBucket(NotificationResultSummary.Group.STATUS, NotificationResult.Status.ACCEPTED).get().getCount());
+        assertEquals(3, getBucket(NotificationResultSummary.Group.STATUS, NotificationResult.Status.REJECTED).get().getCount());
+        assertEquals(2, getBucket(NotificationResultSummary.Group.REJECTION_REASON, "BadDeviceToken").get().getCount());
+        assertEquals(1, getBucket(NotificationResultSummary.Group.REJECTION_REASON, "Unregistered").get().getCount());
+        assertEquals(2, getBucket(NotificationResultSummary.Group.TOPIC, "com.example.b").get().getCount());
+        assertEquals(3, getBucket(NotificationResultSummary.Group.PRIORITY, DeliveryPriority.IMMEDIATE).get().getCount());
+        assertEquals(1, getBucket(NotificationResultSummary.Group.PRIORITY, DeliveryPriority.CONSERVE_POWER).get().getCount());
+
+        assertFalse(getBucket(NotificationResultSummary.Group.REJECTION_REASON, "PayloadTooLarge").isPresent());
+    }
+
+    @Test
+    public void testBucketFilters() {
+        addResult("com.example.a", DeliveryPriority.IMMEDIATE, NotificationResult.Status.ACCEPTED, null);
+        addResult("com.example.a", DeliveryPriority.CONSERVE_POWER, NotificationResult.Status.REJECTED, "BadDeviceToken");
+        addResult("com.example.b", DeliveryPriority.IMMEDIATE, NotificationResult.Status.REJECTED, "Unregistered");
+
+        for (final NotificationResultSummary.Group group : NotificationResultSummary.Group.values()) {
+            for (final NotificationResultSummary.Bucket bucket : notificationResultSummary.getBuckets(group)) {
+                final NotificationResultFilter filter = bucket.toFilter();
+                assertEquals(bucket.getCount(), notificationResultStore.stream().filter(filter::matches).count());
+            }
+
+            final NotificationResultSummary.Bucket total = notificationResultSummary.getTotal(group);
+            assertEquals(total.getCount(), notificationResultStore.stream().filter(total.toFilter()::matches).count());
+        }
+    }
+
+    @Test
+    public void testOneChangePerPass() {
+        final NotificationResultStore store = new NotificationResultStore();
+
+        for (int i = 0; i < 1000; i++) {
+            store.append(new NotificationResult(new SimpleApnsPushNotification("token", "com.example.a", "{}"), null,
+                    NotificationResult.Status.ACCEPTED, null, null, null, null, null));
+        }
+
+        final NotificationResultSummary summary = new NotificationResultSummary(store);
+        final NotificationResultSummary.Bucket total = summary.getTotal(NotificationResultSummary.Group.STATUS);
+
+        assertEquals(1000, total.getCount());
+
+        final AtomicInteger changes = new AtomicInteger();
+        total.countProperty().addListener((observable, oldValue, newValue) -> changes.incrementAndGet());
+
+        store.append(new NotificationResult(new SimpleApnsPushNotification("token", "com.example.a", "{}"), null,
+                NotificationResult.Status.ACCEPTED, null, null, null, null, null));
+
+        assertEquals(1001, total.getCount());
+        assertEquals(1, changes.get());
+    }
+}
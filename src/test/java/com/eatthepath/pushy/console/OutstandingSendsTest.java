@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class OutstandingSendsTest {
+
+    @Test
+    public void testClose() {
+        final OutstandingSends outstandingSends = new OutstandingSends();
+
+        final CompletableFuture<Void> firstSend = new CompletableFuture<>();
+        final CompletableFuture<Void> secondSend = new CompletableFuture<>();
+
+        assertTrue(outstandingSends.add(firstSend));
+        assertTrue(outstandingSends.add(secondSend));
+        assertEquals(2, outstandingSends.size());
+
+        final CompletableFuture<Void> drainedFuture = outstandingSends.close();
+
+        assertTrue(outstandingSends.isClosed());
+        assertFalse(outstandingSends.add(new CompletableFuture<>()));
+        assertFalse(drainedFuture.isDone());
+
+        outstandingSends.remove(firstSend);
+        assertFalse(drainedFuture.isDone());
+
+        outstandingSends.remove(secondSend);
+        assertTrue(drainedFuture.isDone());
+        assertEquals(0, outstandingSends.size());
+    }
+
+    @Test
+    public void testCloseWithNoOutstandingSends() {
+        assertTrue(new OutstandingSends().close().isDone());
+    }
+}
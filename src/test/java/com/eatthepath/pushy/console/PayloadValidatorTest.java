@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ResourceBundle;
+
+import static org.junit.Assert.*;
+
+public class PayloadValidatorTest {
+
+    @Test
+    public void testValidate() {
+        final String payload = "{ \"aps\": { \"alert\": \"Caf\u00e9 \uD83D\uDE00\", \"badge\": -1.5e3, \"sound\": null },\n" +
+                "  \"list\": [true, false, [], {}, \"\\u00e9\\n\"] }";
+
+        final PayloadValidator.Result result = PayloadValidator.validate(payload);
+
+        assertTrue(result.isValid());
+        assertNull(result.getError());
+        assertEquals(payload.getBytes(StandardCharsets.UTF_8).length, result.getByteLength());
+    }
+
+    @Test
+    public void testValidateMalformed() {
+        assertError("", PayloadValidator.Error.UNEXPECTED_END, 1, 1);
+        assertError("[]", PayloadValidator.Error.NOT_AN_OBJECT, 1, 1);
+        assertError("{ \"a\": 1 } x", PayloadValidator.Error.TRAILING_CONTENT, 1, 12);
+        assertError("{\n  \"a\": 1,\n  \"b\" 2\n}", PayloadValidator.Error.UNEXPECTED_CHARACTER, 3, 7);
+        assertError("{ \"a\": [1, 2 }", PayloadValidator.Error.UNEXPECTED_CHARACTER, 1, 14);
+        assertError("{ \"a\": 01 }", PayloadValidator.Error.UNEXPECTED_CHARACTER, 1, 9);
+        assertError("{ \"a\": 1. }", PayloadValidator.Error.INVALID_NUMBER, 1, 8);
+        assertError("{ \"a\": \"\\x\" }", PayloadValidator.Error.INVALID_ESCAPE, 1, 9);
+        assertError("{ \"a\": \"\t\" }", PayloadValidator.Error.CONTROL_CHARACTER_IN_STRING, 1, 9);
+        assertError("{ \"a\": tru }", PayloadValidator.Error.UNEXPECTED_CHARACTER, 1, 8);
+        assertError("{ a: 1 }", PayloadValidator.Error.UNEXPECTED_CHARACTER, 1, 3);
+        assertError("{ \"a\": [1,", PayloadValidator.Error.UNEXPECTED_END, 1, 11);
+    }
+
+    @Test
+    public void testValidateDeeplyNested() {
+        final int depth = 100_000;
+        final String payload = "{\"a\":" + StringUtils.repeat('[', depth) + StringUtils.repeat(']', depth) + "}";
+
+        // Should be well-formed, but far too large
+        assertEquals(PayloadValidator.Error.TOO_LARGE, PayloadValidator.validate(payload).getError());
+    }
+
+    @Test
+    public void testValidateTooLarge() {
+        final String prefix = "{\"a\":\"";
+        final String suffix = "\"}";
+
+        final String maxLengthPayload = prefix +
+                StringUtils.repeat('x', PayloadValidator.MAX_PAYLOAD_SIZE - prefix.length() - suffix.length()) + suffix;
+
+        assertTrue(PayloadValidator.validate(maxLengthPayload).isValid());
+
+        // Multi-byte characters should count for more than one byte
+        final String oversizePayload = prefix + "\u00e9" +
+                StringUtils.repeat('x', PayloadValidator.MAX_PAYLOAD_SIZE - prefix.length() - suffix.length() - 1) + suffix;
+
+        final PayloadValidator.Result result = PayloadValidator.validate(oversizePayload);
+
+        assertEquals(PayloadValidator.Error.TOO_LARGE, result.getError());
+        assertEquals(PayloadValidator.MAX_PAYLOAD_SIZE + 1, result.getByteLength());
+        assertEquals(oversizePayload.length() - 1, result.getErrorOffset());
+    }
+
+    @Test
+    public void testErrorMessages() {
+        final ResourceBundle resourceBundle = PushyConsoleApplication.RESOURCE_BUNDLE;
+
+        for (final PayloadValidator.Error error : PayloadValidator.Error.values()) {
+            assertTrue(resourceBundle.containsKey("payload.error." + error.name().toLowerCase().replace('_', '-')));
+        }
+    }
+
+    private static void assertError(final String payload, final PayloadValidator.Error expectedError,
+                                    final int expectedLine, final int expectedColumn) {
+
+        final PayloadValidator.Result result = PayloadValidator.validate(payload);
+
+        assertFalse(result.isValid());
+        assertEquals(payload, expectedError, result.getError());
+        assertEquals(payload, expectedLine, result.getErrorLine());
+        assertEquals(payload, expectedColumn, result.getErrorColumn());
+    }
+}
@@ -32,6 +32,7 @@ import javafx.scene.Scene;
 import javafx.stage.Stage;
 import org.apache.commons.io.FileUtils;
 import org.junit.*;
+import org.junit.rules.TemporaryFolder;
 
 import javax.swing.*;
 import java.lang.reflect.InvocationTargetException;
@@ -54,6 +55,9 @@ public class PushyConsoleControllerTest {
     @Rule
     public JavaFXThreadRule javaFXThreadRule = new JavaFXThreadRule();
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @BeforeClass
     public static void setUpBeforeClass() throws InvocationTargetException, InterruptedException {
         // We need to make sure JavaFX is initialized before doing anything else.
@@ -62,6 +66,9 @@ public class PushyConsoleControllerTest {
 
     @Before
     public void setUp() throws Exception {
+        // Keep results from previous test runs (and from actually using the console) out of the results table
+        System.setProperty(PushyConsoleApplication.DATA_DIRECTORY_PROPERTY, temporaryFolder.getRoot().getAbsolutePath());
+
         stage = new Stage();
 
         final ResourceBundle resourceBundle = PushyConsoleApplication.RESOURCE_BUNDLE;
@@ -82,6 +89,7 @@ public class PushyConsoleControllerTest {
     @After
     public void tearDown() {
         stage.close();
+        System.clearProperty(PushyConsoleApplication.DATA_DIRECTORY_PROPERTY);
     }
 
     @Test
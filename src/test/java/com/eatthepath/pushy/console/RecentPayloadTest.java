@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class RecentPayloadTest {
+
+    private ObservableList<String> payloads;
+    private List<RecentPayload> entries;
+
+    @Before
+    public void setUp() {
+        payloads = FXCollections.observableArrayList();
+        entries = new ArrayList<>();
+
+        payloads.addListener((ListChangeListener<String>) change -> RecentPayload.applyChange(change, entries));
+    }
+
+    @Test
+    public void testGetPreview() {
+        final RecentPayload recentPayload = new RecentPayload("{\n  \"aps\": {\n    \"alert\": \"Hello\"\n  }\n}");
+
+        assertEquals("{ \"aps\": { \"alert\": \"Hello\" } }", recentPayload.getPreview());
+        assertEquals("{\n  \"aps\": {\n    \"alert\": \"Hello\"\n  }\n}", recentPayload.getPayload());
+    }
+
+    @Test
+    public void testGetPreviewLongPayload() {
+        final RecentPayload recentPayload = new RecentPayload("{\"alert\": \"" + "a".repeat(1024) + "\"}");
+
+        assertTrue(recentPayload.getPreview().length() < recentPayload.getPayload().length());
+        assertTrue(recentPayload.getPreview().endsWith("..."));
+
+        // Previews are computed once and reused
+        assertSame(recentPayload.getPreview(), recentPayload.getPreview());
+    }
+
+    @Test
+    public void testMatches() {
+        final RecentPayload recentPayload = new RecentPayload("{\"aps\": {\"alert\":   \"Hello, World\"}}");
+
+        assertTrue(recentPayload.matches(RecentPayload.normalizeQuery("hello,   WORLD")));
+        assertFalse(recentPayload.matches(RecentPayload.normalizeQuery("goodbye")));
+    }
+
+    @Test
+    public void testApplyChangeAdded() {
+        payloads.addAll("a", "b");
+        payloads.add(0, "c");
+
+        assertEquals(List.of("c", "a", "b"), getEntryPayloads());
+    }
+
+    @Test
+    public void testApplyChangeKeepsExistingEntries() {
+        payloads.addAll("a", "b", "c");
+
+        final RecentPayload a = entries.get(0);
+        final RecentPayload c = entries.get(2);
+
+        payloads.remove("b");
+        payloads.add(0, "d");
+
+        assertEquals(List.of("d", "a", "c"), getEntryPayloads());
+
+        // Entries for payloads that were already in the list shouldn't have been rebuilt
+        assertSame(a, entries.get(1));
+        assertSame(c, entries.get(2));
+    }
+
+    @Test
+    public void testApplyChangePermutated() {
+        payloads.addAll("c", "a", "b");
+
+        final RecentPayload a = entries.get(1);
+
+        FXCollections.sort(payloads, Comparator.naturalOrder());
+
+        assertEquals(List.of("a", "b", "c"), getEntryPayloads());
+        assertSame(a, entries.get(0));
+    }
+
+    @Test
+    public void testApplyChangeReplaced() {
+        payloads.addAll("a", "b", "c");
+        payloads.set(1, "d");
+
+        assertEquals(List.of("a", "d", "c"), getEntryPayloads());
+    }
+
+    private List<String> getEntryPayloads() {
+        return entries.stream().map(RecentPayload::getPayload).collect(Collectors.toList());
+    }
+}
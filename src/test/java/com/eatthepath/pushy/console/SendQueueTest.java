@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SendQueueTest {
+
+    private SendQueue sendQueue;
+
+    @Before
+    public void setUp() {
+        // One send may be in flight and two more may wait in the queue
+        sendQueue = new SendQueue(2, 1);
+    }
+
+    @After
+    public void tearDown() {
+        sendQueue.shutdown();
+    }
+
+    @Test
+    public void testOfferAndCancel() throws Exception {
+        final CompletableFuture<Void> firstSendFuture = new CompletableFuture<>();
+        final CountDownLatch firstSendStarted = new CountDownLatch(1);
+
+        assertTrue(sendQueue.offer(() -> {
+            firstSendStarted.countDown();
+            return firstSendFuture;
+        }));
+
+        assertTrue(firstSendStarted.await(1, TimeUnit.SECONDS));
+        assertEquals(1, sendQueue.getInFlight());
+
+        assertTrue(sendQueue.offer(() -> CompletableFuture.completedFuture(null)));
+        assertTrue(sendQueue.offer(() -> CompletableFuture.completedFuture(null)));
+        assertFalse(sendQueue.offer(() -> CompletableFuture.completedFuture(null)));
+
+        assertTrue(sendQueue.isFull());
+        assertEquals(2, sendQueue.getDepth());
+        assertTrue(sendQueue.getOldestAge().isPresent());
+
+        assertEquals(2, sendQueue.cancel());
+        assertEquals(0, sendQueue.getDepth());
+        assertFalse(sendQueue.getOldestAge().isPresent());
+
+        // Sends already in flight are left alone
+        assertEquals(1, sendQueue.getInFlight());
+        firstSendFuture.complete(null);
+
+        final CompletableFuture<Void> laterSendFuture = sendQueue.put(() -> CompletableFuture.completedFuture(null));
+        laterSendFuture.get(1, TimeUnit.SECONDS);
+
+        assertEquals(0, sendQueue.getInFlight());
+    }
+
+    @Test
+    public void testPutCancelled() throws Exception {
+        final CompletableFuture<Void> firstSendFuture = new CompletableFuture<>();
+        sendQueue.put(() -> firstSendFuture);
+
+        final CompletableFuture<Void> queuedSendFuture = sendQueue.put(() -> CompletableFuture.completedFuture(null));
+
+        sendQueue.cancel();
+        firstSendFuture.complete(null);
+
+        assertTrue(queuedSendFuture.isCancelled());
+    }
+}
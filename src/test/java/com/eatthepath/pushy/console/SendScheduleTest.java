@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.Assert.*;
+
+public class SendScheduleTest {
+
+    private static final ZoneId UTC = ZoneOffset.UTC;
+
+    @Test
+    public void testParseFixedRate() {
+        final Instant start = Instant.parse("2020-01-01T00:00:00Z");
+
+        assertEquals(Instant.parse("2020-01-01T00:00:30Z"), SendSchedule.parse("30s", UTC).getNextSendTime(start));
+        assertEquals(Instant.parse("2020-01-01T00:05:00Z"), SendSchedule.parse(" 5 m ", UTC).getNextSendTime(start));
+        assertEquals(Instant.parse("2020-01-01T02:00:00Z"), SendSchedule.parse("2h", UTC).getNextSendTime(start));
+        assertEquals(Instant.parse("2020-01-01T00:00:00.250Z"), SendSchedule.parse("250ms", UTC).getNextSendTime(start));
+        assertEquals(Instant.parse("2020-01-01T00:01:30Z"), SendSchedule.parse("PT1M30S", UTC).getNextSendTime(start));
+    }
+
+    @Test
+    public void testParseCron() {
+        assertEquals(Instant.parse("2020-01-01T00:05:00Z"),
+                SendSchedule.parse("*/5 * * * *", UTC).getNextSendTime(Instant.parse("2020-01-01T00:00:00Z")));
+
+        assertEquals(Instant.parse("2020-01-01T00:10:00Z"),
+                SendSchedule.parse("*/5 * * * *", UTC).getNextSendTime(Instant.parse("2020-01-01T00:07:12Z")));
+
+        // January 1, 2020 was a Wednesday
+        assertEquals(Instant.parse("2020-01-03T09:30:00Z"),
+                SendSchedule.parse("30 9 * * 5", UTC).getNextSendTime(Instant.parse("2020-01-01T12:00:00Z")));
+
+        // Sunday may be written as 7
+        assertEquals(Instant.parse("2020-01-05T00:00:00Z"),
+                SendSchedule.parse("0 0 * * 7", UTC).getNextSendTime(Instant.parse("2020-01-01T00:00:00Z")));
+
+        // When both day fields are restricted, either one can match
+        assertEquals(Instant.parse("2020-01-03T00:00:00Z"),
+                SendSchedule.parse("0 0 15 * 5", UTC).getNextSendTime(Instant.parse("2020-01-01T00:00:00Z")));
+
+        assertEquals(Instant.parse("2024-02-29T12:00:00Z"),
+                SendSchedule.parse("0 12 29 2 *", UTC).getNextSendTime(Instant.parse("2020-03-01T00:00:00Z")));
+
+        assertEquals(Instant.parse("2020-03-01T08:15:00Z"),
+                SendSchedule.parse("15 8-10 1 3,6 *", UTC).getNextSendTime(Instant.parse("2020-01-01T00:00:00Z")));
+    }
+
+    @Test
+    public void testParseInvalid() {
+        for (final String schedule : new String[] { "", "0s", "soon", "PTX", "* * * *", "60 * * * *", "5-1 * * * *", "* * 30 2 *", "*/0 * * * *" }) {
+            try {
+                SendSchedule.parse(schedule, UTC);
+                fail("Expected schedule \"" + schedule + "\" to be rejected");
+            } catch (final IllegalArgumentException expected) {
+            }
+        }
+    }
+}
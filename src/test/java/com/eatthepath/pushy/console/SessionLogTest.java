@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import com.eatthepath.pushy.apns.ApnsPushNotification;
+import com.eatthepath.pushy.apns.DeliveryPriority;
+import com.eatthepath.pushy.apns.util.SimpleApnsPushNotification;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class SessionLogTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        final Path file = temporaryFolder.newFile("session.pushylog").toPath();
+        final Instant start = Instant.parse("2020-01-01T00:00:00.123456Z");
+
+        final NotificationResult accepted = new NotificationResult(
+                new SimpleApnsPushNotification("a1b2c3d4", "com.example.topic", "{\"aps\":{}}", null, DeliveryPriority.CONSERVE_POWER, "collapse"),
+                null, NotificationResult.Status.ACCEPTED, UUID.randomUUID(), null, null, start, Duration.ofNanos(12_345_000));
+
+        // Results may arrive out of order
+        final NotificationResult rejected = new NotificationResult(
+                new SimpleApnsPushNotification("Not-A-Hex-Token", "com.example.topic", "{\"aps\":{}}"),
+                null, NotificationResult.Status.REJECTED, null, "BadDeviceToken", null, start.minusMillis(5), null);
+
+        final NotificationResult skipped = NotificationResult.skipped(
+                new SimpleApnsPushNotification("abcd", "com.example.topic", "{}"), null, start);
+
+        try (final SessionLog.Writer writer = new SessionLog.Writer(file)) {
+            writer.write(accepted);
+            writer.write(skipped);
+            writer.write(rejected);
+        }
+
+        try (final SessionLog.Reader reader = new SessionLog.Reader(file)) {
+            final SessionLog.Entry first = reader.read();
+
+            assertEquals(start, first.getSendTimestamp());
+            assertEquals("a1b2c3d4", first.getPushNotification().getToken());
+            assertEquals("com.example.topic", first.getPushNotification().getTopic());
+            assertEquals("{\"aps\":{}}", first.getPushNotification().getPayload());
+            assertEquals(DeliveryPriority.CONSERVE_POWER, first.getPushNotification().getPriority());
+            assertEquals("collapse", first.getPushNotification().getCollapseId());
+            assertEquals(NotificationResult.Status.ACCEPTED, first.getStatus());
+            assertFalse(first.getRejectionReason().isPresent());
+            assertEquals(Duration.ofNanos(12_345_000), first.getLatency().orElse(null));
+
+            final SessionLog.Entry second = reader.read();
+
+            assertEquals(start.minusMillis(5), second.getSendTimestamp());
+            assertEquals("Not-A-Hex-Token", second.getPushNotification().getToken());
+            assertNull(second.getPushNotification().getCollapseId());
+            assertEquals(NotificationResult.Status.REJECTED, second.getStatus());
+            assertEquals("BadDeviceToken", second.getRejectionReason().orElse(null));
+            assertFalse(second.getLatency().isPresent());
+
+            assertNull(reader.read());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadNotASessionLog() throws IOException {
+        final Path file = temporaryFolder.newFile("not-a-session.pushylog").toPath();
+        Files.writeString(file, "Definitely not a session log");
+
+        new SessionLog.Reader(file).close();
+    }
+
+    @Test
+    public void testReplay() throws IOException {
+        final Path file = temporaryFolder.newFile("session.pushylog").toPath();
+        final Instant start = Instant.now();
+
+        try (final SessionLog.Writer writer = new SessionLog.Writer(file)) {
+            for (int i = 0; i < 1000; i++) {
+                writer.write(new NotificationResult(
+                        new SimpleApnsPushNotification(String.format("%08x", i), "com.example.topic", "{}"),
+                        null, NotificationResult.Status.ACCEPTED, null, null, null, start.plusSeconds(i), null));
+            }
+        }
+
+        final List<ApnsPushNotification> sentNotifications = new ArrayList<>();
+
+        try (final SessionLog.Reader reader = new SessionLog.Reader(file)) {
+            assertEquals(1000, SessionReplayer.replay(reader, SessionReplayer.AS_FAST_AS_POSSIBLE, pushNotification -> {
+                sentNotifications.add(pushNotification);
+                return CompletableFuture.completedFuture(null);
+            }, sent -> {}));
+        }
+
+        assertEquals(1000, sentNotifications.size());
+        assertEquals("00000000", sentNotifications.get(0).getToken());
+        assertEquals("000003e7", sentNotifications.get(999).getToken());
+    }
+}
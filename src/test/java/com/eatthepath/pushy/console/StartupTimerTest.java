@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class StartupTimerTest {
+
+    @Test
+    public void testLogPhase() {
+        StartupTimer.logPhase("first test phase");
+        StartupTimer.logPhase("second test phase");
+
+        final Map<String, Duration> elapsedTimesByPhase = StartupTimer.getElapsedTimesByPhase();
+        final List<String> phases = new ArrayList<>(elapsedTimesByPhase.keySet());
+
+        assertTrue(phases.indexOf("first test phase") >= 0);
+        assertEquals(phases.indexOf("first test phase") + 1, phases.indexOf("second test phase"));
+
+        assertFalse(elapsedTimesByPhase.get("first test phase").isNegative());
+        assertTrue(elapsedTimesByPhase.get("second test phase").compareTo(elapsedTimesByPhase.get("first test phase")) >= 0);
+    }
+}
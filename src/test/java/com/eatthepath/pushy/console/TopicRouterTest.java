@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2020 Jon Chambers.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.eatthepath.pushy.console;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TopicRouterTest {
+
+    private static final ApnsTarget TARGET = new ApnsTarget("api.sandbox.push.apple.com", 443);
+
+    @Test
+    public void testAddRouteDoesNotLoadCredentials() {
+        final AtomicInteger loads = new AtomicInteger();
+
+        final TopicRouter.Route route = new TopicRouter.Route("Test", () -> {
+            loads.incrementAndGet();
+            throw new IOException("Should not be loaded");
+        }, TARGET, 1);
+
+        final TopicRouter router = new TopicRouter();
+        router.addRoute(route, List.of("com.example.app", "com.example.app.voip"));
+
+        assertSame(route, router.getRoute("com.example.app.voip").orElseThrow());
+        assertEquals(List.of(route), router.getRoutes());
+        assertEquals(0, loads.get());
+    }
+
+    @Test
+    public void testGetCredentialsLoadsOnce() throws Exception {
+        final ApnsCredentials credentials = new ApnsCredentials(FileUtils.toFile(getClass().getResource("apns-client.p12")), "pushy-test");
+        final AtomicInteger loads = new AtomicInteger();
+
+        final TopicRouter.Route route = new TopicRouter.Route("Test", () -> {
+            loads.incrementAndGet();
+            return credentials;
+        }, TARGET, 1);
+
+        assertSame(credentials, route.getCredentials());
+        assertSame(credentials, route.getCredentials());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testGetCredentialsFailureIsRemembered() {
+        final AtomicInteger loads = new AtomicInteger();
+
+        final TopicRouter.Route route = new TopicRouter.Route("Test", () -> {
+            loads.incrementAndGet();
+            throw new IOException("Can't read credentials");
+        }, TARGET, 1);
+
+        for (int i = 0; i < 3; i++) {
+            assertThrows(IOException.class, route::getCredentials);
+        }
+
+        assertEquals(1, loads.get());
+    }
+}